@@ -14,35 +14,104 @@ Usage: rdfSynopsis [options]
        Default: true
     -c, --criteria
        A space-separated list of criteria to use for analysis, e.g, "-c 3 5 7"
+    -sf, --checkpointFile
+       The file the state of the analysis is written to periodically, so that
+       it can be resumed with "--resume". (TSA only, not with --keysetPaging,
+       --partitions or streamed files)
+    -si, --checkpointInterval
+       The number of pages between two checkpoints. (TSA only)
+       Default: 10
+    -tol, --convergenceTolerance
+       Stop the analysis once ratios and top property shares changed by at
+       most this value over the convergence window; "0" means never. (TSA
+       only)
+       Default: 0.0
+    -win, --convergenceWindow
+       The number of pages the values have to be stable to stop the analysis.
+       (TSA only)
+       Default: 3
+    -eb, --errorBound
+       Count distinct subjects and objects approximately with the given
+       relative standard error, e.g. 0.01; 0 counts exactly. (TSA only)
+       Default: 0.0
     -ep, --endpoint
        The SPARQL endpoint URL that shall be analyzed.
     -f, --file
        The RDF dataset file that shall be analyzed.
+    -mem, --inMemory
+       Load the dataset file into memory instead of streaming it directly
+       from the parser, which does not support the paging and sampling
+       options of the triple stream. (TSA only)
+       Default: false
     -h, --help
        Print this usage information.
        Default: false
+    -ks, --keysetPaging
+       Page through the triple stream by resuming from the last triple seen
+       instead of using OFFSET. Triples after a blank node are still skipped
+       with OFFSET, so this does not help with mostly blank subjects (objects
+       with "--orderBy object"). (TSA only)
+       Default: false
+    -mb, --memoryBudget
+       Keep at most this many MB of subject data per criterion on the heap
+       and spill the rest to temporary files; "0" means no limit. (TSA only:
+       implicit property hierarchy, class instances per property, common
+       properties)
+       Default: 0
     -mnq, --maximumNumberQueries
        The maximum number of queries to perform a partial analysis; "-1" means
        "infinite". (TSA only)
        Default: -1
+    -npd, --noPredicatePushDown
+       Stream all triples even if every criterion only considers triples of
+       certain predicates (class hierarchy, property hierarchy, sameAs, class
+       usage, ontology ratio, implicit class hierarchy). (TSA only)
+       Default: false
     -ob, --orderBy
        One of the following variables used to define an order in the triple
        stream: subject, predicate, object (TSA only)
        Default: subject
-    -o, --outFile
+    -out, --outFile
        The filename used to store analysis results. (NA)
+    -p, --partitions
+       The number of partitions of the triple stream that are analyzed
+       independently and merged afterwards. (TSA only)
+       Default: 1
+    -qt, --queryTimeout
+       The timeout of every criterion query in ms; "0" means none. (SQA only)
+       Default: 0
     -rand, --randomSampling
-       Use a "random sampled" triple stream. (TSA only)
+       Use a "random sampled" triple stream. (TSA only, not with
+       --keysetPaging or --subjectWindow)
        Default: true
+    -rah, --readAhead
+       The number of triple pages fetched in the background while the current
+       page is processed. (TSA only)
+       Default: 1
+    -res, --resume
+       Continue the analysis from the checkpoint file, if it exists. (TSA
+       only)
+       Default: false
     -rf, --resultFormat
        One of the following result output formats: text,... (NA)
        Default: text
     -sqa, --specificQuery
        Use one specific SPARQL query per criterion. (SQA)
        Default: true
+    -sw, --subjectWindow
+       Fold every subject into the results once all its triples have been
+       read, so that memory does not grow with the number of subjects; the
+       stream is ordered by subject without random sampling. (TSA only:
+       triples per subject class, property usage per subject class, common
+       properties)
+       Default: false
     -tl, --tripleLimit
        The maximum number of triples requested per query. (TSA only)
        Default: 50000
+    -nt, --threads
+       The number of threads evaluating the criteria. (TSA: triple stream
+       workers, SQA: concurrent queries)
+       Default: 1
     -tsa, --tripleStream
        Use generic SPARQL queries to create a triple stream. (TSA)
        Default: false
@@ -62,25 +131,48 @@ Usage: rdfSynopsis [options]
 	boolean tsa = false;
 	
 	// Triple Stream arguments
-	@Parameter(names = {"-rand","--randomSampling"}, required = false, description="Use a \"random sampled\" triple stream. (TSA only)")
+	@Parameter(names = {"-rand","--randomSampling"}, required = false, description="Use a \"random sampled\" triple stream. (TSA only, not with --keysetPaging or --subjectWindow)")
 	boolean random = true;
 	@Parameter(names = {"-ob","--orderBy"}, required = false, description="One of the following variables used to define an order in the triple stream: subject, predicate, object (TSA only)")
 	String orderBy = "subject";
 	@Parameter(names = {"-tl","--tripleLimit"}, required = false, description="The maximum number of triples requested per query. (TSA only)")
 	Integer tripleLimit = 50000;
-	@Parameter(names = {"-mnq","--maximumNumberQueries"}, required = false, description="The maximum number of queries to perform a partial analysis; \"-1\" means \"infinite\". (TSA only, NA)")
+	@Parameter(names = {"-mnq","--maximumNumberQueries"}, required = false, description="The maximum number of queries to perform a partial analysis; \"-1\" means \"infinite\". (TSA only)")
 	Integer maxNumQueries = -1;	
+	@Parameter(names = {"-tol","--convergenceTolerance"}, required = false, description="Stop the analysis once ratios and top property shares changed by at most this value over the convergence window; \"0\" means never. (TSA only)")
+	Double convergenceTolerance = 0.0;
+	@Parameter(names = {"-win","--convergenceWindow"}, required = false, description="The number of pages the values have to be stable to stop the analysis. (TSA only)")
+	Integer convergenceWindow = 3;
+	@Parameter(names = {"-sf","--checkpointFile"}, required = false, description="The file the state of the analysis is written to periodically, so that it can be resumed with \"--resume\". (TSA only, not with --keysetPaging, --partitions or streamed files)")
+	String checkpointFile = null;
+	@Parameter(names = {"-si","--checkpointInterval"}, required = false, description="The number of pages between two checkpoints. (TSA only)")
+	Integer checkpointInterval = 10;
+	@Parameter(names = {"-res","--resume"}, required = false, description="Continue the analysis from the checkpoint file, if it exists. (TSA only)")
+	boolean resume = false;
+	@Parameter(names = {"-ks","--keysetPaging"}, required = false, description="Page through the triple stream by resuming from the last triple seen instead of using OFFSET. Triples after a blank node are still skipped with OFFSET, so this does not help with mostly blank subjects (objects with \"--orderBy object\"). (TSA only)")
+	boolean keysetPaging = false;
+	@Parameter(names = {"-rah","--readAhead"}, required = false, description="The number of triple pages fetched in the background while the current page is processed. (TSA only)")
+	Integer readAhead = 1;
+	@Parameter(names = {"-nt","--threads"}, required = false, description="The number of threads evaluating the criteria. (TSA: triple stream workers, SQA: concurrent queries)")
+	Integer numThreads = 1;
+	@Parameter(names = {"-p","--partitions"}, required = false, description="The number of partitions of the triple stream that are analyzed independently and merged afterwards. (TSA only)")
+	Integer numPartitions = 1;
+	
+	@Parameter(names = {"-qt","--queryTimeout"}, required = false, description="The timeout of every criterion query in ms; \"0\" means none. (SQA only)")
+	Long queryTimeout = 0L;
 	
 	// Remote Endpoint vs. Local File
 	@Parameter(names = {"-ep","--endpoint"}, required = false, description="The SPARQL endpoint URL that shall be analyzed.")
 	String endpoint;	
 	@Parameter(names = {"-f","--file"}, required = false, description="The RDF dataset file that shall be analyzed.")
 	String datasetFile;
+	@Parameter(names = {"-mem","--inMemory"}, required = false, description="Load the dataset file into memory instead of streaming it directly from the parser, which does not support the paging and sampling options of the triple stream. (TSA only)")
+	boolean inMemory = false;
 	
 	// Result output options
 	@Parameter(names = {"-rf","--resultFormat"}, required = false, description="One of the following result output formats: text,... (NA)")
 	String outputFormat = "text";	
-	@Parameter(names = {"-o","--outFile"}, required = false, description="The filename used to store analysis results. (NA)")
+	@Parameter(names = {"-out","--outFile"}, required = false, description="The filename used to store analysis results. (NA)")
 	String outputFile = null;
 	
 	// Analytical Criteria
@@ -88,5 +180,13 @@ Usage: rdfSynopsis [options]
 	boolean allCriteria = false;
 	@Parameter(names = {"-c","--criteria"}, variableArity = true, description="A space-separated list of criteria to use for analysis, e.g, \"-c 3 5 7\"")
 	public List<String> criteria;
+	@Parameter(names = {"-eb","--errorBound"}, required = false, description="Count distinct subjects and objects approximately with the given relative standard error, e.g. 0.01; 0 counts exactly. (TSA only)")
+	Double errorBound = 0.0;
+	@Parameter(names = {"-mb","--memoryBudget"}, required = false, description="Keep at most this many MB of subject data per criterion on the heap and spill the rest to temporary files; \"0\" means no limit. (TSA only: implicit property hierarchy, class instances per property, common properties)")
+	Integer memoryBudget = 0;
+	@Parameter(names = {"-sw","--subjectWindow"}, required = false, description="Fold every subject into the results once all its triples have been read, so that memory does not grow with the number of subjects; the stream is ordered by subject without random sampling. (TSA only: triples per subject class, property usage per subject class, common properties)")
+	boolean subjectWindow = false;
+	@Parameter(names = {"-npd","--noPredicatePushDown"}, required = false, description="Stream all triples even if every criterion only considers triples of certain predicates (class hierarchy, property hierarchy, sameAs, class usage, ontology ratio, implicit class hierarchy). (TSA only)")
+	boolean noPredicatePushDown = false;
 
 }
@@ -1,14 +1,22 @@
 package rdfsynopsis;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.analyzer.AbstractAnalyzer;
 import rdfsynopsis.analyzer.Analyzer;
+import rdfsynopsis.analyzer.FileStreamAnalyzer;
+import rdfsynopsis.analyzer.PartitionAnalyzer;
 import rdfsynopsis.analyzer.SparqlAnalyzer;
 import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.dataset.FileStreamDataset;
 import rdfsynopsis.dataset.InMemoryDataset;
 import rdfsynopsis.dataset.SparqlDataset;
 import rdfsynopsis.dataset.SparqlEndpointDataset;
+import rdfsynopsis.statistics.CardinalityCriterion;
 import rdfsynopsis.statistics.ClassHierarchy;
 import rdfsynopsis.statistics.ClassInstancesPerProperty;
 import rdfsynopsis.statistics.ClassUsageCount;
@@ -25,10 +33,13 @@ import rdfsynopsis.statistics.PropertyHierarchy;
 import rdfsynopsis.statistics.PropertyUsage;
 import rdfsynopsis.statistics.PropertyUsagePerSubjectClass;
 import rdfsynopsis.statistics.SameAs;
+import rdfsynopsis.statistics.SpillableCriterion;
+import rdfsynopsis.statistics.StatisticalCriterion;
 import rdfsynopsis.statistics.TriplesPerSubjectClass;
 import rdfsynopsis.statistics.TypedSubjectRatio;
 
 import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterDescription;
 import com.beust.jcommander.ParameterException;
 
 /**
@@ -62,6 +73,21 @@ public class Synopsis {
 										"common properties"
 										};
 
+	// options of the paged triple stream, not supported by streamed files
+	private static final List<String> pagedStreamOptions = Arrays.asList(
+										"--randomSampling",
+										"--orderBy",
+										"--tripleLimit",
+										"--maximumNumberQueries",
+										"--convergenceTolerance",
+										"--convergenceWindow",
+										"--checkpointInterval",
+										"--keysetPaging",
+										"--readAhead",
+										"--partitions",
+										"--noPredicatePushDown"
+										);
+
 	/**
 	 * entry point for command-line use
 	 * 
@@ -81,7 +107,7 @@ public class Synopsis {
 		jCmd.setProgramName("rdfSynopsis");
 		try {
 			jCmd.parse(args);
-			validateCommandLineParameters(cla);
+			validateCommandLineParameters(cla, jCmd);
 		} catch (ParameterException ex) {
 			System.err.println(ex.getMessage());
 			jCmd.usage();
@@ -101,9 +127,12 @@ public class Synopsis {
 		}
 
 		// Dataset Access
-		SparqlDataset ds;
+		SparqlDataset ds = null;
+		FileStreamDataset fileDs = null;
 		if (cla.endpoint != null)
 			ds = new SparqlEndpointDataset(cla.endpoint);
+		else if (cla.tsa && !cla.inMemory)
+			fileDs = new FileStreamDataset(cla.datasetFile);
 		else ds = new InMemoryDataset(cla.datasetFile);
 
 		// Order By Clause
@@ -117,12 +146,38 @@ public class Synopsis {
 		// Analysis Method
 		Analyzer a;
 		if (cla.sqa) {
-			a = new SparqlAnalyzer(ds);
+			a = new SparqlAnalyzer(ds)
+					.setParallelism(cla.numThreads)
+					.setQueryTimeout(cla.queryTimeout);
+		} else if (fileDs != null) {
+			a = new FileStreamAnalyzer(fileDs)
+					.setNumThreads(cla.numThreads);
+		} else if (cla.numPartitions > 1) {
+			a = new PartitionAnalyzer(ds)
+					.setNumPartitions(cla.numPartitions)
+					.setOrderByClause(obc)
+					.setTripleLimit(cla.tripleLimit);
 		} else {
 			AbstractAnalyzer tsa = new TripleStreamAnalyzer(ds)
 					.setOrderByClause(obc)
-					.setRandomSampling(cla.random)
-					.setTripleLimit(cla.tripleLimit);
+					// no default random sampling with a subject window or
+					// keyset paging, an explicit one is rejected by the
+					// validation
+					.setRandomSampling(cla.random && !cla.subjectWindow
+							&& !cla.keysetPaging)
+					.setKeysetPaging(cla.keysetPaging)
+					.setReadAhead(cla.readAhead)
+					.setMaxNumQueries(cla.maxNumQueries)
+					.setConvergenceTolerance(cla.convergenceTolerance)
+					.setConvergenceWindow(cla.convergenceWindow)
+					.setCheckpointFile(cla.checkpointFile == null ? null
+							: new File(cla.checkpointFile))
+					.setCheckpointInterval(cla.checkpointInterval)
+					.setResume(cla.resume)
+					.setSubjectWindow(cla.subjectWindow)
+					.setPredicatePushDown(!cla.noPredicatePushDown)
+					.setTripleLimit(cla.tripleLimit)
+					.setNumThreads(cla.numThreads);
 			a = tsa;
 		}
 
@@ -146,6 +201,19 @@ public class Synopsis {
 		if (cla.allCriteria || cla.criteria.contains("17"))			a.addCriterion(new SameAs());
 		if (cla.allCriteria || cla.criteria.contains("18"))			a.addCriterion(new CommonProperties());
 
+		// approximate counting
+		if (cla.tsa && cla.errorBound > 0)
+			for (StatisticalCriterion sc : a.getCriteria())
+				if (sc instanceof CardinalityCriterion)
+					((CardinalityCriterion) sc).setErrorBound(cla.errorBound);
+
+		// spill subject data to disk
+		if (cla.tsa && cla.memoryBudget > 0)
+			for (StatisticalCriterion sc : a.getCriteria())
+				if (sc instanceof SpillableCriterion)
+					((SpillableCriterion) sc)
+							.setMemoryBudget(cla.memoryBudget * 1024L * 1024L);
+
 		// perform analysis
 		a.performAnalysis(System.out);
 	}
@@ -188,8 +256,12 @@ public class Synopsis {
 
 	/**
 	 * Double check that the command line parameters are valid.
+	 * 
+	 * @param jCmd
+	 *            parser of the parameters, tells which options were given
 	 */
-	protected static void validateCommandLineParameters(CommandLineArgs cla) {
+	protected static void validateCommandLineParameters(CommandLineArgs cla,
+			JCommander jCmd) {
 
 		if (!cla.help && !cla.listCriteria) {
 			// parallel use of tsa and sqa
@@ -225,6 +297,92 @@ public class Synopsis {
 				throw new ParameterException(
 						"Invalid order by clause. (valid: subject, predicate, object)");
 			}
+
+			// read ahead
+			if (cla.readAhead < 0)
+				throw new ParameterException(
+						"Invalid number of read ahead pages. (valid: 0 or more)");
+
+			// number of threads
+			if (cla.numThreads < 1)
+				throw new ParameterException(
+						"Invalid number of threads. (valid: 1 or more)");
+
+			// number of partitions
+			if (cla.numPartitions < 1)
+				throw new ParameterException(
+						"Invalid number of partitions. (valid: 1 or more)");
+
+			// query timeout
+			if (cla.queryTimeout < 0)
+				throw new ParameterException(
+						"Invalid query timeout. (valid: 0 or more)");
+
+			// partial analysis
+			if (cla.maxNumQueries != -1 && cla.maxNumQueries < 1)
+				throw new ParameterException(
+						"Invalid maximum number of queries. (valid: -1 or 1 or more)");
+			if (cla.convergenceTolerance < 0)
+				throw new ParameterException(
+						"Invalid convergence tolerance. (valid: 0 or more)");
+			if (cla.convergenceWindow < 1)
+				throw new ParameterException(
+						"Invalid convergence window. (valid: 1 or more)");
+
+			// checkpoints
+			if (cla.checkpointInterval < 1)
+				throw new ParameterException(
+						"Invalid checkpoint interval. (valid: 1 or more)");
+			if (cla.resume && cla.checkpointFile == null)
+				throw new ParameterException(
+						"Please specify the checkpoint file to resume from.");
+			if (cla.checkpointFile != null
+					&& (!cla.tsa || cla.keysetPaging || cla.numPartitions > 1
+							|| (cla.datasetFile != null && !cla.inMemory)))
+				throw new ParameterException(
+						"Checkpoints are only supported by the paged triple stream (TSA without --keysetPaging, --partitions or streamed files).");
+
+			// error bound
+			if (cla.errorBound < 0 || cla.errorBound >= 1)
+				throw new ParameterException(
+						"Invalid error bound. (valid: 0 to less than 1)");
+
+			// memory budget
+			if (cla.memoryBudget < 0)
+				throw new ParameterException(
+						"Invalid memory budget. (valid: 0 or more)");
+
+			// streamed files are read once, in the order of the file
+			if (cla.tsa && cla.datasetFile != null && !cla.inMemory)
+				for (ParameterDescription pd : jCmd.getParameters())
+					if (pd.isAssigned()
+							&& pagedStreamOptions.contains(pd.getLongestName()))
+						throw new ParameterException(
+								"The option " + pd.getLongestName() + " is only supported by the paged triple stream (TSA with --endpoint or --inMemory).");
+
+			// subject window
+			if (cla.subjectWindow
+					&& (!cla.tsa || !cla.orderBy.equalsIgnoreCase("subject")
+							|| cla.numPartitions > 1
+							|| (cla.datasetFile != null && !cla.inMemory)))
+				throw new ParameterException(
+						"The subject window is only supported by the paged triple stream ordered by subject (TSA without --partitions or streamed files).");
+
+			// random sampling is only the default without a subject window
+			if (cla.subjectWindow)
+				for (ParameterDescription pd : jCmd.getParameters())
+					if (pd.isAssigned()
+							&& pd.getLongestName().equals("--randomSampling"))
+						throw new ParameterException(
+								"The subject window requires a stream ordered by subject without random sampling, --randomSampling is not supported with it.");
+
+			// ... and without keyset paging, which resumes an ordered stream
+			if (cla.keysetPaging)
+				for (ParameterDescription pd : jCmd.getParameters())
+					if (pd.isAssigned()
+							&& pd.getLongestName().equals("--randomSampling"))
+						throw new ParameterException(
+								"Keyset paging resumes an ordered stream from the last triple seen, --randomSampling is not supported with it.");
 		}
 	}
 }
@@ -8,12 +8,28 @@ import org.apache.log4j.Logger;
 
 import rdfsynopsis.dataset.SparqlDataset;
 import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
 
 public abstract class AbstractAnalyzer implements Analyzer {
 
 	protected List<StatisticalCriterion> criteria;
 	protected Logger logger;
 	protected SparqlDataset	ds;
+	// shared by all criteria, so that every triple is encoded only once
+	protected TermDictionary dictionary;
+	// number of threads evaluating criteria, 1 = sequential
+	protected int numThreads = 1;
+	// signal the end of every subject to the criteria (subject-ordered stream)
+	protected boolean subjectWindow = false;
+	// subject of the previous triple, NO_SUBJECT before the first one
+	protected int lastSubject = NO_SUBJECT;
+	protected static final int NO_SUBJECT = -1;
+	private CriteriaWorkerPool workers;
+	// criteria of the triples, see startStream()
+	private TripleRouter router;
 
 	/**
 	 * perform analysis and output results
@@ -23,6 +39,7 @@ public abstract class AbstractAnalyzer implements Analyzer {
 
 	public AbstractAnalyzer() {
 		criteria = new ArrayList<StatisticalCriterion>();
+		dictionary = new TermDictionary();
 	}
 
 	/**
@@ -30,7 +47,10 @@ public abstract class AbstractAnalyzer implements Analyzer {
 	 */
 	@Override
 	public Analyzer addCriterion(StatisticalCriterion sc) {
+		sc.setDictionary(dictionary);
 		criteria.add(sc);
+		// type triples are indexed once for all class-aware criteria
+		StatisticalCriterion.shareTypeIndex(criteria);
 		return this;
 	}
 
@@ -39,6 +59,138 @@ public abstract class AbstractAnalyzer implements Analyzer {
 		return criteria;
 	}
 
+	/**
+	 * let the interested criteria filter the triple (TSA)
+	 */
+	protected void considerTriple(Resource s, Resource p, RDFNode o) {
+		// the window tells subjects apart by their ids
+		int sId = subjectWindow ? dictionary.encode(s) : router.encodeSubject(
+				dictionary, s);
+		int pId = router.encodePredicate(dictionary, p);
+		int oId = router.encodeObject(dictionary, o);
+		if (subjectWindow && sId != lastSubject) {
+			if (lastSubject != NO_SUBJECT)
+				endSubject();
+			lastSubject = sId;
+		}
+		if (workers != null) {
+			workers.considerTriple(sId, pId, oId);
+			return;
+		}
+		router.considerTriple(sId, pId, oId);
+	}
+
+	/**
+	 * let all criteria fold the current subject (subject window)
+	 */
+	private void endSubject() {
+		if (workers != null) {
+			workers.endSubject();
+			return;
+		}
+		for (StatisticalCriterion sc : criteria) {
+			sc.endSubject();
+		}
+	}
+
+	/**
+	 * signal the end of the last subject at the end of the stream
+	 */
+	protected void endLastSubject() {
+		if (subjectWindow && lastSubject != NO_SUBJECT) {
+			endSubject();
+			lastSubject = NO_SUBJECT;
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if a criterion folds subjects, which requires a subject
+	 *             window of the analyzer
+	 */
+	protected void checkNoSubjectWindow() {
+		for (StatisticalCriterion sc : criteria)
+			if (sc.isSubjectWindow())
+				throw new IllegalStateException(sc.getClass().getSimpleName()
+						+ " folds subjects, which is only supported by the "
+						+ "subject-ordered triple stream");
+	}
+
+	/**
+	 * start the stream of every criterion, route the triples to the
+	 * interested criteria and start the workers
+	 */
+	protected void startStream() {
+		for (StatisticalCriterion sc : criteria)
+			sc.startStream();
+		router = new TripleRouter(criteria);
+		startWorkers();
+	}
+
+	/**
+	 * start worker threads for the criteria if more than one thread is used
+	 */
+	private void startWorkers() {
+		if (numThreads > 1 && criteria.size() > 1) {
+			workers = new CriteriaWorkerPool(criteria, numThreads);
+			logger.info("evaluating criteria on " + workers.getNumWorkers()
+					+ " threads");
+		}
+	}
+
+	/**
+	 * wait until the workers have considered the triples so far, so that the
+	 * criteria may be read
+	 */
+	protected void syncWorkers() {
+		if (workers != null)
+			workers.sync();
+	}
+
+	/**
+	 * wait until the workers have considered all triples
+	 */
+	protected void stopWorkers() {
+		if (workers != null) {
+			try {
+				workers.shutdown();
+			} finally {
+				workers = null;
+			}
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Evaluate criteria on parallel worker threads (TSA). Each criterion is
+	 * owned by one thread, so results do not depend on the number of threads.
+	 * @param numThreads
+	 * @return
+	 */
+	public AbstractAnalyzer setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * flush logs for all criteria
+	 * @param ps
+	 */
+	protected void flushLogs(PrintStream ps) {
+		logger.debug("flushing logs of statistical criteria");
+		for (StatisticalCriterion sc : criteria) {
+			sc.flushLog(ps);
+		}
+		ps.flush();
+	}
+
 	public SparqlDataset getDs() {
 		return ds;
 	}
@@ -0,0 +1,198 @@
+package rdfsynopsis.analyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+/**
+ * State of a triple stream analysis after a number of pages: the position in
+ * the stream and the state of the criteria, which share the dictionary.
+ * Written to a compressed file to resume the analysis after a crash.
+ *
+ * The terms of the dictionary are not part of the compressed file, they are
+ * appended to a terms file next to it (see getTermsFile()), so that every
+ * checkpoint only writes the terms encoded since the previous one.
+ *
+ * @author thomas
+ *
+ */
+public class Checkpoint implements Serializable {
+
+	private static final long			serialVersionUID	= 1L;
+
+	// stream parameters the position refers to
+	int									numTriples;
+	// predicates of the targeted streams (null for all triples) and their
+	// number of triples
+	List<String>						streamPredicates;
+	int[]								streamTriples;
+	int									tripleLimit;
+	String								orderByClause;
+	boolean								randomSampling;
+	long								seed;
+
+	// position
+	int									numPages;
+	int									numTriplesConsidered;
+	// subject of the last triple, whose end has not been signaled yet
+	int									lastSubject;
+
+	// written to the terms file, replaced by a reference in the criteria
+	transient TermDictionary			dictionary;
+	List<StatisticalCriterion>			criteria;
+	// number of terms of every kind and length of the terms file
+	int[]								numTerms;
+	long								termsLength;
+
+	// stands for the dictionary in the serialized criteria
+	private static class DictionaryRef implements Serializable {
+
+		private static final long	serialVersionUID	= 1L;
+	}
+
+	/**
+	 * @return file the terms of the dictionary are appended to
+	 */
+	public static File getTermsFile(File file) {
+		return new File(file.getPath() + ".terms");
+	}
+
+	/**
+	 * Write the checkpoint; the previous checkpoint is only replaced once the
+	 * new one is complete. The terms encoded since the previous checkpoint
+	 * are appended to the terms file first.
+	 * 
+	 * @param previous
+	 *            checkpoint of the same analysis written to or read from the
+	 *            file before, null to write all terms
+	 */
+	public void write(File file, Checkpoint previous) throws IOException {
+		numTerms = dictionary.getNumTerms();
+		boolean append = previous != null && previous.dictionary == dictionary;
+		termsLength = appendTerms(getTermsFile(file),
+				append ? previous.numTerms : new int[numTerms.length],
+				append ? previous.termsLength : 0);
+
+		File tmpFile = new File(file.getPath() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			{
+				enableReplaceObject(true);
+			}
+
+			@Override
+			protected Object replaceObject(Object obj) {
+				return obj == dictionary ? new DictionaryRef() : obj;
+			}
+		};
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete())
+			throw new IOException("Could not delete old checkpoint " + file);
+		if (!tmpFile.renameTo(file))
+			throw new IOException("Could not rename " + tmpFile + " to " + file);
+	}
+
+	/**
+	 * Cut off terms a failed checkpoint may have left and append the terms
+	 * from the given numbers of terms on.
+	 * 
+	 * @return length of the terms file
+	 */
+	private long appendTerms(File termsFile, int[] from, long length)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(termsFile, "rw");
+		try {
+			raf.setLength(length);
+		} finally {
+			raf.close();
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(termsFile, true)));
+		try {
+			dictionary.writeTerms(out, from, numTerms);
+		} finally {
+			out.close();
+		}
+		return termsFile.length();
+	}
+
+	public static Checkpoint read(File file) throws IOException {
+		final TermDictionary dictionary = new TermDictionary();
+		ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			{
+				enableResolveObject(true);
+			}
+
+			@Override
+			protected Object resolveObject(Object obj) {
+				return obj instanceof DictionaryRef ? dictionary : obj;
+			}
+		};
+		Checkpoint checkpoint;
+		try {
+			checkpoint = (Checkpoint) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid checkpoint " + file, e);
+		} finally {
+			in.close();
+		}
+
+		// terms appended after the checkpoint are not read
+		DataInputStream termsIn = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(getTermsFile(file))));
+		try {
+			dictionary.readTerms(termsIn, checkpoint.numTerms);
+		} finally {
+			termsIn.close();
+		}
+		checkpoint.dictionary = dictionary;
+		return checkpoint;
+	}
+
+	/**
+	 * Delete the checkpoint and its terms file.
+	 * 
+	 * @return false if a file exists that could not be deleted
+	 */
+	public static boolean delete(File file) {
+		boolean deleted = !file.exists() || file.delete();
+		File termsFile = getTermsFile(file);
+		return (!termsFile.exists() || termsFile.delete()) && deleted;
+	}
+
+	public int getNumPages() {
+		return numPages;
+	}
+
+	public int getNumTriplesConsidered() {
+		return numTriplesConsidered;
+	}
+
+	public List<StatisticalCriterion> getCriteria() {
+		return criteria;
+	}
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+}
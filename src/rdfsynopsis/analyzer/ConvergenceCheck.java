@@ -0,0 +1,90 @@
+package rdfsynopsis.analyzer;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import rdfsynopsis.statistics.StatisticalCriterion;
+
+/**
+ * Decides whether a partial analysis has converged: the convergence values of
+ * the criteria (see {@link StatisticalCriterion#getConvergenceValues()}) are
+ * recorded after every page; the analysis has converged once all of them
+ * stayed within the tolerance over the last pages of the window.
+ *
+ * @author thomas
+ *
+ */
+public class ConvergenceCheck {
+
+	private double						tolerance;
+	private int							window;
+
+	// values of the last window + 1 pages, oldest first
+	private LinkedList<Map<String, Double>>	history	= new LinkedList<Map<String, Double>>();
+
+	/**
+	 * @param tolerance
+	 *            maximum absolute change of every value
+	 * @param window
+	 *            number of pages the values have to be stable
+	 */
+	public ConvergenceCheck(double tolerance, int window) {
+		if (tolerance < 0)
+			throw new IllegalArgumentException("tolerance must not be negative: "
+					+ tolerance);
+		if (window < 1)
+			throw new IllegalArgumentException("window must be at least 1: "
+					+ window);
+		this.tolerance = tolerance;
+		this.window = window;
+	}
+
+	/**
+	 * Record the values of the criteria after a page.
+	 *
+	 * @return true if the values have converged
+	 */
+	public boolean update(List<StatisticalCriterion> criteria) {
+		Map<String, Double> values = new HashMap<String, Double>();
+		for (StatisticalCriterion sc : criteria)
+			values.putAll(sc.getConvergenceValues());
+		return update(values);
+	}
+
+	/**
+	 * @return true if the values have converged
+	 */
+	public boolean update(Map<String, Double> values) {
+		history.add(values);
+		if (history.size() > window + 1)
+			history.removeFirst();
+		return isConverged();
+	}
+
+	public boolean isConverged() {
+		if (history.size() < window + 1)
+			return false;
+		Map<String, Double> current = history.getLast();
+		// nothing to compare
+		if (current.isEmpty())
+			return false;
+		for (Map<String, Double> previous : history) {
+			if (!previous.keySet().equals(current.keySet()))
+				return false;
+			for (Map.Entry<String, Double> e : current.entrySet())
+				if (!(Math.abs(e.getValue() - previous.get(e.getKey())) <= tolerance))
+					return false;
+		}
+		return true;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+}
@@ -0,0 +1,231 @@
+package rdfsynopsis.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Logger;
+
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+/**
+ * Evaluates criteria on worker threads. Every criterion is owned by exactly
+ * one worker and sees the triples in stream order, so the results are the
+ * same as with sequential evaluation. Each worker routes the triples to its
+ * interested criteria (see {@link TripleRouter}).
+ *
+ * Encoded triples are collected into batches; every batch is handed to all
+ * workers through bounded queues, so a slow criterion throttles the stream
+ * instead of buffering it in memory.
+ *
+ * @author thomas
+ *
+ */
+public class CriteriaWorkerPool {
+
+	public static final int		DEFAULT_BATCH_SIZE		= 1024;
+	public static final int		DEFAULT_QUEUE_CAPACITY	= 16;
+
+	// marks the end of the stream
+	private static final int[]	END_OF_STREAM			= new int[0];
+	// marks a point all workers have to reach, see sync()
+	private static final int[]	SYNC					= new int[0];
+	// marks the end of a subject within a batch: its lowest bits hold a kind
+	// after LITERAL, which no id carries, not even an unencoded one
+	private static final int	END_OF_SUBJECT			= Integer.MIN_VALUE | (TermDictionary.LITERAL + 1);
+
+	private Logger				logger					= Logger.getLogger(CriteriaWorkerPool.class);
+
+	private List<Worker>		workers;
+	private int					batchSize;
+
+	// batch that is currently filled: (s, p, o) ids, one triple after another
+	private int[]				batch;
+	private int					batchLength;
+
+	private volatile CountDownLatch	syncLatch;
+
+	/**
+	 * Start workers; criteria are distributed round robin.
+	 *
+	 * @param criteria
+	 * @param numThreads
+	 *            number of workers, at most one per criterion
+	 */
+	public CriteriaWorkerPool(List<StatisticalCriterion> criteria,
+			int numThreads) {
+		this(criteria, numThreads, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public CriteriaWorkerPool(List<StatisticalCriterion> criteria,
+			int numThreads, int batchSize, int queueCapacity) {
+		this.batchSize = batchSize;
+		this.batch = new int[3 * batchSize];
+		this.batchLength = 0;
+
+		int numWorkers = Math.max(1, Math.min(numThreads, criteria.size()));
+		workers = new ArrayList<Worker>(numWorkers);
+		for (int i = 0; i < numWorkers; i++)
+			workers.add(new Worker(i, queueCapacity));
+		for (int i = 0; i < criteria.size(); i++)
+			workers.get(i % numWorkers).criteria.add(criteria.get(i));
+		// type indexes must not be shared across threads
+		for (Worker w : workers) {
+			StatisticalCriterion.shareTypeIndex(w.criteria);
+			w.router = new TripleRouter(w.criteria);
+		}
+
+		logger.debug("starting " + numWorkers + " workers for "
+				+ criteria.size() + " criteria");
+		for (Worker w : workers)
+			w.start();
+	}
+
+	public int getNumWorkers() {
+		return workers.size();
+	}
+
+	/**
+	 * Add an encoded triple to the current batch.
+	 */
+	public void considerTriple(int s, int p, int o) {
+		batch[batchLength++] = s;
+		batch[batchLength++] = p;
+		batch[batchLength++] = o;
+		if (batchLength == batch.length)
+			flush();
+	}
+
+	/**
+	 * Signal the end of the current subject to the criteria, in stream order.
+	 */
+	public void endSubject() {
+		considerTriple(END_OF_SUBJECT, END_OF_SUBJECT, END_OF_SUBJECT);
+	}
+
+	/**
+	 * Hand the current batch to the workers.
+	 */
+	public void flush() {
+		if (batchLength == 0)
+			return;
+		int[] full = batch;
+		if (batchLength < full.length) {
+			full = new int[batchLength];
+			System.arraycopy(batch, 0, full, 0, batchLength);
+		}
+		// batches are shared read-only by all workers
+		submit(full);
+		batch = new int[3 * batchSize];
+		batchLength = 0;
+	}
+
+	/**
+	 * Flush the current batch and wait until all workers have considered all
+	 * triples so far. Afterwards, the criteria may be read from the calling
+	 * thread until the next triple is added.
+	 */
+	public void sync() {
+		flush();
+		syncLatch = new CountDownLatch(workers.size());
+		submit(SYNC);
+		try {
+			syncLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for workers", e);
+		}
+		for (Worker w : workers)
+			if (w.failure != null)
+				throw new RuntimeException("criterion failed on worker thread",
+						w.failure);
+	}
+
+	/**
+	 * Flush the last batch and wait until all workers are done. Afterwards,
+	 * the criteria may be read from the calling thread.
+	 *
+	 * @throws RuntimeException
+	 *             if a criterion failed on a worker
+	 */
+	public void shutdown() {
+		flush();
+		submit(END_OF_STREAM);
+
+		Throwable failure = null;
+		for (Worker w : workers) {
+			try {
+				w.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while waiting for "
+						+ w.getName(), e);
+			}
+			if (failure == null)
+				failure = w.failure;
+		}
+		if (failure != null)
+			throw new RuntimeException("criterion failed on worker thread",
+					failure);
+	}
+
+	private void submit(int[] triples) {
+		for (Worker w : workers) {
+			try {
+				w.queue.put(triples);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while queueing triples for "
+						+ w.getName(), e);
+			}
+		}
+	}
+
+	private class Worker extends Thread {
+
+		List<StatisticalCriterion>	criteria	= new ArrayList<StatisticalCriterion>();
+		TripleRouter				router;
+		BlockingQueue<int[]>		queue;
+		volatile Throwable			failure;
+
+		Worker(int id, int queueCapacity) {
+			super("criteria-worker-" + id);
+			setDaemon(true);
+			queue = new ArrayBlockingQueue<int[]>(queueCapacity);
+		}
+
+		@Override
+		public void run() {
+			try {
+				int[] triples = queue.take();
+				while (triples != END_OF_STREAM) {
+					if (triples == SYNC)
+						syncLatch.countDown();
+					// keep draining after a failure, so the stream never blocks
+					else if (failure == null)
+						process(triples);
+					triples = queue.take();
+				}
+			} catch (InterruptedException e) {
+				failure = e;
+			}
+		}
+
+		private void process(int[] triples) {
+			try {
+				for (int i = 0; i < triples.length; i += 3)
+					if (triples[i] == END_OF_SUBJECT) {
+						for (StatisticalCriterion sc : criteria)
+							sc.endSubject();
+					} else router.considerTriple(triples[i], triples[i + 1],
+							triples[i + 2]);
+			} catch (Throwable t) {
+				logger.error(getName() + " failed", t);
+				failure = t;
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package rdfsynopsis.analyzer;
+
+import java.io.PrintStream;
+
+import org.apache.log4j.Logger;
+import org.openjena.atlas.lib.Sink;
+
+import rdfsynopsis.dataset.FileStreamDataset;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * Triple stream analysis of an RDF file: parsed triples are pushed straight
+ * from the parser into the criteria, so memory use does not depend on the
+ * size of the file.
+ *
+ * @author thomas
+ *
+ */
+public class FileStreamAnalyzer extends AbstractAnalyzer {
+
+	private FileStreamDataset	fileDs;
+	private long				numTriplesConsidered	= 0;
+
+	public FileStreamAnalyzer(FileStreamDataset fileDs) {
+		logger = Logger.getLogger(FileStreamAnalyzer.class);
+		this.fileDs = fileDs;
+	}
+
+	public FileStreamDataset getFileDs() {
+		return fileDs;
+	}
+
+	public FileStreamAnalyzer setFileDs(FileStreamDataset fileDs) {
+		this.fileDs = fileDs;
+		return this;
+	}
+
+	public long getNumTriplesConsidered() {
+		return numTriplesConsidered;
+	}
+
+	@Override
+	public void performAnalysis(PrintStream ps) {
+		if (ps == null)
+			ps = System.out;
+
+		// the order of the file is unknown
+		checkNoSubjectWindow();
+
+		long startTime = System.currentTimeMillis();
+		logger.debug("streaming " + fileDs);
+		startStream();
+		try {
+			fileDs.stream(new CriteriaSink());
+		} finally {
+			stopWorkers();
+		}
+		logger.info("FileStream: " + numTriplesConsidered + " triples in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+
+		// flush logs for all criteria
+		flushLogs(ps);
+	}
+
+	/**
+	 * Hands parsed triples to the criteria.
+	 */
+	private class CriteriaSink implements Sink<Triple> {
+
+		// only used to wrap nodes, never stores statements
+		private Model	wrapper	= ModelFactory.createDefaultModel();
+
+		@Override
+		public void send(Triple t) {
+			Statement st = wrapper.asStatement(t);
+			numTriplesConsidered++;
+			considerTriple(st.getSubject(), st.getPredicate(), st.getObject());
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package rdfsynopsis.analyzer;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import rdfsynopsis.analyzer.TriplePagePipeline.PageSource;
+import rdfsynopsis.dataset.SparqlDataset;
+import rdfsynopsis.statistics.NumTriples;
+import rdfsynopsis.statistics.StatisticalCriterion;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Triple stream analysis of disjoint partitions of the triple stream. The
+ * pages of the stream are dealt round robin to the partitions; every
+ * partition is analyzed on its own thread by its own instances of the
+ * criteria, which are finally merged into the criteria of this analyzer.
+ *
+ * @author thomas
+ *
+ */
+public class PartitionAnalyzer extends AbstractAnalyzer {
+
+	private int		numPartitions	= 2;
+	private int		tripleLimit		= 30000;
+	private String	orderByClause	= TripleStreamAnalyzer.BySubject;
+
+	public PartitionAnalyzer() {
+		this(null);
+	}
+
+	public PartitionAnalyzer(SparqlDataset ds) {
+		logger = Logger.getLogger(PartitionAnalyzer.class);
+		this.ds = ds;
+	}
+
+	public int getNumPartitions() {
+		return numPartitions;
+	}
+
+	public PartitionAnalyzer setNumPartitions(int numPartitions) {
+		this.numPartitions = numPartitions;
+		return this;
+	}
+
+	public int getTripleLimit() {
+		return tripleLimit;
+	}
+
+	public PartitionAnalyzer setTripleLimit(int tripleLimit) {
+		this.tripleLimit = tripleLimit;
+		return this;
+	}
+
+	public String getOrderByClause() {
+		return orderByClause;
+	}
+
+	public PartitionAnalyzer setOrderByClause(String orderByClause) {
+		this.orderByClause = orderByClause;
+		return this;
+	}
+
+	@Override
+	public void performAnalysis(PrintStream ps) {
+		if (ps == null)
+			ps = System.out;
+
+		// subjects may be split between pages of different partitions
+		checkNoSubjectWindow();
+
+		// perform triples sparql query
+		NumTriples nt = new NumTriples();
+		nt.processSparqlDataset(ds);
+		int numTriples = nt.getNumTriples();
+
+		// deal offsets to partitions
+		List<List<Integer>> partitionOffsets = new ArrayList<List<Integer>>();
+		for (int i = 0; i < numPartitions; i++)
+			partitionOffsets.add(new ArrayList<Integer>());
+		int page = 0;
+		for (int offset = 0; offset < numTriples; offset += tripleLimit)
+			partitionOffsets.get(page++ % numPartitions).add(offset);
+
+		// analyze partitions
+		long startTime = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(numPartitions);
+		try {
+			List<Future<List<StatisticalCriterion>>> partitions = new ArrayList<Future<List<StatisticalCriterion>>>();
+			for (List<Integer> offsets : partitionOffsets)
+				partitions.add(executor.submit(new Partition(offsets)));
+
+			// merge partial results in partition order
+			for (Future<List<StatisticalCriterion>> partition : partitions) {
+				List<StatisticalCriterion> partialCriteria = partition.get();
+				for (int i = 0; i < criteria.size(); i++)
+					criteria.get(i).merge(partialCriteria.get(i));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while analyzing partitions", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("analyzing partition failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		logger.info("PartitionAnalyzer: " + numPartitions + " partitions in "
+				+ (System.currentTimeMillis() - startTime) + " ms");
+
+		// flush logs for all criteria
+		flushLogs(ps);
+	}
+
+	/**
+	 * @return new instances of the criteria, sharing this analyzer's
+	 *         dictionary and a type index of their own
+	 */
+	private List<StatisticalCriterion> createPartialCriteria() {
+		List<StatisticalCriterion> partialCriteria = new ArrayList<StatisticalCriterion>();
+		for (StatisticalCriterion sc : criteria)
+			partialCriteria.add(sc.newInstance());
+		StatisticalCriterion.shareTypeIndex(partialCriteria);
+		return partialCriteria;
+	}
+
+	/**
+	 * Analysis of the pages at the given offsets.
+	 */
+	private class Partition implements Callable<List<StatisticalCriterion>> {
+
+		private List<Integer>	offsets;
+
+		Partition(List<Integer> offsets) {
+			this.offsets = offsets;
+		}
+
+		@Override
+		public List<StatisticalCriterion> call() {
+			List<StatisticalCriterion> partialCriteria = createPartialCriteria();
+			for (StatisticalCriterion sc : partialCriteria)
+				sc.startStream();
+			TripleRouter router = new TripleRouter(partialCriteria);
+
+			final String queryString = "SELECT ?subject ?predicate ?object\n" +
+					"WHERE {?subject ?predicate ?object.}\n" +
+					"ORDER BY " + orderByClause + "\n" +
+					"LIMIT " + tripleLimit + "\n" +
+					"OFFSET ";
+			final Iterator<Integer> offsetIt = offsets.iterator();
+
+			TriplePagePipeline pipeline = new TriplePagePipeline(ds,
+					new PageSource() {
+						@Override
+						public TriplePage nextPage(TriplePage previous) {
+							if (!offsetIt.hasNext())
+								return null;
+							int offset = offsetIt.next();
+							return new TriplePage(queryString + offset, offset);
+						}
+					}, 0);
+			try {
+				TriplePage page = pipeline.next();
+				while (page != null) {
+					for (QuerySolution qs : page.getSolutions())
+						considerSolution(qs, router);
+					page = pipeline.next();
+				}
+			} finally {
+				pipeline.close();
+			}
+			return partialCriteria;
+		}
+
+		private void considerSolution(QuerySolution qs, TripleRouter router) {
+			if (!(qs.contains("?subject") && qs.contains("?predicate") && qs
+					.contains("?object"))) {
+				logger.debug("invalid solution: " + qs);
+				return;
+			}
+			Resource s = qs.getResource("?subject");
+			Resource p = qs.getResource("?predicate");
+			RDFNode o = qs.get("?object");
+
+			router.considerTriple(router.encodeSubject(dictionary, s),
+					router.encodePredicate(dictionary, p),
+					router.encodeObject(dictionary, o));
+		}
+	}
+}
@@ -1,31 +1,124 @@
 package rdfsynopsis.analyzer;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.dataset.SparqlDataset;
 import rdfsynopsis.statistics.StatisticalCriterion;
 
+import com.hp.hpl.jena.query.QueryCancelledException;
+
 public class SparqlAnalyzer extends AbstractAnalyzer {
-	
+
+	// maximum number of queries running at the same time
+	private int		parallelism		= 1;
+	// query timeout in ms, 0 for none
+	private long	queryTimeout	= 0;
+
 	public SparqlAnalyzer(SparqlDataset ds) {
 		logger = Logger.getLogger(SparqlAnalyzer.class);
 		this.ds = ds;
-	}	
-	
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            maximum number of criteria queries running at the same time
+	 */
+	public SparqlAnalyzer setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	public long getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * @param queryTimeout
+	 *            timeout of every criterion query in ms, 0 for none
+	 */
+	public SparqlAnalyzer setQueryTimeout(long queryTimeout) {
+		this.queryTimeout = queryTimeout;
+		return this;
+	}
+
 	@Override
 	public void performAnalysis(PrintStream ps) {
 		if (ps == null)
 			ps = System.out;
-		
-		for (StatisticalCriterion sc : criteria) {
-			// execute specific SPARQL query
-			sc.processSparqlDataset(ds);
-			// output results
-			sc.flushLog(ps);
+
+		if (parallelism <= 1) {
+			for (StatisticalCriterion sc : criteria) {
+				// execute specific SPARQL query
+				if (processSparqlDataset(sc))
+					// output results
+					sc.flushLog(ps);
+				else printTimeout(ps, sc);
+			}
+		} else {
+			// queries run concurrently, results are output in criteria order
+			ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+			try {
+				List<Future<Boolean>> queries = new ArrayList<Future<Boolean>>();
+				for (final StatisticalCriterion sc : criteria)
+					queries.add(executor.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() {
+							return processSparqlDataset(sc);
+						}
+					}));
+
+				for (int i = 0; i < criteria.size(); i++) {
+					StatisticalCriterion sc = criteria.get(i);
+					if (queries.get(i).get())
+						sc.flushLog(ps);
+					else printTimeout(ps, sc);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while waiting for query", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("criterion query failed", e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
 		}
 		ps.flush();
 	}
 
+	/**
+	 * @return false if the query timed out
+	 */
+	private boolean processSparqlDataset(StatisticalCriterion sc) {
+		long startTime = System.currentTimeMillis();
+		try {
+			sc.processSparqlDataset(ds, queryTimeout);
+			return true;
+		} catch (QueryCancelledException e) {
+			logger.error(sc.getClass().getSimpleName() + ": query timed out after "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+			return false;
+		} finally {
+			logger.debug(sc.getClass().getSimpleName() + ": query took "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		}
+	}
+
+	private void printTimeout(PrintStream ps, StatisticalCriterion sc) {
+		ps.println("Result: " + sc.getClass().getSimpleName()
+				+ " not available, query timed out after " + queryTimeout + " ms");
+	}
+
 }
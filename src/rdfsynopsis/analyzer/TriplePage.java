@@ -0,0 +1,96 @@
+package rdfsynopsis.analyzer;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * One page of the triple stream: the query that selects it and, once
+ * fetched, its materialized solutions.
+ *
+ * @author thomas
+ *
+ */
+public class TriplePage {
+
+	private String				query;
+	private int					offset;
+	private Resource			predicate;
+	private List<QuerySolution>	solutions	= Collections.emptyList();
+	private long				fetchTime	= 0;
+
+	/**
+	 * @param query
+	 *            SPARQL query selecting the page
+	 * @param offset
+	 *            offset of the page in the stream, -1 if unknown (keyset
+	 *            paging)
+	 */
+	public TriplePage(String query, int offset) {
+		this(query, offset, null);
+	}
+
+	/**
+	 * @param query
+	 *            SPARQL query selecting the page
+	 * @param offset
+	 *            offset of the page in the stream, -1 if unknown (keyset
+	 *            paging)
+	 * @param predicate
+	 *            predicate of all triples of the page, whose query only
+	 *            selects ?subject and ?object; null if the query selects
+	 *            ?predicate
+	 */
+	public TriplePage(String query, int offset, Resource predicate) {
+		this.query = query;
+		this.offset = offset;
+		this.predicate = predicate;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return predicate of all triples of the page, null if the solutions
+	 *         contain ?predicate
+	 */
+	public Resource getPredicate() {
+		return predicate;
+	}
+
+	public List<QuerySolution> getSolutions() {
+		return solutions;
+	}
+
+	void setSolutions(List<QuerySolution> solutions) {
+		this.solutions = solutions;
+	}
+
+	public int size() {
+		return solutions.size();
+	}
+
+	/**
+	 * @return time in ms needed to execute the query and read all solutions
+	 */
+	public long getFetchTime() {
+		return fetchTime;
+	}
+
+	void setFetchTime(long fetchTime) {
+		this.fetchTime = fetchTime;
+	}
+
+	@Override
+	public String toString() {
+		return "TriplePage(" + (predicate == null ? "" : predicate + ", ")
+				+ "offset=" + offset + ", size=" + size() + ")";
+	}
+}
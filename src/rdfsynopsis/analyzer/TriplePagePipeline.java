@@ -0,0 +1,232 @@
+package rdfsynopsis.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import rdfsynopsis.dataset.SparqlDataset;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+
+/**
+ * Fetches the pages of a triple stream, optionally reading ahead on a
+ * background thread, so that the SPARQL round trip of the next pages
+ * overlaps with processing the current one.
+ *
+ * Pages are fetched one after another in the order given by the
+ * {@link PageSource} and handed out in exactly that order.
+ *
+ * @author thomas
+ *
+ */
+public class TriplePagePipeline {
+
+	/**
+	 * Defines the pages of the stream.
+	 */
+	public interface PageSource {
+
+		/**
+		 * @param previous
+		 *            last fetched page, null before the first page
+		 * @return next page to fetch, null at the end of the stream
+		 */
+		TriplePage nextPage(TriplePage previous);
+	}
+
+	// marks the end of the stream
+	private static final TriplePage		END_OF_STREAM	= new TriplePage(null, -1);
+
+	private Logger						logger			= Logger.getLogger(TriplePagePipeline.class);
+
+	private SparqlDataset				ds;
+	private PageSource					source;
+	private int							readAhead;
+
+	// read ahead mode
+	private BlockingQueue<TriplePage>	queue;
+	private Thread						fetcher;
+	private volatile Throwable			failure;
+
+	// synchronous mode
+	private TriplePage					previous;
+	private boolean						finished		= false;
+
+	// statistics
+	private int							numPages		= 0;
+	private volatile long				fetchTime		= 0;
+	private long						waitTime		= 0;
+	private long						processTime		= 0;
+	private long						lastPageTime	= -1;
+
+	/**
+	 * @param ds
+	 * @param source
+	 * @param readAhead
+	 *            number of pages fetched in the background ahead of
+	 *            processing; 0 fetches every page on demand
+	 */
+	public TriplePagePipeline(SparqlDataset ds, PageSource source,
+			int readAhead) {
+		this.ds = ds;
+		this.source = source;
+		this.readAhead = readAhead;
+
+		if (readAhead > 0) {
+			queue = new ArrayBlockingQueue<TriplePage>(readAhead);
+			fetcher = new Thread(new Fetcher(), "triple-page-fetcher");
+			fetcher.setDaemon(true);
+			fetcher.start();
+		}
+	}
+
+	/**
+	 * Blocks until the next page has been fetched.
+	 *
+	 * @return next page, null at the end of the stream
+	 */
+	public TriplePage next() {
+		long startTime = System.currentTimeMillis();
+		if (lastPageTime >= 0)
+			processTime += startTime - lastPageTime;
+
+		TriplePage page;
+		if (readAhead > 0)
+			page = take();
+		else page = fetchNext();
+
+		lastPageTime = System.currentTimeMillis();
+		waitTime += lastPageTime - startTime;
+		if (page != null)
+			numPages++;
+		return page;
+	}
+
+	/**
+	 * Stop fetching and log the time spent on fetching and processing.
+	 */
+	public void close() {
+		if (lastPageTime >= 0 && !finished)
+			processTime += System.currentTimeMillis() - lastPageTime;
+		lastPageTime = -1;
+		finished = true;
+		if (fetcher != null)
+			fetcher.interrupt();
+
+		logger.info("TripleStream: " + numPages + " pages, fetch "
+				+ fetchTime + " ms, process " + processTime
+				+ " ms, waiting for pages " + waitTime + " ms");
+	}
+
+	private TriplePage take() {
+		if (finished)
+			return null;
+		try {
+			TriplePage page = queue.take();
+			if (page == END_OF_STREAM) {
+				finished = true;
+				if (failure != null)
+					throw new RuntimeException("fetching triple page failed",
+							failure);
+				return null;
+			}
+			return page;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for triple page", e);
+		}
+	}
+
+	private TriplePage fetchNext() {
+		if (finished)
+			return null;
+		TriplePage page = source.nextPage(previous);
+		if (page == null) {
+			finished = true;
+			return null;
+		}
+		fetch(page);
+		previous = page;
+		return page;
+	}
+
+	private void fetch(TriplePage page) {
+		long startTime = System.currentTimeMillis();
+
+		// execute query and obtain results
+		QueryExecution qe = ds.query(QueryFactory.create(page.getQuery()));
+		logger.trace("fetching " + page + " at " + startTime / 1000);
+		try {
+			ResultSet results = qe.execSelect();
+			List<QuerySolution> solutions = new ArrayList<QuerySolution>();
+			while (results.hasNext())
+				solutions.add(results.next());
+			page.setSolutions(solutions);
+		} finally {
+			// Important - free up resources used running the query
+			qe.close();
+		}
+
+		page.setFetchTime(System.currentTimeMillis() - startTime);
+		fetchTime += page.getFetchTime();
+		logger.trace("fetched " + page + " in " + page.getFetchTime() + " ms");
+	}
+
+	public int getNumPages() {
+		return numPages;
+	}
+
+	/**
+	 * @return time in ms spent executing queries and reading solutions
+	 */
+	public long getFetchTime() {
+		return fetchTime;
+	}
+
+	/**
+	 * @return time in ms spent between receiving a page and asking for the
+	 *         next one
+	 */
+	public long getProcessTime() {
+		return processTime;
+	}
+
+	/**
+	 * @return time in ms the consumer was blocked waiting for pages
+	 */
+	public long getWaitTime() {
+		return waitTime;
+	}
+
+	private class Fetcher implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				TriplePage page = source.nextPage(null);
+				while (page != null && !Thread.currentThread().isInterrupted()) {
+					fetch(page);
+					queue.put(page);
+					page = source.nextPage(page);
+				}
+			} catch (InterruptedException e) {
+				// pipeline closed
+				return;
+			} catch (Throwable t) {
+				logger.error("fetching triple page failed", t);
+				failure = t;
+			}
+			try {
+				queue.put(END_OF_STREAM);
+			} catch (InterruptedException e) {
+				// pipeline closed
+			}
+		}
+	}
+}
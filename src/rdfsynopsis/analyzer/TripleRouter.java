@@ -0,0 +1,135 @@
+package rdfsynopsis.analyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * Hands encoded triples only to the criteria that consider them. Criteria
+ * declare the predicates (see
+ * {@link StatisticalCriterion#getConsumedPredicates()}) and the kinds of
+ * subjects (see {@link StatisticalCriterion#considersSubjectKind(int)}) of
+ * their triples. The criteria of a triple are looked up by the kind of its
+ * subject and the dictionary index of its predicate, so a triple costs no
+ * call of a criterion that ignores it.
+ *
+ * Every criterion sees its triples in stream order. The criteria have to
+ * share the dictionary the triples are encoded with. Terms no criterion
+ * reads are not encoded, so that the dictionary only grows with the terms
+ * the criteria keep.
+ *
+ * @author thomas
+ *
+ */
+public class TripleRouter {
+
+	private static final StatisticalCriterion[]	NONE	= new StatisticalCriterion[0];
+
+	// kind of subject -> criteria of the triples of any predicate
+	private StatisticalCriterion[][]			anyPredicate;
+	// kind of subject -> index of an IRI predicate -> criteria of its
+	// triples, null for none
+	private StatisticalCriterion[][][]			byPredicate;
+
+	// kind of term -> a criterion reads the ids of such subjects and objects
+	private boolean[]							encodeSubjects;
+	private boolean[]							encodeObjects;
+	private boolean								encodePredicates;
+
+	public TripleRouter(List<StatisticalCriterion> criteria) {
+		int numKinds = TermDictionary.LITERAL + 1;
+		anyPredicate = new StatisticalCriterion[numKinds][];
+		byPredicate = new StatisticalCriterion[numKinds][][];
+		encodeSubjects = new boolean[numKinds];
+		encodeObjects = new boolean[numKinds];
+		for (StatisticalCriterion sc : criteria) {
+			// predicates are encoded for routing as well
+			encodePredicates |= sc.consumesPredicates()
+					|| sc.getConsumedPredicates() != null;
+			encodeObjects[TermDictionary.IRI] |= sc.consumesObjects();
+			encodeObjects[TermDictionary.BLANK] |= sc.consumesObjects();
+			encodeObjects[TermDictionary.LITERAL] |= sc.consumesLiterals();
+		}
+		for (int kind = 0; kind < numKinds; kind++) {
+			List<StatisticalCriterion> any = new ArrayList<StatisticalCriterion>();
+			Map<Integer, List<StatisticalCriterion>> routes = new HashMap<Integer, List<StatisticalCriterion>>();
+			int numPredicates = 0;
+			for (StatisticalCriterion sc : criteria) {
+				if (!sc.considersSubjectKind(kind))
+					continue;
+				encodeSubjects[kind] |= sc.consumesSubjects();
+				Set<String> predicates = sc.getConsumedPredicates();
+				if (predicates == null) {
+					any.add(sc);
+					continue;
+				}
+				for (String predicate : predicates) {
+					int index = sc.getDictionary().encodeURI(predicate) >>> 2;
+					List<StatisticalCriterion> route = routes.get(index);
+					if (route == null) {
+						route = new ArrayList<StatisticalCriterion>();
+						routes.put(index, route);
+					}
+					route.add(sc);
+					numPredicates = Math.max(numPredicates, index + 1);
+				}
+			}
+			anyPredicate[kind] = any.toArray(NONE);
+			byPredicate[kind] = new StatisticalCriterion[numPredicates][];
+			for (Map.Entry<Integer, List<StatisticalCriterion>> e : routes.entrySet())
+				byPredicate[kind][e.getKey()] = e.getValue().toArray(NONE);
+		}
+	}
+
+	/**
+	 * @return id of the subject, or an id carrying only its kind if no
+	 *         criterion reads such subjects
+	 */
+	public int encodeSubject(TermDictionary dictionary, Resource s) {
+		int kind = TermDictionary.getKind(s);
+		return encodeSubjects[kind] ? dictionary.encode(s) : TermDictionary
+				.unencoded(kind);
+	}
+
+	public int encodePredicate(TermDictionary dictionary, Resource p) {
+		return encodePredicates ? dictionary.encode(p) : TermDictionary
+				.unencoded(TermDictionary.IRI);
+	}
+
+	/**
+	 * @return id of the object, or an id carrying only its kind if no
+	 *         criterion reads such objects
+	 */
+	public int encodeObject(TermDictionary dictionary, RDFNode o) {
+		int kind = TermDictionary.getKind(o);
+		return encodeObjects[kind] ? dictionary.encode(o) : TermDictionary
+				.unencoded(kind);
+	}
+
+	/**
+	 * Let the interested criteria consider the triple.
+	 */
+	public void considerTriple(int s, int p, int o) {
+		int kind = TermDictionary.getKind(s);
+		StatisticalCriterion[] route = anyPredicate[kind];
+		for (int i = 0; i < route.length; i++)
+			route[i].considerTriple(s, p, o);
+
+		StatisticalCriterion[][] predicateRoutes = byPredicate[kind];
+		int index = p >>> 2;
+		if (index < predicateRoutes.length && TermDictionary.isURI(p)) {
+			route = predicateRoutes[index];
+			if (route != null)
+				for (int i = 0; i < route.length; i++)
+					route[i].considerTriple(s, p, o);
+		}
+	}
+}
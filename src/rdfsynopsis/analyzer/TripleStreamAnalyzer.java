@@ -1,18 +1,23 @@
 package rdfsynopsis.analyzer;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.dataset.SparqlDataset;
-import rdfsynopsis.eval.PartialStreamAnalysisLogger;
+import rdfsynopsis.analyzer.TriplePagePipeline.PageSource;
 import rdfsynopsis.statistics.NumTriples;
 import rdfsynopsis.statistics.StatisticalCriterion;
 
-import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
@@ -21,6 +26,7 @@ import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
 
 public class TripleStreamAnalyzer extends AbstractAnalyzer {
 	
@@ -30,10 +36,34 @@ public class TripleStreamAnalyzer extends AbstractAnalyzer {
 
 	private int				numTriples				= -1;
 	private int				numTriplesConsidered	= 0;
+	// predicates of the streams, a single null to stream all triples
+	private List<String>	streamPredicates;
+	// number of triples of every stream (offset paging)
+	private int[]			streamTriples;
 
 	private int									tripleLimit				= 30000;
 	private boolean 							randomSampling = false;
+	private boolean								keysetPaging	= false;
+	// keyset paging: the store compares IRIs with < and >
+	private boolean								rawIriComparison	= false;
+	private int									readAhead		= 0;
 	private String orderByClause = BySubject;
+	// fetch only the triples of the predicates the criteria consume
+	private boolean								predicatePushDown	= true;
+	// partial analysis: maximum number of page queries, -1 for all pages
+	private int									maxNumQueries	= -1;
+	// partial analysis: stop once the convergence values are stable, 0 never
+	private double								convergenceTolerance	= 0;
+	private int									convergenceWindow		= 3;
+	// checkpoints of the offset stream, null for none
+	private File								checkpointFile	= null;
+	private int									checkpointInterval	= 10;
+	// checkpoint written or read last, its terms are in the terms file
+	private Checkpoint							lastCheckpoint	= null;
+	private boolean								resume			= false;
+	// seed of the random order of pages
+	private long								seed;
+	private int									numPagesProcessed;
 	
 	
 	public String getOrderByClause() {
@@ -54,6 +84,179 @@ public class TripleStreamAnalyzer extends AbstractAnalyzer {
 		return this;
 	}
 
+	public boolean isKeysetPaging() {
+		return keysetPaging;
+	}
+
+	/**
+	 * Resume each page from the last (subject, predicate, object) key of the
+	 * previous page instead of skipping OFFSET rows. Pages are ordered by the
+	 * order by clause, followed by the remaining two variables.
+	 * 
+	 * @param keysetPaging
+	 * @return
+	 */
+	public TripleStreamAnalyzer setKeysetPaging(boolean keysetPaging) {
+		this.keysetPaging = keysetPaging;
+		return this;
+	}
+
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Fetch up to readAhead pages in the background while the current page
+	 * is processed; 0 fetches every page on demand.
+	 * 
+	 * @param readAhead
+	 * @return
+	 */
+	public TripleStreamAnalyzer setReadAhead(int readAhead) {
+		this.readAhead = readAhead;
+		return this;
+	}
+
+	public int getMaxNumQueries() {
+		return maxNumQueries;
+	}
+
+	/**
+	 * Stop the analysis after the given number of page queries.
+	 * 
+	 * @param maxNumQueries
+	 *            -1 fetches all pages
+	 * @return
+	 */
+	public TripleStreamAnalyzer setMaxNumQueries(int maxNumQueries) {
+		this.maxNumQueries = maxNumQueries;
+		return this;
+	}
+
+	public double getConvergenceTolerance() {
+		return convergenceTolerance;
+	}
+
+	/**
+	 * Stop the analysis once no convergence value of the criteria (see
+	 * {@link StatisticalCriterion#getConvergenceValues()}) changed by more
+	 * than the tolerance over the convergence window. Most useful with random
+	 * sampling.
+	 * 
+	 * @param convergenceTolerance
+	 *            0 fetches all pages
+	 * @return
+	 */
+	public TripleStreamAnalyzer setConvergenceTolerance(
+			double convergenceTolerance) {
+		this.convergenceTolerance = convergenceTolerance;
+		return this;
+	}
+
+	public int getConvergenceWindow() {
+		return convergenceWindow;
+	}
+
+	/**
+	 * @param convergenceWindow
+	 *            number of pages the convergence values have to be stable
+	 * @return
+	 */
+	public TripleStreamAnalyzer setConvergenceWindow(int convergenceWindow) {
+		this.convergenceWindow = convergenceWindow;
+		return this;
+	}
+
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * Write the position in the stream and the state of the criteria to the
+	 * file every checkpointInterval pages, so that the analysis can be
+	 * resumed. The terms of the dictionary are appended to a terms file next
+	 * to it (see {@link Checkpoint#getTermsFile(File)}). Not supported with
+	 * keyset paging.
+	 * 
+	 * @param checkpointFile
+	 *            null for no checkpoints
+	 * @return
+	 */
+	public TripleStreamAnalyzer setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+		return this;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * @param checkpointInterval
+	 *            number of pages between checkpoints
+	 * @return
+	 */
+	public TripleStreamAnalyzer setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	/**
+	 * Continue from the checkpoint file if it exists. The criteria are
+	 * replaced by those of the checkpoint.
+	 * 
+	 * @param resume
+	 * @return
+	 */
+	public TripleStreamAnalyzer setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+	public boolean isPredicatePushDown() {
+		return predicatePushDown;
+	}
+
+	/**
+	 * If every criterion only considers triples of certain predicates (see
+	 * {@link StatisticalCriterion#getConsumedPredicates()}), stream the
+	 * triples of each of these predicates instead of all triples. Enabled by
+	 * default, not used with a subject window.
+	 * 
+	 * @param predicatePushDown
+	 * @return
+	 */
+	public TripleStreamAnalyzer setPredicatePushDown(boolean predicatePushDown) {
+		this.predicatePushDown = predicatePushDown;
+		return this;
+	}
+
+	public boolean isSubjectWindow() {
+		return subjectWindow;
+	}
+
+	/**
+	 * Signal the end of every subject, so that criteria supporting it fold
+	 * the subject into their results and drop its data (see
+	 * {@link StatisticalCriterion#setSubjectWindow(boolean)}). Requires the
+	 * stream to be ordered by subject, without random sampling of the pages.
+	 * 
+	 * @param subjectWindow
+	 * @return
+	 */
+	public TripleStreamAnalyzer setSubjectWindow(boolean subjectWindow) {
+		this.subjectWindow = subjectWindow;
+		return this;
+	}
+
+	public int getNumTriplesConsidered() {
+		return numTriplesConsidered;
+	}
+
 	public int getTripleLimit() {
 		return tripleLimit;
 	}
@@ -77,73 +280,571 @@ public class TripleStreamAnalyzer extends AbstractAnalyzer {
 		if (ps == null)
 			ps = System.out;
 		
-		// perform triples sparql query
-		NumTriples nt = new NumTriples();
-		nt.processSparqlDataset(ds);
-		numTriples = nt.getNumTriples();
-		
-		// precompute list of offsets
-		List<Integer> offsets = new ArrayList<Integer>((int) Math.ceil((double) numTriples/tripleLimit));
-		for (int offset = 0; offset < numTriples; offset += tripleLimit) {
-			offsets.add(offset);
+		streamPredicates = planStreams();
+		Checkpoint checkpoint = null;
+		lastCheckpoint = null;
+		if (resume && checkpointFile != null && checkpointFile.exists())
+			checkpoint = restoreCheckpoint();
+		else lastSubject = NO_SUBJECT;
+
+		if (subjectWindow) {
+			if (!BySubject.equals(orderByClause) || randomSampling)
+				throw new IllegalStateException(
+						"subject window requires a stream ordered by subject without random sampling");
+			for (StatisticalCriterion sc : criteria)
+				if (sc.supportsSubjectWindow() && !sc.isSubjectWindow())
+					sc.setSubjectWindow(true);
+		} else checkNoSubjectWindow();
+
+		startStream();
+		try {
+			if (keysetPaging)
+				performKeysetStream();
+			else performOffsetStream(checkpoint);
+			endLastSubject();
+		} finally {
+			stopWorkers();
 		}
+
+		// flush logs for all criteria
+		flushLogs(ps);
+	}
+
+	/**
+	 * Stream triples page by page using ORDER BY + LIMIT + OFFSET.
+	 * 
+	 * @param checkpoint
+	 *            position to resume from, null to start at the beginning
+	 */
+	private void performOffsetStream(Checkpoint checkpoint) {
+		numPagesProcessed = 0;
+		if (checkpoint != null) {
+			// same pages in the same order as before
+			numTriples = checkpoint.numTriples;
+			streamTriples = checkpoint.streamTriples != null ? checkpoint.streamTriples
+					: new int[] { numTriples };
+			seed = checkpoint.seed;
+			numPagesProcessed = checkpoint.numPages;
+		} else {
+			// perform triples sparql queries
+			streamTriples = new int[streamPredicates.size()];
+			numTriples = 0;
+			for (int i = 0; i < streamTriples.length; i++) {
+				streamTriples[i] = countTriples(streamPredicates.get(i));
+				numTriples += streamTriples[i];
+			}
+			seed = new Random().nextLong();
+		}
+		
+		// precompute list of pages: (stream, offset)
+		List<int[]> pages = new ArrayList<int[]>((int) Math.ceil((double) numTriples/tripleLimit) + streamTriples.length);
+		for (int i = 0; i < streamTriples.length; i++)
+			for (int offset = 0; offset < streamTriples[i]; offset += tripleLimit)
+				pages.add(new int[] { i, offset });
 		
-		// optional randomization of offsets
+		// optional randomization of pages
+		if (randomSampling)
+		        Collections.shuffle(pages, new Random(seed));
+		
+		// skip pages processed before the checkpoint
+		pages = pages.subList(Math.min(numPagesProcessed, pages.size()),
+				pages.size());
+
+		final String[] queryStrings = new String[streamPredicates.size()];
+		final Resource[] predicates = new Resource[streamPredicates.size()];
+		for (int i = 0; i < queryStrings.length; i++) {
+			String predicate = streamPredicates.get(i);
+			queryStrings[i] = "SELECT " + getSelectVariables(predicate) + "\n" +
+					"WHERE {" + getTriplePattern(predicate) + "}\n" +
+					"ORDER BY "+ getOrderByClause(predicate) +"\n" +
+					"LIMIT " + tripleLimit + "\n" +
+					"OFFSET ";
+			predicates[i] = toResource(predicate);
+		}
+		final Iterator<int[]> pageIt = pages.iterator();
+
+		processPages(new PageSource() {
+			@Override
+			public TriplePage nextPage(TriplePage previous) {
+				if (!pageIt.hasNext())
+					return null;
+				int[] page = pageIt.next();
+				return new TriplePage(queryStrings[page[0]] + page[1], page[1],
+						predicates[page[0]]);
+			}
+		});
+	}
+
+	/**
+	 * Stream triples page by page using keyset (seek) paging: every page
+	 * continues right after the last key of the previous page, so the store
+	 * never has to skip already delivered rows.
+	 * 
+	 * Pages are ordered by the raw terms of the key variables, which sorts
+	 * blank nodes before IRIs before literals. Only IRIs are sought: if the
+	 * last key continues with a blank node or a literal, whose order SPARQL
+	 * leaves to the store, the next page starts at the leading IRIs of the key
+	 * and skips the triples of this group already delivered (OFFSET within the
+	 * group).
+	 */
+	private void performKeysetStream() {
 		if (randomSampling)
-		        Collections.shuffle(offsets);
-
-
-		String queryString = "SELECT ?subject ?predicate ?object\n" +
-				"WHERE {?subject ?predicate ?object.}\n" +
-				"ORDER BY "+ orderByClause +"\n" +
-				"LIMIT " + tripleLimit + "\n" +
-				"OFFSET ";
-
-		for (Integer offset : offsets) {
-			
-			// Create a new query
-			Query query = QueryFactory.create(queryString + offset);
-			
-			// execute query and obtain results
-			QueryExecution qe = ds.query(query);
-			logger.trace("TripleStream: limit=" + tripleLimit
-					+ ", offset=" + offset + " at " + System.currentTimeMillis()/1000);
+			logger.warn("random sampling is not supported with keyset paging, using ordered stream");
+		if (checkpointFile != null)
+			logger.warn("checkpoints are not supported with keyset paging");
+		rawIriComparison = comparesIris();
+		logger.debug("comparing IRIs " + (rawIriComparison ? "as terms" : "on their string"));
+
+		processPages(new KeysetStreams());
+	}
+
+	/**
+	 * Stream only the triples of the predicates the criteria consume, if
+	 * every criterion declares them (see
+	 * {@link StatisticalCriterion#getConsumedPredicates()}).
+	 * 
+	 * @return predicates of the streams in a fixed order, a single null to
+	 *         stream all triples
+	 */
+	private List<String> planStreams() {
+		List<String> allTriples = Collections.singletonList(null);
+		// the subjects of a window have to be complete
+		if (!predicatePushDown || subjectWindow || criteria.isEmpty())
+			return allTriples;
+		Set<String> predicates = new TreeSet<String>();
+		for (StatisticalCriterion sc : criteria) {
+			Set<String> consumed = sc.getConsumedPredicates();
+			if (consumed == null)
+				return allTriples;
+			predicates.addAll(consumed);
+		}
+		logger.info("streaming only the triples of " + predicates);
+		return new ArrayList<String>(predicates);
+	}
+
+	/**
+	 * @param predicate
+	 *            null for all triples
+	 * @return number of triples of the stream
+	 */
+	private int countTriples(String predicate) {
+		if (predicate == null) {
+			NumTriples nt = new NumTriples();
+			nt.processSparqlDataset(ds);
+			return nt.getNumTriples();
+		}
+		String queryString = "SELECT (COUNT(*) AS ?numTriples)\n" +
+				"WHERE {" + getTriplePattern(predicate) + "}";
+		QueryExecution qe = ds.query(QueryFactory.create(queryString));
+		try {
 			ResultSet results = qe.execSelect();
-			
-			// process query results
-			logger.trace("process query results");			
-			while (results.hasNext()) {
+			if (results.hasNext()) {
 				QuerySolution qs = results.next();
-				if (qs.contains("?subject") && qs.contains("?predicate") && qs.contains("?object")) { // valid
-																					// solution
-					Resource s = qs.getResource("?subject");
-					Resource pRes = qs.getResource("?predicate");
-					Property p = ResourceFactory.createProperty(pRes.getURI());
-					RDFNode o = qs.get("?object");
-					logger.trace("considering triple (" + s + " " + p + " " + o
-							+ ")");
-					numTriplesConsidered++;
-
-					// let all criteria filter the triples
-					for (StatisticalCriterion sc : criteria) {
-						sc.considerTriple(s, p, o);
+				if (qs.contains("?numTriples"))
+					return qs.getLiteral("?numTriples").getInt();
+			}
+			logger.error("ResultSet was empty, query not executed?");
+			return 0;
+		} finally {
+			qe.close();
+		}
+	}
+
+	/**
+	 * @param predicate
+	 *            null for all triples
+	 */
+	private static String getSelectVariables(String predicate) {
+		return predicate == null ? "?subject ?predicate ?object"
+				: "?subject ?object";
+	}
+
+	/**
+	 * @param predicate
+	 *            null for all triples
+	 */
+	private static String getTriplePattern(String predicate) {
+		return "?subject "
+				+ (predicate == null ? ByPredicate : FmtUtils.stringForURI(predicate))
+				+ " ?object.";
+	}
+
+	/**
+	 * triples of a single predicate are ordered by subject instead of by
+	 * predicate
+	 */
+	private String getOrderByClause(String predicate) {
+		return predicate != null && ByPredicate.equals(orderByClause) ? BySubject
+				: orderByClause;
+	}
+
+	private static Resource toResource(String predicate) {
+		return predicate == null ? null : ResourceFactory.createResource(predicate);
+	}
+
+	/**
+	 * Fetch pages (with read ahead) and let the criteria consider them, until
+	 * the query budget is spent or the criteria converged.
+	 */
+	private void processPages(final PageSource source) {
+		final boolean[] budgetSpent = { false };
+		PageSource limitedSource = source;
+		if (maxNumQueries >= 0)
+			limitedSource = new PageSource() {
+				private int	numQueries	= 0;
+
+				@Override
+				public TriplePage nextPage(TriplePage previous) {
+					if (numQueries >= maxNumQueries) {
+						logger.info("stopping partial analysis after "
+								+ numQueries + " queries");
+						budgetSpent[0] = true;
+						return null;
 					}
+					TriplePage page = source.nextPage(previous);
+					if (page != null)
+						numQueries++;
+					return page;
+				}
+			};
+		ConvergenceCheck convergence = null;
+		if (convergenceTolerance > 0)
+			convergence = new ConvergenceCheck(convergenceTolerance,
+					convergenceWindow);
+
+		boolean checkpoints = checkpointFile != null && !keysetPaging;
+
+		TriplePagePipeline pipeline = new TriplePagePipeline(ds, limitedSource,
+				readAhead);
+		try {
+			TriplePage page = pipeline.next();
+			while (page != null) {
+				// process query results
+				logger.trace("process query results of " + page);
+				for (QuerySolution qs : page.getSolutions()) {
+					if (isValidSolution(qs, page.getPredicate()))
+						considerSolution(qs, page.getPredicate());
+					else // invalid solution
+					logger.debug("invalid solution: " + qs);
+				}
+				numPagesProcessed++;
+				if (checkpoints && numPagesProcessed % checkpointInterval == 0)
+					writeCheckpoint();
 
-				} else // invalid solution
-				logger.debug("invalid solution: " + qs);
+				if (convergence != null) {
+					syncWorkers();
+					if (convergence.update(criteria)) {
+						logger.info("stopping partial analysis after "
+								+ pipeline.getNumPages() + " pages, "
+								+ numTriplesConsidered + " triples: converged");
+						break;
+					}
+				}
+				page = pipeline.next();
 			}
-			
-			// Important - free up resources used running the query
-			qe.close();	
+		} finally {
+			pipeline.close();
 		}
 
-		// flush logs for all criteria
-		logger.debug("flushing logs of statistical criteria");
-		for (StatisticalCriterion sc : criteria) {
-			sc.flushLog(ps);
+		if (checkpoints) {
+			// a spent budget may be continued later
+			if (budgetSpent[0])
+				writeCheckpoint();
+			else if (!Checkpoint.delete(checkpointFile))
+				logger.warn("could not delete checkpoint " + checkpointFile);
+		}
+	}
+
+	private void writeCheckpoint() {
+		// criteria must not change while they are written
+		syncWorkers();
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.numTriples = numTriples;
+		checkpoint.streamPredicates = streamPredicates;
+		checkpoint.streamTriples = streamTriples;
+		checkpoint.tripleLimit = tripleLimit;
+		checkpoint.orderByClause = orderByClause;
+		checkpoint.randomSampling = randomSampling;
+		checkpoint.seed = seed;
+		checkpoint.numPages = numPagesProcessed;
+		checkpoint.numTriplesConsidered = numTriplesConsidered;
+		checkpoint.lastSubject = lastSubject;
+		checkpoint.dictionary = dictionary;
+		checkpoint.criteria = criteria;
+		try {
+			long startTime = System.currentTimeMillis();
+			checkpoint.write(checkpointFile, lastCheckpoint);
+			lastCheckpoint = checkpoint;
+			logger.info("checkpoint after " + numPagesProcessed + " pages written in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		} catch (IOException e) {
+			logger.error("writing checkpoint " + checkpointFile + " failed", e);
+		}
+	}
+
+	/**
+	 * Replace dictionary and criteria by those of the checkpoint.
+	 */
+	private Checkpoint restoreCheckpoint() {
+		Checkpoint checkpoint;
+		try {
+			checkpoint = Checkpoint.read(checkpointFile);
+		} catch (IOException e) {
+			throw new RuntimeException("reading checkpoint " + checkpointFile
+					+ " failed", e);
+		}
+		List<String> checkpointPredicates = checkpoint.streamPredicates != null ? checkpoint.streamPredicates
+				: Collections.<String> singletonList(null);
+		if (checkpoint.tripleLimit != tripleLimit
+				|| !checkpoint.orderByClause.equals(orderByClause)
+				|| checkpoint.randomSampling != randomSampling
+				|| !checkpointPredicates.equals(streamPredicates))
+			throw new IllegalStateException("checkpoint " + checkpointFile
+					+ " was written with a different triple limit, order, sampling or predicates");
+		if (checkpoint.criteria.size() != criteria.size())
+			throw new IllegalStateException("checkpoint " + checkpointFile
+					+ " was written with different criteria");
+		for (int i = 0; i < criteria.size(); i++)
+			if (checkpoint.criteria.get(i).getClass() != criteria.get(i).getClass())
+				throw new IllegalStateException("checkpoint " + checkpointFile
+						+ " was written with different criteria");
+
+		dictionary = checkpoint.dictionary;
+		lastCheckpoint = checkpoint;
+		criteria.clear();
+		criteria.addAll(checkpoint.criteria);
+		numTriplesConsidered = checkpoint.numTriplesConsidered;
+		lastSubject = checkpoint.lastSubject;
+		logger.info("resuming after " + checkpoint.numPages + " pages, "
+				+ numTriplesConsidered + " triples");
+		return checkpoint;
+	}
+
+	/**
+	 * Keyset pages of all streams, one stream after another.
+	 */
+	private class KeysetStreams implements PageSource {
+
+		private Iterator<String>	predicateIt	= streamPredicates.iterator();
+		private KeysetPageSource	stream		= new KeysetPageSource(
+														predicateIt.next());
+
+		@Override
+		public TriplePage nextPage(TriplePage previous) {
+			TriplePage page = stream.nextPage(previous);
+			while (page == null && predicateIt.hasNext()) {
+				stream = new KeysetPageSource(predicateIt.next());
+				page = stream.nextPage(null);
+			}
+			return page;
+		}
+	}
+
+	/**
+	 * Next keyset page starts after the last key of the previous page.
+	 * 
+	 * Limitation: blank nodes can not be sought, so a page after a blank node
+	 * skips all triples of its group with OFFSET. If the key starts with a
+	 * blank node, the group is every triple with a blank node there, and the
+	 * OFFSET grows with every page as with plain paging; data sets dominated
+	 * by blank subjects (objects when ordered by object) are paged in
+	 * quadratic time.
+	 */
+	private class KeysetPageSource implements PageSource {
+
+		private String		predicate;
+		private Resource	predicateResource;
+		private String[]	keyVars;
+		// key of the last triple delivered, null before the first page
+		private RDFNode[]	lastKey		= null;
+		// numGroupRows[i]: triples delivered whose first i key terms are
+		// those of the last key and whose term i is of the same kind
+		private int[]		numGroupRows;
+
+		/**
+		 * @param predicate
+		 *            null for all triples
+		 */
+		KeysetPageSource(String predicate) {
+			this.predicate = predicate;
+			predicateResource = toResource(predicate);
+			keyVars = getKeyVariables(predicate);
+			numGroupRows = new int[keyVars.length];
 		}
-		ps.flush();
 
+		@Override
+		public TriplePage nextPage(TriplePage previous) {
+			if (previous != null) {
+				// a short page marks the end of the stream
+				if (previous.size() < tripleLimit)
+					return null;
+
+				// remember position in stream
+				for (QuerySolution qs : previous.getSolutions()) {
+					if (lastKey == null)
+						lastKey = new RDFNode[keyVars.length];
+					boolean samePrefix = true;
+					for (int i = 0; i < keyVars.length; i++) {
+						RDFNode term = qs.get(keyVars[i]);
+						if (samePrefix && getKind(term) == getKind(lastKey[i]))
+							numGroupRows[i]++;
+						else numGroupRows[i] = 1;
+						samePrefix = samePrefix && term != null
+								&& term.equals(lastKey[i]);
+						lastKey[i] = term;
+					}
+				}
+			}
+
+			// seek the leading IRIs of the key, skip the triples already
+			// delivered after them
+			int seek = 0;
+			if (lastKey != null)
+				while (seek < keyVars.length && lastKey[seek] != null
+						&& lastKey[seek].isURIResource())
+					seek++;
+			int offset = lastKey == null || seek == keyVars.length ? 0
+					: numGroupRows[seek];
+
+			String queryString = buildKeysetQuery(predicate, keyVars, lastKey,
+					seek, offset);
+			if (logger.isDebugEnabled())
+				logger.debug("query is \n" + queryString);
+			return new TriplePage(queryString, -1, predicateResource);
+		}
+	}
+
+	/**
+	 * order by clause first, remaining variables in triple order; without
+	 * ?predicate for the stream of a single predicate
+	 */
+	private String[] getKeyVariables(String predicate) {
+		String orderBy = getOrderByClause(predicate);
+		String[] keyVars = new String[predicate == null ? 3 : 2];
+		keyVars[0] = orderBy;
+		int i = 1;
+		for (String var : new String[] { BySubject, ByPredicate, ByObject })
+			if (!var.equals(orderBy) && (predicate == null || !var.equals(ByPredicate)))
+				keyVars[i++] = var;
+		return keyVars;
+	}
+
+	/**
+	 * @param seek
+	 *            number of leading IRIs of the last key the page starts after
+	 * @param offset
+	 *            number of triples to skip after them
+	 */
+	private String buildKeysetQuery(String predicate, String[] keyVars,
+			RDFNode[] lastKey, int seek, int offset) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT " + getSelectVariables(predicate) + "\n");
+		sb.append("WHERE {" + getTriplePattern(predicate) + "\n");
+		if (lastKey != null) {
+			String filter = getSeekExpression(keyVars, lastKey, seek);
+			if (filter != null)
+				sb.append("FILTER (" + filter + ")\n");
+		}
+		sb.append("}\n");
+		sb.append("ORDER BY");
+		for (String keyVar : keyVars)
+			sb.append(" " + keyVar);
+		sb.append("\n");
+		sb.append("LIMIT " + tripleLimit + "\n");
+		if (offset > 0)
+			sb.append("OFFSET " + offset + "\n");
+		return sb.toString();
+	}
+
+	/**
+	 * (k1 > v1) || (sameTerm(k1, v1) && ((k2 > v2) || ...)) over the sought
+	 * IRIs; if the key continues with a literal, the group after them is
+	 * restricted to literals, which sort after all other terms.
+	 * 
+	 * @return null for all triples
+	 */
+	private String getSeekExpression(String[] keyVars, RDFNode[] key, int seek) {
+		String rest = null;
+		if (seek < keyVars.length && key[seek] != null && key[seek].isLiteral())
+			rest = "isLiteral(" + keyVars[seek] + ")";
+		for (int i = seek - 1; i >= 0; i--) {
+			String uri = ((Resource) key[i]).getURI();
+			String after = getAfterExpression(keyVars[i], uri);
+			String same = "sameTerm(" + keyVars[i] + ", "
+					+ FmtUtils.stringForURI(uri) + ")";
+			if (i == keyVars.length - 1)
+				// the key itself has been delivered
+				rest = after;
+			else rest = "(" + after + ") || (" + same
+					+ (rest == null ? "" : " && (" + rest + ")") + ")";
+		}
+		return rest;
+	}
+
+	/**
+	 * Terms after an IRI: greater IRIs and all literals. SPARQL does not
+	 * order IRIs by the relational operators, so IRIs are compared on their
+	 * string unless the store supports it.
+	 */
+	private String getAfterExpression(String var, String uri) {
+		String after = rawIriComparison ? var + " > " + FmtUtils.stringForURI(uri)
+				: "isIRI(" + var + ") && STR(" + var + ") > \""
+						+ FmtUtils.stringEsc(uri, true) + "\"";
+		// only objects may be literals
+		return ByObject.equals(var) ? "isLiteral(" + var + ") || " + after
+				: after;
+	}
+
+	/**
+	 * @return rank of the kind of term in the order of ORDER BY: unbound,
+	 *         blank node, IRI, literal
+	 */
+	private static int getKind(RDFNode term) {
+		if (term == null)
+			return 0;
+		if (term.isAnon())
+			return 1;
+		return term.isLiteral() ? 3 : 2;
+	}
+
+	/**
+	 * @return true if the store orders IRIs by the relational operators
+	 */
+	private boolean comparesIris() {
+		QueryExecution qe = ds.query(QueryFactory
+				.create("ASK { FILTER (<urn:a> < <urn:b>) }"));
+		try {
+			return qe.execAsk();
+		} catch (RuntimeException e) {
+			logger.debug("IRIs are not comparable", e);
+			return false;
+		} finally {
+			qe.close();
+		}
+	}
+
+	/**
+	 * @param predicate
+	 *            predicate of the page, null if the solution contains it
+	 */
+	private boolean isValidSolution(QuerySolution qs, Resource predicate) {
+		return qs.contains("?subject")
+				&& (predicate != null || qs.contains("?predicate"))
+				&& qs.contains("?object");
+	}
+
+	private void considerSolution(QuerySolution qs, Resource predicate) {
+		Resource s = qs.getResource("?subject");
+		// predicates are encoded by their URI, no Property needed
+		Resource p = predicate != null ? predicate : qs.getResource("?predicate");
+		RDFNode o = qs.get("?object");
+		if (logger.isTraceEnabled())
+			logger.trace("considering triple (" + s + " " + p + " " + o
+					+ ")");
+		numTriplesConsidered++;
+
+		// let all criteria filter the triples
+		considerTriple(s, p, o);
 	}
 
 }
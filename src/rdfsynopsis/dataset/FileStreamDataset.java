@@ -0,0 +1,87 @@
+package rdfsynopsis.dataset;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+import org.openjena.atlas.lib.Sink;
+import org.openjena.riot.Lang;
+import org.openjena.riot.RiotReader;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.FileManager;
+
+/**
+ * RDF dataset file that is parsed on demand and streamed triple by triple,
+ * without ever being loaded into a Jena Model.
+ *
+ * @author thomas
+ *
+ */
+public class FileStreamDataset extends Dataset {
+
+	private String	filename;
+	private Lang	lang;
+
+	public FileStreamDataset(String filename) {
+		this(filename, null);
+	}
+
+	/**
+	 * @param filename
+	 * @param lang
+	 *            language name (e.g. "TTL", "N-TRIPLE", "RDF/XML"); if null,
+	 *            the language is guessed from the file extension
+	 */
+	public FileStreamDataset(String filename, String lang) {
+		logger = Logger.getLogger(FileStreamDataset.class);
+		this.filename = filename;
+
+		if (lang != null) {
+			this.lang = Lang.get(lang, null);
+			if (this.lang == null)
+				throw new IllegalArgumentException("Unknown language: " + lang);
+		} else this.lang = Lang.guess(filename, Lang.RDFXML);
+		logger.debug("file " + filename + " will be parsed as " + this.lang);
+	}
+
+	/**
+	 * Parse the file and push every triple into the sink.
+	 *
+	 * @param sink
+	 */
+	public void stream(Sink<Triple> sink) {
+		// open file
+		InputStream in = FileManager.get().open(filename);
+		if (in == null) {
+			logger.error("file " + filename + " not found.");
+			throw new IllegalArgumentException("File: " + filename
+					+ " not found");
+		}
+		logger.debug("file " + filename + " opened.");
+
+		try {
+			RiotReader.parseTriples(in, lang,
+					RiotReader.chooseBaseIRI(null, filename), sink);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				logger.warn(e);
+			}
+		}
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public Lang getLang() {
+		return lang;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "(" + filename + ", " + lang + ")";
+	}
+}
@@ -1,24 +1,34 @@
 package rdfsynopsis.eval;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import rdfsynopsis.analyzer.Analyzer;
+import rdfsynopsis.analyzer.TripleRouter;
 import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
 
 public abstract class AbstractAnalysisLogger extends AbstractEvaluator
 		implements Analyzer {
 
 	protected List<StatisticalCriterion>	criteria;
-	private PrintWriter						printer;
+	private CsvWriter						csv;
+	// shared by all criteria, so that every triple is encoded only once
+	protected TermDictionary				dictionary;
+	// criteria of the triples, created with the first triple
+	private TripleRouter					router;
 
 	public AbstractAnalysisLogger(String title, boolean timeStamp) {
 		super(title, timeStamp);
 		criteria = new ArrayList<StatisticalCriterion>();
+		dictionary = new TermDictionary();
 	}
 
 	@Override
@@ -27,22 +37,49 @@ public abstract class AbstractAnalysisLogger extends AbstractEvaluator
 		for (StatisticalCriterion sc : criteria) {
 			sc.init();
 		}
+		router = null;
 		
 		try {
 			File outFile = makeTitleFile(title + titleAddition, outDir,".csv",timeStamp);
-			printer = new PrintWriter(outFile);
+			csv = new CsvWriter(outFile);
 			performAnalysis(null);
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			logger.error(e);
 		} finally {
-			if (printer != null)
-				printer.close();
+			try {
+				if (csv != null)
+					csv.close();
+			} catch (IOException e) {
+				logger.error(e);
+			}
+			csv = null;
 		}
 	}
 	
-	protected void writeLogLine(String line) {
-		logger.trace("New log line: "+line);
-		printer.println(line);
+	/**
+	 * write a row of results to the log, keys are the columns
+	 */
+	protected void writeLogRow(Map<String, ?> row) {
+		logger.trace("New log row: "+row);
+		try {
+			csv.writeRow(row);
+		} catch (IOException e) {
+			logger.error(e);
+		}
+	}
+
+	/**
+	 * let the interested criteria filter the triple (TSA)
+	 */
+	protected void considerTriple(Resource s, Resource p, RDFNode o) {
+		if (router == null) {
+			for (StatisticalCriterion sc : criteria)
+				sc.startStream();
+			router = new TripleRouter(criteria);
+		}
+		router.considerTriple(router.encodeSubject(dictionary, s),
+				router.encodePredicate(dictionary, p),
+				router.encodeObject(dictionary, o));
 	}
 
 	@Override
@@ -50,7 +87,10 @@ public abstract class AbstractAnalysisLogger extends AbstractEvaluator
 
 	@Override
 	public AbstractAnalysisLogger addCriterion(StatisticalCriterion sc) {
+		sc.setDictionary(dictionary);
 		criteria.add(sc);
+		StatisticalCriterion.shareTypeIndex(criteria);
+		router = null;
 		return this;
 	}
 
@@ -0,0 +1,133 @@
+package rdfsynopsis.eval;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CSV file written row by row. Every row is flushed when written, so that
+ * the rows written so far are on disk if the evaluation is aborted.
+ *
+ * Columns are the keys of the rows in order of their first occurrence. Keys
+ * not known yet are appended as new columns, rows written before are blank
+ * there. As the header is the first line, it is rewritten when the file is
+ * closed if columns were added after it.
+ *
+ * @author thomas
+ *
+ */
+public class CsvWriter implements Closeable {
+
+	private final File					file;
+	private Writer						writer;
+
+	private final List<String>			columns			= new ArrayList<String>();
+	private final Map<String, Integer>	columnIndex		= new HashMap<String, Integer>();
+	// number of columns in the header written, -1 before the first row
+	private int							headerColumns	= -1;
+	private final StringBuilder			line			= new StringBuilder();
+
+	public CsvWriter(File file) throws IOException {
+		this.file = file;
+		writer = new BufferedWriter(new FileWriter(file));
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Write values of a row, missing columns are left blank.
+	 */
+	public void writeRow(Map<String, ?> row) throws IOException {
+		for (String key : row.keySet())
+			if (!columnIndex.containsKey(key)) {
+				columnIndex.put(key, columns.size());
+				columns.add(key);
+			}
+		if (headerColumns < 0) {
+			writeLine(writer, columns);
+			headerColumns = columns.size();
+		}
+
+		List<Object> values = new ArrayList<Object>(columns.size());
+		for (int i = 0; i < columns.size(); i++)
+			values.add(null);
+		for (Map.Entry<String, ?> e : row.entrySet())
+			values.set(columnIndex.get(e.getKey()), e.getValue());
+		writeLine(writer, values);
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (writer == null)
+			return;
+		writer.close();
+		writer = null;
+		if (headerColumns >= 0 && headerColumns < columns.size())
+			rewriteHeader();
+	}
+
+	/**
+	 * Replace the header by the complete list of columns.
+	 */
+	private void rewriteHeader() throws IOException {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		Writer tmpWriter = new BufferedWriter(new FileWriter(tmpFile));
+		try {
+			// skip old header
+			reader.readLine();
+			writeLine(tmpWriter, columns);
+			for (String l = reader.readLine(); l != null; l = reader.readLine()) {
+				tmpWriter.write(l);
+				tmpWriter.write('\n');
+			}
+		} finally {
+			reader.close();
+			tmpWriter.close();
+		}
+		if (!file.delete() || !tmpFile.renameTo(file))
+			throw new IOException("Could not replace " + file + " by "
+					+ tmpFile);
+	}
+
+	private void writeLine(Writer w, List<?> values) throws IOException {
+		line.setLength(0);
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0)
+				line.append(',');
+			Object value = values.get(i);
+			if (value != null)
+				appendField(String.valueOf(value));
+		}
+		line.append('\n');
+		w.write(line.toString());
+	}
+
+	private void appendField(String field) {
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+				&& field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			line.append(field);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '"')
+				line.append('"');
+			line.append(c);
+		}
+		line.append('"');
+	}
+}
@@ -3,26 +3,23 @@ package rdfsynopsis.eval;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.analyzer.TriplePage;
+import rdfsynopsis.analyzer.TriplePagePipeline;
+import rdfsynopsis.analyzer.TriplePagePipeline.PageSource;
 import rdfsynopsis.dataset.SparqlDataset;
 import rdfsynopsis.statistics.NumTriples;
 import rdfsynopsis.statistics.StatisticalCriterion;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.ResourceFactory;
 
 public class PartialStreamAnalysisLogger extends AbstractAnalysisLogger {
 	
@@ -34,8 +31,8 @@ public class PartialStreamAnalysisLogger extends AbstractAnalysisLogger {
 	private int									numTriples				= -1;
 	private int									numTriplesConsidered	= 0;
 	private int									tripleLimit				= 30000;
-	private Map<String, Map<Integer, Object>>	offsetResultSeries;
 	private boolean 							randomSampling = false;
+	private int									readAhead				= 0;
 	private String orderByClause = BySubject;
 	
 	
@@ -58,6 +55,21 @@ public class PartialStreamAnalysisLogger extends AbstractAnalysisLogger {
 		return this;
 	}
 
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Fetch up to readAhead pages in the background while the current page
+	 * is processed; 0 fetches every page on demand.
+	 * @param readAhead
+	 * @return
+	 */
+	public PartialStreamAnalysisLogger setReadAhead(int readAhead) {
+		this.readAhead = readAhead;
+		return this;
+	}
+
 	public int getTripleLimit() {
 		return tripleLimit;
 	}
@@ -95,7 +107,8 @@ public class PartialStreamAnalysisLogger extends AbstractAnalysisLogger {
 		numTriples = nt.getNumTriples();
 
 		numTriplesConsidered = 0;
-		offsetResultSeries = new LinkedHashMap<String, Map<Integer, Object>>();
+		for (StatisticalCriterion sc : criteria)
+			sc.resetChangedResults();
 		long startTime = System.currentTimeMillis();
 		
 		List<Integer> offsets = new ArrayList<Integer>((int) Math.ceil((double) numTriples/tripleLimit));
@@ -110,102 +123,80 @@ public class PartialStreamAnalysisLogger extends AbstractAnalysisLogger {
 		// write header and first line
 //		logLine(0, 0L);
 
-		String queryString = "SELECT ?subject ?predicate ?object\n" +
+		final String queryString = "SELECT ?subject ?predicate ?object\n" +
 				"WHERE {?subject ?predicate ?object.}\n" +
 				"ORDER BY "+ orderByClause +"\n" +
 				"LIMIT " + tripleLimit + "\n" +
 				"OFFSET ";
-
-		for (Integer offset : offsets) {
-			
-			// Create a new query
-			Query query = QueryFactory.create(queryString + offset);
-			logger.debug("query is \n" + queryString + offset);
-			
-			// execute query and obtain results
-			QueryExecution qe = ds.query(query);
-			logger.info("TripleStream: limit=" + tripleLimit
-					+ ", offset=" + offset + " at " + System.currentTimeMillis()/1000);
-			ResultSet results = qe.execSelect();
-			
-			// process query results
-			logger.trace("process query results");			
-			while (results.hasNext()) {
-				QuerySolution qs = results.next();
-				if (qs.contains("?subject") && qs.contains("?predicate") && qs.contains("?object")) { // valid
-																					// solution
-					Resource s = qs.getResource("?subject");
-					Resource pRes = qs.getResource("?predicate");
-					Property p = ResourceFactory.createProperty(pRes.getURI());
-					RDFNode o = qs.get("?object");
-					logger.trace("considering triple (" + s + " " + p + " " + o
-							+ ")");
-					numTriplesConsidered++;
-
-					for (StatisticalCriterion sc : criteria) {
-						sc.considerTriple(s, p, o);
-					}
-
-				} else // invalid solution
-				logger.debug("invalid solution: " + qs);
+		final Iterator<Integer> offsetIt = offsets.iterator();
+
+		TriplePagePipeline pipeline = new TriplePagePipeline(ds, new PageSource() {
+			@Override
+			public TriplePage nextPage(TriplePage previous) {
+				if (!offsetIt.hasNext())
+					return null;
+				int offset = offsetIt.next();
+				logger.debug("query is \n" + queryString + offset);
+				return new TriplePage(queryString + offset, offset);
 			}
-			
-			// Important - free up resources used running the query
-			qe.close();
-			
-			// log results
-			logLine(offset, System.currentTimeMillis() - startTime);
-		}
-
-		// finally write Log
-		writeResultLog();
-	}
-
-	private void logLine(int offset, long time) {
-		// log time
-		addResultValue(offset, "Offset", Integer.valueOf(offset));
-		addResultValue(offset, "TimeMS", Long.valueOf(time));
-
-		// log statistical results
-		for (StatisticalCriterion sc : criteria) {
-			Map<String, Object> results = sc.getResultMap();
-			for (Map.Entry<String, Object> entry : results.entrySet()) {
-				addResultValue(offset, entry.getKey(), entry.getValue());
+		}, readAhead);
+
+		try {
+			TriplePage page = pipeline.next();
+			while (page != null) {
+				long processStartTime = System.currentTimeMillis();
+				logger.info("TripleStream: limit=" + tripleLimit
+						+ ", offset=" + page.getOffset() + " at " + System.currentTimeMillis()/1000);
+
+				// process query results
+				logger.trace("process query results");
+				for (QuerySolution qs : page.getSolutions()) {
+					if (qs.contains("?subject") && qs.contains("?predicate") && qs.contains("?object")) { // valid
+																						// solution
+						Resource s = qs.getResource("?subject");
+						Resource p = qs.getResource("?predicate");
+						RDFNode o = qs.get("?object");
+						if (logger.isTraceEnabled())
+							logger.trace("considering triple (" + s + " " + p + " " + o
+									+ ")");
+						numTriplesConsidered++;
+
+						considerTriple(s, p, o);
+
+					} else // invalid solution
+					logger.debug("invalid solution: " + qs);
+				}
+
+				// log results
+				long now = System.currentTimeMillis();
+				logLine(page.getOffset(), now - startTime, page.getFetchTime(),
+						now - processStartTime);
+				page = pipeline.next();
 			}
+		} finally {
+			pipeline.close();
 		}
 	}
 
-	private void addResultValue(int offset, String resultKey,
-			Object resultValue) {
-		Map<Integer, Object> ps = offsetResultSeries.get(resultKey);
-		if (ps == null)
-			ps = new LinkedHashMap<Integer, Object>();
-		ps.put(offset, resultValue);
-		offsetResultSeries.put(resultKey, ps);
-	}
-
-	private void writeResultLog() {
-		String headerLine = "";
-		// build header
-		for (String resultKey : offsetResultSeries.keySet()) {
-			headerLine += resultKey + ", ";
-		}
-		writeLogLine(headerLine);
-
-		// iterate over percentages
-		for (Map.Entry<Integer, Object> entry : offsetResultSeries.get(
-				"Offset").entrySet()) {
-			int offset = entry.getKey();
-			String resultLine = "";
-
-			for (Map.Entry<String, Map<Integer, Object>> resultSeries : offsetResultSeries
-					.entrySet()) {
-				Object val = resultSeries.getValue().get(offset);
-				resultLine += val + ", ";
-			}
-
-			writeLogLine(resultLine);
-		}
+	/**
+	 * Write one row of results per page as soon as the page is processed.
+	 * Only the results that changed since the previous page are written, the
+	 * other columns are left blank.
+	 */
+	private void logLine(int offset, long time, long fetchTime,
+			long processTime) {
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
+		// log time (fetch and process time of the page itself)
+		results.put("Offset", Integer.valueOf(offset));
+		results.put("TimeMS", Long.valueOf(time));
+		results.put("FetchMS", Long.valueOf(fetchTime));
+		results.put("ProcessMS", Long.valueOf(processTime));
+
+		// log changed statistical results
+		for (StatisticalCriterion sc : criteria)
+			results.putAll(sc.getChangedResults());
+
+		writeLogRow(results);
 	}
 
 }
@@ -1,6 +1,7 @@
 package rdfsynopsis.eval;
 
 import java.io.PrintStream;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -31,21 +32,15 @@ public class SparqlAnalysisLogger extends AbstractAnalysisLogger {
 		if (ps == null)
 			ps = System.out;
 		
-		String headerLine = "";
-		String resultLine = "";
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
 		
 		for (StatisticalCriterion sc : criteria) {
 			sc.processSparqlDataset(ds);
 			//sc.flushLog();
-			Map<String,Object> results = sc.getResultMap();
-			for (Map.Entry<String, Object> entry : results.entrySet()) {
-				headerLine += entry.getKey() + " ";
-				resultLine += entry.getValue() + " ";
-			}			
+			results.putAll(sc.getResultMap());
 		}
 		
-		writeLogLine(headerLine);
-		writeLogLine(resultLine);
+		writeLogRow(results);
 	}
 
 }
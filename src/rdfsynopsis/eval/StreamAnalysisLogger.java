@@ -1,6 +1,7 @@
 package rdfsynopsis.eval;
 
 import java.io.PrintStream;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,10 +17,8 @@ import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.ResourceFactory;
 
 public class StreamAnalysisLogger extends AbstractAnalysisLogger {
 
@@ -85,16 +84,14 @@ public class StreamAnalysisLogger extends AbstractAnalysisLogger {
 				if (qs.contains("?s") && qs.contains("?p") && qs.contains("?o")) { // valid
 																					// solution
 					Resource s = qs.getResource("?s");
-					Resource pRes = qs.getResource("?p");
-					Property p = ResourceFactory.createProperty(pRes.getURI());
+					Resource p = qs.getResource("?p");
 					RDFNode o = qs.get("?o");
-					logger.trace("considering triple (" + s + " " + p + " " + o
-							+ ")");
+					if (logger.isTraceEnabled())
+						logger.trace("considering triple (" + s + " " + p + " " + o
+								+ ")");
 					numTriplesConsidered++;
 
-					for (StatisticalCriterion sc : criteria) {
-						sc.considerTriple(s, p, o);
-					}
+					considerTriple(s, p, o);
 
 				} else // invalid solution
 				logger.debug("invalid solution: " + qs);
@@ -105,20 +102,15 @@ public class StreamAnalysisLogger extends AbstractAnalysisLogger {
 		}
 		
 		// write to log
-		String headerLine = "";
-		String resultLine = "";
+		Map<String, Object> results = new LinkedHashMap<String, Object>();
 		
 		for (StatisticalCriterion sc : criteria) {
 			sc.processSparqlDataset(ds);
 			//sc.flushLog();
-			Map<String,Object> results = sc.getResultMap();
-			for (Map.Entry<String, Object> entry : results.entrySet()) {
-				headerLine += entry.getKey() + " ";
-				resultLine += entry.getValue() + " ";
-			}			
+			results.putAll(sc.getResultMap());
 		}
-		writeLogLine(headerLine);
-		writeLogLine(resultLine);
+		
+		writeLogRow(results);
 	}
 
 }
@@ -0,0 +1,93 @@
+package rdfsynopsis.statistics;
+
+import rdfsynopsis.util.HyperLogLog;
+
+/**
+ * Criterion that reports numbers of distinct terms. By default the terms are
+ * collected in sets and counted exactly. With an error bound they are offered
+ * to HyperLogLog sketches of constant size instead, and the reported numbers
+ * are estimates.
+ *
+ * @author thomas
+ *
+ */
+public abstract class CardinalityCriterion extends StatisticalCriterion {
+
+	private static final long	serialVersionUID	= 1L;
+
+	// relative standard error of the sketches, 0 for exact counting
+	private double	errorBound	= 0;
+
+	public double getErrorBound() {
+		return errorBound;
+	}
+
+	/**
+	 * Count approximately, so that the relative standard error of every
+	 * sketch stays within the error bound. The criterion is initialized.
+	 *
+	 * @param errorBound
+	 *            relative standard error, 0 for exact counting
+	 */
+	public CardinalityCriterion setErrorBound(double errorBound) {
+		if (errorBound < 0 || errorBound >= 1)
+			throw new IllegalArgumentException("Invalid error bound "
+					+ errorBound + " (valid: 0 to less than 1)");
+		this.errorBound = errorBound;
+		init();
+		return this;
+	}
+
+	public boolean isApproximate() {
+		return errorBound > 0;
+	}
+
+	@Override
+	public StatisticalCriterion newInstance() {
+		CardinalityCriterion cc = (CardinalityCriterion) super.newInstance();
+		cc.setErrorBound(errorBound);
+		return cc;
+	}
+
+	@Override
+	void checkMergeable(StatisticalCriterion other) {
+		super.checkMergeable(other);
+		if (((CardinalityCriterion) other).isApproximate() != isApproximate())
+			throw new IllegalArgumentException(
+					"Cannot merge exact and approximate " + textId);
+	}
+
+	HyperLogLog createSketch() {
+		return HyperLogLog.forErrorBound(errorBound);
+	}
+
+	/**
+	 * Hashes depend on the term, not on its id, so that sketches built with
+	 * different dictionaries can be merged. The dictionary computes them once
+	 * per term.
+	 */
+	long hash(int id) {
+		return dictionary.getHash(id);
+	}
+
+	/**
+	 * @return standard error of a number estimated as a + b - c from
+	 *         estimates with standard errors errA, errB and errC
+	 */
+	static double combinedError(double errA, double errB, double errC) {
+		return Math.sqrt(errA * errA + errB * errB + errC * errC);
+	}
+
+	/**
+	 * @return standard error of the ratio x / y of estimates with standard
+	 *         errors errX and errY
+	 */
+	static double ratioError(double x, double errX, double y, double errY) {
+		if (y == 0)
+			return 0;
+		double ratio = x / y;
+		if (x == 0)
+			return errX / y;
+		return ratio * Math.sqrt(Math.pow(errX / x, 2) + Math.pow(errY / y, 2));
+	}
+}
@@ -1,24 +1,32 @@
 package rdfsynopsis.statistics;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.util.HierarchyGraph;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class ClassHierarchy extends StatisticalCriterion {
 
-	private HierarchyGraph<String>	classHierachyGraph;
+	private static final long	serialVersionUID	= 1L;
+
+	private HierarchyGraph<Integer>	classHierachyGraph;
 	private int						numSubclassStatements;
+	// numSubclassStatements when the results were reported last
+	private transient int			reportedStatements;
+
+	private int						subClassOfId;
+	private int						resourceId;
 
 	public ClassHierarchy() {
 		logger = Logger.getLogger(ClassHierarchy.class);
@@ -33,7 +41,13 @@ public class ClassHierarchy extends StatisticalCriterion {
 		logger.debug("flushLog");
 		ps.println("Result: number of classes in hierarchy = " + getNumClassesInHierarchy());
 		ps.println("Result: max depth in hierarchy = " + getClassHierarchyDepth());
-		ps.println("Result: class hierarchy = " + classHierachyGraph);
+		ps.print("Result: class hierarchy = ");
+		try {
+			classHierachyGraph.print(ps, dictionary);
+		} catch (IOException e) {
+			// PrintStream sets its error flag instead
+		}
+		ps.println();
 
 	}
 	
@@ -50,7 +64,8 @@ public class ClassHierarchy extends StatisticalCriterion {
 				String subClassUri = qs.getResource("?subclass").getURI();
 				String superClassUri = qs.getResource("?superclass").getURI();
 
-				classHierachyGraph.addHierarchyEdge(subClassUri, superClassUri);
+				classHierachyGraph.addHierarchyEdge(dictionary.encodeURI(subClassUri),
+						dictionary.encodeURI(superClassUri));
 				numSubclassStatements++;
 
 			} else
@@ -60,7 +75,8 @@ public class ClassHierarchy extends StatisticalCriterion {
 		}
 
 		// debug result output
-		logger.debug("Class Hierarchy:\n" + classHierachyGraph);
+		if (logger.isDebugEnabled())
+			logger.debug("Class Hierarchy:\n" + classHierachyGraph.toString(dictionary));
 	}
 
 	public int getClassHierarchyDepth() {
@@ -76,24 +92,33 @@ public class ClassHierarchy extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		String subClassOf = Namespace.RDFS.getFullTerm("subClassOf");		
-		
-		if (p.getURI().equals(subClassOf) && !s.toString().equals(((Resource)o).toString())
-				&& ! ((Resource)o).toString().equals(Namespace.RDFS.getFullTerm("Resource"))) {
-			assert o instanceof Resource;
+	public void considerTriple(int s, int p, int o) {
+		if (p == subClassOfId && s != o && o != resourceId) {
+			assert !TermDictionary.isLiteral(o);
 			
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 			
-			classHierachyGraph.addHierarchyEdge(s.getURI(), ((Resource)o).getURI());
+			classHierachyGraph.addHierarchyEdge(s, o);
 			numSubclassStatements++;
 		}
 		
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		ClassHierarchy o2 = (ClassHierarchy) other;
+		for (Map.Entry<Integer, Set<Integer>> e : o2.classHierachyGraph
+				.getSubNodeValues().entrySet()) {
+			int superClass = translate(o2, e.getKey());
+			for (Integer subClass : e.getValue())
+				classHierachyGraph.addHierarchyEdge(translate(o2, subClass),
+						superClass);
+		}
+		numSubclassStatements += o2.numSubclassStatements;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -102,6 +127,16 @@ public class ClassHierarchy extends StatisticalCriterion {
 		m.put("classesInHierarchy", Integer.valueOf(getNumClassesInHierarchy()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// the depth walks the whole hierarchy, which only changes with new
+		// statements
+		if (hasReportedValues() && reportedStatements == numSubclassStatements)
+			return new HashMap<String, Object>();
+		reportedStatements = numSubclassStatements;
+		return getChangedValues(getResultMap());
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -110,15 +145,26 @@ public class ClassHierarchy extends StatisticalCriterion {
 			return o2.getClassHierarchyDepth() == this.getClassHierarchyDepth() &&
 					o2.getNumClassesInHierarchy() == this.getNumClassesInHierarchy() &&
 					o2.getNumClassHierarchyTriples() == this.getNumClassHierarchyTriples() &&
-					o2.classHierachyGraph.equals(this.classHierachyGraph);
+					o2.dictionary.decodeSets(o2.classHierachyGraph.getSubNodeValues()).equals(
+							this.dictionary.decodeSets(this.classHierachyGraph.getSubNodeValues())) &&
+					o2.dictionary.decode(o2.classHierachyGraph.getTopNodeValues()).equals(
+							this.dictionary.decode(this.classHierachyGraph.getTopNodeValues()));
 		}
 		else return false;
 	}
 
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDFS.getFullTerm("subClassOf"));
+	}
+
 	@Override
 	public void init() {
 		numSubclassStatements = 0;
-		classHierachyGraph = new HierarchyGraph<String>();
+		reportedStatements = -1;
+		classHierachyGraph = new HierarchyGraph<Integer>();
+		subClassOfId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("subClassOf"));
+		resourceId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Resource"));
 	}
 
 }
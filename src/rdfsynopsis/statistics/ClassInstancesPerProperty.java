@@ -4,28 +4,40 @@ import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.ExternalSorter;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class ClassInstancesPerProperty extends StatisticalCriterion {
+public class ClassInstancesPerProperty extends SpillableCriterion implements
+		TypeIndex.Listener {
+
+	private static final long	serialVersionUID	= 1L;
 	
-	private Map<String, Map<String, Integer>>	classInstancesPerPropertyMap;
+	private Map<Integer, Map<Integer, Integer>>	classInstancesPerPropertyMap;
+
+	private Map<Integer, Set<Integer>>			subjectPropMap;
 
-	private Map<String, Set<String>>			subjectClassMap;
-	private Map<String, Set<String>>			propSubjectMap;
+	// with a memory budget: (subject, CLASS or PROPERTY, id) instead of the
+	// type index and the subject map
+	private ExternalSorter						subjectSorter;
 
 	private boolean								updated	= true;
 
+	// counts reported by getChangedResults() and the classes whose counts
+	// changed since, null before the first call
+	private transient Map<Integer, Map<Integer, Integer>>	reportedCounts;
+	private transient Set<Integer>							changedReportedClasses;
+
+	private int									typeId;
+
 	public ClassInstancesPerProperty() {
 		logger = Logger.getLogger(ClassInstancesPerProperty.class);
 		logger.trace("logger created");
@@ -40,13 +52,14 @@ public class ClassInstancesPerProperty extends StatisticalCriterion {
 			update();
 		logger.debug("flushLog");
 		
-		for (Map.Entry<String, Map<String, Integer>> outerEntry : classInstancesPerPropertyMap
+		for (Map.Entry<Integer, Map<Integer, Integer>> outerEntry : classInstancesPerPropertyMap
 				.entrySet()) {
-			for (Map.Entry<String, Integer> innerEntry : outerEntry.getValue()
+			for (Map.Entry<Integer, Integer> innerEntry : outerEntry.getValue()
 					.entrySet())
-				ps.println("Result for class <" + outerEntry.getKey() + ">: "
+				ps.println("Result for class <"
+						+ dictionary.decode(outerEntry.getKey()) + ">: "
 						+ innerEntry.getValue() + " instances per property "
-						+ innerEntry.getKey());
+						+ dictionary.decode(innerEntry.getKey()));
 		}
 
 	}
@@ -61,11 +74,11 @@ public class ClassInstancesPerProperty extends StatisticalCriterion {
 			if (qs.contains("?class") && qs.contains("?property") && qs.contains("?numInstances")) {
 				// valid solution
 
-				String classUri = qs.getResource("?class").getURI();
-				String propertyUri = qs.getResource("?property").getURI();
+				int classId = dictionary.encodeURI(qs.getResource("?class").getURI());
+				int property = dictionary.encodeURI(qs.getResource("?property").getURI());
 				Integer numInstances = qs.getLiteral("?numInstances").getInt();
 				
-				increaseClassInstancesPerProperty(classUri, propertyUri, numInstances);
+				increaseClassInstancesPerProperty(classId, property, numInstances);
 
 			} else
 			// invalid solution
@@ -76,64 +89,127 @@ public class ClassInstancesPerProperty extends StatisticalCriterion {
 
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public boolean isClassAware() {
+		return !isSpilling();
+	}
 
-		String subjectUri = s.toString();
-		String propertyUri = p.toString();
+	@Override
+	public void typeAdded(int s, int classId) {
+		if (subjectSorter != null)
+			return;
+		Set<Integer> properties = subjectPropMap.get(s);
+		if (properties != null)
+			for (int property : properties)
+				increaseClassInstancesPerProperty(classId, property, 1);
+	}
+
+	/**
+	 * The instance counts are kept up to date triple by triple, so that
+	 * results can be logged after every page without recalculating them.
+	 */
+	@Override
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
 
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");
+		if (subjectSorter != null) {
+			if (p == typeId && TermDictionary.isURI(o))
+				subjectSorter.add(s, CLASS, o);
+			else subjectSorter.add(s, PROPERTY, p);
+			updated = false;
+			return;
+		}
 
 		// class instance?
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((propertyUri.equals(type) || propertyUri.equals("a"))
-				&& o.isURIResource()) {
-			String classUri = ((Resource) o).getURI();
-
-			// add to subject's classes
-			Set<String> classes = subjectClassMap.get(subjectUri);
-			if (classes == null)
-				classes = new HashSet<String>();
-			classes.add(classUri);
-			subjectClassMap.put(subjectUri, classes);
+		if (p == typeId && TermDictionary.isURI(o)) {
+			typeIndex.addType(s, o);
 			
 		} else {
 
-			// add to property's subjects
-			Set<String> subjects = propSubjectMap.get(propertyUri);
-			if (subjects == null)
-				subjects = new HashSet<String>();
-			subjects.add(subjectUri);
-			propSubjectMap.put(propertyUri, subjects);
+			// add to subject's properties
+			if (addToSet(subjectPropMap, s, p))
+				for (int i = typeIndex.getNumClasses(s) - 1; i >= 0; i--)
+					increaseClassInstancesPerProperty(typeIndex.getClass(s, i),
+							p, 1);
 			
 		}
-
-		updated = false;
 	}
 	
+	private static boolean addToSet(Map<Integer, Set<Integer>> m, int key,
+			int value) {
+		Set<Integer> values = m.get(key);
+		if (values == null) {
+			values = new HashSet<Integer>();
+			m.put(key, values);
+		}
+		return values.add(value);
+	}
+	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		ClassInstancesPerProperty o2 = (ClassInstancesPerProperty) other;
+		if (subjectSorter != null)
+			mergeSorter(subjectSorter, o2.subjectSorter, o2, new boolean[] {
+					true, false, true });
+		else {
+			mergeTypeIndex(o2);
+			mergeSets(subjectPropMap, o2.subjectPropMap, o2);
+		}
+		updated = false;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		
-		update();
+		if (!updated)
+			update();
 		
-		for (Map.Entry<String, Map<String, Integer>> outerEntry : classInstancesPerPropertyMap
+		for (Map.Entry<Integer, Map<Integer, Integer>> outerEntry : classInstancesPerPropertyMap
 				.entrySet()) {
-			for (Map.Entry<String, Integer> innerEntry : outerEntry.getValue()
+			for (Map.Entry<Integer, Integer> innerEntry : outerEntry.getValue()
 					.entrySet())
-				m.put(outerEntry.getKey() + "_classInstancesPerProperty_" + innerEntry.getKey(), innerEntry.getValue());
+				m.put(dictionary.decode(outerEntry.getKey()) + "_classInstancesPerProperty_"
+						+ dictionary.decode(innerEntry.getKey()), innerEntry.getValue());
 		}
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		if (!updated)
+			update();
+		if (reportedCounts == null) {
+			reportedCounts = new HashMap<Integer, Map<Integer, Integer>>();
+			changedReportedClasses = new HashSet<Integer>(
+					classInstancesPerPropertyMap.keySet());
+		}
+		Map<String, Object> m = new HashMap<String, Object>();
+		for (int classId : changedReportedClasses)
+			putChangedValues(m, classId,
+					classInstancesPerPropertyMap.get(classId), reportedCounts,
+					"_classInstancesPerProperty_");
+		changedReportedClasses.clear();
+		return m;
+	}
+
+	@Override
+	public void resetChangedResults() {
+		reportedCounts = null;
+		changedReportedClasses = null;
+	}
+
 	@Override
 	public void init() {
 		updated = true;
-		classInstancesPerPropertyMap = new HashMap<String, Map<String, Integer>>();
-		subjectClassMap = new HashMap<String, Set<String>>();
-		propSubjectMap = new HashMap<String, Set<String>>();
+		if (subjectSorter != null)
+			subjectSorter.close();
+		subjectSorter = isSpilling() ? createSorter(3) : null;
+		clearClassInstancesPerProperty();
+		typeIndex.clear();
+		subjectPropMap = new HashMap<Integer, Set<Integer>>();
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
 	}
 	
 	@Override
@@ -143,58 +219,77 @@ public class ClassInstancesPerProperty extends StatisticalCriterion {
 			this.update();
 			o2.update();
 			
-//	        for (Entry<String, Map<String, Integer>> entry : o2.classInstancesPerPropertyMap.entrySet()) {
+//	        for (Entry<Integer, Map<Integer, Integer>> entry : o2.classInstancesPerPropertyMap.entrySet()) {
 //	        	String key = entry.getKey();
 //	            if (!entry.getValue().equals(this.classInstancesPerPropertyMap.get(key)))
 //	        	System.out.println("this key " + key + ": "
 //	                    + entry.getValue());
 //	        }
-//	        for (Entry<String, Map<String, Integer>> entry : this.classInstancesPerPropertyMap.entrySet()) {
+//	        for (Entry<Integer, Map<Integer, Integer>> entry : this.classInstancesPerPropertyMap.entrySet()) {
 //	        	String key = entry.getKey();
 //	            if (!entry.getValue().equals(o2.classInstancesPerPropertyMap.get(key)))
 //	        	System.out.println("o2 key " + key + ": "
 //	                    + entry.getValue());
 //	        }
-			return o2.classInstancesPerPropertyMap.equals(this.classInstancesPerPropertyMap);
+			return o2.dictionary.decodeNestedKeys(o2.classInstancesPerPropertyMap)
+					.equals(this.dictionary.decodeNestedKeys(this.classInstancesPerPropertyMap));
 		}
 		else return false;
 	}
 	
-	private void increaseClassInstancesPerProperty(String classUri,
-			String propertyUri, Integer val) {
-		assert classUri != null;
-		assert propertyUri != null;
-
-		Map<String, Integer> m = classInstancesPerPropertyMap.get(classUri);
+	private void increaseClassInstancesPerProperty(int classId,
+			int property, Integer val) {
+		Map<Integer, Integer> m = classInstancesPerPropertyMap.get(classId);
 		if (m == null)
-			m = new HashMap<String, Integer>();
-		Integer numInstances = m.get(propertyUri);
+			m = new HashMap<Integer, Integer>();
+		Integer numInstances = m.get(property);
 		if (numInstances == null)
 			numInstances = 0;
-		m.put(propertyUri, numInstances + val);
-		classInstancesPerPropertyMap.put(classUri, m);
+		m.put(property, numInstances + val);
+		classInstancesPerPropertyMap.put(classId, m);
+		if (changedReportedClasses != null)
+			changedReportedClasses.add(classId);
+	}
+
+	/**
+	 * Counts of all classes are removed, so all reported classes have changed.
+	 */
+	private void clearClassInstancesPerProperty() {
+		if (changedReportedClasses != null)
+			changedReportedClasses.addAll(classInstancesPerPropertyMap.keySet());
+		classInstancesPerPropertyMap = new HashMap<Integer, Map<Integer, Integer>>();
 	}
 	
 	/**
-	 * Only needed for triple stream mode.
+	 * Only needed for triple stream mode after merging, and with a memory
+	 * budget, where the subjects are read back from the sorted runs.
 	 */
 	private void update() {
+		if (!updated && subjectSorter != null) {
+			clearClassInstancesPerProperty();
+			SubjectCursor c = new SubjectCursor(subjectSorter);
+			while (c.next())
+				for (int i = 0; i < c.getNumClasses(); i++)
+					for (int j = 0; j < c.getNumProperties(); j++)
+						increaseClassInstancesPerProperty(c.getClasses()[i],
+								c.getProperties()[j], 1);
+			updated = true;
+		}
 		if (!updated) {
-			classInstancesPerPropertyMap = new HashMap<String, Map<String, Integer>>();
+			clearClassInstancesPerProperty();
 
-			for (Map.Entry<String, Set<String>> propertyEntry : propSubjectMap
+			for (Map.Entry<Integer, Set<Integer>> subjectEntry : subjectPropMap
 					.entrySet()) {
-				String propertyUri = propertyEntry.getKey();
-				
-
-				for (String subjectUri : propertyEntry.getValue()) {
-					Set<String> subjectClasses = subjectClassMap.get(subjectUri);
-					if (subjectClasses != null)
-						for (String classUri : subjectClasses) {
-							increaseClassInstancesPerProperty(classUri, propertyUri, 1);
+				int s = subjectEntry.getKey();
+				int numClasses = typeIndex.getNumClasses(s);
+				if (numClasses > 0)
+					for (int property : subjectEntry.getValue())
+						for (int i = 0; i < numClasses; i++) {
+							increaseClassInstancesPerProperty(
+									typeIndex.getClass(s, i), property, 1);
 						}
-				}
 			}
+			updated = true;
 		}
 	}
 
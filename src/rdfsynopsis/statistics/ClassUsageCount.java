@@ -1,23 +1,30 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.IntCounter;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 
 public class ClassUsageCount extends StatisticalCriterion {
+
+	private static final long	serialVersionUID	= 1L;
+	
+	private IntCounter classUsageMap;
+	// counts reported by getChangedResults()
+	private transient IntCounter reportedCounts;
 	
-	private Map<String, Integer> classUsageMap;
+	private int typeId;
 	
 	
 	public ClassUsageCount() {
@@ -31,9 +38,9 @@ public class ClassUsageCount extends StatisticalCriterion {
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
 		ps.println("Result: number of classes used = " + getNumUsedClasses());
-		for (Map.Entry<String, Integer> e : classUsageMap.entrySet()) {
-			ps.println("Result: " + e.getValue() + " instances  for class " + e.getKey());
-		}
+		IntCounter.Cursor c = classUsageMap.cursor();
+		while (c.next())
+			ps.println("Result: " + c.getCount() + " instances  for class " + dictionary.decode(c.getKey()));
 
 
 	}
@@ -49,42 +56,32 @@ public class ClassUsageCount extends StatisticalCriterion {
 			if (qs.contains("?class") && qs.contains("?numInstances")) { // valid solution
 				String classUri = qs.getResource("?class").getURI();
 				int numInstances = qs.getLiteral("?numInstances").getInt();
-				classUsageMap.put(classUri, numInstances);
+				classUsageMap.add(dictionary.encodeURI(classUri), numInstances);
 			} else // invalid solution
 				logger.debug("invalid solution: " + qs);
 					
 		}
 		
-		logger.debug("classesUsageMap:\n"+classUsageMap.toString());
+		logger.debug("classesUsageMap:\n"+dictionary.decodeKeys(classUsageMap));
 	}
 	
 
 	
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		String type = Namespace.RDF.getFullTerm("type");
-		
-		if (p.getURI().equals(type) || p.getURI().equals("a")) {
-			assert o instanceof Resource;
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
-			
-			String classUri = ((Resource)o).getURI();
+	public void considerTriple(int s, int p, int o) {
+		if (p == typeId) {
+			assert !TermDictionary.isLiteral(o);
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 			
-			Integer numInstances = classUsageMap.get(classUri);
-			if (numInstances == null)
-				numInstances = 0;
-			classUsageMap.put(classUri,numInstances+1);
+			classUsageMap.add(o, 1);
 		}
 		
 	}
 
 	public long getNumInstances(String classUri) {
-		if (classUsageMap.containsKey(classUri))
-			return classUsageMap.get(classUri).longValue();
-		else return 0;
+		int classId = dictionary.lookupURI(classUri);
+		return classUsageMap.get(classId);
 	}
 	
 	public long getNumInstances(Resource classRes) {
@@ -96,31 +93,65 @@ public class ClassUsageCount extends StatisticalCriterion {
 	}
 
 	public Set<String> getClassUris() {
-		return classUsageMap.keySet();
+		return dictionary.decodeKeys(classUsageMap).keySet();
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		ClassUsageCount o2 = (ClassUsageCount) other;
+		mergeCounts(classUsageMap, o2.classUsageMap, o2);
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
-		for (Map.Entry<String, Integer> e : classUsageMap.entrySet()) {
-			m.put(e.getKey()+"_classUsage", e.getValue());
-		}
+		IntCounter.Cursor c = classUsageMap.cursor();
+		while (c.next())
+			m.put(dictionary.decode(c.getKey())+"_classUsage", c.getCount());
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		if (reportedCounts == null)
+			reportedCounts = new IntCounter();
+		Map<String, Object> m = new HashMap<String, Object>();
+		putChangedCounts(m, classUsageMap, reportedCounts, "", "_classUsage");
+		return m;
+	}
+
+	@Override
+	public void resetChangedResults() {
+		reportedCounts = null;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof ClassUsageCount) {
 			ClassUsageCount o2 = (ClassUsageCount) o;
 			return o2.getNumUsedClasses() == this.getNumUsedClasses() &&
-					o2.classUsageMap.equals(this.classUsageMap);
+					o2.dictionary.decodeKeys(o2.classUsageMap).equals(
+							this.dictionary.decodeKeys(this.classUsageMap));
 		}
 		else return false;
 	}
 
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDF.getFullTerm("type"));
+	}
+
+	@Override
+	public boolean consumesSubjects() {
+		// counts the classes of the type triples only
+		return false;
+	}
+
 	@Override
 	public void init() {		
-		classUsageMap = new HashMap<String, Integer>();
+		classUsageMap = new IntCounter();
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
 	}
 	
 
@@ -1,35 +1,61 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.ExternalSorter;
+import rdfsynopsis.util.IntBitmap;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class CommonProperties extends StatisticalCriterion {
+public class CommonProperties extends SpillableCriterion implements
+		TypeIndex.Listener {
 
+	private static final long	serialVersionUID	= 1L;
 
 
-	private Map<String, Set<String>>			classCommonPropertyMap;
+	private Map<Integer, Set<Integer>>			classCommonPropertyMap;
 
-	private Map<String, Map<String, Integer>>	classInstancesPerPropertyMap;
-	private Map<String, Set<String>>			classInstanceMap;
+	private Map<Integer, IntBitmap>				propSubjectMap;
 
-	private Map<String, Set<String>>			subjectClassMap;
-	private Map<String, Set<String>>			propSubjectMap;
+	// classes and properties whose instances / subjects changed since the
+	// last update
+	private Set<Integer>						changedClasses;
+	private Set<Integer>						changedProperties;
+
+	// with a memory budget: (subject, CLASS or PROPERTY, id) instead of the
+	// type index and the subject bitmaps
+	private ExternalSorter						subjectSorter;
+
+	// with a subject window: current subject and the properties of all
+	// instances of each class so far (ascending) instead of the type index
+	// and the subject bitmaps
+	private SubjectWindow						window;
+	private Map<Integer, int[]>					classCandidates;
 
 	private boolean								updated	= true;
 
+	// common properties reported by getChangedResults() and the classes
+	// whose common properties changed since, null before the first call
+	private transient Map<Integer, Map<Integer, Integer>>	reportedCommonProperties;
+	private transient Set<Integer>							changedReportedClasses;
+
+	private int									typeId;
+
 	public CommonProperties() {
 		logger = Logger.getLogger(CommonProperties.class);
 		logger.trace("logger created");
@@ -44,11 +70,11 @@ public class CommonProperties extends StatisticalCriterion {
 			update();
 		logger.debug("flushLog");
 		
-		for (Map.Entry<String, Set<String>> outerEntry : classCommonPropertyMap
+		for (Map.Entry<Integer, Set<Integer>> outerEntry : classCommonPropertyMap
 				.entrySet()) {
-			for (String commonProperty : outerEntry.getValue())
-			ps.println("Result for class <" + outerEntry.getKey() + ">: "
-					+" common property " + commonProperty);
+			for (int commonProperty : outerEntry.getValue())
+			ps.println("Result for class <" + dictionary.decode(outerEntry.getKey()) + ">: "
+					+" common property " + dictionary.decode(commonProperty));
 	
 		}
 
@@ -64,10 +90,10 @@ public class CommonProperties extends StatisticalCriterion {
 			if (qs.contains("?class") && qs.contains("?property")) {
 				// valid solution
 
-				String classUri = qs.getResource("?class").getURI();
-				String propertyUri = qs.getResource("?property").getURI();
+				int classId = dictionary.encodeURI(qs.getResource("?class").getURI());
+				int property = dictionary.encodeURI(qs.getResource("?property").getURI());
 				
-				addCommonProperty(classUri, propertyUri);
+				addCommonProperty(classId, property);
 
 			} else
 			// invalid solution
@@ -78,72 +104,179 @@ public class CommonProperties extends StatisticalCriterion {
 
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public boolean supportsSubjectWindow() {
+		return true;
+	}
 
-		String subjectUri = s.getURI();
-		String propertyUri = p.getURI();
+	@Override
+	public boolean isClassAware() {
+		return !isSpilling() && !subjectWindow;
+	}
 
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");		
+	@Override
+	public void typeAdded(int s, int classId) {
+		if (subjectSorter == null && window == null) {
+			changedClasses.add(classId);
+			updated = false;
+		}
+	}
+
+	@Override
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+
+		if (window != null) {
+			if (p == typeId && TermDictionary.isURI(o))
+				window.addClass(o);
+			else window.addProperty(p);
+			updated = false;
+			return;
+		}
+
+		if (subjectSorter != null) {
+			if (p == typeId && TermDictionary.isURI(o))
+				subjectSorter.add(s, CLASS, o);
+			else subjectSorter.add(s, PROPERTY, p);
+			updated = false;
+			return;
+		}
 
 		// class instance?
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((propertyUri.equals(type) || propertyUri.equals("a"))
-				&& o.isURIResource()) {
-			String classUri = ((Resource) o).getURI();
-
-			// add to subject's classes
-			Set<String> classes = subjectClassMap.get(subjectUri);
-			if (classes == null)
-				classes = new HashSet<String>();
-			classes.add(classUri);
-			subjectClassMap.put(subjectUri, classes);
-			
-			// add to classes' instances
-			Set<String> instances = classInstanceMap.get(classUri);
-			if (instances == null)
-				instances = new HashSet<String>();
-			instances.add(subjectUri);
-			classInstanceMap.put(classUri, instances);
+		if (p == typeId && TermDictionary.isURI(o)) {
+			typeIndex.addType(s, o);
 			
 		} else {
 
 			// add to property's subjects
-			Set<String> subjects = propSubjectMap.get(propertyUri);
-			if (subjects == null)
-				subjects = new HashSet<String>();
-			subjects.add(subjectUri);
-			propSubjectMap.put(propertyUri, subjects);
+			IntBitmap subjects = propSubjectMap.get(p);
+			if (subjects == null) {
+				subjects = new IntBitmap();
+				propSubjectMap.put(p, subjects);
+			}
+			if (subjects.add(s))
+				changedProperties.add(p);
 			
 		}
 
 		updated = false;
 	}
 	
+	/**
+	 * The candidates of the classes of the subject are narrowed down to its
+	 * properties.
+	 */
+	@Override
+	public void endSubject() {
+		int[] properties = window.getSortedProperties();
+		for (int i = 0; i < window.getNumClasses(); i++)
+			addCandidates(classCandidates, window.getClasses()[i], properties,
+					properties.length);
+		window.clear();
+		updated = false;
+	}
+
+	/**
+	 * A class has the properties common to all its instances so far as
+	 * candidates.
+	 */
+	private static void addCandidates(Map<Integer, int[]> candidates,
+			int classId, int[] properties, int numProperties) {
+		int[] classCandidates = candidates.get(classId);
+		candidates.put(classId, classCandidates == null ? Arrays.copyOf(
+				properties, numProperties) : intersect(classCandidates,
+				properties, numProperties));
+	}
+
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		CommonProperties o2 = (CommonProperties) other;
+		if (window != null) {
+			for (Map.Entry<Integer, int[]> e : o2.classCandidates.entrySet()) {
+				int[] properties = new int[e.getValue().length];
+				for (int i = 0; i < properties.length; i++)
+					properties[i] = translate(o2, e.getValue()[i]);
+				Arrays.sort(properties);
+				addCandidates(classCandidates, translate(o2, e.getKey()),
+						properties, properties.length);
+			}
+			updated = false;
+			return;
+		}
+		if (subjectSorter != null) {
+			mergeSorter(subjectSorter, o2.subjectSorter, o2, new boolean[] {
+					true, false, true });
+			updated = false;
+			return;
+		}
+		mergeTypeIndex(o2);
+		mergeBitmaps(propSubjectMap, o2.propSubjectMap, o2);
+		changedClasses.addAll(typeIndex.getClassIds());
+		changedProperties.addAll(propSubjectMap.keySet());
+		updated = false;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		
 		update();
 		
-		for (Map.Entry<String, Set<String>> outerEntry : classCommonPropertyMap
+		for (Map.Entry<Integer, Set<Integer>> outerEntry : classCommonPropertyMap
 				.entrySet()) {
-			for (String commonProperty : outerEntry.getValue())
-				m.put(outerEntry.getKey() + "_classWithCommonProperty_" + commonProperty, 1);
+			for (int commonProperty : outerEntry.getValue())
+				m.put(dictionary.decode(outerEntry.getKey()) + "_classWithCommonProperty_"
+						+ dictionary.decode(commonProperty), 1);
 		}
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		update();
+		if (reportedCommonProperties == null) {
+			reportedCommonProperties = new HashMap<Integer, Map<Integer, Integer>>();
+			changedReportedClasses = new HashSet<Integer>(
+					classCommonPropertyMap.keySet());
+		}
+		Map<String, Object> m = new HashMap<String, Object>();
+		for (int classId : changedReportedClasses) {
+			Map<Integer, Integer> values = new HashMap<Integer, Integer>();
+			Set<Integer> commonProperties = classCommonPropertyMap.get(classId);
+			if (commonProperties != null)
+				for (int property : commonProperties)
+					values.put(property, 1);
+			putChangedValues(m, classId, values, reportedCommonProperties,
+					"_classWithCommonProperty_");
+		}
+		changedReportedClasses.clear();
+		return m;
+	}
+
+	@Override
+	public void resetChangedResults() {
+		reportedCommonProperties = null;
+		changedReportedClasses = null;
+	}
+
 	@Override
 	public void init() {
 		updated = true;
-		classInstancesPerPropertyMap = new HashMap<String, Map<String, Integer>>();
-		subjectClassMap = new HashMap<String, Set<String>>();
-		classInstanceMap = new HashMap<String, Set<String>>();
-		propSubjectMap = new HashMap<String, Set<String>>();
-		classCommonPropertyMap  = new HashMap<String, Set<String>>();
+		if (subjectSorter != null)
+			subjectSorter.close();
+		// a subject window needs no sorter
+		subjectSorter = isSpilling() && !subjectWindow ? createSorter(3) : null;
+		window = subjectWindow ? new SubjectWindow() : null;
+		classCandidates = new HashMap<Integer, int[]>();
+		typeIndex.clear();
+		propSubjectMap = new HashMap<Integer, IntBitmap>();
+		changedClasses = new HashSet<Integer>();
+		changedProperties = new HashSet<Integer>();
+		if (classCommonPropertyMap != null)
+			reportedClassesChanged(classCommonPropertyMap.keySet());
+		classCommonPropertyMap  = new HashMap<Integer, Set<Integer>>();
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
 	}
 	
 	@Override
@@ -152,78 +285,141 @@ public class CommonProperties extends StatisticalCriterion {
 			CommonProperties o2 = (CommonProperties) o;
 			this.update();
 			o2.update();
-			return o2.classCommonPropertyMap.equals(this.classCommonPropertyMap);
+			return o2.dictionary.decodeSets(o2.classCommonPropertyMap)
+					.equals(this.dictionary.decodeSets(this.classCommonPropertyMap));
 		}
 		else return false;
 	}
 	
-	private void addCommonProperty(String classUri,	String propertyUri) {
-		assert classUri != null;
-		assert propertyUri != null;
-		
+	private void addCommonProperty(int classId,	int property) {
 		// add to class' common properties
-		Set<String> commonProperties = classCommonPropertyMap.get(classUri);
+		Set<Integer> commonProperties = classCommonPropertyMap.get(classId);
 		if (commonProperties == null)
-			commonProperties = new HashSet<String>();
-		commonProperties.add(propertyUri);
-		classCommonPropertyMap.put(classUri, commonProperties);
+			commonProperties = new HashSet<Integer>();
+		if (commonProperties.add(property) && changedReportedClasses != null)
+			changedReportedClasses.add(classId);
+		classCommonPropertyMap.put(classId, commonProperties);
 	}
-	
-	private void increaseClassInstancesPerProperty(String classUri,
-			String propertyUri, Integer val) {
-		assert classUri != null;
-		assert propertyUri != null;
-
-		Map<String, Integer> m = classInstancesPerPropertyMap.get(classUri);
-		if (m == null)
-			m = new HashMap<String, Integer>();
-		Integer numInstances = m.get(propertyUri);
-		if (numInstances == null)
-			numInstances = 0;
-		m.put(propertyUri, numInstances + val);
-		classInstancesPerPropertyMap.put(classUri, m);
+
+	/**
+	 * Classes whose common properties may have changed since they were
+	 * reported, only tracked after the first getChangedResults().
+	 */
+	private void reportedClassesChanged(Set<Integer> classIds) {
+		if (changedReportedClasses != null)
+			changedReportedClasses.addAll(classIds);
 	}
 	
 	/**
 	 * Only needed for triple stream mode.
+	 * 
+	 * A property is common to a class if all instances of the class are
+	 * subjects of the property. Instances and subjects are only ever added,
+	 * so only changed classes have to be tested against all properties, and
+	 * changed properties against the unchanged classes. Properties are sorted
+	 * by number of subjects, so that properties with fewer subjects than the
+	 * class has instances are never tested.
 	 */
 	private void update() {
+		if (!updated && window != null) {
+			setCommonProperties(classCandidates);
+			updated = true;
+		}
+		if (!updated && subjectSorter != null) {
+			updateFromSorter();
+			updated = true;
+		}
 		if (!updated) {
-			classInstancesPerPropertyMap = new HashMap<String, Map<String, Integer>>();
-			classCommonPropertyMap  = new HashMap<String, Set<String>>();
-
-			// count number of class instances per property
-			for (Map.Entry<String, Set<String>> propertyEntry : propSubjectMap
-					.entrySet()) {
-				String propertyUri = propertyEntry.getKey();
-				
-
-				for (String subjectUri : propertyEntry.getValue()) {
-					Set<String> subjectClasses = subjectClassMap.get(subjectUri);
-					if (subjectClasses != null)
-						for (String classUri : subjectClasses) {
-							increaseClassInstancesPerProperty(classUri, propertyUri, 1);
-						}
+			List<Integer> properties = new ArrayList<Integer>(propSubjectMap.keySet());
+			Collections.sort(properties, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer p1, Integer p2) {
+					return propSubjectMap.get(p2).getCardinality()
+							- propSubjectMap.get(p1).getCardinality();
+				}
+			});
+			
+			// changed classes: choose properties that all instances have
+			reportedClassesChanged(changedClasses);
+			for (int classId : changedClasses) {
+				classCommonPropertyMap.remove(classId);
+				IntBitmap instances = typeIndex.getInstances(classId);
+				for (int property : properties) {
+					IntBitmap subjects = propSubjectMap.get(property);
+					if (subjects.getCardinality() < instances.getCardinality())
+						break;
+					if (instances.isSubsetOf(subjects))
+						addCommonProperty(classId, property);
 				}
 			}
 			
-			// choose properties that all instances of a class have
-			for (Map.Entry<String, Map<String, Integer>> outerEntry : classInstancesPerPropertyMap
-					.entrySet()) {
-				String classUri = outerEntry.getKey();
-				Integer numClassInstances = classInstanceMap.get(classUri).size();
-				for (Map.Entry<String, Integer> innerEntry : outerEntry.getValue() 
-						.entrySet()) {
-					String propertyUri = innerEntry.getKey();
-					Integer numInstancesPerProperty = innerEntry.getValue();
-					if(numInstancesPerProperty.equals(numClassInstances))
-						addCommonProperty(classUri, propertyUri);
-
+			// unchanged classes: common properties stay common, changed
+			// properties may have become common
+			for (int property : changedProperties) {
+				IntBitmap subjects = propSubjectMap.get(property);
+				for (int classId : typeIndex.getClassIds()) {
+					IntBitmap instances = typeIndex.getInstances(classId);
+					if (!changedClasses.contains(classId)
+							&& subjects.getCardinality() >= instances.getCardinality()
+							&& instances.isSubsetOf(subjects))
+						addCommonProperty(classId, property);
 				}
 			}
+			
+			changedClasses.clear();
+			changedProperties.clear();
 			updated = true;
 		}
 	}
 
+	/**
+	 * Memory budget mode: the candidates of a class are the properties of
+	 * its first instance, narrowed down to the properties of every further
+	 * instance, subject by subject in the order of the sorted runs.
+	 */
+	private void updateFromSorter() {
+		// class -> properties of all its instances so far, ascending
+		Map<Integer, int[]> candidates = new HashMap<Integer, int[]>();
+		SubjectCursor c = new SubjectCursor(subjectSorter);
+		while (c.next())
+			for (int i = 0; i < c.getNumClasses(); i++)
+				addCandidates(candidates, c.getClasses()[i], c.getProperties(),
+						c.getNumProperties());
+		setCommonProperties(candidates);
+	}
+
+	/**
+	 * @param candidates
+	 *            class -> properties of all its instances
+	 */
+	private void setCommonProperties(Map<Integer, int[]> candidates) {
+		reportedClassesChanged(classCommonPropertyMap.keySet());
+		classCommonPropertyMap = new HashMap<Integer, Set<Integer>>();
+		for (Map.Entry<Integer, int[]> e : candidates.entrySet())
+			for (int property : e.getValue())
+				addCommonProperty(e.getKey(), property);
+	}
+
+	/**
+	 * @return values of a that are among the first n values of b, both
+	 *         ascending
+	 */
+	private static int[] intersect(int[] a, int[] b, int n) {
+		int[] common = new int[Math.min(a.length, n)];
+		int size = 0;
+		for (int i = 0, j = 0; i < a.length && j < n;) {
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else {
+				common[size++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return size == common.length ? common : Arrays.copyOf(common, size);
+	}
+
 
 }
@@ -8,17 +8,18 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.TermDictionary;
+
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class DistinctSubjectOnlyBlanks extends StatisticalCriterion {
 
+	private static final long	serialVersionUID	= 1L;
+
 	private int			numSubjectOnlyBlanks	= -1;
-	private Set<String>	subjectOnlyBlanks;
-	private Set<String>	objectBlanks;
+	private Set<Integer>	subjectOnlyBlanks;
+	private Set<Integer>	objectBlanks;
 
 	public DistinctSubjectOnlyBlanks() {
 		logger = Logger.getLogger(DistinctSubjectOnlyBlanks.class);
@@ -52,29 +53,26 @@ public class DistinctSubjectOnlyBlanks extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		
+	public void considerTriple(int s, int p, int o) {
 		if (numSubjectOnlyBlanks == -1)
 			numSubjectOnlyBlanks = 0;
 
 		// subject
-		if (s.isAnon() && !objectBlanks.contains(s.getId().getLabelString())) {
-			logger.trace("using triple's subject (" + s + " " + p + " " + o + ")");
+		if (TermDictionary.isBlank(s) && !objectBlanks.contains(s)) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple's subject (" + s + " " + p + " " + o + ")");
 
-			subjectOnlyBlanks.add(s.getId().getLabelString());
+			subjectOnlyBlanks.add(s);
 			numSubjectOnlyBlanks = subjectOnlyBlanks.size();
 		}
 
 		// object
-		if (o.isAnon()) {
-			Resource oRes = (Resource)o;
-			logger.trace("using triple's object (" + s + " " + p + " " + o + ")");
+		if (TermDictionary.isBlank(o)) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple's object (" + s + " " + p + " " + o + ")");
 			
-			objectBlanks.add(oRes.getId().getLabelString());
-			subjectOnlyBlanks.remove(oRes.getId().getLabelString());
+			objectBlanks.add(o);
+			subjectOnlyBlanks.remove(o);
 			numSubjectOnlyBlanks = subjectOnlyBlanks.size();
 		}
 
@@ -91,6 +89,18 @@ public class DistinctSubjectOnlyBlanks extends StatisticalCriterion {
 		return numSubjectOnlyBlanks;
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		DistinctSubjectOnlyBlanks o2 = (DistinctSubjectOnlyBlanks) other;
+		if (o2.numSubjectOnlyBlanks == -1)
+			return;
+		objectBlanks.addAll(translate(o2, o2.objectBlanks));
+		subjectOnlyBlanks.addAll(translate(o2, o2.subjectOnlyBlanks));
+		subjectOnlyBlanks.removeAll(objectBlanks);
+		numSubjectOnlyBlanks = subjectOnlyBlanks.size();
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -98,6 +108,11 @@ public class DistinctSubjectOnlyBlanks extends StatisticalCriterion {
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof DistinctSubjectOnlyBlanks) {
@@ -107,10 +122,15 @@ public class DistinctSubjectOnlyBlanks extends StatisticalCriterion {
 		else return false;
 	}
 
+	@Override
+	public boolean consumesPredicates() {
+		return false;
+	}
+
 	@Override
 	public void init() {
 		numSubjectOnlyBlanks = -1;
-		subjectOnlyBlanks = new HashSet<String>();
-		objectBlanks = new HashSet<String>();
+		subjectOnlyBlanks = new HashSet<Integer>();
+		objectBlanks = new HashSet<Integer>();
 	}
 }
@@ -8,16 +8,22 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.HyperLogLog;
+import rdfsynopsis.util.TermDictionary;
+
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class DistinctSubjectsBlank extends StatisticalCriterion {
+public class DistinctSubjectsBlank extends CardinalityCriterion {
+
+	private static final long	serialVersionUID	= 1L;
 
 	private int numSubjectsBlank = -1;
-	private Set<String> blankSubjects;
+	private double error = 0;
+	private Set<Integer> blankSubjects;
+	// approximate mode
+	private HyperLogLog blankSubjectSketch;
+	boolean updated = true;
 
 	public DistinctSubjectsBlank() {
 		logger = Logger.getLogger(DistinctSubjectsBlank.class);
@@ -48,18 +54,27 @@ public class DistinctSubjectsBlank extends StatisticalCriterion {
 	}
 	
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		
+	public void startStream() {
+		// a stream may not contain any blank subject
+		if (numSubjectsBlank == -1)
+			numSubjectsBlank = 0;
+	}
+
+	@Override
+	public void considerTriple(int s, int p, int o) {
 		if (numSubjectsBlank == -1)
 			numSubjectsBlank = 0;
 		
-		if (s.isAnon()) {
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
-			blankSubjects.add(s.getId().getLabelString());
-			numSubjectsBlank = blankSubjects.size();
+		if (TermDictionary.isBlank(s)) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
+			if (isApproximate()) {
+				blankSubjectSketch.offer(hash(s));
+				updated = false;
+			} else {
+				blankSubjects.add(s);
+				numSubjectsBlank = blankSubjects.size();
+			}
 		}
 		
 	}
@@ -67,19 +82,57 @@ public class DistinctSubjectsBlank extends StatisticalCriterion {
 	@Override
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
-		ps.println("Result: number of distinct blank nodes = " + numSubjectsBlank);
+		String result = "Result: number of distinct blank nodes = "
+				+ getNumDistinctSubjectsBlank();
+		if (isApproximate())
+			result += " (+/- " + getError() + ")";
+		ps.println(result);
 	}
 
 	public int getNumDistinctSubjectsBlank() {
+		update();
 		return numSubjectsBlank;
 	}
+
+	/**
+	 * @return standard error of the number of distinct blank subjects, 0 if
+	 *         counted exactly
+	 */
+	public double getError() {
+		update();
+		return error;
+	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		DistinctSubjectsBlank o2 = (DistinctSubjectsBlank) other;
+		if (o2.numSubjectsBlank == -1)
+			return;
+		if (isApproximate()) {
+			blankSubjectSketch.merge(o2.blankSubjectSketch);
+			if (numSubjectsBlank == -1)
+				numSubjectsBlank = 0;
+			updated = false;
+		} else {
+			blankSubjects.addAll(translate(o2, o2.blankSubjects));
+			numSubjectsBlank = blankSubjects.size();
+		}
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("DistinctSubjectsBlank", Integer.valueOf(getNumDistinctSubjectsBlank()));
+		if (isApproximate())
+			m.put("DistinctSubjectsBlankError", Double.valueOf(getError()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -90,10 +143,39 @@ public class DistinctSubjectsBlank extends StatisticalCriterion {
 		else return false;
 	}
 
+	@Override
+	public boolean considersSubjectKind(int kind) {
+		return kind == TermDictionary.BLANK;
+	}
+
+	@Override
+	public boolean consumesPredicates() {
+		return false;
+	}
+
+	@Override
+	public boolean consumesObjects() {
+		return false;
+	}
+
 	@Override
 	public void init() {
 		numSubjectsBlank = -1;
-		blankSubjects = new HashSet<String>();		
+		error = 0;
+		blankSubjects = new HashSet<Integer>();
+		blankSubjectSketch = isApproximate() ? createSketch() : null;
+		updated = true;
+	}
+
+	/**
+	 * Only needed for approximate triple stream mode.
+	 */
+	private void update() {
+		if (!updated) {
+			numSubjectsBlank = (int) blankSubjectSketch.estimate();
+			error = numSubjectsBlank * blankSubjectSketch.getRelativeError();
+			updated = true;
+		}
 	}
 
 }
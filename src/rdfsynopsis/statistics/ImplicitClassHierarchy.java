@@ -1,33 +1,36 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.IntBitmap;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class ImplicitClassHierarchy extends StatisticalCriterion {
 
+	private static final long	serialVersionUID	= 1L;
 
 
-	private Map<String, Set<String>>	subSuperClassMap;
-
-	// Save class instances for post processing (TSA)
-	// class -> ({instance})
-	private Map<String, Set<String>>	classInstances;
+	private Map<Integer, Set<Integer>>	subSuperClassMap;
 
 	boolean											updated	= true;
 
+	private int							typeId;
+	private int							resourceId;
+
 	public ImplicitClassHierarchy() {
 		logger = Logger.getLogger(ImplicitClassHierarchy.class);
 		logger.trace("logger created");
@@ -42,12 +45,12 @@ public class ImplicitClassHierarchy extends StatisticalCriterion {
 		update();
 		
 		ps.println("Implicit Class Hierarchy:");
-		for (String subClass : subSuperClassMap.keySet()) {
-			ps.println(subClass + " implicit subclass of");
-			Set<String> superClasses = subSuperClassMap.get(subClass);
+		for (Integer subClass : subSuperClassMap.keySet()) {
+			ps.println(dictionary.decode(subClass) + " implicit subclass of");
+			Set<Integer> superClasses = subSuperClassMap.get(subClass);
 			if (superClasses != null)
-				for (String superClass : superClasses) {
-					ps.println("-> "+superClass);
+				for (Integer superClass : superClasses) {
+					ps.println("-> "+dictionary.decode(superClass));
 				}
 		}
 	}
@@ -65,7 +68,8 @@ public class ImplicitClassHierarchy extends StatisticalCriterion {
 				String subClassUri = qs.getResource("?subClass").getURI();
 				String superClassUri = qs.getResource("?superClass").getURI();
 
-				addHierarchyEdge(subClassUri, superClassUri);
+				addHierarchyEdge(dictionary.encodeURI(subClassUri),
+						dictionary.encodeURI(superClassUri));
 
 			} else
 			// invalid solution
@@ -75,31 +79,33 @@ public class ImplicitClassHierarchy extends StatisticalCriterion {
 
 	}
 
-	private void addHierarchyEdge(String subClassUri, String superClassUri) {
-		Set<String> superClasses = subSuperClassMap.get(subClassUri);
+	private void addHierarchyEdge(Integer subClass, Integer superClass) {
+		Set<Integer> superClasses = subSuperClassMap.get(subClass);
 		if (superClasses == null)
-			superClasses = new HashSet<String>();
-		superClasses.add(superClassUri);
-		subSuperClassMap.put(subClassUri, superClasses);
+			superClasses = new HashSet<Integer>();
+		superClasses.add(superClass);
+		subSuperClassMap.put(subClass, superClasses);
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		String type = Namespace.RDF.getFullTerm("type");
-		String resource = Namespace.RDFS.getFullTerm("Resource");
-
-		// add class instances
-		if (p.getURI().equals(type) && !((Resource)o).toString().equals(resource)) {
-			String classUri = ((Resource)o).toString();
-			Set<String> instances = classInstances.get(classUri);
-			if (instances == null)
-				instances = new HashSet<String>();
-			instances.add(s.toString());
-			classInstances.put(classUri, instances);
-		}
+	public boolean isClassAware() {
+		return true;
+	}
+
+	/**
+	 * Class instances are saved in the type index for post processing.
+	 */
+	@Override
+	public void considerTriple(int s, int p, int o) {
+		if (p == typeId && TermDictionary.isURI(o))
+			typeIndex.addType(s, o);
+		updated = false;
+	}
+
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		mergeTypeIndex(other);
 		updated = false;
 	}
 
@@ -111,40 +117,79 @@ public class ImplicitClassHierarchy extends StatisticalCriterion {
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// no results yet, skip the update of getResultMap()
+		return new HashMap<String, Object>();
+	}
+
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDF.getFullTerm("type"));
+	}
+
 	@Override
 	public void init() {
-		subSuperClassMap = new HashMap<String, Set<String>>();
-		classInstances = new HashMap<String, Set<String>>();
+		subSuperClassMap = new HashMap<Integer, Set<Integer>>();
+		typeIndex.clear();
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
+		resourceId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Resource"));
 	}
 
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof ImplicitClassHierarchy) {
 			ImplicitClassHierarchy o2 = (ImplicitClassHierarchy) o;
-			return o2.subSuperClassMap.equals(this.subSuperClassMap);
+			return o2.decodeHierarchy().equals(this.decodeHierarchy());
 		}
 		else return false;
 	}
 
+	private Map<String, Set<String>> decodeHierarchy() {
+		Map<String, Set<String>> m = new HashMap<String, Set<String>>();
+		for (Map.Entry<Integer, Set<Integer>> e : subSuperClassMap.entrySet())
+			m.put(dictionary.decode(e.getKey()), dictionary.decode(e.getValue()));
+		return m;
+	}
+
 	/**
 	 * Only needed for triple stream mode.
+	 * 
+	 * Classes are sorted by number of instances, so that only classes with at
+	 * least as many instances are tested as super classes.
 	 */
 	private void update() {
 		if (!updated) {
 
-			subSuperClassMap = new HashMap<String, Set<String>>();
+			subSuperClassMap = new HashMap<Integer, Set<Integer>>();
+
+			// every class is a subclass of rdfs:Resource
+			List<Integer> classes = new ArrayList<Integer>(typeIndex.getClassIds());
+			classes.remove(Integer.valueOf(resourceId));
+			Collections.sort(classes, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer c1, Integer c2) {
+					return typeIndex.getInstances(c1).getCardinality()
+							- typeIndex.getInstances(c2).getCardinality();
+				}
+			});
 
 			// find parallel class usage
-			for (String c : classInstances.keySet()) {				
-				Set<String> cInstances = classInstances.get(c);				
-				for (String superC : classInstances.keySet()) {
-					if (!c.equals(superC)) {						
-						Set<String> superCInstances = classInstances.get(superC);						
-						if (superCInstances.containsAll(cInstances)) {
-							addHierarchyEdge(c, superC);
-						}						
-					}						
-				}				
+			int sameSizeStart = 0;
+			for (int i = 0; i < classes.size(); i++) {
+				Integer c = classes.get(i);
+				IntBitmap cInstances = typeIndex.getInstances(c);
+
+				// classes of the same size may precede c
+				if (i > 0 && typeIndex.getInstances(classes.get(i - 1))
+						.getCardinality() < cInstances.getCardinality())
+					sameSizeStart = i;
+				for (int j = sameSizeStart; j < classes.size(); j++) {
+					Integer superC = classes.get(j);
+					if (!c.equals(superC)
+							&& cInstances.isSubsetOf(typeIndex.getInstances(superC)))
+						addHierarchyEdge(c, superC);
+				}
 			}
 			updated = true;
 		}
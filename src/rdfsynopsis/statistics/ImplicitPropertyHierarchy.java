@@ -3,25 +3,25 @@ package rdfsynopsis.statistics;
 import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.ExternalSorter;
+
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class ImplicitPropertyHierarchy extends StatisticalCriterion {
+public class ImplicitPropertyHierarchy extends SpillableCriterion {
+
+	private static final long	serialVersionUID	= 1L;
 
-	private Map<String, Set<String>>	subSuperPropMap;
+	private Map<Integer, Set<Integer>>	subSuperPropMap;
 
 	// Save streamed triples for post processing
-	// property -> (subject -> {object})
-	private Map<String, Map<String, Set<String>>>	triplesPerProperty;
+	// (subject, object, property), spilled with a memory budget
+	private ExternalSorter				triples;
 
 	boolean											updated	= true;
 
@@ -39,12 +39,12 @@ public class ImplicitPropertyHierarchy extends StatisticalCriterion {
 		update();
 		
 		ps.println("Implicit Property Hierarchy:");
-		for (String subProp : subSuperPropMap.keySet()) {
-			ps.println(subProp + "implicit subproperty of");
-			Set<String> superProps = subSuperPropMap.get(subProp);
+		for (Integer subProp : subSuperPropMap.keySet()) {
+			ps.println(dictionary.decode(subProp) + "implicit subproperty of");
+			Set<Integer> superProps = subSuperPropMap.get(subProp);
 			if (superProps != null)
-				for (String superProp : superProps) {
-					ps.println("-> "+superProp);
+				for (Integer superProp : superProps) {
+					ps.println("-> "+dictionary.decode(superProp));
 				}
 		}
 	}
@@ -62,7 +62,8 @@ public class ImplicitPropertyHierarchy extends StatisticalCriterion {
 				String subPropertyUri = qs.getResource("?subProp").getURI();
 				String superPropertyUri = qs.getResource("?superProp").getURI();
 
-				addHierarchyEdge(subPropertyUri, superPropertyUri);
+				addHierarchyEdge(dictionary.encodeURI(subPropertyUri),
+						dictionary.encodeURI(superPropertyUri));
 
 			} else
 			// invalid solution
@@ -72,35 +73,30 @@ public class ImplicitPropertyHierarchy extends StatisticalCriterion {
 
 	}
 
-	private void addHierarchyEdge(String subPropertyUri, String superPropertyUri) {
-		Set<String> superProps = subSuperPropMap.get(subPropertyUri);
+	private void addHierarchyEdge(Integer subProperty, Integer superProperty) {
+		Set<Integer> superProps = subSuperPropMap.get(subProperty);
 		if (superProps == null)
-			superProps = new HashSet<String>();
-		superProps.add(superPropertyUri);
-		subSuperPropMap.put(subPropertyUri, superProps);
+			superProps = new HashSet<Integer>();
+		superProps.add(superProperty);
+		subSuperPropMap.put(subProperty, superProps);
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-
+	public void considerTriple(int s, int p, int o) {
 		// add any triple
-		Map<String, Set<String>> subjectsPerProperty = triplesPerProperty.get(p
-				.getURI());
-		if (subjectsPerProperty == null)
-			subjectsPerProperty = new HashMap<String, Set<String>>();
-		Set<String> objects = subjectsPerProperty.get(s.toString());
-		if (objects == null)
-			objects = new HashSet<String>();
-		objects.add(o.toString());
-		subjectsPerProperty.put(s.toString(), objects);
-		triplesPerProperty.put(p.getURI(), subjectsPerProperty);
+		triples.add(s, o, p);
 
 		updated = false;
 	}
 
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		ImplicitPropertyHierarchy o2 = (ImplicitPropertyHierarchy) other;
+		mergeSorter(triples, o2.triples, o2, new boolean[] { true, true, true });
+		updated = false;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -108,60 +104,86 @@ public class ImplicitPropertyHierarchy extends StatisticalCriterion {
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// no results yet, skip the update of getResultMap()
+		return new HashMap<String, Object>();
+	}
+
+	@Override
+	public boolean consumesLiterals() {
+		// subject-object pairs include literal objects
+		return true;
+	}
+
 	@Override
 	public void init() {
-		subSuperPropMap = new HashMap<String, Set<String>>();
-		triplesPerProperty = new HashMap<String, Map<String, Set<String>>>();
+		subSuperPropMap = new HashMap<Integer, Set<Integer>>();
+		if (triples != null)
+			triples.close();
+		triples = createSorter(3);
 	}
 
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof ImplicitPropertyHierarchy) {
 			ImplicitPropertyHierarchy o2 = (ImplicitPropertyHierarchy) o;
-			return o2.subSuperPropMap.equals(this.subSuperPropMap);
+			return o2.decodeHierarchy().equals(this.decodeHierarchy());
 		}
 		else return false;
 	}
 
+	private Map<String, Set<String>> decodeHierarchy() {
+		Map<String, Set<String>> m = new HashMap<String, Set<String>>();
+		for (Map.Entry<Integer, Set<Integer>> e : subSuperPropMap.entrySet())
+			m.put(dictionary.decode(e.getKey()), dictionary.decode(e.getValue()));
+		return m;
+	}
+
 	/**
 	 * Only needed for triple stream mode.
+	 * 
+	 * A property p is a sub property of q if every (subject, object) pair of p
+	 * is a pair of q. The triples are sorted by pair, which yields the
+	 * properties sharing each pair. Only these are candidates for super
+	 * properties of p, and the candidates are narrowed down pair by pair.
 	 */
 	private void update() {
 		if (!updated) {
 
-			subSuperPropMap = new HashMap<String, Set<String>>();
-
-			// find parallel property usage
-			for (String p : triplesPerProperty.keySet()) {
-				
-				Map<String, Set<String>> pSubjects = triplesPerProperty.get(p);
-				int pNumSubjects = pSubjects.size();
-				
-				for (String superP : triplesPerProperty.keySet()) {
-					if (!p.equals(superP)) {
-						
-						Map<String, Set<String>> superPSubjects = triplesPerProperty.get(superP);
-						int superPNumSubjects = superPSubjects.size();
-						
-						if (pNumSubjects <= superPNumSubjects) {
-							boolean containsAll = true;
-							Set<String> pSub = pSubjects.keySet();
-							
-							// for all subjects: all objects contained?
-							for (Iterator<String> i = pSub.iterator(); i.hasNext() && containsAll;) {
-								String sub = i.next();
-								Set<String> pObjects = pSubjects.get(sub);
-								Set<String> superPObjects = superPSubjects.get(sub);
-								containsAll = superPObjects != null && superPObjects.containsAll(pObjects);
-							}
-							
-							// add hierarchy statement
-							if (containsAll)
-								addHierarchyEdge(p, superP);
-						}						
-					}						
-				}				
+			subSuperPropMap = new HashMap<Integer, Set<Integer>>();
+
+			// property -> properties sharing all pairs seen so far
+			Map<Integer, Set<Integer>> candidates = new HashMap<Integer, Set<Integer>>();
+			Set<Integer> sharingProps = new HashSet<Integer>();
+			ExternalSorter.Cursor c = triples.cursor();
+			boolean hasTriple = c.next();
+			while (hasTriple) {
+				// all properties of the next pair
+				int s = c.get(0);
+				int o = c.get(1);
+				sharingProps.clear();
+				do {
+					sharingProps.add(c.get(2));
+					hasTriple = c.next();
+				} while (hasTriple && c.get(0) == s && c.get(1) == o);
+
+				for (Integer p : sharingProps) {
+					Set<Integer> pCandidates = candidates.get(p);
+					if (pCandidates == null) {
+						pCandidates = new HashSet<Integer>(sharingProps);
+						pCandidates.remove(p);
+						candidates.put(p, pCandidates);
+					} else if (!pCandidates.isEmpty())
+						pCandidates.retainAll(sharingProps);
+				}
 			}
+
+			// add hierarchy statements
+			for (Map.Entry<Integer, Set<Integer>> e : candidates.entrySet())
+				for (Integer superP : e.getValue())
+					addHierarchyEdge(e.getKey(), superP);
+
 			updated = true;
 		}
 	}
@@ -6,18 +6,20 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.IntTripleCounter;
+import rdfsynopsis.util.NamespaceIndex;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class NamespaceLinks extends StatisticalCriterion {
+
+	private static final long	serialVersionUID	= 1L;
 	
-	// NS1 -> (NS2 -> (P -> numTriples))
-	private Map<String, Map<String, Map<String, Integer>>> nsLinksMap;
+	private NamespaceIndex namespaces;
+	// (NS1, P, NS2) -> numTriples
+	private IntTripleCounter nsLinks;
 
 	public NamespaceLinks() {
 		logger = Logger.getLogger(NamespaceLinks.class);
@@ -31,17 +33,13 @@ public class NamespaceLinks extends StatisticalCriterion {
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
 		
+		Map<String, Map<String, Map<String, Integer>>> nsLinksMap = getNamespaceLinks();
 		for (String ns1 : nsLinksMap.keySet()) {
 			Map<String, Map<String, Integer>> ns2Map = nsLinksMap.get(ns1);
-			if (ns2Map != null)
 			for (String ns2 : ns2Map.keySet()) {
 				Map<String, Integer> pMap = ns2Map.get(ns2);
-				if (pMap != null)
-					for (String p : pMap.keySet()) {
-						Integer numLinks = pMap.get(p);
-						if (numLinks != null)
-						ps.println("Links: " + ns1 + " -> " + ns2 + " with prop. " + p + " ("+ numLinks + ")");				
-					}
+				for (String p : pMap.keySet())
+					ps.println("Links: " + ns1 + " -> " + ns2 + " with prop. " + p + " ("+ pMap.get(p) + ")");				
 			}
 		}
 		
@@ -59,12 +57,12 @@ public class NamespaceLinks extends StatisticalCriterion {
 			if (qs.contains("?NS1") && qs.contains("?NS2") && qs.contains("?prop") && qs.contains("?numLinks")) {
 				// valid solution
 				
-				String ns1 = qs.getLiteral("?NS1").getString();
-				String ns2 = qs.getLiteral("?NS2").getString();
-				String prop = qs.getResource("?prop").getURI();
-				Integer numLinks = qs.getLiteral("?numLinks").getInt();
+				int ns1 = namespaces.encode(qs.getLiteral("?NS1").getString());
+				int ns2 = namespaces.encode(qs.getLiteral("?NS2").getString());
+				int prop = dictionary.encodeURI(qs.getResource("?prop").getURI());
+				int numLinks = qs.getLiteral("?numLinks").getInt();
 				
-				increaseNumLinks(ns1, ns2, prop, numLinks);
+				nsLinks.add(ns1, prop, ns2, numLinks);
 				
 			} else
 			// invalid solution
@@ -73,48 +71,75 @@ public class NamespaceLinks extends StatisticalCriterion {
 		}
 	}
 
-	private void increaseNumLinks(String ns1, String ns2, String prop,
-			Integer numLinks) {
-		Map<String, Map<String, Integer>> ns2Map = nsLinksMap.get(ns1);
-		if (ns2Map == null)
-			ns2Map = new HashMap<String, Map<String,Integer>>();
-		Map<String, Integer> pMap = ns2Map.get(ns2);
-		if (pMap == null)
-			pMap = new HashMap<String, Integer>();
-		Integer nLinks = pMap.get(prop);
-		if (nLinks == null)
-			nLinks = 0;
-		pMap.put(prop, nLinks + numLinks);
-		ns2Map.put(ns2, pMap);
-		nsLinksMap.put(ns1, ns2Map);
-	}
-
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;		
-		
-		if (s.isURIResource() && o.isURIResource()) {
-			String ns1 = s.getURI().replaceAll("[^/#]*$", "");
-			String ns2 = ((Resource)o).getURI().replaceAll("[^/#]*$", "");
-			
-			increaseNumLinks(ns1, ns2, p.getURI(), 1);
+	public void considerTriple(int s, int p, int o) {
+		if (TermDictionary.isURI(s) && TermDictionary.isURI(o)) {
+			nsLinks.add(namespaces.getNamespaceId(s), p,
+					namespaces.getNamespaceId(o), 1);
 			
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 		}
 		
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		NamespaceLinks o2 = (NamespaceLinks) other;
+		IntTripleCounter.Cursor c = o2.nsLinks.cursor();
+		while (c.next())
+			nsLinks.add(namespaces.encode(o2.namespaces.decode(c.getFirst())),
+					translate(o2, c.getSecond()),
+					namespaces.encode(o2.namespaces.decode(c.getThird())),
+					c.getCount());
+	}
+
+	/**
+	 * @return NS1 -> (NS2 -> (P -> numTriples))
+	 */
+	public Map<String, Map<String, Map<String, Integer>>> getNamespaceLinks() {
+		Map<String, Map<String, Map<String, Integer>>> nsLinksMap = new HashMap<String, Map<String, Map<String, Integer>>>();
+		IntTripleCounter.Cursor c = nsLinks.cursor();
+		while (c.next()) {
+			String ns1 = namespaces.decode(c.getFirst());
+			String ns2 = namespaces.decode(c.getThird());
+			Map<String, Map<String, Integer>> ns2Map = nsLinksMap.get(ns1);
+			if (ns2Map == null) {
+				ns2Map = new HashMap<String, Map<String, Integer>>();
+				nsLinksMap.put(ns1, ns2Map);
+			}
+			Map<String, Integer> pMap = ns2Map.get(ns2);
+			if (pMap == null) {
+				pMap = new HashMap<String, Integer>();
+				ns2Map.put(ns2, pMap);
+			}
+			pMap.put(dictionary.decode(c.getSecond()), c.getCount());
+		}
+		return nsLinksMap;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// no results yet, skip the update of getResultMap()
+		return new HashMap<String, Object>();
+	}
+
+	@Override
+	public boolean considersSubjectKind(int kind) {
+		return kind == TermDictionary.IRI;
+	}
+
 	@Override
 	public void init() {
-		nsLinksMap = new HashMap<String, Map<String,Map<String,Integer>>>();
+		namespaces = new NamespaceIndex(dictionary);
+		nsLinks = new IntTripleCounter();
 	}
 	
 	@Override
@@ -122,7 +147,7 @@ public class NamespaceLinks extends StatisticalCriterion {
 		if (o instanceof NamespaceLinks) {
 			NamespaceLinks o2 = (NamespaceLinks) o;
 			
-			return o2.nsLinksMap.equals(this.nsLinksMap);
+			return o2.getNamespaceLinks().equals(this.getNamespaceLinks());
 		}
 		else return false;
 	}
@@ -8,12 +8,11 @@ import org.apache.log4j.Logger;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class NumTriples extends StatisticalCriterion {
 
+	private static final long	serialVersionUID	= 1L;
+
 	private int numTriples = -1;
 
 	public NumTriples() {
@@ -55,7 +54,7 @@ public class NumTriples extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
+	public void considerTriple(int s, int p, int o) {
 		// initialize
 		if (numTriples == -1)
 			numTriples = 0;
@@ -64,12 +63,23 @@ public class NumTriples extends StatisticalCriterion {
 		
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		numTriples = mergeCount(numTriples, ((NumTriples) other).numTriples);
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("numTriples", Integer.valueOf(numTriples));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -80,6 +90,22 @@ public class NumTriples extends StatisticalCriterion {
 		else return false;
 	}
 
+	@Override
+	public boolean consumesSubjects() {
+		// counts triples only, no term is encoded
+		return false;
+	}
+
+	@Override
+	public boolean consumesPredicates() {
+		return false;
+	}
+
+	@Override
+	public boolean consumesObjects() {
+		return false;
+	}
+
 	@Override
 	public void init() {
 		numTriples = -1;		
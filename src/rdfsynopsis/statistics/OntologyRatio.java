@@ -1,6 +1,7 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -9,21 +10,26 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class OntologyRatio extends StatisticalCriterion {
 
+	private static final long	serialVersionUID	= 1L;
+
 	private int			numDefClasses		= 0;
 	private int			numDefProperties	= 0;
 	private int			numTypedResources	= 0;
-	private Set<String>	defClasses;
-	private Set<String>	defProperties;
-	private Set<String>	typedResources;
+	private Set<Integer>	defClasses;
+	private Set<Integer>	defProperties;
+	private Set<Integer>	typedResources;
+
+	private int			typeId;
+	private int			rdfsClassId;
+	private int			owlClassId;
+	private int			propertyId;
 
 	public OntologyRatio() {
 		logger = Logger.getLogger(OntologyRatio.class);
@@ -91,31 +97,21 @@ public class OntologyRatio extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((p.getURI().equals(type) || p.getURI().equals("a"))
-				&& s.isURIResource()) {
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+	public void considerTriple(int s, int p, int o) {
+		if (p == typeId && TermDictionary.isURI(s)) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 
 			// add typed subject
-			typedResources.add(s.getURI());
-
-			if (o.isURIResource()) {
-				Resource oRes = (Resource) o;
+			typedResources.add(s);
 
-				// handle def classes
-				if (oRes.getURI().equals(Namespace.RDFS.getFullTerm("Class"))
-						|| oRes.getURI().equals(Namespace.OWL.getFullTerm("Class")))
-					defClasses.add(s.getURI());
+			// handle def classes
+			if (o == rdfsClassId || o == owlClassId)
+				defClasses.add(s);
 
-				// handle def properties
-				if (oRes.getURI().equals(Namespace.RDF.getFullTerm("Property")))
-					defProperties.add(s.getURI());
-			}
+			// handle def properties
+			if (o == propertyId)
+				defProperties.add(s);
 			
 			// update counters
 			numDefClasses = defClasses.size();
@@ -125,12 +121,31 @@ public class OntologyRatio extends StatisticalCriterion {
 
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		OntologyRatio o2 = (OntologyRatio) other;
+		defClasses.addAll(translate(o2, o2.defClasses));
+		defProperties.addAll(translate(o2, o2.defProperties));
+		typedResources.addAll(translate(o2, o2.typedResources));
+
+		// update counters
+		numDefClasses = defClasses.size();
+		numDefProperties = defProperties.size();
+		numTypedResources = typedResources.size();
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("OntologyRatio", Double.valueOf(getOntologyRatio()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -141,14 +156,28 @@ public class OntologyRatio extends StatisticalCriterion {
 		else return false;
 	}
 
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDF.getFullTerm("type"));
+	}
+
+	@Override
+	public boolean considersSubjectKind(int kind) {
+		return kind == TermDictionary.IRI;
+	}
+
 	@Override
 	public void init() {
 		numDefClasses		= 0;
 		numDefProperties	= 0;
 		numTypedResources	= 0;
-		defClasses = new HashSet<String>();
-		defProperties = new HashSet<String>();
-		typedResources = new HashSet<String>();		
+		defClasses = new HashSet<Integer>();
+		defProperties = new HashSet<Integer>();
+		typedResources = new HashSet<Integer>();		
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
+		rdfsClassId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Class"));
+		owlClassId = dictionary.encodeURI(Namespace.OWL.getFullTerm("Class"));
+		propertyId = dictionary.encodeURI(Namespace.RDF.getFullTerm("Property"));
 	}
 
 }
@@ -1,6 +1,7 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -8,24 +9,38 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.HyperLogLog;
 import rdfsynopsis.util.Namespace;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class OntologyRatioNew extends StatisticalCriterion {
+public class OntologyRatioNew extends CardinalityCriterion {
+
+	private static final long	serialVersionUID	= 1L;
 
 	private int			numDefClasses		= 0;
 	private int			numDefProperties	= 0;
 	private int			numTypedResources	= 0;
 	private int			numDefConcepts	= 0;
-	private Set<String>	defClasses;
-	private Set<String>	defProperties;
-	private Set<String>	defConcepts;
-	private Set<String>	typedResources;
+	private Set<Integer>	defClasses;
+	private Set<Integer>	defProperties;
+	private Set<Integer>	defConcepts;
+	private Set<Integer>	typedResources;
+
+	// approximate mode
+	private HyperLogLog		defClassSketch;
+	private HyperLogLog		defPropertySketch;
+	private HyperLogLog		defConceptSketch;
+	private HyperLogLog		typedResourceSketch;
+	boolean					updated				= true;
+
+	private int			typeId;
+	private int			resourceId;
+	private int			rdfsClassId;
+	private int			owlClassId;
+	private int			conceptId;
+	private int			propertyId;
 
 	public OntologyRatioNew() {
 		logger = Logger.getLogger(OntologyRatioNew.class);
@@ -37,12 +52,16 @@ public class OntologyRatioNew extends StatisticalCriterion {
 	@Override
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
-		ps.println("Result: ontologyRatio = " + getOntologyRatio() + " (|CL|="
+		String result = "Result: ontologyRatio = " + getOntologyRatio();
+		if (isApproximate())
+			result += " +/- " + getRatioError();
+		ps.println(result + " (|CL|="
 				+ numDefClasses + "; |CO|="	+ numDefConcepts + "; |P|=" + numDefProperties + "; |I|="
 				+ (numTypedResources) + ")");
 	}
 
 	public double getOntologyRatio() {
+		update();
 		assert numDefClasses != -1;
 		assert numDefConcepts != -1;
 		assert numDefProperties != -1;
@@ -99,35 +118,31 @@ public class OntologyRatioNew extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public void considerTriple(int s, int p, int o) {
+		if (p == typeId) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((p.getURI().equals(type) || p.getURI().equals("a"))) {
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+			if (isApproximate()) {
+				considerApproximate(s, o);
+				return;
+			}
 
 			// add typed subject (not type rdfs:Resource)
-			if (!o.isURIResource() || !((Resource) o).getURI().equals(Namespace.RDFS.getFullTerm("Resource")))
-				typedResources.add(s.toString());
-
-			if (o.isURIResource()) {
-				Resource oRes = (Resource) o;
-
-				// handle def classes
-				if (oRes.getURI().equals(Namespace.RDFS.getFullTerm("Class"))
-						|| oRes.getURI().equals(Namespace.OWL.getFullTerm("Class")))
-					defClasses.add(s.toString());
-				
-				// handle def concepts
-				if (oRes.getURI().equals(Namespace.SKOS.getFullTerm("Concept")))
-					defConcepts.add(s.toString());
-
-				// handle def properties
-				if (oRes.getURI().equals(Namespace.RDF.getFullTerm("Property")))
-					defProperties.add(s.toString());
-			}
+			if (o != resourceId)
+				typedResources.add(s);
+
+			// handle def classes
+			if (o == rdfsClassId || o == owlClassId)
+				defClasses.add(s);
+			
+			// handle def concepts
+			if (o == conceptId)
+				defConcepts.add(s);
+
+			// handle def properties
+			if (o == propertyId)
+				defProperties.add(s);
 			
 			// update counters
 			numDefClasses = defClasses.size();
@@ -138,12 +153,48 @@ public class OntologyRatioNew extends StatisticalCriterion {
 
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		OntologyRatioNew o2 = (OntologyRatioNew) other;
+		if (isApproximate()) {
+			defClassSketch.merge(o2.defClassSketch);
+			defConceptSketch.merge(o2.defConceptSketch);
+			defPropertySketch.merge(o2.defPropertySketch);
+			typedResourceSketch.merge(o2.typedResourceSketch);
+			updated = false;
+			return;
+		}
+		defClasses.addAll(translate(o2, o2.defClasses));
+		defConcepts.addAll(translate(o2, o2.defConcepts));
+		defProperties.addAll(translate(o2, o2.defProperties));
+		typedResources.addAll(translate(o2, o2.typedResources));
+
+		// update counters
+		numDefClasses = defClasses.size();
+		numDefConcepts = defConcepts.size();
+		numDefProperties = defProperties.size();
+		numTypedResources = typedResources.size();
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("OntologyRatio", Double.valueOf(getOntologyRatio()));
+		if (isApproximate())
+			m.put("OntologyRatioError", Double.valueOf(getRatioError()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
+	
+	@Override
+	public Map<String, Double> getConvergenceValues() {
+		return Collections.singletonMap("OntologyRatioNew", Double.valueOf(getOntologyRatio()));
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -154,16 +205,71 @@ public class OntologyRatioNew extends StatisticalCriterion {
 		else return false;
 	}
 
+	/**
+	 * @return standard error of the ontology ratio, 0 if counted exactly
+	 */
+	public double getRatioError() {
+		if (!isApproximate())
+			return 0;
+		update();
+		double rse = typedResourceSketch.getRelativeError();
+		double numDefinitions = numDefClasses + numDefConcepts + numDefProperties;
+		return ratioError(numDefinitions, numDefinitions * rse,
+				numTypedResources, numTypedResources * rse);
+	}
+
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDF.getFullTerm("type"));
+	}
+
 	@Override
 	public void init() {
 		numDefClasses		= 0;
 		numDefProperties	= 0;
 		numDefConcepts		= 0;
 		numTypedResources	= 0;
-		defClasses = new HashSet<String>();
-		defConcepts = new HashSet<String>();
-		defProperties = new HashSet<String>();
-		typedResources = new HashSet<String>();		
+		defClasses = new HashSet<Integer>();
+		defConcepts = new HashSet<Integer>();
+		defProperties = new HashSet<Integer>();
+		typedResources = new HashSet<Integer>();		
+		defClassSketch = isApproximate() ? createSketch() : null;
+		defConceptSketch = isApproximate() ? createSketch() : null;
+		defPropertySketch = isApproximate() ? createSketch() : null;
+		typedResourceSketch = isApproximate() ? createSketch() : null;
+		updated = true;
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
+		resourceId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Resource"));
+		rdfsClassId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Class"));
+		owlClassId = dictionary.encodeURI(Namespace.OWL.getFullTerm("Class"));
+		conceptId = dictionary.encodeURI(Namespace.SKOS.getFullTerm("Concept"));
+		propertyId = dictionary.encodeURI(Namespace.RDF.getFullTerm("Property"));
+	}
+
+	private void considerApproximate(int s, int o) {
+		long hash = hash(s);
+		if (o != resourceId)
+			typedResourceSketch.offer(hash);
+		if (o == rdfsClassId || o == owlClassId)
+			defClassSketch.offer(hash);
+		if (o == conceptId)
+			defConceptSketch.offer(hash);
+		if (o == propertyId)
+			defPropertySketch.offer(hash);
+		updated = false;
+	}
+
+	/**
+	 * Only needed for approximate triple stream mode.
+	 */
+	private void update() {
+		if (!updated) {
+			numDefClasses = (int) defClassSketch.estimate();
+			numDefConcepts = (int) defConceptSketch.estimate();
+			numDefProperties = (int) defPropertySketch.estimate();
+			numTypedResources = (int) typedResourceSketch.estimate();
+			updated = true;
+		}
 	}
 
 }
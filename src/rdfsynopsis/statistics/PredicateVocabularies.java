@@ -1,22 +1,27 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.NamespaceIndex;
+
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
-import com.hp.hpl.jena.rdf.model.ResourceFactory;
 
 public class PredicateVocabularies extends StatisticalCriterion {
 
-	private Map<String, Integer>	predicateVocabularyUsageMap;
+	private static final long	serialVersionUID	= 1L;
+
+	private NamespaceIndex			namespaces;
+	// namespace id -> number of triples, 0 for namespaces of no predicate
+	private int[]					vocabularyUsage;
+	// vocabularyUsage when the results were reported last, null before
+	private transient int[]			reportedUsage;
 
 	public PredicateVocabularies() {
 		logger = Logger.getLogger(PredicateVocabularies.class);
@@ -30,7 +35,7 @@ public class PredicateVocabularies extends StatisticalCriterion {
 		logger.debug("flushLog");
 		ps.println("Result: number of predicate vocabularies used = "
 				+ getNumPredicateVocabularies());
-		for (Map.Entry<String, Integer> e : predicateVocabularyUsageMap.entrySet()) {
+		for (Map.Entry<String, Integer> e : getVocabularyUsageMap().entrySet()) {
 			ps.println("Result: " + e.getValue() + " triples with predicate vocabulary "
 					+ e.getKey());
 		}
@@ -51,68 +56,118 @@ public class PredicateVocabularies extends StatisticalCriterion {
 				String propertyNS = qs.getLiteral("?predVocab").getString();
 				int numUses = qs.getLiteral("?numUses").getInt();
 				
-				predicateVocabularyUsageMap.put(propertyNS,numUses);
+				increaseVocabUsage(namespaces.encode(propertyNS), numUses);
 				
 			} else // invalid solution
 			logger.debug("invalid solution: " + qs);
 
 		}
 		
-		logger.debug("propertyUsageMap:\n" + predicateVocabularyUsageMap.toString());
+		logger.debug("propertyUsageMap:\n" + getVocabularyUsageMap());
 	}
 	
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+
+		increaseVocabUsage(namespaces.getNamespaceId(p), 1);
+	}
 
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");
-					
-		Integer numInstances = predicateVocabularyUsageMap.get(p.getNameSpace());
-		if (numInstances == null)
-			numInstances = 0;
-		predicateVocabularyUsageMap.put(p.getNameSpace(),numInstances+1);
-			
+	private void increaseVocabUsage(int nsId, int numUses) {
+		if (nsId >= vocabularyUsage.length)
+			vocabularyUsage = Arrays.copyOf(vocabularyUsage,
+					Math.max(nsId + 1, 2 * vocabularyUsage.length));
+		vocabularyUsage[nsId] += numUses;
+	}
+
+	/**
+	 * @return predicate vocabulary -> number of triples
+	 */
+	public Map<String, Integer> getVocabularyUsageMap() {
+		Map<String, Integer> m = new HashMap<String, Integer>();
+		for (int nsId = 0; nsId < vocabularyUsage.length; nsId++)
+			if (vocabularyUsage[nsId] > 0)
+				m.put(namespaces.decode(nsId), vocabularyUsage[nsId]);
+		return m;
 	}
 
 	public long getVocabUsage(String namespaceUri) {
-		if (predicateVocabularyUsageMap.containsKey(namespaceUri))
-			return predicateVocabularyUsageMap.get(namespaceUri).longValue();
-		else return 0;
+		Integer numUses = getVocabularyUsageMap().get(namespaceUri);
+		return numUses == null ? 0 : numUses.longValue();
 	}
 
 	public int getNumPredicateVocabularies() {
-		return predicateVocabularyUsageMap.size();
+		return getVocabularyUsageMap().size();
 	}
 
 	public Set<String> getPredicateVocabularies() {
-		return predicateVocabularyUsageMap.keySet();
+		return getVocabularyUsageMap().keySet();
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		PredicateVocabularies o2 = (PredicateVocabularies) other;
+		for (Map.Entry<String, Integer> e : o2.getVocabularyUsageMap().entrySet())
+			increaseVocabUsage(namespaces.encode(e.getKey()), e.getValue());
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
-		for (Map.Entry<String, Integer> e : predicateVocabularyUsageMap.entrySet()) {
+		for (Map.Entry<String, Integer> e : getVocabularyUsageMap().entrySet()) {
 			m.put(e.getKey()+"_predVocabUsage", e.getValue());
 		}
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		if (reportedUsage == null)
+			reportedUsage = new int[0];
+		Map<String, Object> m = new HashMap<String, Object>();
+		for (int nsId = 0; nsId < Math.max(vocabularyUsage.length,
+				reportedUsage.length); nsId++) {
+			int usage = nsId < vocabularyUsage.length ? vocabularyUsage[nsId] : 0;
+			int reported = nsId < reportedUsage.length ? reportedUsage[nsId] : 0;
+			if (usage != reported)
+				m.put(namespaces.decode(nsId) + "_predVocabUsage",
+						usage > 0 ? Integer.valueOf(usage) : null);
+		}
+		reportedUsage = vocabularyUsage.clone();
+		return m;
+	}
+
+	@Override
+	public void resetChangedResults() {
+		reportedUsage = null;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof PredicateVocabularies) {
 			PredicateVocabularies o2 = (PredicateVocabularies) o;
-			return o2.getNumPredicateVocabularies() == this.getNumPredicateVocabularies() &&
-					o2.getPredicateVocabularies().equals(this.getPredicateVocabularies()) &&
-					o2.predicateVocabularyUsageMap.equals(this.predicateVocabularyUsageMap);
+			return o2.getVocabularyUsageMap().equals(this.getVocabularyUsageMap());
 		}
 		else return false;
 	}
 
+	@Override
+	public boolean consumesSubjects() {
+		return false;
+	}
+
+	@Override
+	public boolean consumesObjects() {
+		return false;
+	}
+
 	@Override
 	public void init() {
-		predicateVocabularyUsageMap = new HashMap<String, Integer>();
+		namespaces = new NamespaceIndex(dictionary);
+		vocabularyUsage = new int[16];
+		reportedUsage = null;
 		
 	}
 }
@@ -1,24 +1,31 @@
 package rdfsynopsis.statistics;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.util.HierarchyGraph;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class PropertyHierarchy extends StatisticalCriterion {
 
-	private HierarchyGraph<String>	propertyHierachyGraph;
+	private static final long	serialVersionUID	= 1L;
+
+	private HierarchyGraph<Integer>	propertyHierachyGraph;
 	private int						numSubpropertyStatements;
+	// numSubpropertyStatements when the results were reported last
+	private transient int			reportedStatements;
+
+	private int						subPropertyOfId;
 
 	public PropertyHierarchy() {
 		logger = Logger.getLogger(PropertyHierarchy.class);
@@ -30,10 +37,15 @@ public class PropertyHierarchy extends StatisticalCriterion {
 	@Override
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
-		ps.print(propertyHierachyGraph);
 		ps.println("Result: number of properties in hierarchy = " + getNumPropertiesInHierarchy());
 		ps.println("Result: max depth in hierarchy = " + getPropertyHierarchyDepth());
-		ps.println("Result: property hierarchy = " + propertyHierachyGraph);
+		ps.print("Result: property hierarchy = ");
+		try {
+			propertyHierachyGraph.print(ps, dictionary);
+		} catch (IOException e) {
+			// PrintStream sets its error flag instead
+		}
+		ps.println();
 	}
 
 
@@ -50,7 +62,8 @@ public class PropertyHierarchy extends StatisticalCriterion {
 				String subPropertyUri = qs.getResource("?subprop").getURI();
 				String superPropertyUri = qs.getResource("?superprop").getURI();
 
-				propertyHierachyGraph.addHierarchyEdge(subPropertyUri, superPropertyUri);
+				propertyHierachyGraph.addHierarchyEdge(dictionary.encodeURI(subPropertyUri),
+						dictionary.encodeURI(superPropertyUri));
 				numSubpropertyStatements++;
 
 			} else
@@ -60,7 +73,8 @@ public class PropertyHierarchy extends StatisticalCriterion {
 		}
 
 		// debug result output
-		logger.debug("Property Hierarchy:\n" + propertyHierachyGraph);
+		if (logger.isDebugEnabled())
+			logger.debug("Property Hierarchy:\n" + propertyHierachyGraph.toString(dictionary));
 	}
 
 	public int getPropertyHierarchyDepth() {
@@ -76,23 +90,33 @@ public class PropertyHierarchy extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		String subPropertyOf = Namespace.RDFS.getFullTerm("subPropertyOf");
-		
-		if (p.getURI().equals(subPropertyOf)) {
-			assert o instanceof Resource;
+	public void considerTriple(int s, int p, int o) {
+		if (p == subPropertyOfId) {
+			assert !TermDictionary.isLiteral(o);
 			
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 			
-			propertyHierachyGraph.addHierarchyEdge(s.getURI(), ((Resource)o).getURI());
+			propertyHierachyGraph.addHierarchyEdge(s, o);
 			numSubpropertyStatements++;
 		}
 		
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		PropertyHierarchy o2 = (PropertyHierarchy) other;
+		for (Map.Entry<Integer, Set<Integer>> e : o2.propertyHierachyGraph
+				.getSubNodeValues().entrySet()) {
+			int superProperty = translate(o2, e.getKey());
+			for (Integer subProperty : e.getValue())
+				propertyHierachyGraph.addHierarchyEdge(
+						translate(o2, subProperty), superProperty);
+		}
+		numSubpropertyStatements += o2.numSubpropertyStatements;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -101,6 +125,16 @@ public class PropertyHierarchy extends StatisticalCriterion {
 		m.put("propertiesInHierarchy", Integer.valueOf(getNumPropertiesInHierarchy()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// the depth walks the whole hierarchy, which only changes with new
+		// statements
+		if (hasReportedValues() && reportedStatements == numSubpropertyStatements)
+			return new HashMap<String, Object>();
+		reportedStatements = numSubpropertyStatements;
+		return getChangedValues(getResultMap());
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -109,15 +143,25 @@ public class PropertyHierarchy extends StatisticalCriterion {
 			return o2.getNumPropertiesInHierarchy() == this.getNumPropertiesInHierarchy() &&
 					o2.getNumPropertyHierarchyTriples() == this.getNumPropertyHierarchyTriples() &&
 					o2.getPropertyHierarchyDepth() == this.getPropertyHierarchyDepth() &&
-					o2.propertyHierachyGraph.equals(this.propertyHierachyGraph);
+					o2.dictionary.decodeSets(o2.propertyHierachyGraph.getSubNodeValues()).equals(
+							this.dictionary.decodeSets(this.propertyHierachyGraph.getSubNodeValues())) &&
+					o2.dictionary.decode(o2.propertyHierachyGraph.getTopNodeValues()).equals(
+							this.dictionary.decode(this.propertyHierachyGraph.getTopNodeValues()));
 		}
 		else return false;
 	}
 
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.RDFS.getFullTerm("subPropertyOf"));
+	}
+
 	@Override
 	public void init() {
 		numSubpropertyStatements = 0;
-		propertyHierachyGraph = new HierarchyGraph<String>();
+		reportedStatements = -1;
+		propertyHierachyGraph = new HierarchyGraph<Integer>();
+		subPropertyOfId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("subPropertyOf"));
 		
 	}
 
@@ -1,21 +1,33 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.IntCounter;
+
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class PropertyUsage extends StatisticalCriterion {
 
-	private Map<String, Integer>	propertyUsageMap;
+	private static final long	serialVersionUID	= 1L;
+
+	// number of most used properties whose shares are checked for
+	// convergence
+	public static final int			CONVERGENCE_TOP_K	= 10;
+
+	private IntCounter				propertyUsageMap;
+	// counts reported by getChangedResults()
+	private transient IntCounter	reportedCounts;
 
 	public PropertyUsage() {
 		logger = Logger.getLogger(PropertyUsage.class);
@@ -30,10 +42,10 @@ public class PropertyUsage extends StatisticalCriterion {
 		logger.debug("flushLog");
 		ps.println("Result: number of properties used = "
 				+ getNumUsedProperties());
-		for (Map.Entry<String, Integer> e : propertyUsageMap.entrySet()) {
-			ps.println("Result: " + e.getValue() + " triples with property "
-					+ e.getKey());
-		}
+		IntCounter.Cursor c = propertyUsageMap.cursor();
+		while (c.next())
+			ps.println("Result: " + c.getCount() + " triples with property "
+					+ dictionary.decode(c.getKey()));
 
 	}
 
@@ -50,34 +62,26 @@ public class PropertyUsage extends StatisticalCriterion {
 					&& qs.contains("?numUses")) { // valid solution
 				String propertyUri = qs.getResource("?property").getURI();
 				int numInstances = qs.getLiteral("?numUses").getInt();
-				propertyUsageMap.put(propertyUri, numInstances);
+				propertyUsageMap.add(dictionary.encodeURI(propertyUri), numInstances);
 			} else // invalid solution
 			logger.debug("invalid solution: " + qs);
 
 		}
 
-		logger.debug("propertyUsageMap:\n" + propertyUsageMap.toString());
+		logger.debug("propertyUsageMap:\n" + dictionary.decodeKeys(propertyUsageMap));
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");
-
-		Integer numInstances = propertyUsageMap.get(p.getURI());
-		if (numInstances == null)
-			numInstances = 0;
-		propertyUsageMap.put(p.getURI(), numInstances + 1);
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
 
+		propertyUsageMap.add(p, 1);
 	}
 
 	public int getNumInstances(String propertyUri) {
-		if (propertyUsageMap.containsKey(propertyUri))
-			return propertyUsageMap.get(propertyUri);
-		else return 0;
+		int propertyId = dictionary.lookupURI(propertyUri);
+		return propertyUsageMap.get(propertyId);
 	}
 
 	public int getNumInstances(Property property) {
@@ -89,15 +93,64 @@ public class PropertyUsage extends StatisticalCriterion {
 	}
 
 	public Set<String> getPropertyUris() {
-		return propertyUsageMap.keySet();
+		return dictionary.decodeKeys(propertyUsageMap).keySet();
+	}
+
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		PropertyUsage o2 = (PropertyUsage) other;
+		mergeCounts(propertyUsageMap, o2.propertyUsageMap, o2);
 	}
 
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
-		for (Map.Entry<String, Integer> e : propertyUsageMap.entrySet()) {
-			m.put(e.getKey() + "_propertyUsage", e.getValue());
-		}
+		IntCounter.Cursor c = propertyUsageMap.cursor();
+		while (c.next())
+			m.put(dictionary.decode(c.getKey()) + "_propertyUsage", c.getCount());
+		return m;
+	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		if (reportedCounts == null)
+			reportedCounts = new IntCounter();
+		Map<String, Object> m = new HashMap<String, Object>();
+		putChangedCounts(m, propertyUsageMap, reportedCounts, "",
+				"_propertyUsage");
+		return m;
+	}
+
+	@Override
+	public void resetChangedResults() {
+		reportedCounts = null;
+	}
+
+	/**
+	 * Shares of the triples using the CONVERGENCE_TOP_K most used properties.
+	 */
+	@Override
+	public Map<String, Double> getConvergenceValues() {
+		List<Map.Entry<Integer, Integer>> entries = new ArrayList<Map.Entry<Integer, Integer>>(
+				propertyUsageMap.toMap().entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Integer, Integer>>() {
+			@Override
+			public int compare(Map.Entry<Integer, Integer> e1,
+					Map.Entry<Integer, Integer> e2) {
+				int c = e2.getValue().compareTo(e1.getValue());
+				return c != 0 ? c : e1.getKey().compareTo(e2.getKey());
+			}
+		});
+		long numTriples = 0;
+		for (Map.Entry<Integer, Integer> e : entries)
+			numTriples += e.getValue();
+
+		Map<String, Double> m = new HashMap<String, Double>();
+		for (Map.Entry<Integer, Integer> e : entries.subList(0,
+				Math.min(CONVERGENCE_TOP_K, entries.size())))
+			m.put(dictionary.decode(e.getKey()) + "_propertyUsageShare",
+					(double) e.getValue() / numTriples);
 		return m;
 	}
 
@@ -106,14 +159,25 @@ public class PropertyUsage extends StatisticalCriterion {
 		if (o instanceof PropertyUsage) {
 			PropertyUsage o2 = (PropertyUsage) o;
 			return o2.getNumUsedProperties() == this.getNumUsedProperties() &&
-					o2.propertyUsageMap.equals(this.propertyUsageMap);
+					o2.dictionary.decodeKeys(o2.propertyUsageMap).equals(
+							this.dictionary.decodeKeys(this.propertyUsageMap));
 		}
 		else return false;
 	}
 
+	@Override
+	public boolean consumesSubjects() {
+		return false;
+	}
+
+	@Override
+	public boolean consumesObjects() {
+		return false;
+	}
+
 	@Override
 	public void init() {
-		propertyUsageMap = new HashMap<String, Integer>();
+		propertyUsageMap = new IntCounter();
 	}
 
 }
@@ -2,30 +2,42 @@ package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.IntCounter;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 
-public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
+public class PropertyUsagePerSubjectClass extends StatisticalCriterion
+		implements TypeIndex.Listener {
 
-	private Map<String, Map<String, Integer>>	propPerSubjectClassMap;
-	private Map<String, Integer>				propPerUntypedSubjectsMap;
+	private static final long	serialVersionUID	= 1L;
 
-	private Map<String, Set<String>>			subjectClassMap;
-	private Map<String, Map<String, Integer>>	propPerSubjectMap;
+	private Map<Integer, IntCounter>			propPerSubjectClassMap;
+	private IntCounter							propPerUntypedSubjectsMap;
+	// counts reported by getChangedResults()
+	private transient Map<Integer, IntCounter>	reportedPerSubjectClass;
+	private transient IntCounter				reportedPerUntypedSubjects;
+
+	private Map<Integer, IntCounter>			propPerSubjectMap;
+	// with a subject window: current subject instead of the type index and
+	// the properties per subject
+	private SubjectWindow						window;
 
 	private boolean								updated	= true;
 
+	private int									typeId;
+
 	public PropertyUsagePerSubjectClass() {
 		logger = Logger.getLogger(PropertyUsagePerSubjectClass.class);
 		logger.trace("logger created");
@@ -42,22 +54,22 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 				+ getNumClasses());
 
 		// typed subjects
-		for (Map.Entry<String, Map<String, Integer>> outerEntry : propPerSubjectClassMap
+		for (Map.Entry<Integer, IntCounter> outerEntry : propPerSubjectClassMap
 				.entrySet()) {
-			for (Map.Entry<String, Integer> innerEntry : outerEntry.getValue()
-					.entrySet())
-				ps.println("Result for class <" + outerEntry.getKey() + ">: "
-						+ innerEntry.getValue() + " triples with property "
-						+ innerEntry.getKey());
+			IntCounter.Cursor c = outerEntry.getValue().cursor();
+			while (c.next())
+				ps.println("Result for class <"
+						+ dictionary.decode(outerEntry.getKey()) + ">: "
+						+ c.getCount() + " triples with property "
+						+ dictionary.decode(c.getKey()));
 		}
 
 		// untyped subjects
-		for (Map.Entry<String, Integer> e : propPerUntypedSubjectsMap
-				.entrySet()) {
-			ps.println("Result for untyped subjects: " + e.getValue()
+		IntCounter.Cursor c = propPerUntypedSubjectsMap.cursor();
+		while (c.next())
+			ps.println("Result for untyped subjects: " + c.getCount()
 					+ " triples with property "
-					+ e.getKey());
-		}
+					+ dictionary.decode(c.getKey()));
 
 	}
 
@@ -72,19 +84,20 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 			if (qs.contains("?property")
 					&& qs.contains("?numUses")) { // valid solution
 
-				String propertyUri = qs.getResource("?property").getURI();
-				Integer numInstances = qs.getLiteral("?numUses").getInt();
+				int property = dictionary.encodeURI(qs.getResource("?property")
+						.getURI());
+				int numInstances = qs.getLiteral("?numUses").getInt();
 
 				// result for typed subjects?
 				if (qs.contains("?class")) {
-					String classUri = qs.getResource("?class").getURI();
+					int classId = dictionary.encodeURI(qs.getResource("?class")
+							.getURI());
 
-					increasePropUsagePerSubjectClass(classUri, propertyUri,
+					increasePropUsagePerSubjectClass(classId, property,
 							numInstances);
 				} else {
 					// results for untyped subjects
-					increasePropUsagePerUntypedSubjects(propertyUri,
-							numInstances);
+					propPerUntypedSubjectsMap.add(property, numInstances);
 				}
 			} else // invalid solution
 			logger.debug("invalid solution: " + qs);
@@ -92,107 +105,138 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 		}
 
 		logger.debug("propPerSubjectClassMap:\n"
-				+ propPerSubjectClassMap.toString());
+				+ dictionary.decodeNestedCounts(propPerSubjectClassMap));
 		logger.debug("propPerUntypedSubjectsMap:\n"
-				+ propPerUntypedSubjectsMap.toString());
+				+ dictionary.decodeKeys(propPerUntypedSubjectsMap));
 	}
 
-	private void increasePropUsagePerUntypedSubjects(String propertyUri,
-			Integer val) {
-		Integer numInstances = propPerUntypedSubjectsMap.get(propertyUri);
-		if (numInstances == null)
-			numInstances = 0;
-		propPerUntypedSubjectsMap.put(propertyUri, numInstances + val);
+	private void increasePropUsagePerSubjectClass(int classId,
+			int property, int val) {
+		IntCounter m = propPerSubjectClassMap.get(classId);
+		if (m == null) {
+			m = new IntCounter();
+			propPerSubjectClassMap.put(classId, m);
+		}
+		m.add(property, val);
 	}
 
-	private void increasePropUsagePerSubjectClass(String classUri,
-			String propertyUri, Integer val) {
-		assert classUri != null;
-		assert propertyUri != null;
-
-		Map<String, Integer> m = propPerSubjectClassMap.get(classUri);
-		if (m == null)
-			m = new HashMap<String, Integer>();
-		Integer numInstances = m.get(propertyUri);
-		if (numInstances == null)
-			numInstances = 0;
-		m.put(propertyUri, numInstances + val);
-		propPerSubjectClassMap.put(classUri, m);
+	@Override
+	public boolean supportsSubjectWindow() {
+		return true;
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public boolean isClassAware() {
+		return !subjectWindow;
+	}
 
-		String subjectUri = s.getURI();
-		String propertyUri = p.getURI();
+	@Override
+	public void typeAdded(int s, int classId) {
+		if (window != null)
+			return;
+		// properties of the subject count for the new class
+		IntCounter propUsageMap = propPerSubjectMap.get(s);
+		if (propUsageMap != null) {
+			boolean untyped = typeIndex.getNumClasses(s) == 1;
+			IntCounter.Cursor c = propUsageMap.cursor();
+			while (c.next()) {
+				increasePropUsagePerSubjectClass(classId, c.getKey(), c.getCount());
+				// subject no longer untyped
+				if (untyped)
+					propPerUntypedSubjectsMap.add(c.getKey(), -c.getCount());
+			}
+		}
+	}
 
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");
+	/**
+	 * The usage maps are kept up to date triple by triple, so that results
+	 * can be logged after every page without recalculating them.
+	 */
+	@Override
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+
+		if (window != null) {
+			if (p == typeId && TermDictionary.isURI(o))
+				window.addClass(o);
+			else window.addProperty(p);
+			return;
+		}
 
 		// class instance?
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((propertyUri.equals(type) || propertyUri.equals("a"))
-				&& o.isURIResource()) {
-			String classUri = ((Resource) o).getURI();
-
-			// add to subject's classes
-			Set<String> classes = subjectClassMap.get(subjectUri);
-			if (classes == null)
-				classes = new HashSet<String>();
-			classes.add(classUri);
-			subjectClassMap.put(subjectUri, classes);
+		if (p == typeId && TermDictionary.isURI(o)) {
+			typeIndex.addType(s, o);
 		} else {
 
 		// count property
-		Map<String, Integer> propUsageMap = propPerSubjectMap.get(subjectUri);
-		if (propUsageMap == null)
-			propUsageMap = new HashMap<String, Integer>();
-		Integer numInstances = propUsageMap.get(propertyUri);
-		if (numInstances == null)
-			numInstances = 0;
-		propUsageMap.put(propertyUri, numInstances + 1);
-		propPerSubjectMap.put(subjectUri, propUsageMap);
+		IntCounter propUsageMap = propPerSubjectMap.get(s);
+		if (propUsageMap == null) {
+			propUsageMap = new IntCounter(4);
+			propPerSubjectMap.put(s, propUsageMap);
 		}
+		propUsageMap.add(p, 1);
 
-		updated = false;
+		int numClasses = typeIndex.getNumClasses(s);
+		if (numClasses == 0)
+			propPerUntypedSubjectsMap.add(p, 1);
+		else for (int i = 0; i < numClasses; i++)
+			increasePropUsagePerSubjectClass(typeIndex.getClass(s, i), p, 1);
+		}
 	}
 
 	/**
-	 * Only needed for triple stream mode.
+	 * The properties of the subject count for each of its classes, or for
+	 * the untyped subjects.
+	 */
+	@Override
+	public void endSubject() {
+		if (window.getNumClasses() == 0)
+			propPerUntypedSubjectsMap.addAll(window.getProperties());
+		else for (int i = 0; i < window.getNumClasses(); i++) {
+			int classId = window.getClasses()[i];
+			IntCounter.Cursor c = window.getProperties().cursor();
+			while (c.next())
+				increasePropUsagePerSubjectClass(classId, c.getKey(),
+						c.getCount());
+		}
+		window.clear();
+	}
+
+	/**
+	 * Only needed for triple stream mode after merging.
 	 * Calculates property usage maps (propPerSubjectClassMap and
 	 * propPerUntypedSubjectsMap) based on data structures filled by triple
 	 * stream analysis.
 	 */
 	private void update() {
 		if (!updated) {
-			propPerSubjectClassMap = new HashMap<String, Map<String, Integer>>();
-			propPerUntypedSubjectsMap = new HashMap<String, Integer>();
+			propPerSubjectClassMap = new HashMap<Integer, IntCounter>();
+			propPerUntypedSubjectsMap = new IntCounter();
 
-			for (Map.Entry<String, Map<String, Integer>> subjectEntry : propPerSubjectMap
+			for (Map.Entry<Integer, IntCounter> subjectEntry : propPerSubjectMap
 					.entrySet()) {
-				String subjectUri = subjectEntry.getKey();
-				Set<String> classes = subjectClassMap.get(subjectUri);
+				int s = subjectEntry.getKey();
+				int numClasses = typeIndex.getNumClasses(s);
 
-				for (Map.Entry<String, Integer> propEntry : subjectEntry
-						.getValue()
-						.entrySet()) {
-					String propertyUri = propEntry.getKey();
-					Integer numInstances = propEntry.getValue();
+				IntCounter.Cursor c = subjectEntry.getValue().cursor();
+				while (c.next()) {
+					int property = c.getKey();
+					int numInstances = c.getCount();
 
 					// typed or untyped?
-					if (classes == null) {
-						increasePropUsagePerUntypedSubjects(propertyUri,
-								numInstances);
+					if (numClasses == 0) {
+						propPerUntypedSubjectsMap.add(property, numInstances);
 					} else {
-						for (String classUri : classes) {
-							increasePropUsagePerSubjectClass(classUri,
-									propertyUri, numInstances);
+						for (int i = 0; i < numClasses; i++) {
+							increasePropUsagePerSubjectClass(
+									typeIndex.getClass(s, i), property,
+									numInstances);
 						}
 					}
 				}
 			}
+			updated = true;
 		}
 	}
 
@@ -205,7 +249,7 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 	public Set<String> getClassUris() {
 		if (!updated)
 			update();
-		return propPerSubjectClassMap.keySet();
+		return dictionary.decode(propPerSubjectClassMap.keySet());
 	}
 
 	public int getPropertyUsagePerClass(Resource classRes, Property propRes) {
@@ -217,13 +261,10 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 	private int getPropertyUsagePerClass(String classUri, String propUri) {
 		if (!updated)
 			update();
-		if (propPerSubjectClassMap.containsKey(classUri)) {
-			Map<String, Integer> propUsageMap = propPerSubjectClassMap
-					.get(classUri);
-			if (propUsageMap.containsKey(propUri))
-				return propUsageMap.get(propUri);
-			else return 0;
-		} else return 0;
+		int classId = dictionary.lookupURI(classUri);
+		int property = dictionary.lookupURI(propUri);
+		IntCounter propUsageMap = propPerSubjectClassMap.get(classId);
+		return propUsageMap == null ? 0 : propUsageMap.get(property);
 	}
 
 	public int getUntypedPropertyUsage(Property propRes) {
@@ -235,9 +276,8 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 	public int getUntypedPropertyUsage(String propertyUri) {
 		if (!updated)
 			update();
-		if (propPerUntypedSubjectsMap.containsKey(propertyUri))
-			return propPerUntypedSubjectsMap.get(propertyUri);
-		else return 0;
+		int property = dictionary.lookupURI(propertyUri);
+		return propPerUntypedSubjectsMap.get(property);
 	}
 
 	public int getUntypedNumProperties() {
@@ -246,36 +286,89 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 		return propPerUntypedSubjectsMap.size();
 	}
 
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		PropertyUsagePerSubjectClass o2 = (PropertyUsagePerSubjectClass) other;
+		if (window != null) {
+			mergeNestedCounts(propPerSubjectClassMap, o2.propPerSubjectClassMap, o2);
+			mergeCounts(propPerUntypedSubjectsMap, o2.propPerUntypedSubjectsMap, o2);
+			return;
+		}
+		mergeTypeIndex(o2);
+		mergeNestedCounts(propPerSubjectMap, o2.propPerSubjectMap, o2);
+		updated = false;
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
+		if (!updated)
+			update();
 		Map<String, Object> m = new HashMap<String, Object>();
 		// typed subjects
-		for (Map.Entry<String, Map<String, Integer>> outerEntry : propPerSubjectClassMap
+		for (Map.Entry<Integer, IntCounter> outerEntry : propPerSubjectClassMap
 				.entrySet()) {
-			for (Map.Entry<String, Integer> innerEntry : outerEntry.getValue()
-					.entrySet())
-				m.put(outerEntry.getKey() + "_classUsesProperty_" + innerEntry.getKey(), innerEntry.getValue());
+			IntCounter.Cursor c = outerEntry.getValue().cursor();
+			while (c.next())
+				m.put(dictionary.decode(outerEntry.getKey()) + "_classUsesProperty_"
+						+ dictionary.decode(c.getKey()), c.getCount());
 		}
 
 		// untyped subjects
-		for (Map.Entry<String, Integer> e : propPerUntypedSubjectsMap
-				.entrySet()) {
-			m.put(e.getKey() + "_usedByUntyped", e.getValue());
+		IntCounter.Cursor c = propPerUntypedSubjectsMap.cursor();
+		while (c.next())
+			m.put(dictionary.decode(c.getKey()) + "_usedByUntyped", c.getCount());
+		return m;
+	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		if (!updated)
+			update();
+		if (reportedPerSubjectClass == null) {
+			reportedPerSubjectClass = new HashMap<Integer, IntCounter>();
+			reportedPerUntypedSubjects = new IntCounter();
+		}
+		Map<String, Object> m = new HashMap<String, Object>();
+		// typed subjects, including classes that are no longer counted
+		for (Map.Entry<Integer, IntCounter> e : propPerSubjectClassMap.entrySet())
+			if (!reportedPerSubjectClass.containsKey(e.getKey()))
+				reportedPerSubjectClass.put(e.getKey(), new IntCounter());
+		Iterator<Map.Entry<Integer, IntCounter>> it = reportedPerSubjectClass
+				.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Integer, IntCounter> e = it.next();
+			IntCounter counts = propPerSubjectClassMap.get(e.getKey());
+			putChangedCounts(m, counts == null ? new IntCounter() : counts,
+					e.getValue(), dictionary.decode(e.getKey())
+							+ "_classUsesProperty_", "");
+			if (counts == null)
+				it.remove();
 		}
+
+		// untyped subjects
+		putChangedCounts(m, propPerUntypedSubjectsMap,
+				reportedPerUntypedSubjects, "", "_usedByUntyped");
 		return m;
 	}
 
+	@Override
+	public void resetChangedResults() {
+		reportedPerSubjectClass = null;
+		reportedPerUntypedSubjects = null;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof PropertyUsagePerSubjectClass) {
 			PropertyUsagePerSubjectClass o2 = (PropertyUsagePerSubjectClass) o;
 			this.update();
 			o2.update();
-			return o2.propPerSubjectClassMap
-					.equals(this.propPerSubjectClassMap)
+			return o2.dictionary.decodeNestedCounts(o2.propPerSubjectClassMap)
+					.equals(this.dictionary.decodeNestedCounts(this.propPerSubjectClassMap))
 					&&
-					o2.propPerUntypedSubjectsMap
-							.equals(this.propPerUntypedSubjectsMap);
+					o2.dictionary.decodeKeys(o2.propPerUntypedSubjectsMap)
+							.equals(this.dictionary.decodeKeys(this.propPerUntypedSubjectsMap));
 		}
 		else return false;
 	}
@@ -283,10 +376,12 @@ public class PropertyUsagePerSubjectClass extends StatisticalCriterion {
 	@Override
 	public void init() {
 		updated = true;
-		propPerSubjectClassMap = new HashMap<String, Map<String, Integer>>();
-		propPerUntypedSubjectsMap = new HashMap<String, Integer>();
-		subjectClassMap = new HashMap<String, Set<String>>();
-		propPerSubjectMap = new HashMap<String, Map<String, Integer>>();
+		propPerSubjectClassMap = new HashMap<Integer, IntCounter>();
+		propPerUntypedSubjectsMap = new IntCounter();
+		typeIndex.clear();
+		propPerSubjectMap = new HashMap<Integer, IntCounter>();
+		window = subjectWindow ? new SubjectWindow() : null;
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
 	}
 
 }
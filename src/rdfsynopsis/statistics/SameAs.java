@@ -1,8 +1,10 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -10,14 +12,15 @@ import rdfsynopsis.util.Namespace;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
 public class SameAs extends StatisticalCriterion {
 
+	private static final long	serialVersionUID	= 1L;
+
 	private int	numSameAsTriples	= -1;
 
+	private int	sameAsId;
+
 	public SameAs() {
 		logger = Logger.getLogger(SameAs.class);
 		logger.trace("logger created");
@@ -49,17 +52,20 @@ public class SameAs extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-		String sameAs = Namespace.OWL.getFullTerm("sameAs");
+	public void startStream() {
+		// the stream of sameAs triples may be empty
+		if (numSameAsTriples == -1)
+			numSameAsTriples = 0;
+	}
 
+	@Override
+	public void considerTriple(int s, int p, int o) {
 		if (numSameAsTriples == -1)
 			numSameAsTriples = 0;
 
-		if (p.getURI().equals(sameAs)) {
-			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+		if (p == sameAsId) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple (" + s + " " + p + " " + o + ")");
 			numSameAsTriples++;
 		}
 
@@ -75,6 +81,13 @@ public class SameAs extends StatisticalCriterion {
 		return numSameAsTriples;
 	}
 
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		numSameAsTriples = mergeCount(numSameAsTriples,
+				((SameAs) other).numSameAsTriples);
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
@@ -82,6 +95,11 @@ public class SameAs extends StatisticalCriterion {
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof SameAs) {
@@ -91,9 +109,26 @@ public class SameAs extends StatisticalCriterion {
 		else return false;
 	}
 
+	@Override
+	public Set<String> getConsumedPredicates() {
+		return Collections.singleton(Namespace.OWL.getFullTerm("sameAs"));
+	}
+
+	@Override
+	public boolean consumesSubjects() {
+		// counts the sameAs triples only
+		return false;
+	}
+
+	@Override
+	public boolean consumesObjects() {
+		return false;
+	}
+
 	@Override
 	public void init() {
 		numSameAsTriples = -1;
+		sameAsId = dictionary.encodeURI(Namespace.OWL.getFullTerm("sameAs"));
 
 	}
 }
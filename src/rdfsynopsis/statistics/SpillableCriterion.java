@@ -0,0 +1,162 @@
+package rdfsynopsis.statistics;
+
+import java.util.Arrays;
+
+import rdfsynopsis.util.ExternalSorter;
+
+/**
+ * Criterion whose state grows with the number of distinct subjects. By
+ * default it is kept on the heap. With a memory budget, the subject data is
+ * collected in external sorters that spill sorted runs to temporary files
+ * (see {@link ExternalSorter}), and the results are computed by merging the
+ * runs when they are requested, so that datasets larger than the heap can be
+ * analyzed.
+ *
+ * @author thomas
+ *
+ */
+public abstract class SpillableCriterion extends StatisticalCriterion {
+
+	private static final long	serialVersionUID	= 1L;
+
+	// kind of the id in (subject, kind, id) tuples
+	static final int			CLASS				= 0;
+	static final int			PROPERTY			= 1;
+
+	// bytes per sorter, 0 keeps everything on the heap
+	private long				memoryBudget		= 0;
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Keep the subject data of the criterion within the memory budget and
+	 * spill the rest to temporary files. The criterion is initialized.
+	 *
+	 * @param memoryBudget
+	 *            bytes per sorter, 0 keeps everything on the heap
+	 */
+	public SpillableCriterion setMemoryBudget(long memoryBudget) {
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException("Invalid memory budget "
+					+ memoryBudget + " (valid: 0 or more)");
+		this.memoryBudget = memoryBudget;
+		init();
+		return this;
+	}
+
+	public boolean isSpilling() {
+		return memoryBudget > 0;
+	}
+
+	@Override
+	public StatisticalCriterion newInstance() {
+		SpillableCriterion sc = (SpillableCriterion) super.newInstance();
+		sc.setMemoryBudget(memoryBudget);
+		return sc;
+	}
+
+	@Override
+	void checkMergeable(StatisticalCriterion other) {
+		super.checkMergeable(other);
+		if (((SpillableCriterion) other).isSpilling() != isSpilling())
+			throw new IllegalArgumentException(
+					"Cannot merge spilling and in-memory " + textId);
+	}
+
+	ExternalSorter createSorter(int arity) {
+		return new ExternalSorter(arity, memoryBudget);
+	}
+
+	/**
+	 * Add the tuples of a sorter of another instance, translated to this
+	 * criterion's dictionary.
+	 */
+	void mergeSorter(ExternalSorter sorter, ExternalSorter otherSorter,
+			StatisticalCriterion other, boolean[] encoded) {
+		int[] tuple = new int[sorter.getArity()];
+		ExternalSorter.Cursor c = otherSorter.cursor();
+		while (c.next()) {
+			for (int i = 0; i < tuple.length; i++)
+				tuple[i] = encoded[i] ? translate(other, c.get(i)) : c.get(i);
+			sorter.add(tuple);
+		}
+	}
+
+	/**
+	 * Iterates the subjects of a sorter of (subject, CLASS or PROPERTY, id)
+	 * tuples together with their classes and properties.
+	 */
+	static class SubjectCursor {
+
+		private ExternalSorter.Cursor	cursor;
+		private boolean					hasTuple;
+
+		private int						subject;
+		private int[]					classes		= new int[8];
+		private int						numClasses;
+		private int[]					properties	= new int[8];
+		private int						numProperties;
+
+		SubjectCursor(ExternalSorter sorter) {
+			cursor = sorter.cursor();
+			hasTuple = cursor.next();
+		}
+
+		/**
+		 * Move to the next subject.
+		 *
+		 * @return false if there is none
+		 */
+		boolean next() {
+			if (!hasTuple)
+				return false;
+			subject = cursor.get(0);
+			numClasses = 0;
+			numProperties = 0;
+			do {
+				int id = cursor.get(2);
+				if (cursor.get(1) == CLASS) {
+					if (numClasses == classes.length)
+						classes = Arrays.copyOf(classes, 2 * numClasses);
+					classes[numClasses++] = id;
+				} else {
+					if (numProperties == properties.length)
+						properties = Arrays.copyOf(properties, 2 * numProperties);
+					properties[numProperties++] = id;
+				}
+				hasTuple = cursor.next();
+			} while (hasTuple && cursor.get(0) == subject);
+			return true;
+		}
+
+		int getSubject() {
+			return subject;
+		}
+
+		/**
+		 * @return classes of the subject in ascending order, see
+		 *         getNumClasses()
+		 */
+		int[] getClasses() {
+			return classes;
+		}
+
+		int getNumClasses() {
+			return numClasses;
+		}
+
+		/**
+		 * @return properties of the subject in ascending order, see
+		 *         getNumProperties()
+		 */
+		int[] getProperties() {
+			return properties;
+		}
+
+		int getNumProperties() {
+			return numProperties;
+		}
+	}
+}
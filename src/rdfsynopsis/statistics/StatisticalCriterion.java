@@ -1,16 +1,35 @@
 package rdfsynopsis.statistics;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
 import rdfsynopsis.dataset.SparqlDataset;
+import rdfsynopsis.util.IntBitmap;
+import rdfsynopsis.util.IntCounter;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.ResultSet;
@@ -18,10 +37,44 @@ import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 
-public abstract class StatisticalCriterion {
+public abstract class StatisticalCriterion implements Serializable {
 
-	Logger logger;
+	private static final long	serialVersionUID	= 1L;
+
+	// location of the query files on the class path and in the sources
+	private static final String					QUERY_DIR			= "SPARQL";
+	private static final File					QUERY_SOURCE_DIR	= new File("src"
+			+ File.separator + "rdfsynopsis" + File.separator + "statistics"
+			+ File.separator + QUERY_DIR);
+
+	// textId -> parsed query, shared by all instances
+	private static final ConcurrentMap<String, Query>	queryCache	= new ConcurrentHashMap<String, Query>();
+	private static volatile String				prefixes;
+
+	transient Logger logger;
 	String textId;
+	// terms are encoded as ids, decoded only for output
+	TermDictionary dictionary;
+	// classes of the subjects, shared by the class-aware criteria
+	TypeIndex typeIndex;
+	// fold every subject once all its triples have been considered (TSA)
+	boolean subjectWindow = false;
+	// values reported by getChangedValues(), null before the first call
+	private transient Map<String, Object> reportedResults;
+	
+	public StatisticalCriterion() {
+		dictionary = new TermDictionary();
+		setTypeIndex(new TypeIndex(dictionary));
+	}
+	
+	/**
+	 * Criteria are serialized for checkpoints of the analysis (TSA).
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		logger = Logger.getLogger(getClass());
+	}
 	
 	// print current measurements
 	abstract public void flushLog(PrintStream ps);
@@ -30,34 +83,472 @@ public abstract class StatisticalCriterion {
 	abstract void processQueryResults(ResultSet results);
 	
 	// filter triple (TSA)
-	public abstract void considerTriple(Resource s, Property p, RDFNode o);
+	public void considerTriple(Resource s, Property p, RDFNode o) {
+		considerTriple(dictionary.encode(s), dictionary.encode(p),
+				dictionary.encode(o));
+	}
+	
+	// filter dictionary encoded triple (TSA)
+	public abstract void considerTriple(int s, int p, int o);
+	
+	// add the triples considered by another instance of the same criterion (TSA)
+	public abstract void merge(StatisticalCriterion other);
+	
+	// the triple stream starts, a targeted stream may not contain any triple (TSA)
+	public void startStream() {
+	}
+	
+	// all triples of the current subject have been considered (TSA, subject window)
+	public void endSubject() {
+	}
 	
 	// turn analysis results into (String->Value) Map
 	public abstract Map<String,Object> getResultMap();
 	
+	/**
+	 * Results that changed since the last call, e.g. to log every page of a
+	 * stream; results that are no longer reported map to null. The first call
+	 * after resetChangedResults() reports all results. Criteria keep track of
+	 * what changed, so that a call costs as much as the changed results and
+	 * not as much as all results.
+	 */
+	public abstract Map<String, Object> getChangedResults();
+	
+	/**
+	 * Forget the results reported so far, the next call of
+	 * getChangedResults() reports all results. Criteria with own reported
+	 * state have to call this as well.
+	 */
+	public void resetChangedResults() {
+		reportedResults = null;
+	}
+	
+	/**
+	 * getChangedResults() of the criteria with a fixed, small number of
+	 * results (counts, ratios), whose values are as cheap to compute as to
+	 * compare: the values that differ from the ones reported last.
+	 */
+	Map<String, Object> getChangedValues(Map<String, Object> values) {
+		Map<String, Object> changed = new HashMap<String, Object>();
+		for (Map.Entry<String, Object> e : values.entrySet()) {
+			Object value = e.getValue();
+			if (reportedResults == null
+					|| !reportedResults.containsKey(e.getKey())
+					|| !equal(value, reportedResults.get(e.getKey())))
+				changed.put(e.getKey(), value);
+		}
+		if (reportedResults != null)
+			for (String key : reportedResults.keySet())
+				if (!values.containsKey(key))
+					changed.put(key, null);
+		reportedResults = values;
+		return changed;
+	}
+	
+	/**
+	 * @return true if getChangedValues() has been called since
+	 *         resetChangedResults()
+	 */
+	boolean hasReportedValues() {
+		return reportedResults != null;
+	}
+	
+	private static boolean equal(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+	
+	/**
+	 * Put the counts that differ from the reported counts into the map, keyed
+	 * by prefix + term + suffix, and the terms no longer counted with null.
+	 * The reported counts are brought up to date, only changed terms are
+	 * decoded. The counts are compared in place, one int per counted term,
+	 * which is cheap enough for counters keyed by classes or properties.
+	 */
+	void putChangedCounts(Map<String, Object> m, IntCounter counts,
+			IntCounter reported, String prefix, String suffix) {
+		IntCounter.Cursor c = counts.cursor();
+		while (c.next()) {
+			int count = c.getCount();
+			int reportedCount = reported.get(c.getKey());
+			if (count != reportedCount) {
+				m.put(prefix + dictionary.decode(c.getKey()) + suffix, count);
+				reported.add(c.getKey(), count - reportedCount);
+			}
+		}
+		if (reported.size() == counts.size())
+			return;
+		List<Integer> removed = new ArrayList<Integer>();
+		c = reported.cursor();
+		while (c.next())
+			if (!counts.containsKey(c.getKey()))
+				removed.add(c.getKey());
+		for (int key : removed) {
+			m.put(prefix + dictionary.decode(key) + suffix, null);
+			reported.add(key, -reported.get(key));
+		}
+	}
+	
+	/**
+	 * Put the values of an outer term that differ from the reported values
+	 * into the map, keyed by outer term + infix + inner term, and the inner
+	 * terms no longer present with null. The reported values of the outer
+	 * term are brought up to date.
+	 * 
+	 * @param values
+	 *            inner term -> value, null for none
+	 */
+	<V> void putChangedValues(Map<String, Object> m, int outerKey,
+			Map<Integer, V> values, Map<Integer, Map<Integer, V>> reported,
+			String infix) {
+		Map<Integer, V> reportedValues = reported.remove(outerKey);
+		String prefix = dictionary.decode(outerKey) + infix;
+		if (values != null)
+			for (Map.Entry<Integer, V> e : values.entrySet())
+				if (reportedValues == null
+						|| !e.getValue().equals(reportedValues.get(e.getKey())))
+					m.put(prefix + dictionary.decode(e.getKey()), e.getValue());
+		if (reportedValues != null)
+			for (Integer key : reportedValues.keySet())
+				if (values == null || !values.containsKey(key))
+					m.put(prefix + dictionary.decode(key), null);
+		if (values != null && !values.isEmpty())
+			reported.put(outerKey, new HashMap<Integer, V>(values));
+	}
+	
+	/**
+	 * Values summarizing the results of a partial analysis (e.g. ratios),
+	 * used to stop the analysis once they no longer change.
+	 * @return empty map if the criterion provides no such values
+	 */
+	public Map<String, Double> getConvergenceValues() {
+		return Collections.<String, Double> emptyMap();
+	}
+	
 	// init criterion for new analysis
 	public abstract void init();
 	
 	@Override
 	public abstract boolean equals(Object arg0);
 	
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Share a dictionary with other criteria of the same analysis. Ids of the
+	 * previous dictionary become invalid, so the criterion is initialized.
+	 * @param dictionary
+	 */
+	public void setDictionary(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+		setTypeIndex(new TypeIndex(dictionary));
+		init();
+	}
+	
+	/**
+	 * @return true if the criterion can fold subjects, see setSubjectWindow()
+	 */
+	public boolean supportsSubjectWindow() {
+		return false;
+	}
+	
+	public boolean isSubjectWindow() {
+		return subjectWindow;
+	}
+
+	/**
+	 * Fold every subject into the results as soon as its end is signaled (see
+	 * endSubject()) and drop its data, so that memory does not grow with the
+	 * number of subjects. The triples of a subject have to be consecutive in
+	 * the stream; until the end of the stream, results cover the completed
+	 * subjects only. The criterion is initialized.
+	 * @param subjectWindow
+	 * @throws IllegalArgumentException
+	 *             if the criterion does not support it
+	 */
+	public StatisticalCriterion setSubjectWindow(boolean subjectWindow) {
+		if (subjectWindow && !supportsSubjectWindow())
+			throw new IllegalArgumentException(textId
+					+ " does not support a subject window");
+		this.subjectWindow = subjectWindow;
+		init();
+		return this;
+	}
+	
+	/**
+	 * @return URIs of the predicates of all triples the criterion considers
+	 *         (TSA), null if it considers triples of any predicate. The
+	 *         triple stream only fetches the triples of these predicates if
+	 *         no other criterion needs all triples.
+	 */
+	public Set<String> getConsumedPredicates() {
+		return null;
+	}
+	
+	/**
+	 * @return false if the criterion does not read the ids of the subjects
+	 *         of its triples, only their kind (TSA). Terms nobody reads are
+	 *         not encoded, see {@link TermDictionary#unencoded(int)}.
+	 */
+	public boolean consumesSubjects() {
+		return true;
+	}
+	
+	/**
+	 * @return false if the criterion does not read the ids of the predicates
+	 *         of its triples (TSA)
+	 */
+	public boolean consumesPredicates() {
+		return true;
+	}
+	
+	/**
+	 * @return false if the criterion does not read the ids of IRI and blank
+	 *         node objects, only their kind (TSA)
+	 */
+	public boolean consumesObjects() {
+		return true;
+	}
+	
+	/**
+	 * @return true if the criterion reads the ids of literal objects (TSA);
+	 *         literals are not encoded otherwise
+	 */
+	public boolean consumesLiterals() {
+		return false;
+	}
+	
+	/**
+	 * @param kind
+	 *            kind of a subject, see {@link TermDictionary#getKind(int)}
+	 * @return false if the criterion ignores all triples whose subject is of
+	 *         this kind (TSA)
+	 */
+	public boolean considersSubjectKind(int kind) {
+		return true;
+	}
+	
+	/**
+	 * @return true if the criterion keeps the classes of the subjects in its
+	 *         type index, which may be shared with other class-aware criteria
+	 */
+	public boolean isClassAware() {
+		return false;
+	}
+	
+	public TypeIndex getTypeIndex() {
+		return typeIndex;
+	}
+
+	/**
+	 * Share a type index with other class-aware criteria that consider the
+	 * triples on the same thread. The types of the previous index are added
+	 * to the new one.
+	 * @param typeIndex
+	 *            index with the same dictionary
+	 */
+	public void setTypeIndex(TypeIndex typeIndex) {
+		if (typeIndex == this.typeIndex)
+			return;
+		if (typeIndex.getDictionary() != dictionary)
+			throw new IllegalArgumentException(
+					"Type index of another dictionary for " + textId);
+		if (this.typeIndex != null) {
+			typeIndex.merge(this.typeIndex);
+			if (this instanceof TypeIndex.Listener)
+				this.typeIndex.removeListener((TypeIndex.Listener) this);
+		}
+		if (this instanceof TypeIndex.Listener)
+			typeIndex.addListener((TypeIndex.Listener) this);
+		this.typeIndex = typeIndex;
+	}
+	
+	/**
+	 * @return new, empty instance of this criterion with the same settings,
+	 *         sharing the dictionary
+	 */
+	public StatisticalCriterion newInstance() {
+		try {
+			StatisticalCriterion sc = getClass().getDeclaredConstructor()
+					.newInstance();
+			sc.setDictionary(dictionary);
+			if (subjectWindow)
+				sc.setSubjectWindow(true);
+			return sc;
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Cannot instantiate " + textId, e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot instantiate " + textId, e);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Cannot instantiate " + textId, e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Cannot instantiate " + textId,
+					e.getCause());
+		}
+	}
+	
+	/**
+	 * @throws IllegalArgumentException
+	 *             if other is not an instance of the same criterion
+	 */
+	void checkMergeable(StatisticalCriterion other) {
+		if (other == null || other.getClass() != getClass())
+			throw new IllegalArgumentException("Cannot merge " + other
+					+ " into " + textId);
+		if (other.subjectWindow != subjectWindow)
+			throw new IllegalArgumentException(
+					"Cannot merge folded and unfolded subjects of " + textId);
+	}
+	
+	/**
+	 * @return id of a term of the other criterion in this criterion's dictionary
+	 */
+	int translate(StatisticalCriterion other, int id) {
+		return dictionary.translate(id, other.dictionary);
+	}
+	
+	Set<Integer> translate(StatisticalCriterion other, Set<Integer> ids) {
+		Set<Integer> s = new HashSet<Integer>();
+		for (Integer id : ids)
+			s.add(translate(other, id));
+		return s;
+	}
+	
+	/**
+	 * Let the class-aware criteria share a new type index, so that every type
+	 * triple is indexed once. The criteria must consider the triples on the
+	 * same thread and share a dictionary.
+	 * @param criteria
+	 */
+	public static void shareTypeIndex(List<StatisticalCriterion> criteria) {
+		TypeIndex typeIndex = null;
+		for (StatisticalCriterion sc : criteria)
+			if (sc.isClassAware()) {
+				if (typeIndex == null)
+					typeIndex = new TypeIndex(sc.dictionary);
+				sc.setTypeIndex(typeIndex);
+			}
+	}
+
+	/**
+	 * Add the types of another criterion, unless its index has already been
+	 * merged by a criterion sharing this criterion's index.
+	 */
+	void mergeTypeIndex(StatisticalCriterion other) {
+		typeIndex.merge(other.typeIndex);
+	}
+	
+	// counters are -1 as long as no triple has been considered
+	static int mergeCount(int count, int otherCount) {
+		if (count == -1)
+			return otherCount;
+		if (otherCount == -1)
+			return count;
+		return count + otherCount;
+	}
+	
+	void mergeCounts(IntCounter counts, IntCounter otherCounts,
+			StatisticalCriterion other) {
+		if (other.dictionary == dictionary) {
+			counts.addAll(otherCounts);
+			return;
+		}
+		IntCounter.Cursor c = otherCounts.cursor();
+		while (c.next())
+			counts.add(translate(other, c.getKey()), c.getCount());
+	}
+	
+	void mergeSets(Map<Integer, Set<Integer>> sets,
+			Map<Integer, Set<Integer>> otherSets, StatisticalCriterion other) {
+		for (Map.Entry<Integer, Set<Integer>> e : otherSets.entrySet()) {
+			int id = translate(other, e.getKey());
+			Set<Integer> s = sets.get(id);
+			if (s == null)
+				sets.put(id, translate(other, e.getValue()));
+			else s.addAll(translate(other, e.getValue()));
+		}
+	}
+	
+	void mergeBitmaps(Map<Integer, IntBitmap> bitmaps,
+			Map<Integer, IntBitmap> otherBitmaps, StatisticalCriterion other) {
+		for (Map.Entry<Integer, IntBitmap> e : otherBitmaps.entrySet()) {
+			int id = translate(other, e.getKey());
+			IntBitmap b = bitmaps.get(id);
+			if (b == null) {
+				b = new IntBitmap();
+				bitmaps.put(id, b);
+			}
+			if (other.dictionary == dictionary)
+				b.or(e.getValue());
+			else for (int value : e.getValue().toArray())
+				b.add(translate(other, value));
+		}
+	}
+	
+	void mergeNestedCounts(Map<Integer, IntCounter> counts,
+			Map<Integer, IntCounter> otherCounts, StatisticalCriterion other) {
+		for (Map.Entry<Integer, IntCounter> e : otherCounts.entrySet()) {
+			int id = translate(other, e.getKey());
+			IntCounter m = counts.get(id);
+			if (m == null) {
+				m = new IntCounter();
+				counts.put(id, m);
+			}
+			mergeCounts(m, e.getValue(), other);
+		}
+	}
+	
 	/**
 	 * Load <textId>.sparql File and combine with prefixes.sparql
 	 * @return prefixes + sparql query
 	 */
 	protected String getQueryString() {
-		String prefixes = "";
-		String text = "";
-		File path = new File("src"+ File.separator + "rdfsynopsis"+ File.separator + "statistics"+ File.separator + "SPARQL");
-		
+		if (prefixes == null)
+			prefixes = loadQueryFile("prefixes");
+		return prefixes + "\n" + loadQueryFile(textId);
+	}
+	
+	/**
+	 * The query is parsed once per criterion class and shared afterwards.
+	 * @return parsed query of this criterion
+	 */
+	protected Query getQuery() {
+		Query query = queryCache.get(textId);
+		if (query == null) {
+			String queryString = getQueryString();
+			logger.debug("Query is:\n"+queryString);
+			query = QueryFactory.create(queryString);
+			// initialize lazily computed state before sharing the query
+			query.setResultVars();
+			Query cached = queryCache.putIfAbsent(textId, query);
+			if (cached != null)
+				query = cached;
+		}
+		return query;
+	}
+	
+	/**
+	 * Query files are loaded from the class path, next to this class. When
+	 * running from the sources without copied resources, they are loaded
+	 * from the source directory relative to the working directory.
+	 */
+	private static String loadQueryFile(String name) {
+		String fileName = name + ".sparql";
+		InputStream in = StatisticalCriterion.class.getResourceAsStream(
+				QUERY_DIR + "/" + fileName);
 		try {
-			text = new Scanner( new File(path, textId+".sparql"), "UTF-8" ).useDelimiter("\\Z").next();
-			prefixes = new Scanner( new File(path,"prefixes.sparql"), "UTF-8" ).useDelimiter("\\Z").next();
+			if (in == null)
+				in = new FileInputStream(new File(QUERY_SOURCE_DIR, fileName));
 		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			throw new IllegalStateException("Query file " + fileName
+					+ " not found on class path or in " + QUERY_SOURCE_DIR, e);
+		}
+		Scanner scanner = new Scanner(in, "UTF-8");
+		try {
+			return scanner.useDelimiter("\\Z").next();
+		} finally {
+			scanner.close();
 		}
-		
-		return prefixes+"\n"+text;
 	}
 	
 	 /**
@@ -65,23 +556,32 @@ public abstract class StatisticalCriterion {
 	  * @param ds
 	  */
 	public void processSparqlDataset(SparqlDataset ds) {
+		processSparqlDataset(ds, 0);
+	}
+	
+	 /**
+	  * query dataset (SQA)
+	  * @param ds
+	  * @param timeout
+	  *            query timeout in ms, 0 for none
+	  * @throws QueryCancelledException
+	  *             if the query timed out
+	  */
+	public void processSparqlDataset(SparqlDataset ds, long timeout) {
 		logger.trace("in processSparqlDataset");
 		
-		// delegate query formulation to subclass
-		String queryString = getQueryString();
-		logger.debug("Query is:\n"+queryString);
-		
-		// Create a new query
-		Query query = QueryFactory.create(queryString);
-		
 		// execute query and obtain results
-		QueryExecution qe = ds.query(query);
-		ResultSet results = qe.execSelect();
-		// delegate processing of query results to subclass
-		processQueryResults(results);
-	
-		// Important - free up resources used running the query
-		qe.close();		
+		QueryExecution qe = ds.query(getQuery());
+		if (timeout > 0)
+			qe.setTimeout(timeout);
+		try {
+			ResultSet results = qe.execSelect();
+			// delegate processing of query results to subclass
+			processQueryResults(results);
+		} finally {
+			// Important - free up resources used running the query
+			qe.close();
+		}
 	}
 	
 	
@@ -1,6 +1,7 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -8,21 +9,28 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
-import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.HyperLogLog;
+import rdfsynopsis.util.TermDictionary;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class SubjectObjectRatio extends StatisticalCriterion {
+public class SubjectObjectRatio extends CardinalityCriterion {
+
+	private static final long	serialVersionUID	= 1L;
 
 	private int			numDistinctObjectsSubjects	= -1;
 	private int			numCommonObjectSubjects		= -1;
-	private Set<String>	distinctSubjects;
-	private Set<String>	distinctObjects;
-	private Set<String>	distinctCommonSubjectObjects;
+	private Set<Integer>	distinctSubjects;
+	private Set<Integer>	distinctObjects;
+	private Set<Integer>	distinctCommonSubjectObjects;
+
+	// approximate mode, |S n O| = |S| + |O| - |S u O|
+	private HyperLogLog		subjectSketch;
+	private HyperLogLog		objectSketch;
+	private double			distinctError				= 0;
+	private double			commonError					= 0;
+	boolean					updated						= true;
 
 	public SubjectObjectRatio() {
 		logger = Logger.getLogger(SubjectObjectRatio.class);
@@ -34,13 +42,20 @@ public class SubjectObjectRatio extends StatisticalCriterion {
 	@Override
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
-		ps.println("Result: SubjectObjectRatio = " + getSubjectObjectRatio()
+		if (isApproximate())
+			ps.println("Result: SubjectObjectRatio = " + getSubjectObjectRatio()
+					+ " +/- " + getRatioError()
+					+ " (|S u O|=" + numDistinctObjectsSubjects + " +/- "
+					+ distinctError + "; |S n O|=" + numCommonObjectSubjects
+					+ " +/- " + commonError + ")");
+		else ps.println("Result: SubjectObjectRatio = " + getSubjectObjectRatio()
 				+ " (|S u O|="
 				+ numDistinctObjectsSubjects + "; |S n O|="
 				+ numCommonObjectSubjects + ")");
 	}
 
 	public double getSubjectObjectRatio() {
+		update();
 		assert numDistinctObjectsSubjects != -1;
 		assert numCommonObjectSubjects != -1;
 		assert numCommonObjectSubjects <= numDistinctObjectsSubjects;
@@ -88,30 +103,36 @@ public class SubjectObjectRatio extends StatisticalCriterion {
 	}
 
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
+	public void considerTriple(int s, int p, int o) {
+		if (isApproximate()) {
+			if (TermDictionary.isURI(s))
+				subjectSketch.offer(hash(s));
+			if (TermDictionary.isURI(o))
+				objectSketch.offer(hash(o));
+			updated = false;
+			return;
+		}
 
 		// handle triple's subject
-		if (s.isURIResource()
-				&& !distinctCommonSubjectObjects.contains(s.getURI())) {
-			logger.trace("using triple's subject (" + s + " " + p + " " + o
-					+ ")");
-			if (distinctObjects.contains(s.getURI())) {
-				distinctCommonSubjectObjects.add(s.getURI());
-			} else distinctSubjects.add(s.getURI());
+		if (TermDictionary.isURI(s)
+				&& !distinctCommonSubjectObjects.contains(s)) {
+			if (logger.isTraceEnabled())
+				logger.trace("using triple's subject (" + s + " " + p + " " + o
+						+ ")");
+			if (distinctObjects.contains(s)) {
+				distinctCommonSubjectObjects.add(s);
+			} else distinctSubjects.add(s);
 		}
 
 		// handle triple's object
-		if (o.isURIResource()) {
-			Resource oRes = (Resource) o;
-			if (!distinctCommonSubjectObjects.contains(oRes.getURI())) {
-				logger.trace("using triple's object (" + s + " " + p + " " + o
-						+ ")");
-				if (distinctSubjects.contains(oRes.getURI())) {
-					distinctCommonSubjectObjects.add(oRes.getURI());
-				} else distinctObjects.add(oRes.getURI());
+		if (TermDictionary.isURI(o)) {
+			if (!distinctCommonSubjectObjects.contains(o)) {
+				if (logger.isTraceEnabled())
+					logger.trace("using triple's object (" + s + " " + p + " " + o
+							+ ")");
+				if (distinctSubjects.contains(o)) {
+					distinctCommonSubjectObjects.add(o);
+				} else distinctObjects.add(o);
 			}
 		}
 
@@ -122,13 +143,60 @@ public class SubjectObjectRatio extends StatisticalCriterion {
 
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		SubjectObjectRatio o2 = (SubjectObjectRatio) other;
+		if (isApproximate()) {
+			subjectSketch.merge(o2.subjectSketch);
+			objectSketch.merge(o2.objectSketch);
+			updated = false;
+			return;
+		}
+		if (o2.numCommonObjectSubjects == -1)
+			return;
+
+		Set<Integer> subjects = new HashSet<Integer>(distinctSubjects);
+		subjects.addAll(distinctCommonSubjectObjects);
+		subjects.addAll(translate(o2, o2.distinctSubjects));
+		subjects.addAll(translate(o2, o2.distinctCommonSubjectObjects));
+		Set<Integer> objects = new HashSet<Integer>(distinctObjects);
+		objects.addAll(distinctCommonSubjectObjects);
+		objects.addAll(translate(o2, o2.distinctObjects));
+		objects.addAll(translate(o2, o2.distinctCommonSubjectObjects));
+
+		distinctCommonSubjectObjects = new HashSet<Integer>(subjects);
+		distinctCommonSubjectObjects.retainAll(objects);
+		subjects.removeAll(distinctCommonSubjectObjects);
+		objects.removeAll(distinctCommonSubjectObjects);
+		distinctSubjects = subjects;
+		distinctObjects = objects;
+
+		// update counters
+		numCommonObjectSubjects = distinctCommonSubjectObjects.size();
+		numDistinctObjectsSubjects = distinctObjects.size()
+				+ distinctSubjects.size();
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("SubjectObjectRatio", Double.valueOf(getSubjectObjectRatio()));
+		if (isApproximate())
+			m.put("SubjectObjectRatioError", Double.valueOf(getRatioError()));
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
+
+	@Override
+	public Map<String, Double> getConvergenceValues() {
+		return Collections.singletonMap("SubjectObjectRatio", Double.valueOf(getSubjectObjectRatio()));
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof SubjectObjectRatio) {
@@ -146,19 +214,62 @@ public class SubjectObjectRatio extends StatisticalCriterion {
 	}
 
 	public int getNumCommonSubjectObjectURIs() {
+		update();
 		return numCommonObjectSubjects;
 	}
 
 	public int getNumDistinctSubjectObjectURIs() {
+		update();
 		return numDistinctObjectsSubjects;
 	}
 
+	/**
+	 * @return standard error of the subject-object ratio, 0 if counted
+	 *         exactly
+	 */
+	public double getRatioError() {
+		update();
+		return ratioError(numCommonObjectSubjects, commonError,
+				numDistinctObjectsSubjects, distinctError);
+	}
+
+	@Override
+	public boolean consumesPredicates() {
+		return false;
+	}
+
 	@Override
 	public void init() {
 		numDistinctObjectsSubjects	= -1;
 		numCommonObjectSubjects		= -1;
-		distinctSubjects = new HashSet<String>();
-		distinctObjects = new HashSet<String>();
-		distinctCommonSubjectObjects = new HashSet<String>();
+		distinctSubjects = new HashSet<Integer>();
+		distinctObjects = new HashSet<Integer>();
+		distinctCommonSubjectObjects = new HashSet<Integer>();
+		subjectSketch = isApproximate() ? createSketch() : null;
+		objectSketch = isApproximate() ? createSketch() : null;
+		distinctError = 0;
+		commonError = 0;
+		updated = true;
+	}
+
+	/**
+	 * Only needed for approximate triple stream mode.
+	 */
+	private void update() {
+		if (!updated) {
+			double rse = subjectSketch.getRelativeError();
+			long numSubjects = subjectSketch.estimate();
+			long numObjects = objectSketch.estimate();
+			long numDistinct = subjectSketch.union(objectSketch).estimate();
+			long numCommon = numSubjects + numObjects - numDistinct;
+
+			numDistinctObjectsSubjects = (int) numDistinct;
+			numCommonObjectSubjects = (int) Math.max(0,
+					Math.min(numCommon, Math.min(numSubjects, numObjects)));
+			distinctError = numDistinct * rse;
+			commonError = combinedError(numSubjects * rse, numObjects * rse,
+					distinctError);
+			updated = true;
+		}
 	}
 }
@@ -0,0 +1,94 @@
+package rdfsynopsis.statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import rdfsynopsis.util.IntCounter;
+
+/**
+ * Classes and properties of the current subject of a subject-ordered
+ * stream, which criteria fold into their results at the end of the subject
+ * (see {@link StatisticalCriterion#setSubjectWindow(boolean)}).
+ *
+ * @author thomas
+ *
+ */
+class SubjectWindow implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	private int[]				classes				= new int[4];
+	private int					numClasses;
+	private IntCounter			properties			= new IntCounter(8);
+	private int					numTriples;
+
+	/**
+	 * Add a class of the subject, unless it has been added before.
+	 */
+	void addClass(int classId) {
+		for (int i = 0; i < numClasses; i++)
+			if (classes[i] == classId)
+				return;
+		if (numClasses == classes.length)
+			classes = Arrays.copyOf(classes, 2 * numClasses);
+		classes[numClasses++] = classId;
+	}
+
+	/**
+	 * Count a triple of the subject with the property.
+	 */
+	void addProperty(int property) {
+		properties.add(property, 1);
+	}
+
+	/**
+	 * Count a triple of the subject.
+	 */
+	void countTriple() {
+		numTriples++;
+	}
+
+	/**
+	 * @return classes of the subject, see getNumClasses()
+	 */
+	int[] getClasses() {
+		return classes;
+	}
+
+	int getNumClasses() {
+		return numClasses;
+	}
+
+	/**
+	 * @return number of triples of the subject with each property
+	 */
+	IntCounter getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return properties of the subject in ascending order
+	 */
+	int[] getSortedProperties() {
+		int[] sorted = new int[properties.size()];
+		int i = 0;
+		IntCounter.Cursor c = properties.cursor();
+		while (c.next())
+			sorted[i++] = c.getKey();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	int getNumTriples() {
+		return numTriples;
+	}
+
+	/**
+	 * Start the next subject.
+	 */
+	void clear() {
+		numClasses = 0;
+		properties.clear();
+		numTriples = 0;
+	}
+}
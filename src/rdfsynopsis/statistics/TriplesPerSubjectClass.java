@@ -2,27 +2,32 @@ package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.IntCounter;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class TriplesPerSubjectClass extends StatisticalCriterion {
+public class TriplesPerSubjectClass extends StatisticalCriterion implements
+		TypeIndex.Listener {
 
-	private Map<String, Integer>		triplesPerClass;
-	private Map<String, Integer>		triplesPerSubject;
-	private Map<String, Set<String>>	classesPerSubject;
+	private static final long	serialVersionUID	= 1L;
+
+	private IntCounter					triplesPerClass;
+	private IntCounter					triplesPerSubject;
+	// with a subject window: current subject instead of the type index and
+	// the triples per subject
+	private SubjectWindow				window;
 	boolean								updated	= true;
 
+	private int							typeId;
+
 	public TriplesPerSubjectClass() {
 		logger = Logger.getLogger(TriplesPerSubjectClass.class);
 		logger.trace("logger created");
@@ -37,10 +42,10 @@ public class TriplesPerSubjectClass extends StatisticalCriterion {
 
 		update();
 
-		for (String c : triplesPerClass.keySet()) {
-			ps.println(triplesPerClass.get(c) + " triples with subject class "
-					+ c);
-		}
+		IntCounter.Cursor c = triplesPerClass.cursor();
+		while (c.next())
+			ps.println(c.getCount() + " triples with subject class "
+					+ dictionary.decode(c.getKey()));
 
 	}
 
@@ -54,11 +59,11 @@ public class TriplesPerSubjectClass extends StatisticalCriterion {
 			if (qs.contains("?class") && qs.contains("?numTriplesPerClass")) {
 				// valid solution
 
-				String classUri = qs.getResource("?class").getURI();
-				Integer numTriplesPerClass = qs.getLiteral(
+				int classId = dictionary.encodeURI(qs.getResource("?class").getURI());
+				int numTriplesPerClass = qs.getLiteral(
 						"?numTriplesPerClass").getInt();
 
-				increaseTriplesPerClass(classUri, numTriplesPerClass);
+				triplesPerClass.add(classId, numTriplesPerClass);
 
 			} else
 			// invalid solution
@@ -67,57 +72,73 @@ public class TriplesPerSubjectClass extends StatisticalCriterion {
 		}
 	}
 
-	private void increaseTriplesPerClass(String classUri,
-			Integer numTriplesPerClass) {
-		Integer numTriples = triplesPerClass.get(classUri);
-		if (numTriples == null)
-			numTriples = 0;
-		triplesPerClass.put(classUri, numTriples + numTriplesPerClass);
+	@Override
+	public boolean supportsSubjectWindow() {
+		return true;
 	}
 
-	private void increaseTriplesPerSubject(String subjectUri,
-			Integer numTriplesPerSubject) {
-		Integer numTriples = triplesPerSubject.get(subjectUri);
-		if (numTriples == null)
-			numTriples = 0;
-		triplesPerSubject.put(subjectUri, numTriples + numTriplesPerSubject);
+	@Override
+	public boolean isClassAware() {
+		return !subjectWindow;
 	}
 
-	private void addSubjectClass(String subjectUri, String classUri) {
-		Set<String> subjectClasses = classesPerSubject.get(subjectUri);
-		if (subjectClasses == null)
-			subjectClasses = new HashSet<String>();
-		subjectClasses.add(classUri);
-		classesPerSubject.put(subjectUri, subjectClasses);
+	@Override
+	public void typeAdded(int s, int classId) {
+		if (window != null)
+			return;
+		// previous triples of the subject count for the new class
+		int numTriples = triplesPerSubject.get(s);
+		if (numTriples > 0)
+			triplesPerClass.add(classId, numTriples);
 	}
 
+	/**
+	 * The triples per class are kept up to date triple by triple, so that
+	 * results can be logged after every page without recalculating them.
+	 */
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-
-		String subjectUri = s.getURI();
-		String propertyUri = p.getURI();
-
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+
+		if (window != null) {
+			if (p == typeId && TermDictionary.isURI(o))
+				window.addClass(o);
+			window.countTriple();
+			return;
+		}
 
 		// class instance?
-		String type = Namespace.RDF.getFullTerm("type");
-		if ((propertyUri.equals(type) || propertyUri.equals("a"))
-				&& o.isURIResource()) {
-
-			String classUri = ((Resource) o).getURI();
-			// add to subject's classes
-			addSubjectClass(subjectUri, classUri);
-
-		}
+		if (p == typeId && TermDictionary.isURI(o))
+			typeIndex.addType(s, o);
 
 		// add to subjects triples
-		increaseTriplesPerSubject(subjectUri, 1);
+		triplesPerSubject.add(s, 1);
+		for (int i = typeIndex.getNumClasses(s) - 1; i >= 0; i--)
+			triplesPerClass.add(typeIndex.getClass(s, i), 1);
+	}
 
-		updated = false;
+	/**
+	 * The triples of the subject count for each of its classes.
+	 */
+	@Override
+	public void endSubject() {
+		for (int i = 0; i < window.getNumClasses(); i++)
+			triplesPerClass.add(window.getClasses()[i], window.getNumTriples());
+		window.clear();
+	}
 
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		TriplesPerSubjectClass o2 = (TriplesPerSubjectClass) other;
+		if (window != null) {
+			mergeCounts(triplesPerClass, o2.triplesPerClass, o2);
+			return;
+		}
+		mergeCounts(triplesPerSubject, o2.triplesPerSubject, o2);
+		mergeTypeIndex(o2);
+		updated = false;
 	}
 
 	@Override
@@ -128,37 +149,47 @@ public class TriplesPerSubjectClass extends StatisticalCriterion {
 		return m;
 	}
 
+	@Override
+	public Map<String, Object> getChangedResults() {
+		// no results yet, skip the update of getResultMap()
+		return new HashMap<String, Object>();
+	}
+
 	@Override
 	public void init() {
-		triplesPerClass = new HashMap<String, Integer>();
-		triplesPerSubject = new HashMap<String, Integer>();
-		classesPerSubject = new HashMap<String, Set<String>>();
+		updated = true;
+		triplesPerClass = new IntCounter();
+		triplesPerSubject = new IntCounter();
+		window = subjectWindow ? new SubjectWindow() : null;
+		typeIndex.clear();
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
 	}
 
 	@Override
 	public boolean equals(Object o) {
 		if (o instanceof TriplesPerSubjectClass) {
 			TriplesPerSubjectClass o2 = (TriplesPerSubjectClass) o;
-			return o2.triplesPerClass.equals(this.triplesPerClass);
+			this.update();
+			o2.update();
+			return o2.dictionary.decodeKeys(o2.triplesPerClass).equals(
+					this.dictionary.decodeKeys(this.triplesPerClass));
 		}
 		else return false;
 	}
 
 	/**
-	 * Only needed for triple stream mode.
+	 * Only needed for triple stream mode after merging.
 	 */
 	private void update() {
 		if (!updated) {
-			triplesPerClass = new HashMap<String, Integer>();
-
-			for (String subject : triplesPerSubject.keySet()) {
-				int numTriples = triplesPerSubject.get(subject);
-				Set<String> subjectClasses = classesPerSubject.get(subject);
-
-				if (subjectClasses != null)
-					for (String c : subjectClasses) {
-						increaseTriplesPerClass(c, numTriples);
-					}
+			triplesPerClass = new IntCounter();
+
+			IntCounter.Cursor subjects = triplesPerSubject.cursor();
+			while (subjects.next()) {
+				int s = subjects.getKey();
+				for (int i = typeIndex.getNumClasses(s) - 1; i >= 0; i--)
+					triplesPerClass.add(typeIndex.getClass(s, i),
+							subjects.getCount());
 			}
 
 			updated = true;
@@ -1,6 +1,7 @@
 package rdfsynopsis.statistics;
 
 import java.io.PrintStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -8,21 +9,33 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import rdfsynopsis.util.HyperLogLog;
 import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.Resource;
 
-public class TypedSubjectRatio extends StatisticalCriterion {
+public class TypedSubjectRatio extends CardinalityCriterion implements
+		TypeIndex.Listener {
+
+	private static final long	serialVersionUID	= 1L;
 
 	private int	numSubjects		= -1;
 	private int	numTypedSubjects	= -1;
-	private Set<String> subjectUris;
-	private Set<String> onlyTypedSubjectUris;
-	private Set<String> typedSubjectUris;
+	private Set<Integer> subjectUris;
+	private Set<Integer> typedSubjectUris;
+
+	// approximate mode, |tS| = |S| + |T| - |S u T|
+	private HyperLogLog subjectSketch;
+	private HyperLogLog typeSubjectSketch;
+	private double subjectError = 0;
+	private double typedSubjectError = 0;
+	boolean updated = true;
+
+	private int typeId;
+	private int resourceId;
 
 	public TypedSubjectRatio() {
 		logger = Logger.getLogger(TypedSubjectRatio.class);
@@ -34,11 +47,17 @@ public class TypedSubjectRatio extends StatisticalCriterion {
 	@Override
 	public void flushLog(PrintStream ps) {
 		logger.debug("flushLog");
-		ps.println("Result: TypedSubjectRatio = " + getTypedSubjectRatio() + " (|S|="
+		if (isApproximate())
+			ps.println("Result: TypedSubjectRatio = " + getTypedSubjectRatio()
+					+ " +/- " + getRatioError() + " (|S|=" + numSubjects
+					+ " +/- " + subjectError + "; |tS|=" + numTypedSubjects
+					+ " +/- " + typedSubjectError + ")");
+		else ps.println("Result: TypedSubjectRatio = " + getTypedSubjectRatio() + " (|S|="
 				+ numSubjects + "; |tS|=" + numTypedSubjects + ")");
 	}
 
 	public double getTypedSubjectRatio() {
+		update();
 		assert numSubjects != -1;
 		assert numTypedSubjects != -1;
 		assert numTypedSubjects <= numSubjects;
@@ -80,40 +99,100 @@ public class TypedSubjectRatio extends StatisticalCriterion {
 	}
 	
 	@Override
-	public void considerTriple(Resource s, Property p, RDFNode o) {
-		assert s != null;
-		assert p != null;
-		assert o != null;
-
-		logger.trace("using triple (" + s + " " + p + " " + o + ")");				
-
-		String type = Namespace.RDF.getFullTerm("type");
-		if (p.getURI().equals(type) || p.getURI().equals("a")) {
-
-			// only add if class is NOT rdfs:Resource
-			if (o.isURIResource() && !((Resource) o).getURI().equals(Namespace.RDFS.getFullTerm("Resource")) )
-				// add to typedSubjects only if already occured in non-type triple
-				if (subjectUris.contains(s.getURI()))
-					typedSubjectUris.add(s.getURI());
-				else onlyTypedSubjectUris.add(s.getURI());
+	public boolean isClassAware() {
+		return !isApproximate();
+	}
+
+	@Override
+	public void typeAdded(int s, int classId) {
+		// only typed if class is NOT rdfs:Resource and subject occured in
+		// non-type triple
+		if (!isApproximate() && classId != resourceId && subjectUris.contains(s)) {
+			typedSubjectUris.add(s);
+			numTypedSubjects = typedSubjectUris.size();
+		}
+	}
+
+	/**
+	 * @return true if the subject has a class other than rdfs:Resource
+	 */
+	private boolean isTyped(int s) {
+		int numClasses = typeIndex.getNumClasses(s);
+		return numClasses > 1
+				|| (numClasses == 1 && typeIndex.getClass(s, 0) != resourceId);
+	}
+
+	@Override
+	public void considerTriple(int s, int p, int o) {
+		if (logger.isTraceEnabled())
+			logger.trace("using triple (" + s + " " + p + " " + o + ")");
+
+		if (isApproximate()) {
+			if (p != typeId)
+				subjectSketch.offer(hash(s));
+			else if (TermDictionary.isURI(o) && o != resourceId)
+				typeSubjectSketch.offer(hash(s));
+			updated = false;
+			return;
+		}
+
+		if (p == typeId) {
+
+			if (TermDictionary.isURI(o))
+				typeIndex.addType(s, o);
 					
 		} else {
 			// add to typed subject if previously occured in type triple
-			if (onlyTypedSubjectUris.contains(s.getURI()))
-				typedSubjectUris.add(s.getURI());
-			subjectUris.add(s.getURI());
+			if (subjectUris.add(s) && isTyped(s))
+				typedSubjectUris.add(s);
 		}
 		
 		numSubjects = subjectUris.size();
 		numTypedSubjects = typedSubjectUris.size();
 	}
 	
+	@Override
+	public void merge(StatisticalCriterion other) {
+		checkMergeable(other);
+		TypedSubjectRatio o2 = (TypedSubjectRatio) other;
+		if (isApproximate()) {
+			subjectSketch.merge(o2.subjectSketch);
+			typeSubjectSketch.merge(o2.typeSubjectSketch);
+			updated = false;
+			return;
+		}
+		if (o2.numSubjects == -1)
+			return;
+		subjectUris.addAll(translate(o2, o2.subjectUris));
+		mergeTypeIndex(o2);
+
+		// subjects of type triples, typed if they also occur in other triples
+		for (Integer s : subjectUris)
+			if (isTyped(s))
+				typedSubjectUris.add(s);
+
+		numSubjects = subjectUris.size();
+		numTypedSubjects = typedSubjectUris.size();
+	}
+
 	@Override
 	public Map<String, Object> getResultMap() {
 		Map<String, Object> m = new HashMap<String, Object>();
 		m.put("TypedSubjectRatio", Double.valueOf(getTypedSubjectRatio()));
+		if (isApproximate())
+			m.put("TypedSubjectRatioError", Double.valueOf(getRatioError()));
 		return m;
 	}
+
+	@Override
+	public Map<String, Object> getChangedResults() {
+		return getChangedValues(getResultMap());
+	}
+	
+	@Override
+	public Map<String, Double> getConvergenceValues() {
+		return Collections.singletonMap("TypedSubjectRatio", Double.valueOf(getTypedSubjectRatio()));
+	}
 	
 	@Override
 	public boolean equals(Object o) {
@@ -125,15 +204,50 @@ public class TypedSubjectRatio extends StatisticalCriterion {
 		else return false;
 	}
 
+	/**
+	 * @return standard error of the typed-subject ratio, 0 if counted exactly
+	 */
+	public double getRatioError() {
+		update();
+		return ratioError(numTypedSubjects, typedSubjectError, numSubjects,
+				subjectError);
+	}
+
 	@Override
 	public void init() {
 		numSubjects		= -1;
 		numTypedSubjects	= -1;
-		subjectUris = new HashSet<String>();
-		onlyTypedSubjectUris = new HashSet<String>();
-		typedSubjectUris = new HashSet<String>();
+		subjectUris = new HashSet<Integer>();
+		typeIndex.clear();
+		typedSubjectUris = new HashSet<Integer>();
+		subjectSketch = isApproximate() ? createSketch() : null;
+		typeSubjectSketch = isApproximate() ? createSketch() : null;
+		subjectError = 0;
+		typedSubjectError = 0;
+		updated = true;
+		typeId = dictionary.encodeURI(Namespace.RDF.getFullTerm("type"));
+		resourceId = dictionary.encodeURI(Namespace.RDFS.getFullTerm("Resource"));
 		
 	}
 
-}
+	/**
+	 * Only needed for approximate triple stream mode.
+	 */
+	private void update() {
+		if (!updated) {
+			double rse = subjectSketch.getRelativeError();
+			long numS = subjectSketch.estimate();
+			long numT = typeSubjectSketch.estimate();
+			long numUnion = subjectSketch.union(typeSubjectSketch).estimate();
+
+			numSubjects = (int) numS;
+			numTypedSubjects = (int) Math.max(0,
+					Math.min(numS + numT - numUnion, Math.min(numS, numT)));
+			subjectError = numS * rse;
+			typedSubjectError = combinedError(subjectError, numT * rse,
+					numUnion * rse);
+			updated = true;
+		}
+	}
 
+}
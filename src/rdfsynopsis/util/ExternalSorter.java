@@ -0,0 +1,473 @@
+package rdfsynopsis.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Set of int tuples of fixed arity, read back in lexicographic order, that is
+ * kept within a memory budget. Tuples are collected in a buffer, which is
+ * sorted and freed of duplicates whenever it is full. Once the buffer would
+ * outgrow the budget, it is written to a temporary file as a sorted run. The
+ * tuples are read by merging the runs and the buffer.
+ *
+ * Without a budget the buffer grows as needed and nothing is written to
+ * disk. Not thread-safe.
+ *
+ * @author thomas
+ *
+ */
+public class ExternalSorter implements Serializable, Closeable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	// runs are merged into one once there are more
+	public static final int		MAX_RUNS			= 32;
+
+	private static final int	INITIAL_CAPACITY	= 1024;
+
+	private final int			arity;
+	// bytes of the buffer, 0 for no limit
+	private final long			memoryBudget;
+
+	// tuples, one after another
+	private transient int[]		buffer;
+	// number of tuples in the buffer
+	private transient int		size;
+	private transient boolean	sorted;
+	private transient List<File>	runs;
+
+	/**
+	 * @param arity
+	 *            number of ints per tuple
+	 * @param memoryBudget
+	 *            maximum size of the buffer in bytes, 0 for no limit
+	 */
+	public ExternalSorter(int arity, long memoryBudget) {
+		if (arity < 1)
+			throw new IllegalArgumentException("arity must be at least 1: "
+					+ arity);
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException(
+					"memory budget must not be negative: " + memoryBudget);
+		this.arity = arity;
+		this.memoryBudget = memoryBudget;
+		initBuffer();
+	}
+
+	private void initBuffer() {
+		int capacity = INITIAL_CAPACITY;
+		if (memoryBudget > 0)
+			capacity = (int) Math.max(1,
+					Math.min(capacity, memoryBudget / (4 * arity)));
+		buffer = new int[capacity * arity];
+		size = 0;
+		sorted = true;
+		runs = new ArrayList<File>();
+	}
+
+	public int getArity() {
+		return arity;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return number of sorted runs on disk
+	 */
+	public int getNumRuns() {
+		return runs.size();
+	}
+
+	public boolean isEmpty() {
+		return size == 0 && runs.isEmpty();
+	}
+
+	public void add(int a, int b) {
+		assert arity == 2;
+		ensureCapacity();
+		int i = size * arity;
+		buffer[i] = a;
+		buffer[i + 1] = b;
+		added();
+	}
+
+	public void add(int a, int b, int c) {
+		assert arity == 3;
+		ensureCapacity();
+		int i = size * arity;
+		buffer[i] = a;
+		buffer[i + 1] = b;
+		buffer[i + 2] = c;
+		added();
+	}
+
+	public void add(int[] tuple) {
+		ensureCapacity();
+		System.arraycopy(tuple, 0, buffer, size * arity, arity);
+		added();
+	}
+
+	private void added() {
+		if (sorted && size > 0 && compare(size, size - 1) < 0)
+			sorted = false;
+		size++;
+	}
+
+	/**
+	 * @return cursor over the distinct tuples in lexicographic order; it has
+	 *         to be read to the end or closed, and no tuples may be added
+	 *         meanwhile
+	 */
+	public Cursor cursor() {
+		sortUnique();
+		try {
+			return new Cursor(true);
+		} catch (IOException e) {
+			throw new IllegalStateException("reading sorted runs failed", e);
+		}
+	}
+
+	/**
+	 * Remove all tuples and delete the runs.
+	 */
+	@Override
+	public void close() {
+		for (File run : runs)
+			run.delete();
+		initBuffer();
+	}
+
+	private void ensureCapacity() {
+		if ((size + 1) * arity <= buffer.length)
+			return;
+		sortUnique();
+		// enough room left after removing duplicates
+		if (size * arity <= buffer.length * 3 / 4)
+			return;
+		if (memoryBudget == 0 || 8L * buffer.length <= memoryBudget)
+			buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+		else spill();
+	}
+
+	/**
+	 * Write the buffer to a new run.
+	 */
+	private void spill() {
+		try {
+			File run = createRunFile();
+			DataOutputStream out = openRun(run);
+			try {
+				for (int i = 0; i < size * arity; i++)
+					out.writeInt(buffer[i]);
+			} finally {
+				out.close();
+			}
+			runs.add(run);
+			size = 0;
+			if (runs.size() > MAX_RUNS)
+				mergeRuns();
+		} catch (IOException e) {
+			throw new IllegalStateException("writing sorted run failed", e);
+		}
+	}
+
+	/**
+	 * Replace all runs by a single one.
+	 */
+	private void mergeRuns() throws IOException {
+		File merged = createRunFile();
+		DataOutputStream out = openRun(merged);
+		Cursor c = new Cursor(false);
+		try {
+			while (c.next())
+				for (int i = 0; i < arity; i++)
+					out.writeInt(c.get(i));
+		} finally {
+			c.close();
+			out.close();
+		}
+		for (File run : runs)
+			run.delete();
+		runs.clear();
+		runs.add(merged);
+	}
+
+	private static File createRunFile() throws IOException {
+		File run = File.createTempFile("rdfsynopsis-run", ".bin");
+		run.deleteOnExit();
+		return run;
+	}
+
+	private static DataOutputStream openRun(File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(run), 1 << 16));
+	}
+
+	private void sortUnique() {
+		if (!sorted) {
+			sort(0, size);
+			sorted = true;
+		}
+		int unique = 0;
+		for (int i = 0; i < size; i++)
+			if (unique == 0 || compare(i, unique - 1) != 0) {
+				if (unique != i)
+					System.arraycopy(buffer, i * arity, buffer, unique * arity,
+							arity);
+				unique++;
+			}
+		size = unique;
+	}
+
+	/**
+	 * Quicksort of the tuples from (inclusive) to (exclusive).
+	 */
+	private void sort(int from, int to) {
+		int[] pivot = new int[arity];
+		while (to - from > 16) {
+			// median of three
+			int a = from, b = (from + to) >>> 1, c = to - 1;
+			int m = compare(a, b) < 0 ? (compare(b, c) < 0 ? b
+					: (compare(a, c) < 0 ? c : a)) : (compare(a, c) < 0 ? a
+					: (compare(b, c) < 0 ? c : b));
+			System.arraycopy(buffer, m * arity, pivot, 0, arity);
+
+			int i = from, j = to - 1;
+			while (i <= j) {
+				while (compareTo(i, pivot) < 0)
+					i++;
+				while (compareTo(j, pivot) > 0)
+					j--;
+				if (i <= j)
+					swap(i++, j--);
+			}
+			// recurse into the smaller part
+			if (j - from < to - i) {
+				sort(from, j + 1);
+				from = i;
+			} else {
+				sort(i, to);
+				to = j + 1;
+			}
+		}
+		for (int i = from + 1; i < to; i++)
+			for (int j = i; j > from && compare(j, j - 1) < 0; j--)
+				swap(j, j - 1);
+	}
+
+	private int compare(int t1, int t2) {
+		int i1 = t1 * arity, i2 = t2 * arity;
+		for (int k = 0; k < arity; k++)
+			if (buffer[i1 + k] != buffer[i2 + k])
+				return buffer[i1 + k] < buffer[i2 + k] ? -1 : 1;
+		return 0;
+	}
+
+	private int compareTo(int t, int[] tuple) {
+		int i = t * arity;
+		for (int k = 0; k < arity; k++)
+			if (buffer[i + k] != tuple[k])
+				return buffer[i + k] < tuple[k] ? -1 : 1;
+		return 0;
+	}
+
+	private static int compare(int[] t1, int[] t2) {
+		for (int k = 0; k < t1.length; k++)
+			if (t1[k] != t2[k])
+				return t1[k] < t2[k] ? -1 : 1;
+		return 0;
+	}
+
+	private void swap(int t1, int t2) {
+		int i1 = t1 * arity, i2 = t2 * arity;
+		for (int k = 0; k < arity; k++) {
+			int v = buffer[i1 + k];
+			buffer[i1 + k] = buffer[i2 + k];
+			buffer[i2 + k] = v;
+		}
+	}
+
+	/**
+	 * Tuples are written in order; runs are temporary and not part of the
+	 * serialized state.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		Cursor c = cursor();
+		try {
+			while (c.next()) {
+				out.writeBoolean(true);
+				for (int i = 0; i < arity; i++)
+					out.writeInt(c.get(i));
+			}
+		} finally {
+			c.close();
+		}
+		out.writeBoolean(false);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		initBuffer();
+		int[] tuple = new int[arity];
+		while (in.readBoolean()) {
+			for (int i = 0; i < arity; i++)
+				tuple[i] = in.readInt();
+			add(tuple);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs and the buffer.
+	 */
+	public class Cursor implements Closeable {
+
+		private PriorityQueue<Source>	sources	= new PriorityQueue<Source>();
+		private List<Source>			open	= new ArrayList<Source>();
+		private int[]					current	= null;
+
+		Cursor(boolean includeBuffer) throws IOException {
+			try {
+				for (File run : runs)
+					add(new RunSource(run));
+				if (includeBuffer)
+					add(new BufferSource());
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		private void add(Source s) throws IOException {
+			open.add(s);
+			if (s.next())
+				sources.add(s);
+		}
+
+		/**
+		 * Move to the next distinct tuple; the cursor is closed at the end.
+		 *
+		 * @return false if there is none
+		 */
+		public boolean next() {
+			try {
+				while (!sources.isEmpty()) {
+					Source s = sources.poll();
+					boolean duplicate = current != null
+							&& compare(s.tuple, current) == 0;
+					if (!duplicate) {
+						if (current == null)
+							current = new int[arity];
+						System.arraycopy(s.tuple, 0, current, 0, arity);
+					}
+					if (s.next())
+						sources.add(s);
+					if (!duplicate)
+						return true;
+				}
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("reading sorted run failed", e);
+			}
+			close();
+			return false;
+		}
+
+		/**
+		 * @return i-th int of the current tuple
+		 */
+		public int get(int i) {
+			return current[i];
+		}
+
+		@Override
+		public void close() {
+			for (Source s : open)
+				s.close();
+			open.clear();
+			sources.clear();
+		}
+	}
+
+	private abstract class Source implements Comparable<Source> {
+
+		int[]	tuple	= new int[arity];
+
+		/**
+		 * Read the next tuple.
+		 *
+		 * @return false at the end
+		 */
+		abstract boolean next() throws IOException;
+
+		void close() {
+		}
+
+		@Override
+		public int compareTo(Source o) {
+			return compare(tuple, o.tuple);
+		}
+	}
+
+	private class BufferSource extends Source {
+
+		private int	index	= 0;
+
+		@Override
+		boolean next() {
+			if (index == size)
+				return false;
+			System.arraycopy(buffer, index++ * arity, tuple, 0, arity);
+			return true;
+		}
+	}
+
+	private class RunSource extends Source {
+
+		private DataInputStream	in;
+
+		RunSource(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(run), 1 << 16));
+		}
+
+		@Override
+		boolean next() throws IOException {
+			try {
+				tuple[0] = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			for (int i = 1; i < arity; i++)
+				tuple[i] = in.readInt();
+			return true;
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// read only
+			}
+		}
+	}
+}
@@ -1,159 +1,432 @@
 package rdfsynopsis.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
-import rdfsynopsis.statistics.ClassHierarchy;
+/**
+ * Hierarchy of sub and super nodes, e.g. of classes linked by subClassOf.
+ * Edges are only collected when they are added; the adjacency arrays, the
+ * levels and the top nodes are computed from all edges once they are
+ * requested, in time linear in the number of edges.
+ *
+ * The level of a node is the length of the longest path from a top node (a
+ * node without super nodes) down to it. Cycles are collapsed into one
+ * component whose nodes share a level, so cyclic data does not break the
+ * computation.
+ *
+ * Serialized as the list of its edges.
+ */
+public class HierarchyGraph<V> implements Serializable {
+
+	private static final long				serialVersionUID	= 1L;
+
+	// node value -> node index, and the reverse
+	private transient Map<V, Integer>		nodeIndexes;
+	private transient List<V>				nodeValues;
+
+	// added edges as (sub node index << 32 | super node index), may contain
+	// duplicates until the next update
+	private transient long[]				edges;
+	private transient int					numEdges;
+
+	// computed by update(): distinct super and sub nodes of node i in
+	// superNodes[superOffsets[i]] to superNodes[superOffsets[i + 1] - 1]
+	// and likewise for subNodes
+	private transient boolean				updated;
+	private transient int[]					superOffsets;
+	private transient int[]					superNodes;
+	private transient int[]					subOffsets;
+	private transient int[]					subNodes;
+	private transient int[]					levels;
+	private transient int					maxLevel;
+	private transient boolean				acyclic;
+
+	private transient Logger				logger;
 
-public class HierarchyGraph<V> {
-
-	private class HierarchyNode<T> {
+	public HierarchyGraph() {
+		init();
+	}
 
-		private T						nodeVal;
-		private HierarchyNode<T>		topNode;
-		private Set<HierarchyNode<T>>	subNodes;
-		private Set<HierarchyNode<T>>	superNodes;
-		private int						hierarchyLevel;
+	private void init() {
+		logger = Logger.getLogger(HierarchyGraph.class);
+		logger.trace("logger created");
 
-		public HierarchyNode(T nodeVal) {
-			super();
-			assert nodeVal != null;
+		nodeIndexes = new HashMap<V, Integer>();
+		nodeValues = new ArrayList<V>();
+		edges = new long[16];
+		numEdges = 0;
+		updated = false;
+	}
 
-			this.nodeVal = nodeVal;
-			this.hierarchyLevel = 0;
-			this.topNode = this;
-			this.subNodes = new HashSet<HierarchyNode<T>>();
-			this.superNodes = new HashSet<HierarchyNode<T>>();
-		}
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(getSubNodeValues());
+	}
 
-		private void addSuperNode(HierarchyNode<T> superNode) {
-			superNodes.add(superNode);
-		}
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+		Map<V, Set<V>> subNodeValues = (Map<V, Set<V>>) in.readObject();
+		addHierarchyEdges(subNodeValues);
+	}
 
-		void addSubNode(HierarchyNode<T> subNode) {
-			subNodes.add(subNode);
+	/**
+	 * Add an edge; the hierarchy is recomputed once it is requested.
+	 */
+	public void addHierarchyEdge(V subNodeVal, V superNodeVal) {
+		long sub = getNodeIndex(subNodeVal);
+		long sup = getNodeIndex(superNodeVal);
+		if (numEdges == edges.length)
+			edges = Arrays.copyOf(edges, 2 * numEdges);
+		edges[numEdges++] = sub << 32 | sup;
+		updated = false;
+	}
 
-			subNode.addSuperNode(this);
-			subNode.update(topNode, hierarchyLevel);
+	/**
+	 * Add all edges of a map as returned by {@link #getSubNodeValues()}.
+	 *
+	 * @param subNodeValues
+	 *            super node value -> values of its sub nodes
+	 */
+	public void addHierarchyEdges(Map<V, Set<V>> subNodeValues) {
+		for (Map.Entry<V, Set<V>> e : subNodeValues.entrySet()) {
+			// nodes without edges are kept as well
+			getNodeIndex(e.getKey());
+			for (V subNodeVal : e.getValue())
+				addHierarchyEdge(subNodeVal, e.getKey());
 		}
+	}
 
-		private void update(HierarchyNode<T> newTopNode, int superNodeLevel) {
-			// only update if new top node has changed level
-			if (hierarchyLevel <= superNodeLevel) {
-				hierarchyLevel = superNodeLevel + 1;
-				topNode = newTopNode;
-				// recursively to subnodes
-				for (HierarchyNode<T> subNode : subNodes) {
-					subNode.update(newTopNode, hierarchyLevel);
-				}
-			}
+	private int getNodeIndex(V nodeVal) {
+		assert nodeVal != null;
+		Integer index = nodeIndexes.get(nodeVal);
+		if (index == null) {
+			index = nodeValues.size();
+			nodeIndexes.put(nodeVal, index);
+			nodeValues.add(nodeVal);
+			updated = false;
 		}
+		return index;
+	}
 
-		private String printHierarchy(int level, boolean withDuplicates) {
-			String s = "";
-			for (int i = 0; i < level; i++) {
-				s += " ";
-			}
-			s += nodeVal + "(" + this.hierarchyLevel + ")";
-
-			if (subNodes.size() > 0) {
-				if (withDuplicates || this.hierarchyLevel == level) {
-					s += " <--\n";
-					for (HierarchyNode<T> subNode : subNodes)
-						s += subNode.printHierarchy(level + 1, withDuplicates);
-					return s;
-				} else return s + " (see below for subclasses).\n";
-			}
-			return s + "\n";
+	/**
+	 * Build the adjacency arrays and compute the levels from all edges.
+	 */
+	private void update() {
+		if (updated)
+			return;
+		int numNodes = nodeValues.size();
+
+		// distinct edges, grouped by sub node
+		Arrays.sort(edges, 0, numEdges);
+		int distinct = 0;
+		for (int i = 0; i < numEdges; i++)
+			if (distinct == 0 || edges[i] != edges[distinct - 1])
+				edges[distinct++] = edges[i];
+		numEdges = distinct;
+
+		superOffsets = new int[numNodes + 1];
+		superNodes = new int[numEdges];
+		subOffsets = new int[numNodes + 1];
+		subNodes = new int[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			superOffsets[(int) (edges[i] >>> 32) + 1]++;
+			subOffsets[(int) edges[i] + 1]++;
 		}
-
-		@Override
-		public String toString() {
-			return printHierarchy(hierarchyLevel, true);
+		for (int i = 0; i < numNodes; i++) {
+			superOffsets[i + 1] += superOffsets[i];
+			subOffsets[i + 1] += subOffsets[i];
+		}
+		int[] subPos = Arrays.copyOf(subOffsets, numNodes);
+		for (int i = 0; i < numEdges; i++) {
+			int sub = (int) (edges[i] >>> 32);
+			int sup = (int) edges[i];
+			superNodes[i] = sup;
+			subNodes[subPos[sup]++] = sub;
 		}
-	}
-
-	// all classes occurring in subClassOf triples
-	private Map<V, HierarchyNode<V>>	nodes;
 
-	// all nodes at top of hierarchy,
-	// i.e., node that have no super node
-	private Map<V, HierarchyNode<V>>	topNodes;
+		computeLevels();
+		updated = true;
+		if (logger.isDebugEnabled())
+			logger.debug("hierarchy of " + numNodes + " nodes, " + numEdges
+					+ " edges, depth " + maxLevel + (acyclic ? "" : ", cyclic"));
+	}
 
-	private Logger						logger;
+	/**
+	 * Collapse the strongly connected components (iterative Tarjan along the
+	 * super node edges) and compute the levels in one pass over the
+	 * components, which are completed after all components above them.
+	 */
+	private void computeLevels() {
+		int numNodes = nodeValues.size();
+		levels = new int[numNodes];
+		maxLevel = 0;
+		acyclic = true;
+
+		int[] index = new int[numNodes];
+		Arrays.fill(index, -1);
+		int[] lowLink = new int[numNodes];
+		boolean[] onStack = new boolean[numNodes];
+		int[] stack = new int[numNodes];
+		int stackSize = 0;
+		// depth first search: node and position in its super nodes
+		int[] path = new int[numNodes];
+		int[] pathEdge = new int[numNodes];
+		int nextIndex = 0;
+
+		for (int root = 0; root < numNodes; root++) {
+			if (index[root] != -1)
+				continue;
+			int depth = 0;
+			path[0] = root;
+			pathEdge[0] = superOffsets[root];
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+
+			while (depth >= 0) {
+				int node = path[depth];
+				if (pathEdge[depth] < superOffsets[node + 1]) {
+					int sup = superNodes[pathEdge[depth]++];
+					if (index[sup] == -1) {
+						depth++;
+						path[depth] = sup;
+						pathEdge[depth] = superOffsets[sup];
+						index[sup] = lowLink[sup] = nextIndex++;
+						stack[stackSize++] = sup;
+						onStack[sup] = true;
+					} else if (onStack[sup])
+						lowLink[node] = Math.min(lowLink[node], index[sup]);
+					continue;
+				}
 
-	public HierarchyGraph() {
-		logger = Logger.getLogger(HierarchyGraph.class);
-		logger.trace("logger created");
+				if (lowLink[node] == index[node]) {
+					// node is the root of a component: super nodes still on
+					// the stack belong to it, all others have their levels
+					int first = stackSize;
+					do
+						first--;
+					while (stack[first] != node);
+					int level = 0;
+					for (int i = first; i < stackSize; i++) {
+						int member = stack[i];
+						for (int e = superOffsets[member]; e < superOffsets[member + 1]; e++) {
+							int sup = superNodes[e];
+							if (onStack[sup])
+								acyclic = false;
+							else level = Math.max(level, levels[sup] + 1);
+						}
+					}
+					for (int i = first; i < stackSize; i++) {
+						levels[stack[i]] = level;
+						onStack[stack[i]] = false;
+					}
+					stackSize = first;
+					maxLevel = Math.max(maxLevel, level);
+				}
+				depth--;
+				if (depth >= 0)
+					lowLink[path[depth]] = Math.min(lowLink[path[depth]],
+							lowLink[node]);
+			}
+		}
+	}
 
-		nodes = new HashMap<V, HierarchyNode<V>>();
-		topNodes = new HashMap<V, HierarchyNode<V>>();
+	public int getMaxHierarchyDepth() {
+		update();
+		return maxLevel;
 	}
 
-	public void addHierarchyEdge(V subNodeVal, V superNodeVal) {
-		logger.trace("Begin Add Hierachry Edge");
+	/**
+	 * @return level of the node, -1 if it is not part of the hierarchy
+	 */
+	public int getHierarchyLevel(V nodeVal) {
+		Integer index = nodeIndexes.get(nodeVal);
+		if (index == null)
+			return -1;
+		update();
+		return levels[index];
+	}
 
-		HierarchyNode<V> subNode = getHierarchyNode(subNodeVal);
-		HierarchyNode<V> superNode = getHierarchyNode(superNodeVal);
+	public int getNumNodes() {
+		return nodeValues.size();
+	}
 
-		topNodes.remove(subNodeVal);
-		superNode.addSubNode(subNode);
-		logger.trace("End Add Hierachry Edge");
+	/**
+	 * @return number of distinct edges
+	 */
+	public int getNumEdges() {
+		update();
+		return numEdges;
 	}
 
-	private HierarchyNode<V> getHierarchyNode(V nodeVal) {
-		HierarchyNode<V> hierarchyNode;
-		if (nodes.containsKey(nodeVal)) {
-			hierarchyNode = nodes.get(nodeVal);
-		} else {
-			hierarchyNode = new HierarchyNode<V>(nodeVal);
-			nodes.put(nodeVal, hierarchyNode);
-			topNodes.put(nodeVal, hierarchyNode);
+	/**
+	 * @return value of every node mapped to the values of its direct sub nodes
+	 */
+	public Map<V, Set<V>> getSubNodeValues() {
+		update();
+		Map<V, Set<V>> m = new HashMap<V, Set<V>>(2 * nodeValues.size());
+		for (int i = 0; i < nodeValues.size(); i++) {
+			Set<V> subNodeVals = new HashSet<V>();
+			for (int e = subOffsets[i]; e < subOffsets[i + 1]; e++)
+				subNodeVals.add(nodeValues.get(subNodes[e]));
+			m.put(nodeValues.get(i), subNodeVals);
 		}
+		return m;
+	}
 
-		return hierarchyNode;
+	/**
+	 * @return values of the nodes without super nodes
+	 */
+	public Set<V> getTopNodeValues() {
+		update();
+		Set<V> topNodeVals = new HashSet<V>();
+		for (int i = 0; i < nodeValues.size(); i++)
+			if (superOffsets[i] == superOffsets[i + 1])
+				topNodeVals.add(nodeValues.get(i));
+		return topNodeVals;
 	}
 
-	public int getMaxHierarchyDepth() {
-		int maxDepth = 0;
+	/**
+	 * @return false if the hierarchy contains a cycle, e.g. a node that is
+	 *         its own super node
+	 */
+	public boolean isWellFormed() {
+		update();
+		return acyclic;
+	}
 
-		for (HierarchyNode<V> node : nodes.values())
-			if (maxDepth < node.hierarchyLevel)
-				maxDepth = node.hierarchyLevel;
+	@Override
+	public String toString() {
+		return toString(null);
+	}
 
-		return maxDepth;
+	/**
+	 * @param dictionary
+	 *            used to decode node values that are term ids
+	 * @return hierarchy starting at the top nodes, see print()
+	 */
+	public String toString(TermDictionary dictionary) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			print(sb, dictionary);
+		} catch (IOException e) {
+			// not thrown by StringBuilder
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
 	}
 
-	public int getNumNodes() {
-		return nodes.size();
+	/**
+	 * Write the hierarchy starting at the top nodes, one node per line
+	 * followed by its level and indented by its depth below the top node.
+	 * The sub nodes of a node are only written at its first occurrence;
+	 * nodes of cycles that cannot be reached from a top node follow at the
+	 * end.
+	 *
+	 * @param dictionary
+	 *            used to decode node values that are term ids
+	 */
+	public void print(Appendable out, TermDictionary dictionary)
+			throws IOException {
+		update();
+		int numNodes = nodeValues.size();
+		boolean[] printed = new boolean[numNodes];
+		for (int i = 0; i < numNodes; i++)
+			if (superOffsets[i] == superOffsets[i + 1]) {
+				print(out, i, printed, dictionary);
+				out.append('\n');
+			}
+		for (int i = 0; i < numNodes; i++)
+			if (!printed[i]) {
+				print(out, i, printed, dictionary);
+				out.append('\n');
+			}
 	}
 
-	public boolean isWellFormed() {
-		// TODO implement
-		return false;
+	/**
+	 * Depth first, with an explicit stack so that deep hierarchies do not
+	 * overflow the call stack.
+	 */
+	private void print(Appendable out, int root, boolean[] printed,
+			TermDictionary dictionary) throws IOException {
+		int[] path = new int[16];
+		int[] pathEdge = new int[16];
+		int depth = 0;
+		path[0] = root;
+		pathEdge[0] = subOffsets[root];
+		printNode(out, root, 0, printed, dictionary);
+
+		while (depth >= 0) {
+			int node = path[depth];
+			if (pathEdge[depth] == subOffsets[node + 1]) {
+				depth--;
+				continue;
+			}
+			int sub = subNodes[pathEdge[depth]++];
+			boolean expand = printNode(out, sub, depth + 1, printed,
+					dictionary);
+			if (expand) {
+				if (++depth == path.length) {
+					path = Arrays.copyOf(path, 2 * depth);
+					pathEdge = Arrays.copyOf(pathEdge, 2 * depth);
+				}
+				path[depth] = sub;
+				pathEdge[depth] = subOffsets[sub];
+			}
+		}
 	}
 
-	@Override
-	public String toString() {
-		String res = "";
-		for (HierarchyNode<V> node : topNodes.values()) {
-			res += node + "\n";
+	/**
+	 * @return true if the sub nodes of the node have to be written
+	 */
+	private boolean printNode(Appendable out, int node, int depth,
+			boolean[] printed, TermDictionary dictionary) throws IOException {
+		for (int i = 0; i < depth; i++)
+			out.append(' ');
+		V nodeVal = nodeValues.get(node);
+		// node values that are dictionary ids are decoded
+		if (dictionary != null && nodeVal instanceof Integer)
+			out.append(dictionary.decode((Integer) nodeVal));
+		else out.append(String.valueOf(nodeVal));
+		out.append('(').append(String.valueOf(levels[node])).append(')');
+
+		if (subOffsets[node] == subOffsets[node + 1]) {
+			printed[node] = true;
+			out.append('\n');
+			return false;
+		}
+		if (printed[node]) {
+			out.append(" (see above for subclasses).\n");
+			return false;
 		}
-		return res;
+		printed[node] = true;
+		out.append(" <--\n");
+		return true;
 	}
 
 	@Override
 	public boolean equals(Object o) {
 
 		if (o instanceof HierarchyGraph) {
-			HierarchyGraph o2 = (HierarchyGraph) o;
+			HierarchyGraph<?> o2 = (HierarchyGraph<?>) o;
+			// compare the edges
 			return (o2.getMaxHierarchyDepth() == this.getMaxHierarchyDepth()) &&
-					o2.nodes.equals(this.nodes) &&
-					o2.topNodes.equals(this.topNodes);
+					o2.getSubNodeValues().equals(this.getSubNodeValues()) &&
+					o2.getTopNodeValues().equals(this.getTopNodeValues());
 		}
 		else return false;
 	}
@@ -0,0 +1,162 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct elements offered to it
+ * in constant memory (Flajolet et al., 2007). Sketches of the same precision
+ * can be merged; the merged sketch estimates the cardinality of the union.
+ *
+ * Elements are offered as 64 bit hashes, see {@link #hash(String, int)}.
+ *
+ * @author thomas
+ *
+ */
+public class HyperLogLog implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	public static final int	MIN_PRECISION	= 4;
+	public static final int	MAX_PRECISION	= 16;
+
+	private final int		precision;
+	// one register per bucket, holding the maximum rank seen
+	private final byte[]	registers;
+
+	/**
+	 * @param precision
+	 *            number of hash bits selecting the register, i.e., the sketch
+	 *            uses 2^precision registers
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+			throw new IllegalArgumentException("Invalid precision " + precision
+					+ " (valid: " + MIN_PRECISION + " to " + MAX_PRECISION + ")");
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * @param relativeError
+	 *            relative standard error the sketch shall not exceed
+	 * @return smallest sketch within the error bound
+	 */
+	public static HyperLogLog forErrorBound(double relativeError) {
+		return new HyperLogLog(precisionFor(relativeError));
+	}
+
+	/**
+	 * @param relativeError
+	 * @return smallest precision whose relative standard error 1.04/sqrt(m)
+	 *         does not exceed the given error, capped at MAX_PRECISION
+	 */
+	public static int precisionFor(double relativeError) {
+		if (relativeError <= 0)
+			throw new IllegalArgumentException("Invalid error bound "
+					+ relativeError + " (valid: greater than 0)");
+		double m = Math.pow(1.04 / relativeError, 2);
+		int precision = (int) Math.ceil(Math.log(m) / Math.log(2));
+		return Math.min(MAX_PRECISION, Math.max(MIN_PRECISION, precision));
+	}
+
+	public void offer(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		// rank of the first one bit in the remaining bits, bounded by a
+		// sentinel bit
+		long w = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+		if (rank > registers[index])
+			registers[index] = rank;
+	}
+
+	/**
+	 * @return estimated number of distinct elements offered
+	 */
+	public long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : registers) {
+			sum += Math.scalb(1.0, -r);
+			if (r == 0)
+				zeros++;
+		}
+		double estimate = alpha(m) * m * m / sum;
+
+		// small range correction by linear counting
+		if (estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	/**
+	 * Add the elements offered to another sketch of the same precision.
+	 *
+	 * @param other
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision)
+			throw new IllegalArgumentException("Cannot merge sketches of precision "
+					+ other.precision + " and " + precision);
+		for (int i = 0; i < registers.length; i++)
+			if (other.registers[i] > registers[i])
+				registers[i] = other.registers[i];
+	}
+
+	/**
+	 * @param other
+	 * @return new sketch of the union of both sketches
+	 */
+	public HyperLogLog union(HyperLogLog other) {
+		HyperLogLog union = new HyperLogLog(precision);
+		union.merge(this);
+		union.merge(other);
+		return union;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return relative standard error of the estimate
+	 */
+	public double getRelativeError() {
+		return 1.04 / Math.sqrt(registers.length);
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the term, finalized by the MurmurHash3 mix.
+	 *
+	 * @param term
+	 * @param seed
+	 *            distinguishes equal strings of different kinds
+	 * @return hash of the term
+	 */
+	public static long hash(String term, int seed) {
+		long h = 0xcbf29ce484222325L ^ seed;
+		for (int i = 0; i < term.length(); i++) {
+			h ^= term.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
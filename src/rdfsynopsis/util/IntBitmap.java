@@ -0,0 +1,226 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints, e.g. term ids. Like a Roaring bitmap,
+ * the values are grouped by their upper 16 bits into chunks; a chunk stores
+ * its lower 16 bits in a sorted array while it is sparse and in a plain
+ * bitmap of 2^16 bits once it is dense.
+ *
+ * Not thread-safe.
+ *
+ * @author thomas
+ *
+ */
+public class IntBitmap implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	// chunks holding more values are stored as bitmaps
+	private static final int	MAX_ARRAY_SIZE	= 4096;
+	private static final int	BITMAP_WORDS	= (1 << 16) / 64;
+
+	// sorted upper 16 bits of the chunks
+	private char[]				keys			= new char[4];
+	private Chunk[]				chunks			= new Chunk[4];
+	private int					numChunks		= 0;
+	private int					cardinality		= 0;
+
+	/**
+	 * @param value
+	 * @return true if the value was not contained before
+	 */
+	public boolean add(int value) {
+		char key = (char) (value >>> 16);
+		int i = indexOf(key);
+		if (i < 0) {
+			i = -i - 1;
+			insertChunk(i, key);
+		}
+		Chunk chunk = chunks[i];
+		if (!chunk.add((char) value))
+			return false;
+		if (chunk.values != null && chunk.size > MAX_ARRAY_SIZE)
+			chunk.toBitmap();
+		cardinality++;
+		return true;
+	}
+
+	public boolean contains(int value) {
+		int i = indexOf((char) (value >>> 16));
+		return i >= 0 && chunks[i].contains((char) value);
+	}
+
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/**
+	 * @param other
+	 * @return true if every value of this bitmap is contained in the other
+	 */
+	public boolean isSubsetOf(IntBitmap other) {
+		if (cardinality > other.cardinality || numChunks > other.numChunks)
+			return false;
+		int j = 0;
+		for (int i = 0; i < numChunks; i++) {
+			// chunks are sorted by key
+			while (j < other.numChunks && other.keys[j] < keys[i])
+				j++;
+			if (j == other.numChunks || other.keys[j] != keys[i])
+				return false;
+			if (!chunks[i].isSubsetOf(other.chunks[j]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add all values of the other bitmap.
+	 *
+	 * @param other
+	 */
+	public void or(IntBitmap other) {
+		for (int j = 0; j < other.numChunks; j++) {
+			Chunk otherChunk = other.chunks[j];
+			int base = other.keys[j] << 16;
+			if (otherChunk.values != null)
+				for (int k = 0; k < otherChunk.size; k++)
+					add(base | otherChunk.values[k]);
+			else
+				for (int w = 0; w < BITMAP_WORDS; w++)
+					for (long word = otherChunk.words[w]; word != 0; word &= word - 1)
+						add(base | (w << 6) | Long.numberOfTrailingZeros(word));
+		}
+	}
+
+	/**
+	 * @return all values in ascending order
+	 */
+	public int[] toArray() {
+		int[] a = new int[cardinality];
+		int n = 0;
+		for (int i = 0; i < numChunks; i++) {
+			Chunk chunk = chunks[i];
+			int base = keys[i] << 16;
+			if (chunk.values != null)
+				for (int k = 0; k < chunk.size; k++)
+					a[n++] = base | chunk.values[k];
+			else
+				for (int w = 0; w < BITMAP_WORDS; w++)
+					for (long word = chunk.words[w]; word != 0; word &= word - 1)
+						a[n++] = base | (w << 6) | Long.numberOfTrailingZeros(word);
+		}
+		return a;
+	}
+
+	private int indexOf(char key) {
+		return Arrays.binarySearch(keys, 0, numChunks, key);
+	}
+
+	private void insertChunk(int i, char key) {
+		if (numChunks == keys.length) {
+			keys = Arrays.copyOf(keys, numChunks * 2);
+			chunks = Arrays.copyOf(chunks, numChunks * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, numChunks - i);
+		System.arraycopy(chunks, i, chunks, i + 1, numChunks - i);
+		keys[i] = key;
+		chunks[i] = new Chunk();
+		numChunks++;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof IntBitmap) {
+			IntBitmap o2 = (IntBitmap) o;
+			return o2.cardinality == cardinality && isSubsetOf(o2);
+		}
+		else return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	/**
+	 * Lower 16 bits of the values sharing the same upper 16 bits, either as
+	 * sorted array (values != null) or as bitmap (words != null).
+	 */
+	private static class Chunk implements Serializable {
+
+		private static final long	serialVersionUID	= 1L;
+
+		private char[]	values	= new char[4];
+		private long[]	words;
+		private int		size	= 0;
+
+		boolean add(char value) {
+			if (values == null) {
+				long bit = 1L << value;
+				if ((words[value >>> 6] & bit) != 0)
+					return false;
+				words[value >>> 6] |= bit;
+				size++;
+				return true;
+			}
+			int i = Arrays.binarySearch(values, 0, size, value);
+			if (i >= 0)
+				return false;
+			i = -i - 1;
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = value;
+			size++;
+			return true;
+		}
+
+		boolean contains(char value) {
+			if (values == null)
+				return (words[value >>> 6] & (1L << value)) != 0;
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+
+		void toBitmap() {
+			words = new long[BITMAP_WORDS];
+			for (int k = 0; k < size; k++)
+				words[values[k] >>> 6] |= 1L << values[k];
+			values = null;
+		}
+
+		boolean isSubsetOf(Chunk other) {
+			if (size > other.size)
+				return false;
+			if (values == null) {
+				// other is a bitmap as well, since it is not smaller
+				for (int w = 0; w < BITMAP_WORDS; w++)
+					if ((words[w] & ~other.words[w]) != 0)
+						return false;
+				return true;
+			}
+			if (other.values == null) {
+				for (int k = 0; k < size; k++)
+					if ((other.words[values[k] >>> 6] & (1L << values[k])) == 0)
+						return false;
+				return true;
+			}
+			// merge sorted arrays
+			int j = 0;
+			for (int k = 0; k < size; k++) {
+				while (j < other.size && other.values[j] < values[k])
+					j++;
+				if (j == other.size || other.values[j] != values[k])
+					return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of int keys (e.g. dictionary ids) in an open addressing table. Keys
+ * and counts are kept in int arrays, so counting neither boxes nor allocates
+ * entries. A key whose count drops to 0 is removed.
+ *
+ * @author thomas
+ *
+ */
+public class IntCounter implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	private int[]				keys;
+	// count of every slot, 0 for an empty slot
+	private int[]				counts;
+	private int					size;
+
+	public IntCounter() {
+		this(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            number of keys the table holds without growing
+	 */
+	public IntCounter(int expectedSize) {
+		int capacity = 4;
+		while (capacity < 2 * expectedSize)
+			capacity <<= 1;
+		keys = new int[capacity];
+		counts = new int[capacity];
+	}
+
+	/**
+	 * Change the count of a key; the key is removed once its count is 0.
+	 *
+	 * @param n
+	 *            number to add, negative to decrease the count
+	 * @return new count of the key
+	 */
+	public int add(int key, int n) {
+		int slot = findSlot(keys, counts, key);
+		if (counts[slot] == 0) {
+			if (n == 0)
+				return 0;
+			keys[slot] = key;
+			counts[slot] = n;
+			if (++size > counts.length / 2)
+				grow();
+			return n;
+		}
+		int count = counts[slot] + n;
+		if (count == 0)
+			remove(slot);
+		else counts[slot] = count;
+		return count;
+	}
+
+	/**
+	 * @return count of the key, 0 if it is not contained
+	 */
+	public int get(int key) {
+		return counts[findSlot(keys, counts, key)];
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != 0;
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove all keys; the table keeps its size.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(counts, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Add all counts of another counter.
+	 */
+	public void addAll(IntCounter other) {
+		for (int i = 0; i < other.counts.length; i++)
+			if (other.counts[i] != 0)
+				add(other.keys[i], other.counts[i]);
+	}
+
+	/**
+	 * @return cursor over the keys and their counts, in no particular order
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @return key -> count, e.g. to decode the keys for output
+	 */
+	public Map<Integer, Integer> toMap() {
+		Map<Integer, Integer> m = new HashMap<Integer, Integer>(2 * size);
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] != 0)
+				m.put(keys[i], counts[i]);
+		return m;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof IntCounter))
+			return false;
+		IntCounter o2 = (IntCounter) o;
+		if (o2.size != size)
+			return false;
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] != 0 && o2.get(keys[i]) != counts[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = 0;
+		for (int i = 0; i < counts.length; i++)
+			if (counts[i] != 0)
+				h += keys[i] ^ counts[i];
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+	private static int findSlot(int[] keys, int[] counts, int key) {
+		int mask = counts.length - 1;
+		int slot = hash(key) & mask;
+		while (counts[slot] != 0 && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Empty the slot and move later keys of the same probe sequence up, so
+	 * that no lookup stops early at the gap.
+	 */
+	private void remove(int slot) {
+		int mask = counts.length - 1;
+		int gap = slot;
+		for (int i = (gap + 1) & mask; counts[i] != 0; i = (i + 1) & mask) {
+			int home = hash(keys[i]) & mask;
+			// move the key if its home slot is not between gap and i
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				keys[gap] = keys[i];
+				counts[gap] = counts[i];
+				gap = i;
+			}
+		}
+		counts[gap] = 0;
+		size--;
+	}
+
+	private void grow() {
+		int[] newKeys = new int[2 * keys.length];
+		int[] newCounts = new int[2 * counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0)
+				continue;
+			int slot = findSlot(newKeys, newCounts, keys[i]);
+			newKeys[slot] = keys[i];
+			newCounts[slot] = counts[i];
+		}
+		keys = newKeys;
+		counts = newCounts;
+	}
+
+	/**
+	 * Iterates the keys; the counter must not change meanwhile.
+	 */
+	public class Cursor {
+
+		private int	slot	= -1;
+
+		/**
+		 * Move to the next key.
+		 *
+		 * @return false if there is none
+		 */
+		public boolean next() {
+			while (++slot < counts.length)
+				if (counts[slot] != 0)
+					return true;
+			return false;
+		}
+
+		public int getKey() {
+			return keys[slot];
+		}
+
+		public int getCount() {
+			return counts[slot];
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+
+/**
+ * Counts of int triples (a, b, c) in a flat open addressing table. Keys and
+ * counts are kept in int arrays, so counting allocates nothing but a larger
+ * table once it is half full.
+ *
+ * @author thomas
+ *
+ */
+public class IntTripleCounter implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	// (a, b, c) of every slot, one slot after another
+	private int[]				keys;
+	// count of every slot, 0 for an empty slot
+	private int[]				counts;
+	private int					size;
+
+	public IntTripleCounter() {
+		keys = new int[3 * 64];
+		counts = new int[64];
+	}
+
+	/**
+	 * Increase the count of a triple.
+	 *
+	 * @param n
+	 *            positive number to add
+	 */
+	public void add(int a, int b, int c, int n) {
+		int slot = findSlot(keys, counts, a, b, c);
+		if (counts[slot] == 0) {
+			keys[3 * slot] = a;
+			keys[3 * slot + 1] = b;
+			keys[3 * slot + 2] = c;
+			if (++size > counts.length / 2) {
+				counts[slot] = n;
+				grow();
+				return;
+			}
+		}
+		counts[slot] += n;
+	}
+
+	/**
+	 * @return count of the triple, 0 if it has never been added
+	 */
+	public int get(int a, int b, int c) {
+		return counts[findSlot(keys, counts, a, b, c)];
+	}
+
+	/**
+	 * @return number of distinct triples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return cursor over the triples and their counts, in no particular
+	 *         order
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @return slot of the triple, or the empty slot it belongs into
+	 */
+	private static int findSlot(int[] keys, int[] counts, int a, int b, int c) {
+		int mask = counts.length - 1;
+		int h = (a * 0x9E3779B1 + b) * 0x9E3779B1 + c;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while (counts[slot] != 0
+				&& (keys[3 * slot] != a || keys[3 * slot + 1] != b || keys[3 * slot + 2] != c))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void grow() {
+		int[] newKeys = new int[2 * keys.length];
+		int[] newCounts = new int[2 * counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0)
+				continue;
+			int slot = findSlot(newKeys, newCounts, keys[3 * i],
+					keys[3 * i + 1], keys[3 * i + 2]);
+			System.arraycopy(keys, 3 * i, newKeys, 3 * slot, 3);
+			newCounts[slot] = counts[i];
+		}
+		keys = newKeys;
+		counts = newCounts;
+	}
+
+	/**
+	 * Iterates the triples; the counter must not change meanwhile.
+	 */
+	public class Cursor {
+
+		private int	slot	= -1;
+
+		/**
+		 * Move to the next triple.
+		 *
+		 * @return false if there is none
+		 */
+		public boolean next() {
+			while (++slot < counts.length)
+				if (counts[slot] != 0)
+					return true;
+			return false;
+		}
+
+		public int getFirst() {
+			return keys[3 * slot];
+		}
+
+		public int getSecond() {
+			return keys[3 * slot + 1];
+		}
+
+		public int getThird() {
+			return keys[3 * slot + 2];
+		}
+
+		public int getCount() {
+			return counts[slot];
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Namespaces of the IRIs of a dictionary, numbered in order of their first
+ * occurrence. The namespace of an IRI is the IRI up to and including its last
+ * '/' or '#', as computed by REPLACE(str(?iri), "[^/#]*$", "") in the SPARQL
+ * queries.
+ *
+ * The namespace id of every IRI id is cached, so each IRI is scanned only
+ * once. Not thread-safe, every criterion owns its index.
+ *
+ * @author thomas
+ *
+ */
+public class NamespaceIndex implements Serializable {
+
+	private static final long		serialVersionUID	= 1L;
+
+	private TermDictionary			dictionary;
+
+	// namespace -> id, id -> namespace
+	private Map<String, Integer>	ids					= new HashMap<String, Integer>();
+	private List<String>			namespaces			= new ArrayList<String>();
+
+	// index of an IRI in the dictionary -> namespace id + 1, 0 if not cached
+	private int[]					iriNamespaces		= new int[64];
+
+	public NamespaceIndex(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * @param iri
+	 * @return IRI up to and including the last '/' or '#', empty if there is
+	 *         none
+	 */
+	public static String getNamespace(String iri) {
+		for (int i = iri.length() - 1; i >= 0; i--) {
+			char c = iri.charAt(i);
+			if (c == '/' || c == '#')
+				return iri.substring(0, i + 1);
+		}
+		return "";
+	}
+
+	/**
+	 * @param iriId
+	 *            dictionary id of an IRI
+	 * @return id of the namespace of the IRI
+	 */
+	public int getNamespaceId(int iriId) {
+		int index = iriId >>> 2;
+		if (index >= iriNamespaces.length)
+			iriNamespaces = Arrays.copyOf(iriNamespaces,
+					Math.max(index + 1, 2 * iriNamespaces.length));
+		int nsId = iriNamespaces[index] - 1;
+		if (nsId < 0) {
+			nsId = encode(getNamespace(dictionary.decode(iriId)));
+			iriNamespaces[index] = nsId + 1;
+		}
+		return nsId;
+	}
+
+	/**
+	 * @param namespace
+	 * @return id of the namespace, assigned on first use
+	 */
+	public int encode(String namespace) {
+		Integer id = ids.get(namespace);
+		if (id == null) {
+			id = namespaces.size();
+			namespaces.add(namespace);
+			ids.put(namespace, id);
+		}
+		return id;
+	}
+
+	public String decode(int nsId) {
+		return namespaces.get(nsId);
+	}
+
+	/**
+	 * @return number of namespaces, ids are 0 to size() - 1
+	 */
+	public int size() {
+		return namespaces.size();
+	}
+}
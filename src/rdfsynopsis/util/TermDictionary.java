@@ -0,0 +1,339 @@
+package rdfsynopsis.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+/**
+ * Dictionary encoding of RDF terms. Every IRI, blank node label and literal
+ * is mapped to a compact int id once, so that criteria can key their data
+ * structures by ids instead of strings.
+ *
+ * The two lowest bits of an id carry the kind of term (IRI, blank node,
+ * literal), the remaining bits the index within that kind.
+ *
+ * Encoding and decoding are thread-safe.
+ *
+ * @author thomas
+ *
+ */
+public class TermDictionary implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	public static final int		IRI			= 0;
+	public static final int		BLANK		= 1;
+	public static final int		LITERAL		= 2;
+
+	// id of terms that are not contained in the dictionary
+	public static final int		NOT_FOUND	= -1;
+	// ids of terms that have not been encoded carry only their kind
+	private static final int	UNENCODED	= Integer.MIN_VALUE;
+
+	private static final int	KIND_BITS	= 2;
+	private static final int	KIND_MASK	= (1 << KIND_BITS) - 1;
+	// maximum number of terms of one kind, ids stay non-negative
+	public static final int		MAX_TERMS	= 1 << (31 - KIND_BITS);
+
+	// terms of every kind, written by writeObject()
+	private transient Terms[]	kinds;
+
+	/**
+	 * Terms of one kind: key -> id and index -> key, hash. IRIs and blank node
+	 * labels are their own keys, literals are keyed by their node, so that
+	 * looking up a literal does not build a string.
+	 */
+	private static class Terms {
+		final Map<Object, Integer>	ids		= new ConcurrentHashMap<Object, Integer>();
+		final List<Object>			keys	= new ArrayList<Object>();
+		// written before the id is published, replaced when grown
+		volatile long[]				hashes	= new long[16];
+	}
+
+	public TermDictionary() {
+		init();
+	}
+
+	private void init() {
+		kinds = new Terms[LITERAL + 1];
+		for (int kind = IRI; kind <= LITERAL; kind++)
+			kinds[kind] = new Terms();
+	}
+
+	public int encode(RDFNode node) {
+		if (node.isURIResource())
+			return encode(IRI, ((Resource) node).getURI());
+		if (node.isAnon())
+			return encode(BLANK, ((Resource) node).getId().getLabelString());
+		return encode(LITERAL, node.asNode());
+	}
+
+	public int encodeURI(String uri) {
+		return encode(IRI, uri);
+	}
+
+	public int encodeBlank(String label) {
+		return encode(BLANK, label);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the dictionary already holds MAX_TERMS terms of the kind
+	 */
+	private int encode(int kind, Object key) {
+		Terms terms = kinds[kind];
+		Integer id = terms.ids.get(key);
+		if (id != null)
+			return id;
+		long hash = HyperLogLog.hash(toString(key), kind);
+		synchronized (this) {
+			id = terms.ids.get(key);
+			if (id == null) {
+				int index = terms.keys.size();
+				if (index == MAX_TERMS)
+					throw new IllegalStateException("more than " + MAX_TERMS
+							+ " terms of kind " + kind);
+				id = (index << KIND_BITS) | kind;
+				if (index == terms.hashes.length)
+					terms.hashes = Arrays.copyOf(terms.hashes, 2 * index);
+				terms.hashes[index] = hash;
+				terms.keys.add(key);
+				terms.ids.put(key, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @param id
+	 *            id of a term in the other dictionary
+	 * @param other
+	 * @return id of the same term in this dictionary
+	 */
+	public int translate(int id, TermDictionary other) {
+		if (other == this)
+			return id;
+		return encode(getKind(id), other.getKey(id));
+	}
+
+	/**
+	 * @param uri
+	 * @return id of the IRI, or NOT_FOUND if it has never been encoded
+	 */
+	public int lookupURI(String uri) {
+		Integer id = kinds[IRI].ids.get(uri);
+		return id == null ? NOT_FOUND : id;
+	}
+
+	/**
+	 * @param id
+	 * @return IRI, blank node label or literal of the id
+	 */
+	public String decode(int id) {
+		return toString(getKey(id));
+	}
+
+	private static String toString(Object key) {
+		if (key instanceof Node)
+			// lexical form with language or datatype, as RDFNode.toString()
+			return ((Node) key).toString(PrefixMapping.Standard, false);
+		return (String) key;
+	}
+
+	/**
+	 * Hashes depend on the term and its kind, not on its id, so that they are
+	 * equal in every dictionary. They are computed once when the term is
+	 * encoded and read without locking.
+	 * 
+	 * @param id
+	 * @return HyperLogLog.hash() of the decoded term, seeded with its kind
+	 */
+	public long getHash(int id) {
+		return kinds[id & KIND_MASK].hashes[id >>> KIND_BITS];
+	}
+
+	private synchronized Object getKey(int id) {
+		return kinds[id & KIND_MASK].keys.get(id >>> KIND_BITS);
+	}
+
+	public Set<String> decode(Collection<Integer> ids) {
+		Set<String> s = new HashSet<String>();
+		for (Integer id : ids)
+			s.add(decode(id));
+		return s;
+	}
+
+	public <V> Map<String, V> decodeKeys(Map<Integer, V> m) {
+		Map<String, V> decoded = new HashMap<String, V>();
+		for (Map.Entry<Integer, V> e : m.entrySet())
+			decoded.put(decode(e.getKey()), e.getValue());
+		return decoded;
+	}
+
+	public Map<String, Integer> decodeKeys(IntCounter counts) {
+		Map<String, Integer> decoded = new HashMap<String, Integer>();
+		IntCounter.Cursor c = counts.cursor();
+		while (c.next())
+			decoded.put(decode(c.getKey()), c.getCount());
+		return decoded;
+	}
+
+	public Map<String, Map<String, Integer>> decodeNestedCounts(
+			Map<Integer, IntCounter> m) {
+		Map<String, Map<String, Integer>> decoded = new HashMap<String, Map<String, Integer>>();
+		for (Map.Entry<Integer, IntCounter> e : m.entrySet())
+			decoded.put(decode(e.getKey()), decodeKeys(e.getValue()));
+		return decoded;
+	}
+
+	public <V> Map<String, Map<String, V>> decodeNestedKeys(
+			Map<Integer, Map<Integer, V>> m) {
+		Map<String, Map<String, V>> decoded = new HashMap<String, Map<String, V>>();
+		for (Map.Entry<Integer, Map<Integer, V>> e : m.entrySet())
+			decoded.put(decode(e.getKey()), decodeKeys(e.getValue()));
+		return decoded;
+	}
+
+	public Map<String, Set<String>> decodeSets(Map<Integer, Set<Integer>> m) {
+		Map<String, Set<String>> decoded = new HashMap<String, Set<String>>();
+		for (Map.Entry<Integer, Set<Integer>> e : m.entrySet())
+			decoded.put(decode(e.getKey()), decode(e.getValue()));
+		return decoded;
+	}
+
+	public static int getKind(int id) {
+		return id & KIND_MASK;
+	}
+
+	public static int getKind(RDFNode node) {
+		if (node.isURIResource())
+			return IRI;
+		return node.isAnon() ? BLANK : LITERAL;
+	}
+
+	/**
+	 * @return id standing for every term of the kind that is not encoded,
+	 *         since nobody reads it; it cannot be decoded
+	 */
+	public static int unencoded(int kind) {
+		return UNENCODED | kind;
+	}
+
+	public static boolean isURI(int id) {
+		return (id & KIND_MASK) == IRI;
+	}
+
+	public static boolean isBlank(int id) {
+		return (id & KIND_MASK) == BLANK;
+	}
+
+	public static boolean isLiteral(int id) {
+		return (id & KIND_MASK) == LITERAL;
+	}
+
+	public synchronized int size() {
+		return kinds[IRI].keys.size() + kinds[BLANK].keys.size()
+				+ kinds[LITERAL].keys.size();
+	}
+
+	/**
+	 * @return number of terms of every kind
+	 */
+	public synchronized int[] getNumTerms() {
+		int[] numTerms = new int[kinds.length];
+		for (int kind = IRI; kind <= LITERAL; kind++)
+			numTerms[kind] = kinds[kind].keys.size();
+		return numTerms;
+	}
+
+	/**
+	 * Write the terms from the first to the second numbers of terms of every
+	 * kind (see getNumTerms()) in the order of their ids.
+	 */
+	public synchronized void writeTerms(DataOutput out, int[] from, int[] to)
+			throws IOException {
+		for (int kind = IRI; kind <= LITERAL; kind++) {
+			List<Object> keys = kinds[kind].keys;
+			for (int i = from[kind]; i < to[kind]; i++) {
+				out.writeByte(kind);
+				if (kind == LITERAL) {
+					Node literal = (Node) keys.get(i);
+					String datatype = literal.getLiteralDatatypeURI();
+					writeString(out, literal.getLiteralLexicalForm());
+					writeString(out, literal.getLiteralLanguage());
+					writeString(out, datatype == null ? "" : datatype);
+				} else writeString(out, (String) keys.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Add terms written by writeTerms() to the terms encoded so far, until
+	 * the dictionary holds the given numbers of terms.
+	 */
+	public void readTerms(DataInput in, int[] numTerms) throws IOException {
+		int[] n = getNumTerms();
+		while (n[IRI] < numTerms[IRI] || n[BLANK] < numTerms[BLANK]
+				|| n[LITERAL] < numTerms[LITERAL]) {
+			int kind = in.readByte();
+			if (kind == LITERAL) {
+				String lexicalForm = readString(in);
+				String language = readString(in);
+				String datatype = readString(in);
+				encode(LITERAL, Node.createLiteral(lexicalForm, language,
+						datatype.length() == 0 ? null : TypeMapper
+								.getInstance().getSafeTypeByName(datatype)));
+			} else encode(kind, readString(in));
+			n[kind]++;
+		}
+	}
+
+	private static void writeString(DataOutput out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		int[] numTerms = getNumTerms();
+		for (int n : numTerms)
+			out.writeInt(n);
+		writeTerms(out, new int[numTerms.length], numTerms);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+		int[] numTerms = new int[kinds.length];
+		for (int kind = IRI; kind <= LITERAL; kind++)
+			numTerms[kind] = in.readInt();
+		readTerms(in, numTerms);
+	}
+}
@@ -0,0 +1,221 @@
+package rdfsynopsis.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Classes of the subjects of an analysis, i.e. the IRI objects of their
+ * rdf:type triples, in both directions: subject -> classes and class ->
+ * instances. Class-aware criteria of the same analysis share one index, so
+ * the type triples are indexed only once. Every criterion adds the type
+ * triples it considers; only the first addition of a (subject, class) pair
+ * changes the index and is announced to the listeners.
+ *
+ * Not thread-safe, an index must only be shared by criteria that consider
+ * the triples on the same thread.
+ *
+ * @author thomas
+ *
+ */
+public class TypeIndex implements Serializable {
+
+	private static final long	serialVersionUID	= 1L;
+
+	/**
+	 * Notified of every (subject, class) pair added to the index by
+	 * considering a triple.
+	 */
+	public interface Listener {
+
+		void typeAdded(int subject, int classId);
+	}
+
+	private TermDictionary					dictionary;
+
+	// index of an IRI or blank subject -> {number of classes, classes...},
+	// one array per kind of subject
+	private int[][][]						subjectClasses;
+	private Map<Integer, IntBitmap>			instances;
+	private int								numTypedSubjects;
+
+	private List<Listener>					listeners	= new ArrayList<Listener>();
+	// indexes merged into this one, see merge()
+	private transient Map<TypeIndex, Boolean>	merged;
+
+	public TypeIndex(TermDictionary dictionary) {
+		this.dictionary = dictionary;
+		clear();
+	}
+
+	public TermDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Remove all types; the listeners stay registered.
+	 */
+	public void clear() {
+		subjectClasses = new int[][][] { new int[0][], new int[0][] };
+		instances = new HashMap<Integer, IntBitmap>();
+		numTypedSubjects = 0;
+		merged = null;
+	}
+
+	public void addListener(Listener listener) {
+		if (indexOf(listener) == -1)
+			listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		int i = indexOf(listener);
+		if (i != -1)
+			listeners.remove(i);
+	}
+
+	// criteria compare their results in equals(), listeners are identical
+	private int indexOf(Listener listener) {
+		for (int i = 0; i < listeners.size(); i++)
+			if (listeners.get(i) == listener)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Add the class of a subject and notify the listeners.
+	 *
+	 * @return false if the subject already had the class
+	 */
+	public boolean addType(int subject, int classId) {
+		if (!add(subject, classId))
+			return false;
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).typeAdded(subject, classId);
+		return true;
+	}
+
+	/**
+	 * Add the class of a subject without notifying the listeners.
+	 */
+	private boolean add(int subject, int classId) {
+		int kind = TermDictionary.getKind(subject);
+		// literals are never subjects
+		if (kind == TermDictionary.LITERAL)
+			return false;
+		int[][] classes = subjectClasses[kind];
+		int index = subject >>> 2;
+		if (index >= classes.length) {
+			classes = Arrays.copyOf(classes,
+					Math.max(index + 1, 2 * classes.length));
+			subjectClasses[kind] = classes;
+		}
+		int[] c = classes[index];
+		if (c == null) {
+			c = new int[3];
+			classes[index] = c;
+			numTypedSubjects++;
+		} else {
+			for (int i = 1; i <= c[0]; i++)
+				if (c[i] == classId)
+					return false;
+			if (c[0] + 1 == c.length) {
+				c = Arrays.copyOf(c, 2 * c.length);
+				classes[index] = c;
+			}
+		}
+		c[++c[0]] = classId;
+
+		IntBitmap classInstances = instances.get(classId);
+		if (classInstances == null) {
+			classInstances = new IntBitmap();
+			instances.put(classId, classInstances);
+		}
+		classInstances.add(subject);
+		return true;
+	}
+
+	private int[] getClassArray(int subject) {
+		int kind = TermDictionary.getKind(subject);
+		if (kind == TermDictionary.LITERAL)
+			return null;
+		int[][] classes = subjectClasses[kind];
+		int index = subject >>> 2;
+		return index < classes.length ? classes[index] : null;
+	}
+
+	/**
+	 * @return number of classes of the subject, 0 if it is untyped
+	 */
+	public int getNumClasses(int subject) {
+		int[] c = getClassArray(subject);
+		return c == null ? 0 : c[0];
+	}
+
+	/**
+	 * @param i
+	 *            0 to getNumClasses(subject) - 1
+	 * @return i-th class of the subject, in order of addition
+	 */
+	public int getClass(int subject, int i) {
+		return getClassArray(subject)[i + 1];
+	}
+
+	public boolean hasClass(int subject, int classId) {
+		int[] c = getClassArray(subject);
+		if (c != null)
+			for (int i = 1; i <= c[0]; i++)
+				if (c[i] == classId)
+					return true;
+		return false;
+	}
+
+	/**
+	 * @return number of subjects with at least one class
+	 */
+	public int getNumTypedSubjects() {
+		return numTypedSubjects;
+	}
+
+	/**
+	 * @return all classes, not to be modified
+	 */
+	public Set<Integer> getClassIds() {
+		return Collections.unmodifiableSet(instances.keySet());
+	}
+
+	/**
+	 * @return instances of the class, null if it has none; not to be modified
+	 */
+	public IntBitmap getInstances(int classId) {
+		return instances.get(classId);
+	}
+
+	/**
+	 * Add the types of another index without notifying the listeners, which
+	 * have to recalculate their results from the index. An index that has
+	 * already been merged is skipped, so criteria sharing an index may merge
+	 * the indexes of criteria that share another one.
+	 *
+	 * @return false if the other index had already been merged
+	 */
+	public boolean merge(TypeIndex other) {
+		if (other == this)
+			return false;
+		if (merged == null)
+			merged = new WeakHashMap<TypeIndex, Boolean>();
+		if (merged.put(other, Boolean.TRUE) != null)
+			return false;
+		for (Map.Entry<Integer, IntBitmap> e : other.instances.entrySet()) {
+			int classId = dictionary.translate(e.getKey(), other.dictionary);
+			for (int subject : e.getValue().toArray())
+				add(dictionary.translate(subject, other.dictionary), classId);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,119 @@
+package rdfsynopsis.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Minimal micro benchmark harness: every benchmark is run for a number of
+ * warm-up iterations, whose times are discarded, and then measured for a
+ * number of iterations. Each iteration gets fresh state from
+ * {@link #setUp()}, which is not measured.
+ *
+ * Besides the time, the bytes allocated by the measuring thread are recorded
+ * (if the JVM supports it) and reported per operation, e.g. per triple.
+ *
+ * @author thomas
+ *
+ */
+public abstract class Benchmark {
+
+	// results of the runs are accumulated here so that the JIT cannot drop
+	// the measured code
+	static volatile long	sink;
+
+	private final String	name;
+	// operations per run
+	private final long		numOperations;
+	// bytes allocated by the measured runs, -1 if not supported
+	private long			allocatedBytes;
+
+	public Benchmark(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * @param numOperations
+	 *            number of operations of every run, allocations are reported
+	 *            per operation
+	 */
+	public Benchmark(String name, long numOperations) {
+		this.name = name;
+		this.numOperations = numOperations;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Prepare the state of one iteration (not measured).
+	 */
+	protected void setUp() {
+	}
+
+	/**
+	 * Measured code.
+	 *
+	 * @return any value derived from the result
+	 */
+	protected abstract long run();
+
+	/**
+	 * @return measured times in ns, one per iteration
+	 */
+	public long[] measure(int warmupIterations, int iterations) {
+		for (int i = 0; i < warmupIterations; i++) {
+			setUp();
+			sink += run();
+		}
+		long[] times = new long[iterations];
+		allocatedBytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			setUp();
+			long startBytes = getAllocatedBytes();
+			long startTime = System.nanoTime();
+			sink += run();
+			times[i] = System.nanoTime() - startTime;
+			long endBytes = getAllocatedBytes();
+			if (startBytes < 0 || allocatedBytes < 0)
+				allocatedBytes = -1;
+			else allocatedBytes += endBytes - startBytes;
+		}
+		return times;
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far, -1 if unknown
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported()
+					&& sunBean.isThreadAllocatedMemoryEnabled())
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+		}
+		return -1;
+	}
+
+	public static void printHeader(PrintStream ps) {
+		ps.println(String.format("%-50s %12s %12s %12s %12s", "benchmark",
+				"avg ms", "min ms", "max ms", "alloc B/op"));
+	}
+
+	public void print(PrintStream ps, long[] times) {
+		long[] sorted = times.clone();
+		Arrays.sort(sorted);
+		long sum = 0;
+		for (long t : sorted)
+			sum += t;
+		String alloc = allocatedBytes < 0 ? "n/a" : String.format("%.1f",
+				(double) allocatedBytes / sorted.length / numOperations);
+		ps.println(String.format("%-50s %12.3f %12.3f %12.3f %12s", name,
+				sum / 1e6 / sorted.length, sorted[0] / 1e6,
+				sorted[sorted.length - 1] / 1e6, alloc));
+	}
+}
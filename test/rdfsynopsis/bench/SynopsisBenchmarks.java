@@ -0,0 +1,250 @@
+package rdfsynopsis.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import rdfsynopsis.analyzer.AbstractAnalyzer;
+import rdfsynopsis.analyzer.SparqlAnalyzer;
+import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.dataset.InMemoryDataset;
+import rdfsynopsis.statistics.ClassHierarchy;
+import rdfsynopsis.statistics.ClassInstancesPerProperty;
+import rdfsynopsis.statistics.ClassUsageCount;
+import rdfsynopsis.statistics.CommonProperties;
+import rdfsynopsis.statistics.DistinctSubjectOnlyBlanks;
+import rdfsynopsis.statistics.DistinctSubjectsBlank;
+import rdfsynopsis.statistics.ImplicitClassHierarchy;
+import rdfsynopsis.statistics.ImplicitPropertyHierarchy;
+import rdfsynopsis.statistics.NamespaceLinks;
+import rdfsynopsis.statistics.NumTriples;
+import rdfsynopsis.statistics.OntologyRatioNew;
+import rdfsynopsis.statistics.PredicateVocabularies;
+import rdfsynopsis.statistics.PropertyHierarchy;
+import rdfsynopsis.statistics.PropertyUsage;
+import rdfsynopsis.statistics.PropertyUsagePerSubjectClass;
+import rdfsynopsis.statistics.SameAs;
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.statistics.SubjectObjectRatio;
+import rdfsynopsis.statistics.TriplesPerSubjectClass;
+import rdfsynopsis.statistics.TypedSubjectRatio;
+import rdfsynopsis.util.HierarchyGraph;
+import rdfsynopsis.util.TermDictionary;
+
+/**
+ * Benchmarks of the criteria (considerTriple and the update performed by
+ * flushLog), of HierarchyGraph and of SQA vs. TSA end to end on synthetic
+ * in-memory datasets.
+ *
+ * Run with the test classes, the main classes (including the SPARQL query
+ * files, otherwise run from the project root) and the libraries on the class
+ * path, e.g.
+ *
+ * <pre>
+ * java rdfsynopsis.bench.SynopsisBenchmarks subjects=50000 filter=Implicit.*
+ * </pre>
+ *
+ * Options (key=value): subjects, classes, classesPerSubject, predicates,
+ * fanOut, blanks, literals, seed shape the dataset of the criteria
+ * benchmarks; e2eSubjects the size of the end to end dataset; hierarchyNodes
+ * the size of the hierarchy graph; warmup, iterations; filter a regular
+ * expression selecting benchmarks by name.
+ *
+ * @author thomas
+ *
+ */
+public class SynopsisBenchmarks {
+
+	static final PrintStream	NULL_STREAM	= new PrintStream(new OutputStream() {
+												@Override
+												public void write(int b) {
+												}
+											});
+
+	private Map<String, String>	options		= new HashMap<String, String>();
+	private List<Benchmark>		benchmarks	= new ArrayList<Benchmark>();
+
+	public static void main(String[] args) {
+		SynopsisBenchmarks sb = new SynopsisBenchmarks();
+		for (String arg : args) {
+			int i = arg.indexOf('=');
+			if (i < 0)
+				throw new IllegalArgumentException("Expected key=value: " + arg);
+			sb.options.put(arg.substring(0, i), arg.substring(i + 1));
+		}
+		sb.run(System.out);
+	}
+
+	/**
+	 * @return criteria available on the command line
+	 */
+	static List<StatisticalCriterion> createAllCriteria() {
+		List<StatisticalCriterion> criteria = new ArrayList<StatisticalCriterion>();
+		criteria.add(new ClassUsageCount());
+		criteria.add(new TriplesPerSubjectClass());
+		criteria.add(new ClassHierarchy());
+		criteria.add(new ImplicitClassHierarchy());
+		criteria.add(new OntologyRatioNew());
+		criteria.add(new TypedSubjectRatio());
+		criteria.add(new PropertyUsage());
+		criteria.add(new PredicateVocabularies());
+		criteria.add(new PropertyUsagePerSubjectClass());
+		criteria.add(new ClassInstancesPerProperty());
+		criteria.add(new PropertyHierarchy());
+		criteria.add(new ImplicitPropertyHierarchy());
+		criteria.add(new DistinctSubjectsBlank());
+		criteria.add(new NamespaceLinks());
+		criteria.add(new DistinctSubjectOnlyBlanks());
+		criteria.add(new NumTriples());
+		criteria.add(new SameAs());
+		criteria.add(new CommonProperties());
+		return criteria;
+	}
+
+	private int getInt(String key, int defaultValue) {
+		String value = options.get(key);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	private double getDouble(String key, double defaultValue) {
+		String value = options.get(key);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	private SyntheticDataset createDataset(int numSubjects) {
+		return new SyntheticDataset()
+				.setNumSubjects(numSubjects)
+				.setNumClasses(getInt("classes", 100))
+				.setClassesPerSubject(getInt("classesPerSubject", 2))
+				.setNumPredicates(getInt("predicates", 50))
+				.setPredicateFanOut(getInt("fanOut", 5))
+				.setBlankNodeRatio(getDouble("blanks", 0.1))
+				.setLiteralRatio(getDouble("literals", 0.3))
+				.setSeed(getInt("seed", 42));
+	}
+
+	public void run(PrintStream ps) {
+		SyntheticDataset criteriaDataset = createDataset(getInt("subjects", 10000));
+		ps.println("criteria dataset: " + criteriaDataset);
+
+		addCriteriaBenchmarks(criteriaDataset);
+		addHierarchyBenchmark(getInt("hierarchyNodes", 10000));
+		addAnalyzerBenchmarks(createDataset(getInt("e2eSubjects", 1000)));
+
+		int warmup = getInt("warmup", 3);
+		int iterations = getInt("iterations", 5);
+		String filter = options.get("filter");
+
+		Benchmark.printHeader(ps);
+		for (Benchmark b : benchmarks)
+			if (filter == null || b.getName().matches(filter))
+				b.print(ps, b.measure(warmup, iterations));
+	}
+
+	private void addCriteriaBenchmarks(SyntheticDataset dataset) {
+		final TermDictionary dictionary = new TermDictionary();
+		final int[] triples = dataset.createEncodedTriples(dictionary);
+
+		// SubjectObjectRatio has no working SPARQL query, stream only
+		List<StatisticalCriterion> criteria = createAllCriteria();
+		criteria.add(new SubjectObjectRatio());
+		for (final StatisticalCriterion prototype : criteria) {
+			prototype.setDictionary(dictionary);
+			String name = prototype.getClass().getSimpleName();
+
+			benchmarks.add(new Benchmark("considerTriple/" + name,
+					triples.length / 3) {
+				StatisticalCriterion	sc;
+
+				@Override
+				protected void setUp() {
+					sc = prototype.newInstance();
+				}
+
+				@Override
+				protected long run() {
+					for (int i = 0; i < triples.length; i += 3)
+						sc.considerTriple(triples[i], triples[i + 1], triples[i + 2]);
+					return sc.hashCode();
+				}
+			});
+
+			benchmarks.add(new Benchmark("update/" + name, triples.length / 3) {
+				StatisticalCriterion	sc;
+
+				@Override
+				protected void setUp() {
+					sc = prototype.newInstance();
+					for (int i = 0; i < triples.length; i += 3)
+						sc.considerTriple(triples[i], triples[i + 1], triples[i + 2]);
+				}
+
+				@Override
+				protected long run() {
+					sc.flushLog(NULL_STREAM);
+					return sc.getResultMap().size();
+				}
+			});
+		}
+	}
+
+	private void addHierarchyBenchmark(final int numNodes) {
+		// random forest, every node has a super node with lower number
+		Random random = new Random(getInt("seed", 42));
+		final int[] superNodes = new int[numNodes];
+		for (int i = 1; i < numNodes; i++)
+			superNodes[i] = random.nextInt(i);
+
+		benchmarks.add(new Benchmark("HierarchyGraph.addHierarchyEdge") {
+			@Override
+			protected long run() {
+				HierarchyGraph<Integer> graph = new HierarchyGraph<Integer>();
+				for (int i = 1; i < numNodes; i++)
+					graph.addHierarchyEdge(i, superNodes[i]);
+				return graph.getMaxHierarchyDepth();
+			}
+		});
+	}
+
+	private void addAnalyzerBenchmarks(SyntheticDataset dataset) {
+		final InMemoryDataset ds = dataset.createDataset();
+
+		benchmarks.add(new Benchmark("analyzer/SparqlAnalyzer") {
+			AbstractAnalyzer	a;
+
+			@Override
+			protected void setUp() {
+				a = new SparqlAnalyzer(ds);
+				for (StatisticalCriterion sc : createAllCriteria())
+					a.addCriterion(sc);
+			}
+
+			@Override
+			protected long run() {
+				a.performAnalysis(NULL_STREAM);
+				return a.getCriteria().size();
+			}
+		});
+
+		benchmarks.add(new Benchmark("analyzer/TripleStreamAnalyzer") {
+			AbstractAnalyzer	a;
+
+			@Override
+			protected void setUp() {
+				a = new TripleStreamAnalyzer(ds).setTripleLimit(10000);
+				for (StatisticalCriterion sc : createAllCriteria())
+					a.addCriterion(sc);
+			}
+
+			@Override
+			protected long run() {
+				a.performAnalysis(NULL_STREAM);
+				return a.getCriteria().size();
+			}
+		});
+	}
+}
@@ -0,0 +1,176 @@
+package rdfsynopsis.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import rdfsynopsis.dataset.InMemoryDataset;
+import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/**
+ * Generator of random RDF datasets of configurable shape. The same seed
+ * always yields the same dataset.
+ *
+ * @author thomas
+ *
+ */
+public class SyntheticDataset {
+
+	private Namespace	ns					= new Namespace("bench", "http://example.com/bench/");
+
+	private int			numSubjects			= 10000;
+	private int			numClasses			= 100;
+	private int			classesPerSubject	= 2;
+	private int			numPredicates		= 50;
+	private int			predicateFanOut		= 5;
+	private double		blankNodeRatio		= 0.1;
+	private double		literalRatio		= 0.3;
+	private int			seed				= 42;
+
+	public SyntheticDataset setNumSubjects(int numSubjects) {
+		this.numSubjects = numSubjects;
+		return this;
+	}
+
+	public SyntheticDataset setNumClasses(int numClasses) {
+		this.numClasses = numClasses;
+		return this;
+	}
+
+	public SyntheticDataset setClassesPerSubject(int classesPerSubject) {
+		this.classesPerSubject = classesPerSubject;
+		return this;
+	}
+
+	public SyntheticDataset setNumPredicates(int numPredicates) {
+		this.numPredicates = numPredicates;
+		return this;
+	}
+
+	/**
+	 * @param predicateFanOut
+	 *            number of non-type triples per subject
+	 */
+	public SyntheticDataset setPredicateFanOut(int predicateFanOut) {
+		this.predicateFanOut = predicateFanOut;
+		return this;
+	}
+
+	/**
+	 * @param blankNodeRatio
+	 *            share of subjects that are blank nodes
+	 */
+	public SyntheticDataset setBlankNodeRatio(double blankNodeRatio) {
+		this.blankNodeRatio = blankNodeRatio;
+		return this;
+	}
+
+	/**
+	 * @param literalRatio
+	 *            share of non-type triples with a literal object
+	 */
+	public SyntheticDataset setLiteralRatio(double literalRatio) {
+		this.literalRatio = literalRatio;
+		return this;
+	}
+
+	public SyntheticDataset setSeed(int seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public Model createModel() {
+		Model m = ModelFactory.createDefaultModel();
+		fill(m);
+		return m;
+	}
+
+	public InMemoryDataset createDataset() {
+		InMemoryDataset ds = new InMemoryDataset();
+		fill(ds.getModel());
+		return ds;
+	}
+
+	/**
+	 * @return triples of the dataset as (s, p, o) id triples
+	 */
+	public int[] createEncodedTriples(TermDictionary dictionary) {
+		Model m = createModel();
+		int[] triples = new int[(int) m.size() * 3];
+		int i = 0;
+		for (StmtIterator it = m.listStatements(); it.hasNext();) {
+			Statement st = it.next();
+			triples[i++] = dictionary.encode(st.getSubject());
+			triples[i++] = dictionary.encode(st.getPredicate());
+			triples[i++] = dictionary.encode(st.getObject());
+		}
+		return triples;
+	}
+
+	private void fill(Model m) {
+		Random random = new Random(seed);
+
+		// schema: class and property hierarchies, a few sameAs links
+		List<Resource> classes = new ArrayList<Resource>();
+		for (int i = 0; i < numClasses; i++) {
+			Resource c = m.createResource(ns.getFullTerm("Class" + i));
+			c.addProperty(RDF.type, OWL.Class);
+			if (i > 0)
+				c.addProperty(RDFS.subClassOf, classes.get(random.nextInt(i)));
+			classes.add(c);
+		}
+		List<Property> predicates = new ArrayList<Property>();
+		for (int i = 0; i < numPredicates; i++) {
+			Property p = m.createProperty(ns.getFullTerm("prop" + i));
+			p.addProperty(RDF.type, RDF.Property);
+			if (i > 0 && random.nextInt(4) == 0)
+				p.addProperty(RDFS.subPropertyOf, predicates.get(random.nextInt(i)));
+			predicates.add(p);
+		}
+
+		// instances
+		List<Resource> subjects = new ArrayList<Resource>();
+		for (int i = 0; i < numSubjects; i++) {
+			Resource s = random.nextDouble() < blankNodeRatio ? m.createResource()
+					: m.createResource(ns.getFullTerm("Res" + i));
+			subjects.add(s);
+		}
+		for (Resource s : subjects) {
+			for (int i = 0; i < classesPerSubject; i++)
+				s.addProperty(RDF.type, classes.get(random.nextInt(numClasses)));
+			for (int i = 0; i < predicateFanOut; i++) {
+				Property p = predicates.get(random.nextInt(numPredicates));
+				RDFNode o;
+				if (random.nextDouble() < literalRatio)
+					o = m.createLiteral("value" + random.nextInt(numSubjects));
+				else o = subjects.get(random.nextInt(numSubjects));
+				m.add(s, p, o);
+			}
+			if (random.nextInt(100) == 0)
+				s.addProperty(OWL.sameAs,
+						m.createResource("http://example.org/other/Res"
+								+ random.nextInt(numSubjects)));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "subjects=" + numSubjects + ", classes=" + numClasses
+				+ ", classesPerSubject=" + classesPerSubject + ", predicates="
+				+ numPredicates + ", fanOut=" + predicateFanOut + ", blanks="
+				+ blankNodeRatio + ", literals=" + literalRatio + ", seed="
+				+ seed;
+	}
+}
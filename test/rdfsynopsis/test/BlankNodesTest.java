@@ -11,6 +11,8 @@ import rdfsynopsis.analyzer.TripleStreamAnalyzer;
 import rdfsynopsis.dataset.InMemoryDataset;
 import rdfsynopsis.statistics.DistinctSubjectOnlyBlanks;
 import rdfsynopsis.statistics.DistinctSubjectsBlank;
+import rdfsynopsis.statistics.PropertyUsagePerSubjectClass;
+import rdfsynopsis.statistics.TypedSubjectRatio;
 import rdfsynopsis.util.Namespace;
 
 import com.hp.hpl.jena.rdf.model.AnonId;
@@ -235,4 +237,44 @@ public class BlankNodesTest {
 		assertEquals(4, dsb.getNumDistinctSubjectsBlank());
 	}
 
+	@Test
+	public void blankSubjectsTripleStream() {
+		TypedSubjectRatio tsr = new TypedSubjectRatio();
+		PropertyUsagePerSubjectClass pupsc = new PropertyUsagePerSubjectClass();
+		Model m = ds.getModel();
+		Analyzer tsa = new TripleStreamAnalyzer(ds)
+			.addCriterion(tsr).addCriterion(pupsc);
+
+		// two untyped blanks representing first and last name
+		Resource b1 = m.createResource(new AnonId("blank1"));
+		b1.addLiteral(VCARD.Given, "Max");
+		b1.addLiteral(VCARD.Family, "Mustermann");
+		Resource b2 = m.createResource(new AnonId("blank2"));
+		b2.addLiteral(VCARD.Given, "Petra");
+		b2.addLiteral(VCARD.Family, "Mustermann");
+		maxRes.addProperty(VCARD.NAME, b1);
+		petraRes.addProperty(VCARD.NAME, b2);
+
+		// two typed blanks
+		Resource group = m.createResource(exampleNs.getFullTerm("Group"));
+		Property contains = m.createProperty(exampleNs.getFullTerm("contains"));
+		Resource b3 = m.createResource(new AnonId("blank3"));
+		b3.addProperty(RDF.type, group);
+		b3.addProperty(contains, maxRes);
+		b3.addProperty(contains, petraRes);
+		Resource b4 = m.createResource(new AnonId("blank4"));
+		b4.addProperty(RDF.type, group);
+		b4.addProperty(contains, thomasRes);
+
+		logGraph();
+		tsa.performAnalysis(null);
+
+		// every blank subject is a subject of its own, the untyped blanks do
+		// not take the class of the typed ones
+		assertEquals(2.0 / 11, tsr.getTypedSubjectRatio(), 0.0001);
+		assertEquals(3, pupsc.getPropertyUsagePerClass(group, contains));
+		assertEquals(0, pupsc.getPropertyUsagePerClass(group, VCARD.Given));
+		assertEquals(2, pupsc.getUntypedPropertyUsage(VCARD.Given));
+	}
+
 }
@@ -0,0 +1,87 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rdfsynopsis.eval.CsvWriter;
+
+public class CsvWriterTest {
+
+	File	file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("CsvWriterTest", ".csv");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private List<String> readLines() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		for (String line = reader.readLine(); line != null; line = reader.readLine())
+			lines.add(line);
+		reader.close();
+		return lines;
+	}
+
+	private static Map<String, Object> row(Object... keysAndValues) {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < keysAndValues.length; i += 2)
+			m.put((String) keysAndValues[i], keysAndValues[i + 1]);
+		return m;
+	}
+
+	@Test
+	public void growingColumns() throws IOException {
+		CsvWriter csv = new CsvWriter(file);
+		csv.writeRow(row("a", 1, "b", 2));
+		csv.writeRow(row("b", 3, "c", 4));
+
+		// rows are on disk before the writer is closed
+		assertEquals(Arrays.asList("a,b", "1,2", ",3,4"), readLines());
+
+		csv.writeRow(row("a", 5));
+		csv.close();
+		assertEquals(Arrays.asList("a", "b", "c"), csv.getColumns());
+		assertEquals(Arrays.asList("a,b,c", "1,2", ",3,4", "5,,"), readLines());
+	}
+
+	@Test
+	public void keyAppearingMidStream() throws IOException {
+		CsvWriter csv = new CsvWriter(file);
+		csv.writeRow(row("a", 1));
+		csv.writeRow(row("a", 2));
+		csv.writeRow(row("b", 3));
+		csv.writeRow(row("a", 4, "b", 5));
+		csv.close();
+
+		// earlier rows are blank in the new column
+		assertEquals(Arrays.asList("a,b", "1", "2", ",3", "4,5"), readLines());
+	}
+
+	@Test
+	public void quoting() throws IOException {
+		CsvWriter csv = new CsvWriter(file);
+		csv.writeRow(row("x,y", "say \"hi\"", "z", null));
+		csv.close();
+		assertEquals(Arrays.asList("\"x,y\",z", "\"say \"\"hi\"\"\","),
+				readLines());
+	}
+}
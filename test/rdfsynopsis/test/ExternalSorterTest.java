@@ -0,0 +1,98 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.ExternalSorter;
+
+public class ExternalSorterTest {
+
+	private static List<Long> read(ExternalSorter sorter) {
+		List<Long> tuples = new ArrayList<Long>();
+		ExternalSorter.Cursor c = sorter.cursor();
+		while (c.next())
+			tuples.add(((long) c.get(0) << 32) | (c.get(1) & 0xffffffffL));
+		return tuples;
+	}
+
+	private static void addRandom(ExternalSorter sorter, TreeSet<Long> expected,
+			Random random, int n) {
+		for (int i = 0; i < n; i++) {
+			// few distinct values, many duplicates
+			int a = random.nextInt(100) - 50;
+			int b = random.nextInt(100);
+			sorter.add(a, b);
+			expected.add(((long) a << 32) | b);
+		}
+	}
+
+	@Test
+	public void sortedUnique() {
+		for (long memoryBudget : new long[] { 0, 64, 4096 }) {
+			Random random = new Random(42);
+			ExternalSorter sorter = new ExternalSorter(2, memoryBudget);
+			TreeSet<Long> expected = new TreeSet<Long>();
+			addRandom(sorter, expected, random, 20000);
+			assertEquals(new ArrayList<Long>(expected), read(sorter));
+			if (memoryBudget > 0)
+				assertTrue(sorter.getNumRuns() > 0);
+			else assertEquals(0, sorter.getNumRuns());
+
+			// adding after reading
+			addRandom(sorter, expected, random, 1000);
+			assertEquals(new ArrayList<Long>(expected), read(sorter));
+			assertTrue(sorter.getNumRuns() <= ExternalSorter.MAX_RUNS);
+			sorter.close();
+			assertTrue(sorter.isEmpty());
+		}
+	}
+
+	@Test
+	public void lexicographicOrder() {
+		ExternalSorter sorter = new ExternalSorter(3, 0);
+		sorter.add(2, 1, 1);
+		sorter.add(1, 2, 3);
+		sorter.add(1, 2, 0);
+		sorter.add(1, 1, 5);
+		sorter.add(1, 2, 3);
+		ExternalSorter.Cursor c = sorter.cursor();
+		int[][] expected = { { 1, 1, 5 }, { 1, 2, 0 }, { 1, 2, 3 }, { 2, 1, 1 } };
+		for (int[] tuple : expected) {
+			assertTrue(c.next());
+			assertArrayEquals(tuple, new int[] { c.get(0), c.get(1), c.get(2) });
+		}
+		assertEquals(false, c.next());
+	}
+
+	@Test
+	public void serialization() throws IOException, ClassNotFoundException {
+		ExternalSorter sorter = new ExternalSorter(2, 64);
+		TreeSet<Long> expected = new TreeSet<Long>();
+		addRandom(sorter, expected, new Random(7), 5000);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(sorter);
+		out.close();
+		sorter.close();
+
+		ExternalSorter copy = (ExternalSorter) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(64, copy.getMemoryBudget());
+		assertEquals(new ArrayList<Long>(expected), read(copy));
+		copy.close();
+	}
+}
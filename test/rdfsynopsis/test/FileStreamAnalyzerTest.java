@@ -0,0 +1,111 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rdfsynopsis.analyzer.Analyzer;
+import rdfsynopsis.analyzer.FileStreamAnalyzer;
+import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.dataset.FileStreamDataset;
+import rdfsynopsis.dataset.InMemoryDataset;
+import rdfsynopsis.statistics.ClassUsageCount;
+import rdfsynopsis.statistics.DistinctSubjectsBlank;
+import rdfsynopsis.statistics.NumTriples;
+import rdfsynopsis.statistics.PropertyUsage;
+import rdfsynopsis.statistics.PropertyUsagePerSubjectClass;
+import rdfsynopsis.util.Namespace;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.vocabulary.FOAF;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+public class FileStreamAnalyzerTest {
+
+	InMemoryDataset	ds;
+	File			ntFile;
+	File			ttlFile;
+	Logger			log			= Logger.getLogger(FileStreamAnalyzerTest.class);
+	Namespace		exampleNs	= new Namespace("ex", "http://example.com/");
+
+	@Before
+	public void setUpBefore() throws Exception {
+		ds = new InMemoryDataset();
+		Model m = ds.getModel();
+
+		for (int i = 0; i < 10; i++) {
+			Resource person = m.createResource(exampleNs.getFullTerm("Person" + i));
+			person.addProperty(RDF.type, FOAF.Person);
+			person.addProperty(VCARD.FN, "Mustermann " + i);
+			person.addProperty(FOAF.knows,
+					m.createResource(exampleNs.getFullTerm("Person" + ((i + 1) % 10))));
+
+			Resource blank = m.createResource();
+			blank.addProperty(RDF.type, FOAF.Document);
+			blank.addProperty(FOAF.maker, person);
+		}
+
+		ntFile = File.createTempFile("rdfsynopsis", ".nt");
+		ttlFile = File.createTempFile("rdfsynopsis", ".ttl");
+		OutputStream out = new FileOutputStream(ntFile);
+		m.write(out, "N-TRIPLE");
+		out.close();
+		out = new FileOutputStream(ttlFile);
+		m.write(out, "TTL");
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		ntFile.delete();
+		ttlFile.delete();
+	}
+
+	private Analyzer addCriteria(Analyzer a) {
+		return a.addCriterion(new NumTriples())
+				.addCriterion(new PropertyUsage())
+				.addCriterion(new ClassUsageCount())
+				.addCriterion(new PropertyUsagePerSubjectClass())
+				.addCriterion(new DistinctSubjectsBlank());
+	}
+
+	@Test
+	public void nTriplesFile() {
+		Analyzer tsa = addCriteria(new TripleStreamAnalyzer(ds));
+		tsa.performAnalysis(null);
+
+		Analyzer fsa = addCriteria(new FileStreamAnalyzer(
+				new FileStreamDataset(ntFile.getPath())));
+		fsa.performAnalysis(null);
+
+		assertEquals(50, ((NumTriples) fsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(tsa, fsa);
+	}
+
+	@Test
+	public void turtleFile() {
+		Analyzer tsa = addCriteria(new TripleStreamAnalyzer(ds));
+		tsa.performAnalysis(null);
+
+		Analyzer fsa = addCriteria(new FileStreamAnalyzer(
+				new FileStreamDataset(ttlFile.getPath(), "TTL")));
+		fsa.performAnalysis(null);
+
+		assertEquals(tsa, fsa);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingFile() {
+		new FileStreamAnalyzer(new FileStreamDataset("missing.nt"))
+				.performAnalysis(null);
+	}
+}
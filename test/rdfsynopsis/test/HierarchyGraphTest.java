@@ -0,0 +1,116 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.HierarchyGraph;
+
+public class HierarchyGraphTest {
+
+	@Test
+	public void levels() {
+		// a <- b <- d, a <- c <- d, d <- e, plus a shortcut a <- e
+		HierarchyGraph<String> graph = new HierarchyGraph<String>();
+		graph.addHierarchyEdge("b", "a");
+		graph.addHierarchyEdge("c", "a");
+		graph.addHierarchyEdge("d", "b");
+		graph.addHierarchyEdge("d", "c");
+		graph.addHierarchyEdge("e", "d");
+		graph.addHierarchyEdge("e", "a");
+		graph.addHierarchyEdge("e", "d");
+
+		assertEquals(5, graph.getNumNodes());
+		assertEquals(6, graph.getNumEdges());
+		assertEquals(3, graph.getMaxHierarchyDepth());
+		assertEquals(0, graph.getHierarchyLevel("a"));
+		assertEquals(2, graph.getHierarchyLevel("d"));
+		assertEquals(3, graph.getHierarchyLevel("e"));
+		assertEquals(-1, graph.getHierarchyLevel("x"));
+		assertEquals(new HashSet<String>(Arrays.asList("a")),
+				graph.getTopNodeValues());
+		assertEquals(new HashSet<String>(Arrays.asList("b", "c", "e")),
+				graph.getSubNodeValues().get("a"));
+		assertTrue(graph.isWellFormed());
+
+		// edges added later are considered
+		graph.addHierarchyEdge("a", "top");
+		assertEquals(4, graph.getMaxHierarchyDepth());
+		assertEquals(new HashSet<String>(Arrays.asList("top")),
+				graph.getTopNodeValues());
+	}
+
+	@Test
+	public void cycles() {
+		// b and c are each other's super node, d is its own
+		HierarchyGraph<String> graph = new HierarchyGraph<String>();
+		graph.addHierarchyEdge("b", "a");
+		graph.addHierarchyEdge("c", "b");
+		graph.addHierarchyEdge("b", "c");
+		graph.addHierarchyEdge("e", "c");
+		graph.addHierarchyEdge("d", "d");
+
+		assertFalse(graph.isWellFormed());
+		assertEquals(1, graph.getHierarchyLevel("b"));
+		assertEquals(1, graph.getHierarchyLevel("c"));
+		assertEquals(2, graph.getHierarchyLevel("e"));
+		assertEquals(0, graph.getHierarchyLevel("d"));
+		assertEquals(2, graph.getMaxHierarchyDepth());
+		assertEquals(new HashSet<String>(Arrays.asList("a")),
+				graph.getTopNodeValues());
+
+		// every node once, d although it has no top node
+		String s = graph.toString();
+		for (String node : Arrays.asList("a(0)", "b(1)", "c(1)", "e(2)", "d(0)"))
+			assertTrue(s, s.contains(node));
+		assertTrue(s, s.contains("(see above for subclasses)"));
+	}
+
+	@Test
+	public void deepHierarchy() {
+		HierarchyGraph<Integer> graph = new HierarchyGraph<Integer>();
+		int numNodes = 200000;
+		for (int i = 1; i < numNodes; i++)
+			graph.addHierarchyEdge(i, i - 1);
+		// and back to the top
+		graph.addHierarchyEdge(0, numNodes - 1);
+
+		assertEquals(0, graph.getMaxHierarchyDepth());
+		assertFalse(graph.isWellFormed());
+
+		// indentation grows with the depth
+		HierarchyGraph<Integer> chain = new HierarchyGraph<Integer>();
+		for (int i = 1; i < 3000; i++)
+			chain.addHierarchyEdge(i, i - 1);
+		assertEquals(2999, chain.getMaxHierarchyDepth());
+		assertTrue(chain.toString().endsWith("2999(2999)\n\n"));
+	}
+
+	@Test
+	public void serialization() throws IOException, ClassNotFoundException {
+		HierarchyGraph<Integer> graph = new HierarchyGraph<Integer>();
+		graph.addHierarchyEdge(1, 0);
+		graph.addHierarchyEdge(2, 1);
+		graph.addHierarchyEdge(3, 0);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(graph);
+		out.close();
+
+		Object copy = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+		assertEquals(graph, copy);
+		assertEquals(2, ((HierarchyGraph<?>) copy).getMaxHierarchyDepth());
+	}
+}
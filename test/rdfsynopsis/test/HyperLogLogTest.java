@@ -0,0 +1,60 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.HyperLogLog;
+
+public class HyperLogLogTest {
+
+	private static final String	PREFIX	= "http://example.com/Person";
+
+	@Test
+	public void precision() {
+		assertEquals(14, HyperLogLog.precisionFor(0.01));
+		assertEquals(HyperLogLog.MIN_PRECISION, HyperLogLog.precisionFor(0.5));
+		assertEquals(HyperLogLog.MAX_PRECISION, HyperLogLog.precisionFor(0.0001));
+		assertTrue(HyperLogLog.forErrorBound(0.01).getRelativeError() <= 0.01);
+	}
+
+	@Test
+	public void estimate() {
+		HyperLogLog hll = HyperLogLog.forErrorBound(0.01);
+		assertEquals(0, hll.estimate());
+
+		// small cardinalities are counted (almost) exactly
+		for (int i = 0; i < 100; i++)
+			hll.offer(HyperLogLog.hash(PREFIX + i, 0));
+		assertEquals(100, hll.estimate());
+
+		// duplicates are ignored
+		for (int i = 0; i < 100000; i++)
+			hll.offer(HyperLogLog.hash(PREFIX + i, 0));
+		for (int i = 0; i < 100000; i++)
+			hll.offer(HyperLogLog.hash(PREFIX + i, 0));
+		assertEquals(100000, hll.estimate(), 3 * 100000 * hll.getRelativeError());
+	}
+
+	@Test
+	public void merge() {
+		HyperLogLog all = new HyperLogLog(12);
+		HyperLogLog even = new HyperLogLog(12);
+		HyperLogLog odd = new HyperLogLog(12);
+		for (int i = 0; i < 50000; i++) {
+			long hash = HyperLogLog.hash(PREFIX + i, 0);
+			all.offer(hash);
+			(i % 2 == 0 ? even : odd).offer(hash);
+		}
+
+		assertEquals(all.estimate(), even.union(odd).estimate());
+		even.merge(odd);
+		assertEquals(all.estimate(), even.estimate());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mergeDifferentPrecision() {
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+}
@@ -0,0 +1,94 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.dataset.InMemoryDataset;
+import rdfsynopsis.statistics.ImplicitPropertyHierarchy;
+import rdfsynopsis.util.Namespace;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+public class ImplicitPropertyHierarchyTest {
+
+	InMemoryDataset	ds;
+	Logger			log			= Logger.getLogger(ImplicitPropertyHierarchyTest.class);
+	Namespace		exampleNs	= new Namespace("ex", "http://example.com/");
+
+	@Before
+	public void setUpBefore() throws Exception {
+		ds = new InMemoryDataset();
+		Model m = ds.getModel();
+		Random random = new Random(42);
+
+		Property[] props = new Property[8];
+		for (int i = 0; i < props.length; i++)
+			props[i] = m.createProperty(exampleNs.getFullTerm("prop" + i));
+		Resource[] resources = new Resource[20];
+		for (int i = 0; i < resources.length; i++)
+			resources[i] = m.createResource(exampleNs.getFullTerm("Res" + i));
+
+		for (int i = 0; i < 300; i++) {
+			Resource s = resources[random.nextInt(resources.length)];
+			Resource o = resources[random.nextInt(resources.length)];
+			int p = random.nextInt(4);
+			m.add(s, props[p], o);
+			// prop4 sub property of prop0, prop5 and prop6 equivalent
+			if (p == 0 && random.nextBoolean())
+				m.add(s, props[4], o);
+			if (p == 1) {
+				m.add(s, props[5], o);
+				m.add(s, props[6], o);
+			}
+		}
+		// prop7 sub property of all properties sharing its only pair
+		m.add(resources[0], props[7], m.createLiteral("literal"));
+		m.add(resources[0], props[3], m.createLiteral("literal"));
+		m.add(resources[0], props[2], m.createLiteral("literal"));
+	}
+
+	@Test
+	public void tripleStreamEqualsSparql() {
+		ImplicitPropertyHierarchy sparqlIph = new ImplicitPropertyHierarchy();
+		sparqlIph.processSparqlDataset(ds);
+
+		ImplicitPropertyHierarchy streamIph = new ImplicitPropertyHierarchy();
+		new TripleStreamAnalyzer(ds).setTripleLimit(50)
+				.addCriterion(streamIph)
+				.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+
+		assertEquals(sparqlIph, streamIph);
+	}
+
+	@Test
+	public void subAndEquivalentProperties() {
+		ImplicitPropertyHierarchy iph = new ImplicitPropertyHierarchy();
+		new TripleStreamAnalyzer(ds).addCriterion(iph)
+				.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		iph.flushLog(new PrintStream(out));
+		String result = out.toString();
+		log.debug(result);
+
+		assertTrue(result.contains(exampleNs.getFullTerm("prop4")
+				+ "implicit subproperty of\n-> " + exampleNs.getFullTerm("prop0")));
+		assertFalse(result.contains(exampleNs.getFullTerm("prop0")
+				+ "implicit subproperty of"));
+		assertTrue(result.contains(exampleNs.getFullTerm("prop5")
+				+ "implicit subproperty of"));
+		assertTrue(result.contains(exampleNs.getFullTerm("prop7")
+				+ "implicit subproperty of"));
+	}
+}
@@ -0,0 +1,72 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.IntBitmap;
+
+public class IntBitmapTest {
+
+	private static int[] toArray(TreeSet<Integer> s) {
+		int[] a = new int[s.size()];
+		int i = 0;
+		for (Integer v : s)
+			a[i++] = v;
+		return a;
+	}
+
+	@Test
+	public void addContains() {
+		Random random = new Random(42);
+		IntBitmap b = new IntBitmap();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+
+		// sparse values spread over many chunks, dense values in one chunk
+		for (int i = 0; i < 20000; i++) {
+			int value = random.nextBoolean() ? random.nextInt(Integer.MAX_VALUE)
+					: random.nextInt(1 << 16);
+			assertEquals(expected.add(value), b.add(value));
+		}
+
+		assertEquals(expected.size(), b.getCardinality());
+		assertArrayEquals(toArray(expected), b.toArray());
+		for (int i = 0; i < 1000; i++) {
+			int value = random.nextInt(1 << 17);
+			assertEquals(expected.contains(value), b.contains(value));
+		}
+	}
+
+	@Test
+	public void subset() {
+		Random random = new Random(7);
+		for (int size : Arrays.asList(10, 1000, 10000)) {
+			IntBitmap sub = new IntBitmap();
+			IntBitmap sup = new IntBitmap();
+			for (int i = 0; i < size; i++) {
+				int value = random.nextInt(1 << 18) * 4;
+				sub.add(value);
+				sup.add(value);
+				sup.add(random.nextInt(1 << 18) * 4);
+			}
+
+			assertTrue(sub.isSubsetOf(sup));
+			assertTrue(sub.isSubsetOf(sub));
+			assertFalse(sup.isSubsetOf(sub));
+			assertTrue(new IntBitmap().isSubsetOf(sub));
+
+			IntBitmap notSub = new IntBitmap();
+			notSub.or(sub);
+			assertEquals(sub, notSub);
+			notSub.add(1);
+			assertFalse(notSub.isSubsetOf(sup));
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.IntCounter;
+
+public class IntCounterTest {
+
+	@Test
+	public void addRemove() {
+		Random random = new Random(42);
+		IntCounter counter = new IntCounter();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		// increments and decrements, keys are removed at 0
+		for (int i = 0; i < 50000; i++) {
+			int key = random.nextInt(2000) << 2;
+			int n = random.nextInt(3) - 1;
+			Integer count = expected.get(key);
+			int newCount = (count == null ? 0 : count) + n;
+			if (newCount == 0)
+				expected.remove(key);
+			else expected.put(key, newCount);
+			assertEquals(newCount, counter.add(key, n));
+		}
+
+		assertEquals(expected.size(), counter.size());
+		assertEquals(expected, counter.toMap());
+		for (int key = 0; key < 2000 << 2; key++) {
+			Integer count = expected.get(key);
+			assertEquals(count == null ? 0 : count, counter.get(key));
+		}
+
+		int numKeys = 0;
+		IntCounter.Cursor c = counter.cursor();
+		while (c.next()) {
+			assertEquals(expected.get(c.getKey()).intValue(), c.getCount());
+			numKeys++;
+		}
+		assertEquals(expected.size(), numKeys);
+	}
+
+	@Test
+	public void addAll() {
+		IntCounter c1 = new IntCounter();
+		IntCounter c2 = new IntCounter();
+		c1.add(1, 2);
+		c1.add(5, 1);
+		c2.add(5, -1);
+		c2.add(7, 3);
+		c1.addAll(c2);
+		assertFalse(c1.containsKey(5));
+		assertTrue(c1.containsKey(7));
+		assertEquals(2, c1.size());
+
+		IntCounter expected = new IntCounter(100);
+		expected.add(7, 3);
+		expected.add(1, 2);
+		assertEquals(expected, c1);
+	}
+}
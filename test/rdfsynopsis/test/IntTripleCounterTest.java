@@ -0,0 +1,46 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.IntTripleCounter;
+
+public class IntTripleCounterTest {
+
+	@Test
+	public void counts() {
+		Random random = new Random(42);
+		IntTripleCounter counter = new IntTripleCounter();
+		Map<List<Integer>, Integer> expected = new HashMap<List<Integer>, Integer>();
+
+		for (int i = 0; i < 20000; i++) {
+			int a = random.nextInt(30), b = random.nextInt(30), c = random.nextInt(30);
+			int n = 1 + random.nextInt(3);
+			counter.add(a, b, c, n);
+			List<Integer> key = Arrays.asList(a, b, c);
+			Integer count = expected.get(key);
+			expected.put(key, count == null ? n : count + n);
+		}
+
+		assertEquals(expected.size(), counter.size());
+		Map<List<Integer>, Integer> actual = new HashMap<List<Integer>, Integer>();
+		IntTripleCounter.Cursor c = counter.cursor();
+		while (c.next())
+			actual.put(Arrays.asList(c.getFirst(), c.getSecond(), c.getThird()),
+					c.getCount());
+		assertFalse(c.next());
+		assertEquals(expected, actual);
+		for (Map.Entry<List<Integer>, Integer> e : expected.entrySet())
+			assertEquals(e.getValue().intValue(), counter.get(e.getKey().get(0),
+					e.getKey().get(1), e.getKey().get(2)));
+		assertEquals(0, counter.get(30, 0, 0));
+	}
+}
@@ -0,0 +1,48 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.NamespaceIndex;
+import rdfsynopsis.util.TermDictionary;
+
+public class NamespaceIndexTest {
+
+	@Test
+	public void sameAsSparqlReplace() {
+		for (String iri : Arrays.asList("http://xmlns.com/foaf/0.1/name",
+				"http://www.w3.org/1999/02/22-rdf-syntax-ns#type",
+				"http://example.org/a/b#", "http://example.org/", "urn:isbn:123",
+				"", "http://example.org/a#b/c"))
+			assertEquals(iri.replaceAll("[^/#]*$", ""),
+					NamespaceIndex.getNamespace(iri));
+	}
+
+	@Test
+	public void namespaceIds() {
+		TermDictionary dictionary = new TermDictionary();
+		NamespaceIndex namespaces = new NamespaceIndex(dictionary);
+		int name = dictionary.encodeURI("http://xmlns.com/foaf/0.1/name");
+		int knows = dictionary.encodeURI("http://xmlns.com/foaf/0.1/knows");
+		int type = dictionary.encodeURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+
+		int foaf = namespaces.getNamespaceId(name);
+		assertEquals(foaf, namespaces.getNamespaceId(knows));
+		assertEquals(foaf, namespaces.getNamespaceId(name));
+		assertEquals("http://xmlns.com/foaf/0.1/", namespaces.decode(foaf));
+		int rdf = namespaces.getNamespaceId(type);
+		assertEquals("http://www.w3.org/1999/02/22-rdf-syntax-ns#",
+				namespaces.decode(rdf));
+		assertEquals(rdf, namespaces.encode("http://www.w3.org/1999/02/22-rdf-syntax-ns#"));
+		assertEquals(2, namespaces.size());
+
+		// ids beyond the initial cache
+		for (int i = 0; i < 1000; i++)
+			assertEquals(foaf, namespaces.getNamespaceId(dictionary
+					.encodeURI("http://xmlns.com/foaf/0.1/p" + i)));
+		assertEquals(2, namespaces.size());
+	}
+}
@@ -8,7 +8,14 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({ ClassHierarchyTest.class, OntologyRatioTest.class,
 		SimpleTest.class,
 		TypedSubjectRatioTest.class, BlankNodesTest.class,
-		PropertyUsagePerSubjectClassTest.class, PredicatVocabulariesTest.class })
+		PropertyUsagePerSubjectClassTest.class, PredicatVocabulariesTest.class,
+		TripleStreamAnalyzerTest.class, FileStreamAnalyzerTest.class,
+		TermDictionaryTest.class, HyperLogLogTest.class,
+		ImplicitPropertyHierarchyTest.class, IntBitmapTest.class,
+		CsvWriterTest.class, NamespaceIndexTest.class,
+		IntTripleCounterTest.class, IntCounterTest.class,
+		ExternalSorterTest.class, TypeIndexTest.class,
+		TripleRouterTest.class, HierarchyGraphTest.class })
 public class SimpleMockupTests {
 
 }
@@ -0,0 +1,146 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rdfsynopsis.util.HyperLogLog;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+public class TermDictionaryTest {
+
+	TermDictionary	dictionary;
+	Model			m;
+
+	@Before
+	public void setUpBefore() throws Exception {
+		dictionary = new TermDictionary();
+		m = ModelFactory.createDefaultModel();
+	}
+
+	@Test
+	public void encodeDecode() {
+		Resource r = m.createResource("http://example.com/Person0");
+		int id = dictionary.encode(r);
+
+		assertEquals(id, dictionary.encode(m.createResource("http://example.com/Person0")));
+		assertEquals(id, dictionary.encodeURI("http://example.com/Person0"));
+		assertEquals(id, dictionary.lookupURI("http://example.com/Person0"));
+		assertEquals("http://example.com/Person0", dictionary.decode(id));
+		assertEquals(TermDictionary.NOT_FOUND,
+				dictionary.lookupURI("http://example.com/Person1"));
+		assertEquals(1, dictionary.size());
+	}
+
+	@Test
+	public void kinds() {
+		Resource uri = m.createResource("http://example.com/Person0");
+		Resource blank1 = m.createResource();
+		Resource blank2 = m.createResource();
+		Literal lit = m.createLiteral("http://example.com/Person0");
+
+		int uriId = dictionary.encode(uri);
+		int blank1Id = dictionary.encode(blank1);
+		int blank2Id = dictionary.encode(blank2);
+		int litId = dictionary.encode(lit);
+
+		assertTrue(TermDictionary.isURI(uriId));
+		assertTrue(TermDictionary.isBlank(blank1Id));
+		assertTrue(TermDictionary.isBlank(blank2Id));
+		assertTrue(TermDictionary.isLiteral(litId));
+
+		// same lexical form, different kinds and blank nodes
+		assertFalse(uriId == litId);
+		assertFalse(blank1Id == blank2Id);
+		assertEquals(4, dictionary.size());
+	}
+
+	@Test
+	public void literals() {
+		Literal plain = m.createLiteral("5");
+		Literal typed = m.createTypedLiteral(5);
+		Literal german = m.createLiteral("5", "de");
+
+		int plainId = dictionary.encode(plain);
+		int typedId = dictionary.encode(typed);
+		int germanId = dictionary.encode(german);
+
+		// same lexical form, different datatypes and languages
+		assertEquals(3, dictionary.size());
+		assertEquals(typedId, dictionary.encode(ModelFactory
+				.createDefaultModel().createTypedLiteral(5)));
+		assertEquals(plain.toString(), dictionary.decode(plainId));
+		assertEquals(typed.toString(), dictionary.decode(typedId));
+		assertEquals(german.toString(), dictionary.decode(germanId));
+	}
+
+	@Test
+	public void writeReadTerms() throws IOException, ClassNotFoundException {
+		int uriId = dictionary.encode(m.createResource("http://example.com/Person0"));
+		int blankId = dictionary.encode(m.createResource());
+		int[] numTerms = dictionary.getNumTerms();
+		int litId = dictionary.encode(m.createTypedLiteral(5));
+
+		// terms are written incrementally
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		dictionary.writeTerms(out, new int[3], numTerms);
+		dictionary.writeTerms(out, numTerms, dictionary.getNumTerms());
+		out.close();
+		TermDictionary read = new TermDictionary();
+		read.readTerms(new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())), dictionary.getNumTerms());
+		assertEquals(3, read.size());
+		assertEquals(uriId, read.translate(uriId, dictionary));
+		assertEquals(blankId, read.translate(blankId, dictionary));
+		assertEquals(litId, read.encode(m.createTypedLiteral(5)));
+
+		bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+		objectOut.writeObject(dictionary);
+		objectOut.close();
+		read = (TermDictionary) new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+		assertEquals(3, read.size());
+		assertEquals(dictionary.decode(litId), read.decode(litId));
+		assertEquals(dictionary.getHash(litId), read.getHash(litId));
+	}
+
+	@Test
+	public void hashes() {
+		// enough terms to grow the hashes
+		for (int i = 0; i < 100; i++)
+			dictionary.encodeURI("http://example.com/Person" + i);
+		TermDictionary other = new TermDictionary();
+		for (int i = 99; i >= 0; i--) {
+			String uri = "http://example.com/Person" + i;
+			int id = dictionary.lookupURI(uri);
+			assertEquals(HyperLogLog.hash(uri, TermDictionary.IRI),
+					dictionary.getHash(id));
+			// equal in every dictionary
+			assertEquals(dictionary.getHash(id),
+					other.getHash(other.encodeURI(uri)));
+		}
+		int literalId = dictionary.encode(m.createLiteral("http://example.com/Person0"));
+		assertEquals(HyperLogLog.hash(dictionary.decode(literalId),
+				TermDictionary.LITERAL), dictionary.getHash(literalId));
+		assertFalse(dictionary.getHash(literalId) == dictionary
+				.getHash(dictionary.lookupURI("http://example.com/Person0")));
+	}
+}
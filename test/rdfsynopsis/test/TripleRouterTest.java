@@ -0,0 +1,117 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import rdfsynopsis.analyzer.TripleRouter;
+import rdfsynopsis.statistics.ImplicitPropertyHierarchy;
+import rdfsynopsis.statistics.NumTriples;
+import rdfsynopsis.statistics.SameAs;
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.util.TermDictionary;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+public class TripleRouterTest {
+
+	// counts the type triples of blank subjects it is handed
+	private static class BlankTypeTriples extends NumTriples {
+
+		private static final long	serialVersionUID	= 1L;
+
+		@Override
+		public Set<String> getConsumedPredicates() {
+			return Collections.singleton(RDF.type.getURI());
+		}
+
+		@Override
+		public boolean considersSubjectKind(int kind) {
+			return kind == TermDictionary.BLANK;
+		}
+	}
+
+	@Test
+	public void considerTriple() {
+		TermDictionary dictionary = new TermDictionary();
+		NumTriples all = new NumTriples();
+		SameAs sameAs = new SameAs();
+		NumTriples blankTypes = new BlankTypeTriples();
+		List<StatisticalCriterion> criteria = Arrays
+				.<StatisticalCriterion> asList(all, sameAs, blankTypes);
+		for (StatisticalCriterion sc : criteria) {
+			sc.setDictionary(dictionary);
+			sc.startStream();
+		}
+		TripleRouter router = new TripleRouter(criteria);
+
+		int s = dictionary.encodeURI("http://example.com/s");
+		int b = dictionary.encodeBlank("b");
+		int c = dictionary.encodeURI("http://example.com/C");
+		int type = dictionary.encodeURI(RDF.type.getURI());
+		int sameAsId = dictionary.encodeURI(OWL.sameAs.getURI());
+		// encoded after the routing table
+		int knows = dictionary.encodeURI("http://example.com/knows");
+
+		router.considerTriple(s, type, c);
+		router.considerTriple(b, type, c);
+		router.considerTriple(b, knows, s);
+		router.considerTriple(s, sameAsId, s);
+		router.considerTriple(b, sameAsId, s);
+
+		assertEquals(5, all.getNumTriples());
+		assertEquals(2, sameAs.getNumSameAsTriples());
+		assertEquals(1, blankTypes.getNumTriples());
+	}
+
+	@Test
+	public void encodeReadTerms() {
+		Model m = ModelFactory.createDefaultModel();
+		Resource b = m.createResource();
+		Resource knows = m.createResource("http://example.com/knows");
+
+		// counting triples reads no term at all
+		TermDictionary dictionary = new TermDictionary();
+		NumTriples numTriples = new NumTriples();
+		numTriples.setDictionary(dictionary);
+		TripleRouter router = new TripleRouter(
+				Arrays.<StatisticalCriterion> asList(numTriples));
+		int s = router.encodeSubject(dictionary, b);
+		int p = router.encodePredicate(dictionary, knows);
+		int o = router.encodeObject(dictionary, m.createLiteral("x"));
+		assertEquals(0, dictionary.size());
+		assertEquals(TermDictionary.BLANK, TermDictionary.getKind(s));
+		assertEquals(TermDictionary.IRI, TermDictionary.getKind(p));
+		assertEquals(TermDictionary.LITERAL, TermDictionary.getKind(o));
+
+		// literals only for the criteria that ask for them
+		dictionary = new TermDictionary();
+		SameAs sameAs = new SameAs();
+		sameAs.setDictionary(dictionary);
+		router = new TripleRouter(Arrays.<StatisticalCriterion> asList(
+				numTriples, sameAs));
+		assertEquals(dictionary.encode(knows),
+				router.encodePredicate(dictionary, knows));
+		router.encodeSubject(dictionary, b);
+		router.encodeObject(dictionary, m.createLiteral("x"));
+		assertEquals(0, dictionary.getNumTerms()[TermDictionary.BLANK]);
+		assertEquals(0, dictionary.getNumTerms()[TermDictionary.LITERAL]);
+
+		ImplicitPropertyHierarchy hierarchy = new ImplicitPropertyHierarchy();
+		hierarchy.setDictionary(dictionary);
+		router = new TripleRouter(Arrays.<StatisticalCriterion> asList(
+				sameAs, hierarchy));
+		assertEquals(dictionary.encode(m.createLiteral("x")),
+				router.encodeObject(dictionary, m.createLiteral("x")));
+		assertEquals(1, dictionary.getNumTerms()[TermDictionary.LITERAL]);
+	}
+}
@@ -0,0 +1,770 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import rdfsynopsis.analyzer.AbstractAnalyzer;
+import rdfsynopsis.analyzer.Analyzer;
+import rdfsynopsis.analyzer.Checkpoint;
+import rdfsynopsis.analyzer.ConvergenceCheck;
+import rdfsynopsis.analyzer.PartitionAnalyzer;
+import rdfsynopsis.analyzer.SparqlAnalyzer;
+import rdfsynopsis.analyzer.TripleStreamAnalyzer;
+import rdfsynopsis.dataset.InMemoryDataset;
+import rdfsynopsis.eval.PartialStreamAnalysisLogger;
+import rdfsynopsis.statistics.ClassHierarchy;
+import rdfsynopsis.statistics.ClassInstancesPerProperty;
+import rdfsynopsis.statistics.ClassUsageCount;
+import rdfsynopsis.statistics.CommonProperties;
+import rdfsynopsis.statistics.DistinctSubjectOnlyBlanks;
+import rdfsynopsis.statistics.DistinctSubjectsBlank;
+import rdfsynopsis.statistics.ImplicitClassHierarchy;
+import rdfsynopsis.statistics.ImplicitPropertyHierarchy;
+import rdfsynopsis.statistics.NamespaceLinks;
+import rdfsynopsis.statistics.NumTriples;
+import rdfsynopsis.statistics.OntologyRatioNew;
+import rdfsynopsis.statistics.PredicateVocabularies;
+import rdfsynopsis.statistics.PropertyHierarchy;
+import rdfsynopsis.statistics.PropertyUsage;
+import rdfsynopsis.statistics.PropertyUsagePerSubjectClass;
+import rdfsynopsis.statistics.SameAs;
+import rdfsynopsis.statistics.StatisticalCriterion;
+import rdfsynopsis.statistics.SubjectObjectRatio;
+import rdfsynopsis.statistics.TriplesPerSubjectClass;
+import rdfsynopsis.statistics.TypedSubjectRatio;
+import rdfsynopsis.util.Namespace;
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.sparql.vocabulary.FOAF;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.hp.hpl.jena.vocabulary.VCARD;
+
+public class TripleStreamAnalyzerTest {
+
+	InMemoryDataset	ds;
+	Logger			log			= Logger.getLogger(TripleStreamAnalyzerTest.class);
+	Namespace		exampleNs	= new Namespace("ex", "http://example.com/");
+
+	@Before
+	public void setUpBefore() throws Exception {
+		ds = new InMemoryDataset();
+		Model m = ds.getModel();
+
+		for (int i = 0; i < 10; i++) {
+			Resource person = m.createResource(exampleNs.getFullTerm("Person" + i));
+			person.addProperty(RDF.type, FOAF.Person);
+			person.addProperty(VCARD.FN, "Mustermann");
+			person.addLiteral(VCARD.FN, "Mustermann");
+			person.addProperty(FOAF.knows,
+					m.createResource(exampleNs.getFullTerm("Person" + ((i + 1) % 10))));
+
+			// blank nodes share the same lexical key
+			Resource blank = m.createResource();
+			blank.addProperty(RDF.type, FOAF.Person);
+			blank.addProperty(FOAF.knows, person);
+		}
+		m.createResource(FOAF.Person.getURI()).addProperty(RDFS.subClassOf, FOAF.Agent);
+		m.createResource(FOAF.knows.getURI()).addProperty(RDFS.subPropertyOf, RDFS.seeAlso);
+		m.createResource(exampleNs.getFullTerm("Person0")).addProperty(OWL.sameAs,
+				m.createResource(exampleNs.getFullTerm("Person10")));
+
+		// output graph for debugging
+		log.debug(ds.toString());
+	}
+
+	private TripleStreamAnalyzer createAnalyzer() {
+		TripleStreamAnalyzer tsa = new TripleStreamAnalyzer(ds);
+		tsa.addCriterion(new NumTriples())
+				.addCriterion(new PropertyUsage())
+				.addCriterion(new ClassUsageCount())
+				.addCriterion(new DistinctSubjectsBlank());
+		return tsa;
+	}
+
+	@Test
+	public void keysetPagingBySubject() {
+		Analyzer offsetTsa = createAnalyzer().setTripleLimit(7);
+		offsetTsa.performAnalysis(null);
+
+		Analyzer keysetTsa = createAnalyzer().setKeysetPaging(true)
+				.setTripleLimit(7);
+		keysetTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) keysetTsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(offsetTsa, keysetTsa);
+	}
+
+	@Test
+	public void keysetPagingByObject() {
+		Analyzer offsetTsa = createAnalyzer()
+				.setOrderByClause(TripleStreamAnalyzer.ByObject)
+				.setTripleLimit(4);
+		offsetTsa.performAnalysis(null);
+
+		Analyzer keysetTsa = createAnalyzer()
+				.setOrderByClause(TripleStreamAnalyzer.ByObject)
+				.setKeysetPaging(true)
+				.setTripleLimit(4);
+		keysetTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) keysetTsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(offsetTsa, keysetTsa);
+	}
+
+	@Test
+	public void keysetPagingPageSizes() {
+		for (String orderBy : new String[] { TripleStreamAnalyzer.BySubject,
+				TripleStreamAnalyzer.ByPredicate, TripleStreamAnalyzer.ByObject }) {
+			Analyzer offsetTsa = createAnalyzer().setOrderByClause(orderBy)
+					.setTripleLimit(100);
+			offsetTsa.performAnalysis(null);
+
+			// pages end on blank nodes, literals and IRIs
+			for (int tripleLimit = 1; tripleLimit <= 9; tripleLimit++) {
+				Analyzer keysetTsa = createAnalyzer().setOrderByClause(orderBy)
+						.setKeysetPaging(true).setTripleLimit(tripleLimit);
+				keysetTsa.performAnalysis(null);
+
+				assertEquals(63, ((NumTriples) keysetTsa.getCriteria().get(0)).getNumTriples());
+				assertEquals(offsetTsa, keysetTsa);
+			}
+		}
+	}
+
+	@Test
+	public void keysetPagingSinglePage() {
+		Analyzer keysetTsa = createAnalyzer().setKeysetPaging(true)
+				.setTripleLimit(1000);
+		keysetTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) keysetTsa.getCriteria().get(0)).getNumTriples());
+	}
+
+	@Test
+	public void readAheadOffsetPaging() {
+		Analyzer tsa = createAnalyzer().setTripleLimit(7);
+		tsa.performAnalysis(null);
+
+		Analyzer readAheadTsa = createAnalyzer().setReadAhead(2)
+				.setTripleLimit(7);
+		readAheadTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) readAheadTsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(tsa, readAheadTsa);
+	}
+
+	@Test
+	public void readAheadKeysetPaging() {
+		Analyzer tsa = createAnalyzer().setTripleLimit(4);
+		tsa.performAnalysis(null);
+
+		Analyzer readAheadTsa = createAnalyzer().setKeysetPaging(true)
+				.setReadAhead(3)
+				.setRandomSampling(true)
+				.setTripleLimit(4);
+		readAheadTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) readAheadTsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(tsa, readAheadTsa);
+	}
+
+	@Test
+	public void readAheadRandomSampling() {
+		Analyzer tsa = createAnalyzer().setTripleLimit(5);
+		tsa.performAnalysis(null);
+
+		Analyzer readAheadTsa = createAnalyzer().setRandomSampling(true)
+				.setReadAhead(1)
+				.setTripleLimit(5);
+		readAheadTsa.performAnalysis(null);
+
+		assertEquals(63, ((NumTriples) readAheadTsa.getCriteria().get(0)).getNumTriples());
+		assertEquals(tsa, readAheadTsa);
+	}
+
+	private AbstractAnalyzer createAllCriteriaAnalyzer() {
+		return addAllCriteria(new TripleStreamAnalyzer(ds)).setTripleLimit(10);
+	}
+
+	private <A extends AbstractAnalyzer> A addAllCriteria(A a) {
+		a.addCriterion(new ClassUsageCount())
+				.addCriterion(new TriplesPerSubjectClass())
+				.addCriterion(new ClassHierarchy())
+				.addCriterion(new ImplicitClassHierarchy())
+				.addCriterion(new OntologyRatioNew())
+				.addCriterion(new TypedSubjectRatio())
+				.addCriterion(new PropertyUsage())
+				.addCriterion(new PredicateVocabularies())
+				.addCriterion(new PropertyUsagePerSubjectClass())
+				.addCriterion(new ClassInstancesPerProperty())
+				.addCriterion(new PropertyHierarchy())
+				.addCriterion(new ImplicitPropertyHierarchy())
+				.addCriterion(new DistinctSubjectsBlank())
+				.addCriterion(new NamespaceLinks())
+				.addCriterion(new DistinctSubjectOnlyBlanks())
+				.addCriterion(new NumTriples())
+				.addCriterion(new SameAs())
+				.addCriterion(new CommonProperties());
+		return a;
+	}
+
+	@Test
+	public void parallelCriteria() {
+		ByteArrayOutputStream sequentialOut = new ByteArrayOutputStream();
+		Analyzer sequentialTsa = createAllCriteriaAnalyzer();
+		sequentialTsa.performAnalysis(new PrintStream(sequentialOut));
+
+		ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+		Analyzer parallelTsa = createAllCriteriaAnalyzer().setNumThreads(4);
+		parallelTsa.performAnalysis(new PrintStream(parallelOut));
+
+		assertEquals(sequentialTsa, parallelTsa);
+		assertEquals(sequentialOut.toString(), parallelOut.toString());
+	}
+
+	@Test
+	public void partitionedAnalysis() {
+		Analyzer tsa = createAllCriteriaAnalyzer();
+		tsa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+
+		for (int numPartitions = 1; numPartitions <= 4; numPartitions++) {
+			PartitionAnalyzer pa = addAllCriteria(new PartitionAnalyzer(ds))
+					.setNumPartitions(numPartitions)
+					.setTripleLimit(10);
+			pa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+			assertEquals(tsa, pa);
+		}
+	}
+
+	@Test
+	public void mergeAcrossDictionaries() {
+		// split the dataset in two halves analyzed independently
+		InMemoryDataset ds1 = new InMemoryDataset();
+		InMemoryDataset ds2 = new InMemoryDataset();
+		StmtIterator it = ds.getModel().listStatements();
+		for (int i = 0; it.hasNext(); i++)
+			(i % 2 == 0 ? ds1 : ds2).getModel().add(it.next());
+
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer tsa = createAllCriteriaAnalyzer();
+		tsa.performAnalysis(ps);
+		Analyzer tsa1 = addAllCriteria(new TripleStreamAnalyzer(ds1));
+		tsa1.performAnalysis(ps);
+		Analyzer tsa2 = addAllCriteria(new TripleStreamAnalyzer(ds2));
+		tsa2.performAnalysis(ps);
+
+		for (int i = 0; i < tsa1.getCriteria().size(); i++) {
+			StatisticalCriterion sc = tsa1.getCriteria().get(i);
+			sc.merge(tsa2.getCriteria().get(i));
+			sc.flushLog(ps);
+		}
+		assertEquals(tsa, tsa1);
+	}
+
+	@Test
+	public void sharedTypeIndex() {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer tsa = createAllCriteriaAnalyzer();
+		tsa.performAnalysis(ps);
+
+		// class-aware criteria index the type triples once
+		TypeIndex typeIndex = null;
+		for (StatisticalCriterion sc : tsa.getCriteria())
+			if (sc.isClassAware()) {
+				if (typeIndex == null)
+					typeIndex = sc.getTypeIndex();
+				assertTrue(typeIndex == sc.getTypeIndex());
+			}
+		assertEquals(20, typeIndex.getNumTypedSubjects());
+
+		// same results as with an index of their own
+		for (StatisticalCriterion sc : tsa.getCriteria())
+			if (sc.isClassAware()) {
+				Analyzer single = new TripleStreamAnalyzer(ds)
+						.setTripleLimit(10).addCriterion(sc.newInstance());
+				single.performAnalysis(ps);
+				assertEquals(single.getCriteria().get(0), sc);
+			}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mergeDifferentCriteria() {
+		new NumTriples().merge(new SameAs());
+	}
+
+	private <A extends AbstractAnalyzer> A addCardinalityCriteria(A a,
+			double errorBound) {
+		a.addCriterion(new SubjectObjectRatio().setErrorBound(errorBound))
+				.addCriterion(new TypedSubjectRatio().setErrorBound(errorBound))
+				.addCriterion(new DistinctSubjectsBlank().setErrorBound(errorBound))
+				.addCriterion(new OntologyRatioNew().setErrorBound(errorBound));
+		return a;
+	}
+
+	@Test
+	public void approximateCounting() {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer exact = addCardinalityCriteria(new TripleStreamAnalyzer(ds), 0)
+				.setTripleLimit(10);
+		exact.performAnalysis(ps);
+		Analyzer approximate = addCardinalityCriteria(
+				new TripleStreamAnalyzer(ds), 0.01).setTripleLimit(10);
+		ByteArrayOutputStream approximateOut = new ByteArrayOutputStream();
+		approximate.performAnalysis(new PrintStream(approximateOut));
+
+		// few distinct terms are counted exactly by the sketches
+		assertEquals(exact, approximate);
+		assertTrue(approximateOut.toString().contains("+/-"));
+		Map<String, Object> m = approximate.getCriteria().get(0).getResultMap();
+		assertTrue(m.containsKey("SubjectObjectRatioError"));
+
+		// sketches of partitions merge to the sketch of the whole stream
+		Analyzer partitioned = addCardinalityCriteria(
+				new PartitionAnalyzer(ds), 0.01).setNumPartitions(3)
+				.setTripleLimit(10);
+		ByteArrayOutputStream partitionedOut = new ByteArrayOutputStream();
+		partitioned.performAnalysis(new PrintStream(partitionedOut));
+		assertEquals(approximate, partitioned);
+		assertEquals(approximateOut.toString(), partitionedOut.toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void mergeExactAndApproximate() {
+		new DistinctSubjectsBlank().merge(new DistinctSubjectsBlank()
+				.setErrorBound(0.01));
+	}
+
+	@Test
+	public void parallelQueries() {
+		ByteArrayOutputStream sequentialOut = new ByteArrayOutputStream();
+		Analyzer sequentialSqa = addAllCriteria(new SparqlAnalyzer(ds));
+		sequentialSqa.performAnalysis(new PrintStream(sequentialOut));
+
+		ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+		Analyzer parallelSqa = addAllCriteria(new SparqlAnalyzer(ds)
+				.setParallelism(4).setQueryTimeout(60000));
+		parallelSqa.performAnalysis(new PrintStream(parallelOut));
+
+		assertEquals(sequentialSqa, parallelSqa);
+		// one block of output per criterion, in criteria order
+		assertEquals(sequentialOut.toString().split("\n").length,
+				parallelOut.toString().split("\n").length);
+		assertTrue(parallelOut.toString().startsWith("Result: number of classes used"));
+	}
+
+	private <A extends Analyzer> A addDerivedCriteria(A a) {
+		a.addCriterion(new PropertyUsagePerSubjectClass())
+				.addCriterion(new TriplesPerSubjectClass())
+				.addCriterion(new ClassInstancesPerProperty())
+				.addCriterion(new CommonProperties());
+		return a;
+	}
+
+	@Test
+	public void incrementalPageResults() throws IOException {
+		Analyzer tsa = addDerivedCriteria(new TripleStreamAnalyzer(ds));
+		tsa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+
+		File outDir = File.createTempFile("incremental", "");
+		outDir.delete();
+		outDir.mkdir();
+		File outFile = new File(outDir, "incremental.csv");
+		try {
+			PartialStreamAnalysisLogger psal = addDerivedCriteria(
+					new PartialStreamAnalysisLogger("incremental", false))
+					.setDs(ds).setTripleLimit(3);
+			psal.evaluate(outDir, "");
+			assertEquals(tsa.getCriteria(), psal.getCriteria());
+
+			// header and one row per page, blank where a value is unchanged
+			BufferedReader reader = new BufferedReader(new FileReader(outFile));
+			List<String> keys = splitCsvLine(reader.readLine());
+			Map<String, String> values = new HashMap<String, String>();
+			int numRows = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				List<String> fields = splitCsvLine(line);
+				for (int k = 0; k < fields.size(); k++)
+					if (fields.get(k).length() > 0)
+						values.put(keys.get(k), fields.get(k));
+				numRows++;
+			}
+			reader.close();
+			int numTriples = (int) ds.getModel().size();
+			assertEquals((numTriples + 2) / 3, numRows);
+
+			for (StatisticalCriterion sc : tsa.getCriteria())
+				for (Map.Entry<String, Object> e : sc.getResultMap().entrySet())
+					assertEquals(e.getKey(), String.valueOf(e.getValue()),
+							values.get(e.getKey()));
+		} finally {
+			outFile.delete();
+			outDir.delete();
+		}
+	}
+
+	@Test
+	public void changedResults() {
+		PropertyUsage pu = new PropertyUsage();
+		NumTriples nt = new NumTriples();
+		Resource s = ds.getModel().createResource("http://example.com/s");
+		for (StatisticalCriterion sc : Arrays.asList(pu, nt))
+			sc.considerTriple(s, RDF.type, OWL.Thing);
+		assertEquals(pu.getResultMap(), pu.getChangedResults());
+		assertEquals(nt.getResultMap(), nt.getChangedResults());
+		assertTrue(pu.getChangedResults().isEmpty());
+		assertTrue(nt.getChangedResults().isEmpty());
+
+		for (StatisticalCriterion sc : Arrays.asList(pu, nt))
+			sc.considerTriple(s, OWL.sameAs, s);
+		Map<String, Object> changed = new HashMap<String, Object>();
+		changed.put(OWL.sameAs.getURI() + "_propertyUsage", 1);
+		assertEquals(changed, pu.getChangedResults());
+		assertEquals(Collections.singletonMap("numTriples", (Object) 2),
+				nt.getChangedResults());
+
+		// results no longer reported are null
+		pu.init();
+		changed.put(RDF.type.getURI() + "_propertyUsage", null);
+		changed.put(OWL.sameAs.getURI() + "_propertyUsage", null);
+		assertEquals(changed, pu.getChangedResults());
+		pu.resetChangedResults();
+		pu.considerTriple(s, RDF.type, OWL.Thing);
+		assertEquals(pu.getResultMap(), pu.getChangedResults());
+	}
+
+	@Test
+	public void changedResultsPerClass() {
+		ClassInstancesPerProperty cipp = new ClassInstancesPerProperty();
+		Resource s1 = ds.getModel().createResource("http://example.com/s1");
+		Resource s2 = ds.getModel().createResource("http://example.com/s2");
+		Resource c1 = ds.getModel().createResource("http://example.com/C1");
+		Resource c2 = ds.getModel().createResource("http://example.com/C2");
+		cipp.considerTriple(s1, RDF.type, c1);
+		cipp.considerTriple(s1, OWL.sameAs, s1);
+		cipp.considerTriple(s2, RDF.type, c2);
+		cipp.considerTriple(s2, OWL.sameAs, s2);
+		assertEquals(cipp.getResultMap(), cipp.getChangedResults());
+		assertTrue(cipp.getChangedResults().isEmpty());
+
+		// only the class of the subject changed
+		cipp.considerTriple(s1, RDFS.label, s1);
+		assertEquals(Collections.singletonMap(c1.getURI()
+				+ "_classInstancesPerProperty_" + RDFS.label.getURI(),
+				(Object) 1), cipp.getChangedResults());
+
+		// results no longer reported are null
+		cipp.init();
+		Map<String, Object> changed = new HashMap<String, Object>();
+		for (String key : cipp.getChangedResults().keySet())
+			changed.put(key, null);
+		assertEquals(3, changed.size());
+		assertTrue(changed.containsKey(c2.getURI()
+				+ "_classInstancesPerProperty_" + OWL.sameAs.getURI()));
+	}
+
+	private static List<String> splitCsvLine(String line) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"')
+					field.append(line.charAt(++i));
+				else quoted = !quoted;
+			} else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else field.append(c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	@Test
+	public void queryBudget() {
+		NumTriples nt = new NumTriples();
+		TripleStreamAnalyzer tsa = new TripleStreamAnalyzer(ds)
+				.setMaxNumQueries(2).setReadAhead(2);
+		tsa.setTripleLimit(10);
+		tsa.addCriterion(nt);
+		tsa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+		assertEquals(20, nt.getNumTriples());
+	}
+
+	@Test
+	public void convergence() {
+		// every ratio changes by at most 1; pages in order, as a random order
+		// may put the short last page among the first three
+		NumTriples nt = new NumTriples();
+		TripleStreamAnalyzer tsa = new TripleStreamAnalyzer(ds)
+				.setConvergenceTolerance(1).setConvergenceWindow(2);
+		tsa.setTripleLimit(10).setNumThreads(2);
+		tsa.addCriterion(nt).addCriterion(new TypedSubjectRatio());
+		tsa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+		assertEquals(30, nt.getNumTriples());
+
+		// no convergence values, all pages are fetched
+		nt = new NumTriples();
+		tsa = new TripleStreamAnalyzer(ds).setConvergenceTolerance(1);
+		tsa.setTripleLimit(10);
+		tsa.addCriterion(nt);
+		tsa.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+		assertEquals(ds.getModel().size(), nt.getNumTriples());
+	}
+
+	private <A extends AbstractAnalyzer> A addSpillableCriteria(A a,
+			long memoryBudget) {
+		a.addCriterion(new ClassInstancesPerProperty().setMemoryBudget(memoryBudget))
+				.addCriterion(new ImplicitPropertyHierarchy().setMemoryBudget(memoryBudget))
+				.addCriterion(new CommonProperties().setMemoryBudget(memoryBudget));
+		return a;
+	}
+
+	@Test
+	public void memoryBudget() {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer heap = addSpillableCriteria(new TripleStreamAnalyzer(ds), 0)
+				.setTripleLimit(10);
+		heap.performAnalysis(ps);
+
+		// a few tuples per run, every page spills
+		Analyzer spilling = addSpillableCriteria(new TripleStreamAnalyzer(ds),
+				64).setTripleLimit(10);
+		spilling.performAnalysis(ps);
+		assertEquals(heap, spilling);
+
+		Analyzer partitioned = addSpillableCriteria(new PartitionAnalyzer(ds),
+				64).setNumPartitions(3).setTripleLimit(10);
+		partitioned.performAnalysis(ps);
+		assertEquals(heap, partitioned);
+	}
+
+	private <A extends AbstractAnalyzer> A addWindowCriteria(A a) {
+		a.addCriterion(new TriplesPerSubjectClass())
+				.addCriterion(new PropertyUsagePerSubjectClass())
+				.addCriterion(new CommonProperties())
+				.addCriterion(new NumTriples());
+		return a;
+	}
+
+	@Test
+	public void subjectWindow() throws IOException {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer tsa = addWindowCriteria(new TripleStreamAnalyzer(ds))
+				.setTripleLimit(10);
+		tsa.performAnalysis(ps);
+
+		// subjects span pages
+		TripleStreamAnalyzer windowTsa = addWindowCriteria(
+				new TripleStreamAnalyzer(ds)).setSubjectWindow(true);
+		windowTsa.setTripleLimit(10);
+		windowTsa.performAnalysis(ps);
+		for (StatisticalCriterion sc : windowTsa.getCriteria())
+			assertEquals(sc.supportsSubjectWindow(), sc.isSubjectWindow());
+		assertEquals(tsa, windowTsa);
+
+		Analyzer parallelTsa = addWindowCriteria(new TripleStreamAnalyzer(ds))
+				.setSubjectWindow(true).setTripleLimit(7).setNumThreads(2);
+		parallelTsa.performAnalysis(ps);
+		assertEquals(tsa, parallelTsa);
+
+		// the open subject is part of the checkpoint
+		File checkpointFile = File.createTempFile("checkpoint", ".bin");
+		checkpointFile.delete();
+		try {
+			addWindowCriteria(new TripleStreamAnalyzer(ds))
+					.setSubjectWindow(true).setCheckpointFile(checkpointFile)
+					.setMaxNumQueries(3).setTripleLimit(7)
+					.performAnalysis(ps);
+			Analyzer resumedTsa = addWindowCriteria(
+					new TripleStreamAnalyzer(ds)).setSubjectWindow(true)
+					.setCheckpointFile(checkpointFile).setResume(true)
+					.setTripleLimit(7);
+			resumedTsa.performAnalysis(ps);
+			assertEquals(tsa, resumedTsa);
+		} finally {
+			Checkpoint.delete(checkpointFile);
+		}
+	}
+
+	@Test
+	public void subjectWindowKeysetPaging() {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer tsa = addWindowCriteria(new TripleStreamAnalyzer(ds))
+				.setTripleLimit(10);
+		tsa.performAnalysis(ps);
+
+		// blank subjects are ordered by their label
+		Analyzer windowTsa = addWindowCriteria(new TripleStreamAnalyzer(ds))
+				.setSubjectWindow(true).setKeysetPaging(true).setTripleLimit(3);
+		windowTsa.performAnalysis(ps);
+		assertEquals(tsa, windowTsa);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void subjectWindowRandomSampling() {
+		new TripleStreamAnalyzer(ds).setSubjectWindow(true)
+				.setRandomSampling(true).addCriterion(new CommonProperties())
+				.performAnalysis(new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void subjectWindowPartitions() {
+		new PartitionAnalyzer(ds).addCriterion(
+				new CommonProperties().setSubjectWindow(true)).performAnalysis(
+				new PrintStream(new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void convergenceCheck() {
+		ConvergenceCheck check = new ConvergenceCheck(0.1, 2);
+		assertFalse(check.update(Collections.singletonMap("a", 0.5)));
+		assertFalse(check.update(Collections.singletonMap("a", 0.55)));
+		assertTrue(check.update(Collections.singletonMap("a", 0.6)));
+		// changed set of values
+		assertFalse(check.update(Collections.singletonMap("b", 0.6)));
+		assertFalse(check.update(Collections.singletonMap("b", 0.6)));
+		assertTrue(check.update(Collections.singletonMap("b", 0.6)));
+		// undefined values never converge
+		for (int i = 0; i < 3; i++)
+			assertFalse(check.update(Collections.singletonMap("b", Double.NaN)));
+	}
+
+	@Test
+	public void checkpointResume() throws IOException {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		Analyzer tsa = createAllCriteriaAnalyzer();
+		tsa.performAnalysis(ps);
+
+		File checkpointFile = File.createTempFile("checkpoint", ".bin");
+		checkpointFile.delete();
+		try {
+			// stops after 3 pages and leaves a checkpoint
+			TripleStreamAnalyzer partialTsa = addAllCriteria(
+					new TripleStreamAnalyzer(ds)).setRandomSampling(true)
+					.setCheckpointFile(checkpointFile).setCheckpointInterval(2)
+					.setMaxNumQueries(3);
+			partialTsa.setTripleLimit(10).setNumThreads(3);
+			partialTsa.performAnalysis(ps);
+			assertTrue(checkpointFile.exists());
+			Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+			assertEquals(3, checkpoint.getNumPages());
+
+			// every term is appended to the terms file once
+			TermDictionary dictionary = partialTsa.getDictionary();
+			assertEquals(dictionary.size(), checkpoint.getDictionary().size());
+			ByteArrayOutputStream terms = new ByteArrayOutputStream();
+			int[] numTerms = dictionary.getNumTerms();
+			dictionary.writeTerms(new DataOutputStream(terms),
+					new int[numTerms.length], numTerms);
+			assertEquals(terms.size(), Checkpoint.getTermsFile(checkpointFile)
+					.length());
+			for (StatisticalCriterion sc : checkpoint.getCriteria())
+				assertTrue(sc.getDictionary() == checkpoint.getDictionary());
+
+			// continues with the remaining pages
+			TripleStreamAnalyzer resumedTsa = addAllCriteria(
+					new TripleStreamAnalyzer(ds)).setRandomSampling(true)
+					.setCheckpointFile(checkpointFile).setResume(true);
+			resumedTsa.setTripleLimit(10);
+			resumedTsa.performAnalysis(ps);
+			assertEquals(tsa, resumedTsa);
+			assertFalse(checkpointFile.exists());
+		} finally {
+			Checkpoint.delete(checkpointFile);
+		}
+	}
+
+	private TripleStreamAnalyzer addSelectiveCriteria(TripleStreamAnalyzer tsa) {
+		tsa.addCriterion(new ClassUsageCount())
+				.addCriterion(new ClassHierarchy())
+				.addCriterion(new PropertyHierarchy())
+				.addCriterion(new SameAs())
+				.addCriterion(new OntologyRatioNew())
+				.addCriterion(new ImplicitClassHierarchy());
+		return tsa;
+	}
+
+	@Test
+	public void predicatePushDown() throws IOException {
+		PrintStream ps = new PrintStream(new ByteArrayOutputStream());
+		TripleStreamAnalyzer fullTsa = addSelectiveCriteria(
+				new TripleStreamAnalyzer(ds)).setPredicatePushDown(false);
+		fullTsa.performAnalysis(ps);
+		assertEquals(63, fullTsa.getNumTriplesConsidered());
+
+		// 20 type, 1 subClassOf, 1 subPropertyOf and 1 sameAs triples
+		TripleStreamAnalyzer tsa = addSelectiveCriteria(new TripleStreamAnalyzer(ds));
+		tsa.setTripleLimit(7);
+		tsa.performAnalysis(ps);
+		assertEquals(23, tsa.getNumTriplesConsidered());
+		assertEquals(fullTsa, tsa);
+
+		TripleStreamAnalyzer keysetTsa = addSelectiveCriteria(
+				new TripleStreamAnalyzer(ds)).setKeysetPaging(true)
+				.setOrderByClause(TripleStreamAnalyzer.ByPredicate);
+		keysetTsa.setTripleLimit(7);
+		keysetTsa.performAnalysis(ps);
+		assertEquals(23, keysetTsa.getNumTriplesConsidered());
+		assertEquals(fullTsa, keysetTsa);
+
+		TripleStreamAnalyzer randomTsa = addSelectiveCriteria(
+				new TripleStreamAnalyzer(ds)).setRandomSampling(true);
+		randomTsa.setTripleLimit(7).setNumThreads(2);
+		randomTsa.performAnalysis(ps);
+		assertEquals(fullTsa, randomTsa);
+
+		// a criterion that needs all triples
+		TripleStreamAnalyzer mixedTsa = addSelectiveCriteria(new TripleStreamAnalyzer(ds));
+		mixedTsa.addCriterion(new NumTriples());
+		mixedTsa.performAnalysis(ps);
+		assertEquals(63, mixedTsa.getNumTriplesConsidered());
+
+		File checkpointFile = File.createTempFile("checkpoint", ".bin");
+		checkpointFile.delete();
+		try {
+			TripleStreamAnalyzer partialTsa = addSelectiveCriteria(
+					new TripleStreamAnalyzer(ds)).setRandomSampling(true)
+					.setCheckpointFile(checkpointFile).setMaxNumQueries(2);
+			partialTsa.setTripleLimit(7);
+			partialTsa.performAnalysis(ps);
+			assertEquals(2, Checkpoint.read(checkpointFile).getNumPages());
+
+			TripleStreamAnalyzer resumedTsa = addSelectiveCriteria(
+					new TripleStreamAnalyzer(ds)).setRandomSampling(true)
+					.setCheckpointFile(checkpointFile).setResume(true);
+			resumedTsa.setTripleLimit(7);
+			resumedTsa.performAnalysis(ps);
+			assertEquals(23, resumedTsa.getNumTriplesConsidered());
+			assertEquals(fullTsa, resumedTsa);
+		} finally {
+			Checkpoint.delete(checkpointFile);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package rdfsynopsis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import rdfsynopsis.util.TermDictionary;
+import rdfsynopsis.util.TypeIndex;
+
+public class TypeIndexTest {
+
+	@Test
+	public void addType() {
+		TermDictionary dictionary = new TermDictionary();
+		TypeIndex index = new TypeIndex(dictionary);
+		final List<int[]> added = new ArrayList<int[]>();
+		index.addListener(new TypeIndex.Listener() {
+			@Override
+			public void typeAdded(int subject, int classId) {
+				added.add(new int[] { subject, classId });
+			}
+		});
+
+		int s = dictionary.encodeURI("http://example.com/s");
+		int b = dictionary.encodeBlank("b");
+		int c1 = dictionary.encodeURI("http://example.com/C1");
+		int c2 = dictionary.encodeURI("http://example.com/C2");
+		int c3 = dictionary.encodeURI("http://example.com/C3");
+
+		assertTrue(index.addType(s, c1));
+		assertTrue(index.addType(s, c2));
+		assertTrue(index.addType(s, c3));
+		assertFalse(index.addType(s, c2));
+		// same index as s, other kind
+		assertTrue(index.addType(b, c1));
+
+		assertEquals(4, added.size());
+		assertEquals(3, index.getNumClasses(s));
+		assertEquals(c1, index.getClass(s, 0));
+		assertEquals(c3, index.getClass(s, 2));
+		assertEquals(1, index.getNumClasses(b));
+		assertTrue(index.hasClass(b, c1));
+		assertFalse(index.hasClass(b, c2));
+		assertEquals(0, index.getNumClasses(c1));
+		assertEquals(2, index.getNumTypedSubjects());
+		assertEquals(3, index.getClassIds().size());
+		assertEquals(2, index.getInstances(c1).getCardinality());
+		assertNull(index.getInstances(s));
+
+		index.clear();
+		assertEquals(0, index.getNumClasses(s));
+		assertEquals(0, index.getNumTypedSubjects());
+		assertTrue(index.addType(s, c1));
+		assertEquals(5, added.size());
+	}
+
+	@Test
+	public void merge() {
+		TermDictionary d1 = new TermDictionary();
+		TermDictionary d2 = new TermDictionary();
+		d2.encodeURI("http://example.com/other");
+		TypeIndex i1 = new TypeIndex(d1);
+		TypeIndex i2 = new TypeIndex(d2);
+		i1.addType(d1.encodeURI("http://example.com/s"),
+				d1.encodeURI("http://example.com/C1"));
+		i2.addType(d2.encodeURI("http://example.com/s"),
+				d2.encodeURI("http://example.com/C2"));
+		i2.addType(d2.encodeBlank("b"), d2.encodeURI("http://example.com/C1"));
+
+		assertTrue(i1.merge(i2));
+		// merged once only
+		assertFalse(i1.merge(i2));
+		assertFalse(i1.merge(i1));
+
+		int s = d1.lookupURI("http://example.com/s");
+		assertEquals(2, i1.getNumClasses(s));
+		assertTrue(i1.hasClass(s, d1.lookupURI("http://example.com/C2")));
+		assertTrue(i1.hasClass(d1.encodeBlank("b"),
+				d1.lookupURI("http://example.com/C1")));
+		assertEquals(2, i1.getNumTypedSubjects());
+	}
+}